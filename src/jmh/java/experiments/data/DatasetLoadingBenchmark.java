@@ -0,0 +1,45 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package experiments.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the ItalyPowerDemand train set from the bundled .ts and .arff files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatasetLoadingBenchmark {
+
+    private static final String PATH = DatasetLoading.BAKED_IN_TSC_DATA_PATH + "ItalyPowerDemand/ItalyPowerDemand_TRAIN";
+
+    @Benchmark
+    public Object loadTS() throws Exception {
+        return DatasetLoading.loadTSData(PATH + ".ts");
+    }
+
+    @Benchmark
+    public Object loadArff() throws Exception {
+        return DatasetLoading.loadDataThrowable(PATH + ".arff");
+    }
+}
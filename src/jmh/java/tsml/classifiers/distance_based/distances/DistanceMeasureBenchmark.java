@@ -0,0 +1,84 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.distances;
+
+import experiments.data.DatasetLoading;
+import org.openjdk.jmh.annotations.*;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.ed.EDistance;
+import tsml.classifiers.distance_based.distances.erp.ERPDistance;
+import tsml.classifiers.distance_based.distances.lcss.LCSSDistance;
+import tsml.classifiers.distance_based.distances.msm.MSMDistance;
+import tsml.classifiers.distance_based.distances.twed.TWEDistance;
+import tsml.classifiers.distance_based.distances.wdtw.WDTWDistance;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest neighbour search of one GunPoint test case over the train set for each distance measure. With a limit the
+ * best distance so far is passed to each distance call, as in 1NN, so early abandoning is measured too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceMeasureBenchmark {
+
+    @Param({"DTW", "ED", "ERP", "LCSS", "MSM", "TWED", "WDTW"})
+    public String distanceMeasure;
+
+    @Param({"false", "true"})
+    public boolean limited;
+
+    private DistanceMeasure dm;
+    private TimeSeriesInstances train;
+    private TimeSeriesInstance query;
+
+    @Setup
+    public void setup() throws Exception {
+        final TimeSeriesInstances[] data = DatasetLoading.sampleGunPointTS(0);
+        train = data[0];
+        query = data[1].get(0);
+        switch(distanceMeasure) {
+            case "DTW": dm = new DTWDistance(); break;
+            case "ED": dm = new EDistance(); break;
+            case "ERP": dm = new ERPDistance(); break;
+            case "LCSS": dm = new LCSSDistance(); break;
+            case "MSM": dm = new MSMDistance(); break;
+            case "TWED": dm = new TWEDistance(); break;
+            case "WDTW": dm = new WDTWDistance(); break;
+            default: throw new IllegalArgumentException(distanceMeasure);
+        }
+        dm.buildDistanceMeasure(train);
+    }
+
+    @Benchmark
+    public double nearestNeighbour() {
+        double best = Double.POSITIVE_INFINITY;
+        for(TimeSeriesInstance inst : train) {
+            final double distance = dm.distance(query, inst, limited ? best : Double.POSITIVE_INFINITY);
+            if(distance < best) {
+                best = distance;
+            }
+        }
+        return best;
+    }
+}
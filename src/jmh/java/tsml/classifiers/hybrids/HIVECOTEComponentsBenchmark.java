@@ -0,0 +1,90 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.hybrids;
+
+import experiments.data.DatasetLoading;
+import org.openjdk.jmh.annotations.*;
+import tsml.classifiers.dictionary_based.TDE;
+import tsml.classifiers.distance_based.proximity.ProximityForest;
+import tsml.classifiers.interval_based.DrCIF;
+import tsml.classifiers.kernel_based.Arsenal;
+import tsml.classifiers.shapelet_based.ShapeletTransformClassifier;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Randomizable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end build and prediction of the HIVE-COTE components on ItalyPowerDemand with their default settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HIVECOTEComponentsBenchmark {
+
+    @Param({"DrCIF", "TDE", "STC", "PF", "Arsenal"})
+    public String classifierName;
+
+    private Instances train;
+    private Instances test;
+    private Classifier built;
+
+    @Setup
+    public void setup() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        train = data[0];
+        test = data[1];
+        built = newClassifier();
+        built.buildClassifier(train);
+    }
+
+    private Classifier newClassifier() {
+        final AbstractClassifier classifier;
+        switch(classifierName) {
+            case "DrCIF": classifier = new DrCIF(); break;
+            case "TDE": classifier = new TDE(); break;
+            case "STC": classifier = new ShapeletTransformClassifier(); break;
+            case "PF": classifier = new ProximityForest(); break;
+            case "Arsenal": classifier = new Arsenal(); break;
+            default: throw new IllegalArgumentException(classifierName);
+        }
+        ((Randomizable) classifier).setSeed(0);
+        return classifier;
+    }
+
+    @Benchmark
+    public Classifier buildClassifier() throws Exception {
+        final Classifier classifier = newClassifier();
+        classifier.buildClassifier(new Instances(train));
+        return classifier;
+    }
+
+    @Benchmark
+    public double distributionForInstance() throws Exception {
+        double sum = 0;
+        for(Instance inst : test) {
+            sum += built.distributionForInstance(inst)[0];
+        }
+        return sum;
+    }
+}
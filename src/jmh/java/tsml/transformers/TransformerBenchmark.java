@@ -0,0 +1,100 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers;
+
+import experiments.data.DatasetLoading;
+import org.openjdk.jmh.annotations.*;
+import tsml.classifiers.dictionary_based.IndividualTDE;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.transformers.shapelet_tools.distance_functions.ShapeletDistance;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The transforms on the hot paths of the HIVE-COTE components, on the GunPoint train set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerBenchmark {
+
+    private TimeSeriesInstances train;
+    private ROCKET fittedRocket;
+    private Catch22 catch22;
+    private ShapeletDistance shapeletDistance;
+
+    @Setup
+    public void setup() throws Exception {
+        train = DatasetLoading.sampleGunPointTS(0)[0];
+        fittedRocket = newRocket();
+        fittedRocket.fit(train);
+        catch22 = new Catch22();
+        shapeletDistance = new ShapeletDistance();
+        shapeletDistance.init(train);
+    }
+
+    private static ROCKET newRocket() {
+        final ROCKET rocket = new ROCKET(1000);
+        rocket.setSeed(0);
+        return rocket;
+    }
+
+    @Benchmark
+    public ROCKET rocketFit() {
+        final ROCKET rocket = newRocket();
+        rocket.fit(train);
+        return rocket;
+    }
+
+    @Benchmark
+    public TimeSeriesInstances rocketTransform() {
+        return fittedRocket.transform(train);
+    }
+
+    @Benchmark
+    public TimeSeriesInstances catch22Transform() {
+        return catch22.transform(train);
+    }
+
+    /**
+     * The distance from one shapelet candidate to every series, the core of ShapeletTransform.checkCandidate.
+     */
+    @Benchmark
+    public double shapeletCandidateCheck() {
+        shapeletDistance.setCandidate(train.get(0), 20, 40, 0);
+        double sum = 0;
+        for(int i = 1; i < train.numInstances(); i++) {
+            sum += shapeletDistance.calculate(train.get(i), i);
+        }
+        return sum;
+    }
+
+    /**
+     * Building a single TDE member, dominated by creating the SFA words for every window.
+     */
+    @Benchmark
+    public IndividualTDE sfaWords() throws Exception {
+        final IndividualTDE tde = new IndividualTDE(10, 4, 40, true, 1, false);
+        tde.setSeed(0);
+        tde.buildClassifier(train);
+        return tde;
+    }
+}
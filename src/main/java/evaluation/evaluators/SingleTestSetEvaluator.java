@@ -23,6 +23,7 @@ import static utilities.GenericTools.indexOfMax;
 
 import tsml.classifiers.Interpretable;
 import weka.classifiers.Classifier;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 
@@ -67,18 +68,23 @@ public class SingleTestSetEvaluator extends Evaluator {
         res.setSplit("train"); //todo revisit, or leave with the assumption that calling method will set this to test when needed
 
         res.turnOffZeroTimingsErrors();
-        for (Instance testinst : insts) {
-            double trueClassVal = testinst.classValue();
-            if (setClassMissing)
-                testinst.setClassMissing();
+        if (classifier instanceof BatchPredictor && !vis) {
+            evaluateBatches((BatchPredictor) classifier, insts, res);
+        }
+        else {
+            for (Instance testinst : insts) {
+                double trueClassVal = testinst.classValue();
+                if (setClassMissing)
+                    testinst.setClassMissing();
 
-            long startTime = System.nanoTime();
-            double[] dist = classifier.distributionForInstance(testinst);
-            long predTime = System.nanoTime() - startTime;
+                long startTime = System.nanoTime();
+                double[] dist = classifier.distributionForInstance(testinst);
+                long predTime = System.nanoTime() - startTime;
 
-            if (vis) ((Interpretable)classifier).lastClassifiedInterpretability();
+                if (vis) ((Interpretable)classifier).lastClassifiedInterpretability();
 
-            res.addPrediction(trueClassVal, dist, indexOfMax(dist), predTime, ""); //todo indexOfMax does not break ties randomly.
+                res.addPrediction(trueClassVal, dist, indexOfMax(dist), predTime, ""); //todo indexOfMax does not break ties randomly.
+            }
         }
 
         res.turnOnZeroTimingsErrors();
@@ -89,6 +95,40 @@ public class SingleTestSetEvaluator extends Evaluator {
         return res;
     }
 
+    /**
+     * Gathers predictions in batches of the classifier's preferred batch size, avoiding any per call overhead of
+     * distributionForInstance. The prediction time of each instance is the time for its batch divided by the batch
+     * size.
+     */
+    private void evaluateBatches(BatchPredictor classifier, Instances insts, ClassifierResults res) throws Exception {
+        int batchSize;
+        try {
+            batchSize = Math.max(1, Integer.parseInt(classifier.getBatchSize()));
+        } catch (NumberFormatException e) {
+            batchSize = insts.numInstances();
+        }
+
+        for (int start = 0; start < insts.numInstances(); start += batchSize) {
+            int size = Math.min(batchSize, insts.numInstances() - start);
+
+            double[] trueClassVals = new double[size];
+            for (int i = 0; i < size; i++) {
+                Instance testinst = insts.instance(start + i);
+                trueClassVals[i] = testinst.classValue();
+                if (setClassMissing)
+                    testinst.setClassMissing();
+            }
+            Instances batch = new Instances(insts, start, size);
+
+            long startTime = System.nanoTime();
+            double[][] dists = classifier.distributionsForInstances(batch);
+            long predTime = (System.nanoTime() - startTime) / size;
+
+            for (int i = 0; i < size; i++)
+                res.addPrediction(trueClassVals[i], dists[i], indexOfMax(dists[i]), predTime, ""); //todo indexOfMax does not break ties randomly.
+        }
+    }
+
     /**
      * Utility method, will build on the classifier on the train set and evaluate on the test set 
      */
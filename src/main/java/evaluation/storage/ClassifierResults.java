@@ -65,9 +65,13 @@ import utilities.*;
  *   7 - get/setErrorEstimateMethod(String) (loosely formed, e.g. cv_10)
  *   8 - get/setErrorEstimateTime(long) (time to form an estimate from scratch, e.g. time of cv_10)
  *   9 - get/setBuildPlusEstimateTime(long) (time to train on full data, AND estimate error on it)
+ *   10 - get/setMemoryLimit(long) (the memory budget the classifier was built under, if any)
  *
  *  [REMAINING LINES: PREDICTIONS]
  *    - trueClassVal, predClassVal,[empty], dist[0], dist[1] ... dist[c],[empty], predTime, [empty], predDescription
+ *      Classifiers that are BatchPredictors, which includes every EnhancedAbstractClassifier, are evaluated
+ *      by SingleTestSetEvaluator in batches. Their predTime is the time for the batch divided by its size, i.e.
+ *      an average over the batch rather than the time taken by that single prediction.
  *
  * Supports reading/writing of results from/to file, in the 'classifierResults file-format'
  *    - loadResultsFromFile(String path)
@@ -229,6 +233,12 @@ public class ClassifierResults implements DebugPrinting, Serializable {
      */
     private long memoryUsage = -1;
 
+    /**
+     * The memory limit in BYTES imposed on the classifier through MemoryContractable, to be compared with memoryUsage.
+     * If no limit was imposed, the default value is -1
+     */
+    private long memoryLimit = -1;
+
 
     /**
      * todo initially intended as a temporary measure, but might stay here until a switch
@@ -826,6 +836,11 @@ public class ClassifierResults implements DebugPrinting, Serializable {
         this.memoryUsage = memory;
     }
 
+    public long getMemoryLimit() { return memoryLimit; }
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
 
     /**
      * The time taken to perform some standard benchmarking operation, to allow for a (not necessarily precise)
@@ -1648,6 +1663,8 @@ public class ClassifierResults implements DebugPrinting, Serializable {
             errorEstimateTime = Long.parseLong(parts[7]);
         if (parts.length > 8)
             buildPlusEstimateTime = Long.parseLong(parts[8]);
+        if (parts.length > 9)
+            memoryLimit = Long.parseLong(parts[9]);
         return acc;
     }
     private String generateThirdLine() {
@@ -1659,7 +1676,8 @@ public class ClassifierResults implements DebugPrinting, Serializable {
             + "," + numClasses()
             + "," + errorEstimateMethod
             + "," + errorEstimateTime
-            + "," + buildPlusEstimateTime;
+            + "," + buildPlusEstimateTime
+            + "," + memoryLimit;
 
         return res;
     }
@@ -1686,6 +1704,7 @@ public class ClassifierResults implements DebugPrinting, Serializable {
             buildTime = -1;
             testTime = -1;
             memoryUsage = -1;
+            memoryLimit = -1;
 
             //check file exists
             File f = new File(path);
@@ -2259,6 +2278,7 @@ public class ClassifierResults implements DebugPrinting, Serializable {
         newres.setErrorEstimateMethod(res.getErrorEstimateMethod());
         newres.setBenchmarkTime(res.getBenchmarkTime());
         newres.setMemory(res.getMemory());
+        newres.setMemoryLimit(res.getMemoryLimit());
         
         newres.findAllStatsOnce();
         
@@ -0,0 +1,244 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package experiments;
+
+import experiments.Experiments.ExperimentalArguments;
+import experiments.data.DatasetLoading;
+import tsml.classifiers.distance_based.utils.strings.StrUtils;
+import weka.core.Instances;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many experiments, e.g. every classifier, dataset and fold combination from
+ * ExperimentalArguments.generateExperiments, across a pool of threads.
+ *
+ * - Experiments are started longest first by their estimated cost, by default the size of the dataset files, so a
+ *   long experiment is not left running alone at the end.
+ * - Each resample of a dataset is loaded once and shared by the experiments on it. Each experiment gets its own copy
+ *   of the instances, the shared resample is dropped once the last experiment on it finishes.
+ * - An experiment only starts once its estimated memory is free. By default this is its memory contract, if set,
+ *   plus twice the size of its dataset files. Estimates larger than the whole pool run alone.
+ * - Finished experiments are recorded in a ledger file in the results path. When rerun, e.g. after the process was
+ *   killed, experiments in the ledger are skipped without checking for their results files.
+ */
+public class ExperimentScheduler {
+
+    private final static Logger LOGGER = Logger.getLogger(ExperimentScheduler.class.getName());
+
+    public static final String LEDGER_FILE_NAME = "experimentLedger.csv";
+
+    private static final long MB = 1024 * 1024;
+
+    private int numThreads;
+    private long memoryLimitMB = Runtime.getRuntime().maxMemory() / MB;
+    private ToDoubleFunction<ExperimentalArguments> costEstimator = exp -> datasetBytes(exp);
+    private ToLongFunction<ExperimentalArguments> memoryEstimator = exp ->
+            exp.contractMemoryMB + 2 * datasetBytes(exp) / MB;
+
+    private final Map<String, SharedResample> resamples = new HashMap<>();
+
+    /**
+     * @param numThreads number of experiments to run at once. If 0 as many as there are cores, if -1 as many as there
+     *                   are cores minus 1.
+     */
+    public ExperimentScheduler(int numThreads) {
+        int numCores = Runtime.getRuntime().availableProcessors();
+        if (numThreads == 0)
+            numThreads = numCores;
+        else if (numThreads < 0)
+            numThreads = Math.max(1, numCores - 1);
+        this.numThreads = numThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void setMemoryLimitMB(long memoryLimitMB) {
+        this.memoryLimitMB = memoryLimitMB;
+    }
+
+    public long getMemoryLimitMB() {
+        return memoryLimitMB;
+    }
+
+    /**
+     * @param costEstimator relative cost of an experiment, experiments with higher cost are started first
+     */
+    public void setCostEstimator(ToDoubleFunction<ExperimentalArguments> costEstimator) {
+        this.costEstimator = costEstimator;
+    }
+
+    /**
+     * @param memoryEstimator memory needed to run an experiment in megabytes
+     */
+    public void setMemoryEstimator(ToLongFunction<ExperimentalArguments> memoryEstimator) {
+        this.memoryEstimator = memoryEstimator;
+    }
+
+    /**
+     * Runs the experiments, returning once all have finished. Experiments already in the ledger are skipped.
+     *
+     * @param exps experiments to run
+     * @param ledgerFile file recording finished experiments, created if it does not exist
+     */
+    public void run(List<ExperimentalArguments> exps, File ledgerFile) throws Exception {
+        Set<String> finished = readLedger(ledgerFile);
+
+        List<ScheduledExperiment> pending = new ArrayList<>();
+        for (ExperimentalArguments exp : exps) {
+            String key = ledgerKey(exp);
+            if (finished.contains(key)) {
+                LOGGER.log(Level.FINE, key + " found in ledger, skipping.");
+                continue;
+            }
+            pending.add(new ScheduledExperiment(exp, key, costEstimator.applyAsDouble(exp),
+                    Math.max(1, Math.min(memoryLimitMB, memoryEstimator.applyAsLong(exp)))));
+            resamples.computeIfAbsent(resampleKey(exp), k -> new SharedResample()).numUsers++;
+        }
+        // longest first, grouping experiments on the same resample so it is held for as short a time as possible
+        pending.sort(Comparator.comparingDouble((ScheduledExperiment s) -> -s.cost)
+                .thenComparing(s -> resampleKey(s.exp)));
+
+        LOGGER.log(Level.INFO, pending.size() + " of " + exps.size() + " experiments to run on " + numThreads
+                + " threads with " + memoryLimitMB + "MB");
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        Semaphore threads = new Semaphore(numThreads);
+        Semaphore memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, memoryLimitMB));
+        try (PrintWriter ledger = new PrintWriter(new FileWriter(ledgerFile, true))) {
+            for (ScheduledExperiment s : pending) {
+                threads.acquire();
+                memory.acquire((int) s.memoryMB);
+                executor.execute(() -> {
+                    try {
+                        Experiments.setupAndRunExperiment(s.exp, () -> acquireResample(s.exp));
+                        synchronized (ledger) {
+                            ledger.println(s.key);
+                            ledger.flush();
+                        }
+                    } catch (Exception ex) {
+                        LOGGER.log(Level.SEVERE, "Experiment " + s.key + " failed.", ex);
+                    } finally {
+                        releaseResample(s.exp);
+                        memory.release((int) s.memoryMB);
+                        threads.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a copy of the resample for the experiment, loading the resample if this is its first use
+     */
+    private Instances[] acquireResample(ExperimentalArguments exp) throws Exception {
+        SharedResample resample;
+        synchronized (resamples) {
+            resample = resamples.get(resampleKey(exp));
+        }
+        synchronized (resample) {
+            if (resample.data == null) {
+                resample.data = DatasetLoading.sampleDataset(exp.dataReadLocation, exp.datasetName, exp.foldId);
+            }
+            return new Instances[]{new Instances(resample.data[0]), new Instances(resample.data[1])};
+        }
+    }
+
+    private void releaseResample(ExperimentalArguments exp) {
+        synchronized (resamples) {
+            String key = resampleKey(exp);
+            SharedResample resample = resamples.get(key);
+            if (--resample.numUsers == 0) {
+                resamples.remove(key);
+            }
+        }
+    }
+
+    private static Set<String> readLedger(File ledgerFile) throws IOException {
+        Set<String> finished = new HashSet<>();
+        if (ledgerFile.exists()) {
+            try (BufferedReader in = new BufferedReader(new FileReader(ledgerFile))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    finished.add(line.trim());
+                }
+            }
+        } else {
+            File parent = ledgerFile.getAbsoluteFile().getParentFile();
+            if (parent != null)
+                parent.mkdirs();
+        }
+        return finished;
+    }
+
+    private static String ledgerKey(ExperimentalArguments exp) {
+        return exp.classifierName + "," + exp.datasetName + "," + exp.foldId;
+    }
+
+    private static String resampleKey(ExperimentalArguments exp) {
+        return exp.dataReadLocation + "," + exp.datasetName + "," + exp.foldId;
+    }
+
+    /**
+     * @return the size of the train and test files of the experiments dataset in bytes, 0 if they cannot be found
+     */
+    private static long datasetBytes(ExperimentalArguments exp) {
+        String dir = StrUtils.asDirPath(exp.dataReadLocation) + exp.datasetName + "/" + exp.datasetName;
+        long bytes = 0;
+        for (String split : new String[]{"_TRAIN", "_TEST"}) {
+            File file = new File(dir + split + ".arff");
+            if (!file.exists())
+                file = new File(dir + split + ".ts");
+            bytes += file.length();
+        }
+        return bytes;
+    }
+
+    private static class ScheduledExperiment {
+        private final ExperimentalArguments exp;
+        private final String key;
+        private final double cost;
+        private final long memoryMB;
+
+        private ScheduledExperiment(ExperimentalArguments exp, String key, double cost, long memoryMB) {
+            this.exp = exp;
+            this.key = key;
+            this.cost = cost;
+            this.memoryMB = memoryMB;
+        }
+    }
+
+    private static class SharedResample {
+        private int numUsers;
+        private Instances[] data;
+    }
+}
@@ -32,6 +32,7 @@ import machine_learning.classifiers.ensembles.SaveableEnsemble;
 import machine_learning.classifiers.tuned.TunedRandomForest;
 import tsml.classifiers.*;
 import tsml.classifiers.distance_based.utils.strings.StrUtils;
+import tsml.classifiers.distance_based.utils.system.serial.ModelSerialiser;
 import tsml.classifiers.early_classification.AbstractEarlyClassifier;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
@@ -43,8 +44,7 @@ import java.io.*;
 import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -210,6 +210,14 @@ public class Experiments  {
      * 6) If we're good to go, runs the experiment.
      */
     public static ClassifierResults[] setupAndRunExperiment(ExperimentalArguments expSettings) throws Exception {
+        return setupAndRunExperiment(expSettings, () -> DatasetLoading.sampleDataset(expSettings.dataReadLocation, expSettings.datasetName, expSettings.foldId));
+    }
+
+    /**
+     * As setupAndRunExperiment(expSettings), but the resampled dataset, {train, test}, is provided by dataLoader. The
+     * loader is only called if the experiment is actually run, e.g. a loader shared between experiments via a cache.
+     */
+    public static ClassifierResults[] setupAndRunExperiment(ExperimentalArguments expSettings, Callable<Instances[]> dataLoader) throws Exception {
         if (beQuiet)
             LOGGER.setLevel(Level.SEVERE); // only print severe things
         else {
@@ -241,7 +249,7 @@ public class Experiments  {
         if (quitEarlyDueToResultsExistence(expSettings))
             return null;
 
-        Instances[] data = DatasetLoading.sampleDataset(expSettings.dataReadLocation, expSettings.datasetName, expSettings.foldId);
+        Instances[] data = dataLoader.call();
         setupClassifierExperimentalOptions(expSettings, expSettings.classifier, data[0]);
         ClassifierResults[] results = runExperiment(expSettings, data[0], data[1], expSettings.classifier);
         LOGGER.log(Level.INFO, "Experiment finished " + expSettings.toShortString() + ", Test Acc:" + results[1].getAcc());
@@ -425,6 +433,7 @@ public class Experiments  {
                 testResults.setBuildTime(testResults.getTimeUnit().convert(trainResults.getBuildTime(), trainResults.getTimeUnit()));
                 testResults.turnOnZeroTimingsErrors();
                 testResults.setMemory(trainResults.getMemory());
+                testResults.setMemoryLimit(trainResults.getMemoryLimit());
                 LOGGER.log(Level.FINE, "Testing complete");
 
                 writeResults(expSettings, testResults, expSettings.testFoldFileName, "test");
@@ -658,6 +667,8 @@ public class Experiments  {
             ((TrainTimeContractable) classifier).setTrainTimeLimit(TimeUnit.NANOSECONDS,expSettings.contractTrainTimeNanos);
         if(classifier instanceof TestTimeContractable && expSettings.contractTestTimeNanos >0)
             ((TestTimeContractable) classifier).setTestTimeLimit(TimeUnit.NANOSECONDS,expSettings.contractTestTimeNanos);
+        if(classifier instanceof MemoryContractable && expSettings.contractMemoryMB > 0)
+            ((MemoryContractable) classifier).setMemoryLimit(MemoryContractable.DataUnit.MEGABYTE, expSettings.contractMemoryMB);
 
         return parameterFileName;
     }
@@ -736,16 +747,12 @@ public class Experiments  {
     }
 
     public static void serialiseClassifier(ExperimentalArguments expSettings, Classifier classifier) throws FileNotFoundException, IOException {
-        String filename = expSettings.supportingFilePath + expSettings.classifierName + "_" + expSettings.datasetName + "_" + expSettings.foldId + ".ser";
+        ModelSerialiser serialiser = ModelSerialiser.forName(expSettings.serialisationFormat);
+        String filename = expSettings.supportingFilePath + expSettings.classifierName + "_" + expSettings.datasetName + "_" + expSettings.foldId + serialiser.getExtension();
 
         LOGGER.log(Level.FINE, "Attempting classifier serialisation, to " + filename);
 
-        FileOutputStream fos = new FileOutputStream(filename);
-        try (ObjectOutputStream out = new ObjectOutputStream(fos)) {
-            out.writeObject(classifier);
-            fos.close();
-            out.close();
-        }
+        serialiser.save(classifier, new File(filename));
 
         LOGGER.log(Level.FINE, "Classifier serialised successfully");
     }
@@ -994,23 +1001,13 @@ public class Experiments  {
      *       -  classifierGenerators = Arrays.asList(() -> {return setClassifierClassic("TSF",0)});
      */
     public static void setupAndRunMultipleExperimentsThreaded(ExperimentalArguments standardArgs, String[] classifierNames, List<Supplier<Classifier>> classifierGenerators, String[] datasetNames, int minFolds, int maxFolds, int numThreads) throws Exception{
-        int numCores = Runtime.getRuntime().availableProcessors();
-        if (numThreads == 0)
-            numThreads = numCores;
-        else if (numThreads < 0)
-            numThreads = Math.max(1, numCores-1);
+        ExperimentScheduler scheduler = new ExperimentScheduler(numThreads);
 
-        System.out.println("# cores ="+numCores);
-        System.out.println("# threads ="+numThreads);
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        System.out.println("# cores ="+Runtime.getRuntime().availableProcessors());
+        System.out.println("# threads ="+scheduler.getNumThreads());
 
         List<ExperimentalArguments> exps = standardArgs.generateExperiments(classifierNames, classifierGenerators, datasetNames, minFolds, maxFolds);
-        for (ExperimentalArguments exp : exps)
-            executor.execute(exp);
-
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-        }
+        scheduler.run(exps, new File(StrUtils.asDirPath(standardArgs.resultsWriteLocation) + ExperimentScheduler.LEDGER_FILE_NAME));
         System.out.println("Finished all threads");
     }
 
@@ -1120,9 +1117,17 @@ public class Experiments  {
         private String contractTestTimeString = null;
         public long contractTestTimeNanos = 0;
 
+        @Parameter(names={"-cm","--contractMemory"}, arity=1, description = "(long) Defines a memory limit in megabytes for the model built by the classifier if it implements the MemoryContractable interface. "
+                + "Defaults to no limit.")
+        public long contractMemoryMB = 0;
+
         @Parameter(names={"-sc","--serialiseClassifier"}, arity=1, description = "(boolean) If true, and the classifier is serialisable, the classifier will be serialised to the --supportingFilesPath after training, but before testing.")
         public boolean serialiseTrainedClassifier = false;
 
+        @Parameter(names={"-sf","--serialisationFormat"}, description = "(String) The format to serialise the trained classifier in if --serialiseClassifier is true. "
+                + "Either java, default Java serialisation to a .ser file, or kryo, faster and smaller Kryo serialisation to a .kryo file. Defaults to java.")
+        public String serialisationFormat = "java";
+
         @Parameter(names={"--force"}, arity=1, description = "(boolean) If true, the evaluation will occur even if what would be the resulting files already exists. The old files will be overwritten with the new evaluation results.")
         public boolean forceEvaluation = false;
 
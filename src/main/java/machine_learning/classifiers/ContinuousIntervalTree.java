@@ -24,6 +24,7 @@ import weka.core.Randomizable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.function.Function;
 
@@ -34,6 +35,10 @@ import static utilities.ArrayUtilities.sum;
  * A tree for time series interval forests.
  * Based on the time series tree (TST) implementation from the time series forest (TSF) paper.
  *
+ * Can be built from a weka Instances object or directly from a column-major double[attribute][instance] feature
+ * matrix and int[] class labels. Either way each attribute is sorted once at the root and the sorted index arrays are
+ * partitioned down the tree, so every threshold of an attribute is evaluated in a single pass over the node.
+ *
  * @author Matthew Middlehurst
  **/
 public class ContinuousIntervalTree extends AbstractClassifier implements Randomizable, Serializable {
@@ -100,27 +105,57 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
 
     @Override
     public void buildClassifier(Instances data) throws Exception {
-        numAttributes = data.numAttributes() - 1;
-        if (data.classIndex() != numAttributes) throw new Exception("Class attribute must be the last index.");
+        if (data.classIndex() != data.numAttributes() - 1)
+            throw new Exception("Class attribute must be the last index.");
+
+        double[][] features = new double[data.numAttributes() - 1][data.numInstances()];
+        int[] labels = new int[data.numInstances()];
+        for (int n = 0; n < data.numInstances(); n++) {
+            Instance inst = data.instance(n);
+            for (int i = 0; i < features.length; i++) {
+                features[i][n] = inst.value(i);
+            }
+            labels[n] = (int) inst.classValue();
+        }
+
+        buildClassifier(features, labels, data.numClasses());
+    }
+
+    /**
+     * Build the tree from a primitive feature matrix, without the need for a weka Instances object.
+     *
+     * @param features   column-major feature matrix, features[attribute][instance]
+     * @param labels     class value of each instance
+     * @param numClasses number of class values
+     */
+    public void buildClassifier(double[][] features, int[] labels, int numClasses) {
+        numAttributes = features.length;
+        int numInstances = labels.length;
 
         rand = new Random(seed);
 
         //thresholds for each attribute
-        double[][] thresholds = findThresholds(data);
+        double[][] thresholds = findThresholds(features);
+
+        //Sort each attribute once, the sorted orders are partitioned down the tree
+        int[][] sorted = new int[numAttributes][];
+        for (int i = 0; i < numAttributes; i++) {
+            sorted[i] = sortedIndices(features[i]);
+        }
 
         //Initial tree node setup
-        double[] dist = new double[data.numClasses()];
-        for (Instance inst : data) {
-            dist[(int) inst.classValue()]++;
+        double[] dist = new double[numClasses];
+        for (int label : labels) {
+            dist[label]++;
         }
         double rootEntropy = 0;
-        for (int i = 0; i < data.numClasses(); i++) {
-            double p = dist[i] / data.numInstances();
+        for (int i = 0; i < numClasses; i++) {
+            double p = dist[i] / numInstances;
             rootEntropy += p > 0 ? -(p * Math.log(p) / log2) : 0;
         }
 
         root = new TreeNode();
-        root.buildTree(data, thresholds, rootEntropy, dist, -1, false);
+        root.buildTree(features, labels, sorted, thresholds, rootEntropy, dist, -1, false);
     }
 
     @Override
@@ -167,11 +202,21 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
         return maxClass;
     }
 
+    public double classifyInstance(double[] features) {
+        double[] probs = distributionForInstance(features);
+        return tieBreak(probs);
+    }
+
     @Override
     public double[] distributionForInstance(Instance instance) throws Exception {
         return root.distributionForInstance(instance);
     }
 
+    //For a primitive feature vector with the same attributes as the features used in buildClassifier
+    public double[] distributionForInstance(double[] features) {
+        return root.distributionForInstance(features);
+    }
+
     //For interval forests, transforms the time series at the node level to save time on predictions (CIF)
     public double[] distributionForInstance(double[][] instance, Function<Interval, Double>[] functions,
                                             int[][] intervals, int[] attributes,
@@ -201,13 +246,12 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
         return root.distributionForInstance(instance, functions, intervals, attributes, dimensions, info);
     }
 
-    private double[][] findThresholds(Instances data) {
+    private double[][] findThresholds(double[][] features) {
         double[][] thresholds = new double[numAttributes][k];
         for (int i = 0; i < numAttributes; i++) {
             double min = Double.MAX_VALUE;
             double max = -99999999;
-            for (Instance inst : data) {
-                double v = inst.value(i);
+            for (double v : features[i]) {
                 if (v < min) {
                     min = v;
                 }
@@ -224,6 +268,42 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
         return thresholds;
     }
 
+    //Instance indices ordered by ascending attribute value, missing values last
+    private static int[] sortedIndices(double[] values) {
+        int[] idx = new int[values.length];
+        int numPresent = 0;
+        for (int n = 0; n < values.length; n++) {
+            if (!Double.isNaN(values[n])) idx[numPresent++] = n;
+        }
+        int numMissing = 0;
+        for (int n = 0; n < values.length; n++) {
+            if (Double.isNaN(values[n])) idx[numPresent + numMissing++] = n;
+        }
+
+        int[] temp = new int[numPresent];
+        mergeSort(idx, temp, values, 0, numPresent);
+        return idx;
+    }
+
+    private static void mergeSort(int[] idx, int[] temp, double[] values, int start, int end) {
+        if (end - start < 2) return;
+
+        int mid = (start + end) >>> 1;
+        mergeSort(idx, temp, values, start, mid);
+        mergeSort(idx, temp, values, mid, end);
+        if (values[idx[mid - 1]] <= values[idx[mid]]) return;
+
+        System.arraycopy(idx, start, temp, start, end - start);
+        int i = start, j = mid;
+        for (int n = start; n < end; n++) {
+            if (j >= end || (i < mid && values[temp[i]] <= values[temp[j]])) {
+                idx[n] = temp[i++];
+            } else {
+                idx[n] = temp[j++];
+            }
+        }
+    }
+
     //Returns the attribute used for each node and its information gain
     public ArrayList<Double>[] getTreeSplitsGain() {
         ArrayList<Double> splits = new ArrayList<>();
@@ -281,8 +361,20 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
         TreeNode() {
         }
 
-        void buildTree(Instances data, double[][] thresholds, double entropy, double[] distribution, int lastDepth,
-                       boolean leaf) {
+        /**
+         * Build the node and its children.
+         *
+         * @param features     column-major feature matrix for all instances
+         * @param labels       class value of all instances
+         * @param sorted       indices of the instances at this node sorted by each attribute, missing values last
+         * @param thresholds   candidate split thresholds for each attribute
+         * @param entropy      entropy of this node
+         * @param distribution class counts of this node
+         * @param lastDepth    depth of the parent node
+         * @param leaf         true if this node must be a leaf
+         */
+        void buildTree(double[][] features, int[] labels, int[][] sorted, double[][] thresholds, double entropy,
+                       double[] distribution, int lastDepth, boolean leaf) {
             double[][] bestEntropies = new double[0][0];
             depth = lastDepth + 1;
 
@@ -291,32 +383,66 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
                 if (d > 0) remainingClasses++;
             }
 
+            int numInstances = numAttributes > 0 ? sorted[0].length : 0;
+
             if (!leaf && remainingClasses > 1 && depth < maxDepth) {
+                double[][] entropies = new double[4][distribution.length];
+                entropies[0] = new double[4];
+
                 //Loop through all attributes each using k threshold values looking the best split for this node
                 for (int i = 0; i < numAttributes; i++) {
+                    double[] values = features[i];
+                    int[] order = sorted[i];
+
+                    //missing values are sorted to the end and fall in the same branch for every threshold
+                    int numPresent = numInstances;
+                    while (numPresent > 0 && Double.isNaN(values[order[numPresent - 1]])) numPresent--;
+                    double[] missingDist = new double[distribution.length];
+                    for (int n = numPresent; n < numInstances; n++) {
+                        missingDist[labels[order[n]]]++;
+                    }
+
+                    double[] leftDist = new double[distribution.length];
+                    int pos = 0;
+                    double lastThreshold = Double.NaN;
+
                     for (int n = 0; n < k; n++) {
+                        double threshold = thresholds[i][n];
+
+                        //sweep along the sorted values, restarting if thresholds are not ascending
+                        if (!(threshold >= lastThreshold)) {
+                            pos = 0;
+                            Arrays.fill(leftDist, 0);
+                        }
+                        while (pos < numPresent && values[order[pos]] <= threshold) {
+                            leftDist[labels[order[pos]]]++;
+                            pos++;
+                        }
+                        lastThreshold = threshold;
+
                         //gain stored in [0][0]
-                        double[][] entropies = entropyGain(data, i, thresholds[i][n], entropy);
+                        entropyGain(leftDist, distribution, missingDist, numInstances, entropy, entropies);
 
                         if (entropies[0][0] > bestGain || (!useMargin && entropies[0][0] == bestGain && entropies[0][0]
                                 > 0 && rand.nextBoolean())) {
                             bestSplit = i;
-                            bestThreshold = thresholds[i][n];
+                            bestThreshold = threshold;
                             bestGain = entropies[0][0];
                             bestMargin = -1;
-                            bestEntropies = entropies;
+                            bestEntropies = copy(entropies);
                         }
                         //Use margin gain if there is a tie
                         else if (useMargin && entropies[0][0] == bestGain && entropies[0][0] > 0) {
-                            double margin = findMargin(data, i, thresholds[i][n]);
-                            if (bestMargin == -1) bestMargin = findMargin(data, bestSplit, bestThreshold);
+                            double margin = findMargin(features[i], sorted[i], threshold);
+                            if (bestMargin == -1) bestMargin = findMargin(features[bestSplit], sorted[bestSplit],
+                                    bestThreshold);
 
                             //Select randomly if there is a tie again
                             if (margin > bestMargin || (margin == bestMargin && rand.nextBoolean())) {
                                 bestSplit = i;
-                                bestThreshold = thresholds[i][n];
+                                bestThreshold = threshold;
                                 bestMargin = margin;
-                                bestEntropies = entropies;
+                                bestEntropies = copy(entropies);
                             }
                         }
                     }
@@ -324,56 +450,56 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
             }
 
             if (bestSplit > -1) {
-                Instances[] split = splitData(data);
+                int[][][] split = splitData(features[bestSplit], sorted, numInstances);
                 children = new TreeNode[3];
 
                 //Left node
                 children[0] = new TreeNode();
-                if (split[0].isEmpty()) {
-                    children[0].buildTree(split[0], thresholds, entropy, distribution, depth, true);
+                if (split[0][0].length == 0) {
+                    children[0].buildTree(features, labels, split[0], thresholds, entropy, distribution, depth, true);
                 } else {
-                    children[0].buildTree(split[0], thresholds, bestEntropies[0][1], bestEntropies[1], depth, false);
+                    children[0].buildTree(features, labels, split[0], thresholds, bestEntropies[0][1],
+                            bestEntropies[1], depth, false);
                 }
 
                 //Right node
                 children[1] = new TreeNode();
-                if (split[1].isEmpty()) {
-                    children[1].buildTree(split[1], thresholds, entropy, distribution, depth, true);
+                if (split[1][0].length == 0) {
+                    children[1].buildTree(features, labels, split[1], thresholds, entropy, distribution, depth, true);
                 } else {
-                    children[1].buildTree(split[1], thresholds, bestEntropies[0][2], bestEntropies[2], depth, false);
+                    children[1].buildTree(features, labels, split[1], thresholds, bestEntropies[0][2],
+                            bestEntropies[2], depth, false);
                 }
 
                 //Missing value node
                 children[2] = new TreeNode();
-                if (split[2].isEmpty()) {
-                    children[2].buildTree(split[2], thresholds, entropy, distribution, depth, true);
+                if (split[2][0].length == 0) {
+                    children[2].buildTree(features, labels, split[2], thresholds, entropy, distribution, depth, true);
                 } else {
-                    children[2].buildTree(split[2], thresholds, bestEntropies[0][3], bestEntropies[3], depth, false);
+                    children[2].buildTree(features, labels, split[2], thresholds, bestEntropies[0][3],
+                            bestEntropies[3], depth, false);
                 }
             } else {
                 leafDistribution = normalise(distribution);
             }
         }
 
-        //Distribution, entropy for each split and information gain
-        double[][] entropyGain(Instances data, int att, double threshold, double parentEntropy) {
-            double[][] dists = new double[4][data.numClasses()];
-            for (Instance inst : data) {
-                if (Double.isNaN(inst.value(att))) {
-                    dists[3][(int) inst.classValue()]++;
-                } else if (inst.value(att) <= threshold) {
-                    dists[1][(int) inst.classValue()]++;
-                } else {
-                    dists[2][(int) inst.classValue()]++;
-                }
+        //Distribution, entropy for each split and information gain, written to dists
+        void entropyGain(double[] leftDist, double[] distribution, double[] missingDist, int numInstances,
+                         double parentEntropy, double[][] dists) {
+            for (int i = 0; i < distribution.length; i++) {
+                dists[1][i] = leftDist[i];
+                dists[2][i] = distribution[i] - leftDist[i] - missingDist[i];
+                dists[3][i] = missingDist[i];
             }
 
             double sumLeft = sum(dists[1]);
             double sumRight = sum(dists[2]);
             double sumMissing = sum(dists[3]);
 
-            double[] entropies = new double[4];
-            for (int i = 0; i < data.numClasses(); i++) {
+            double[] entropies = dists[0];
+            Arrays.fill(entropies, 0);
+            for (int i = 0; i < distribution.length; i++) {
                 double p1 = sumLeft > 0 ? dists[1][i] / sumLeft : 0;
                 entropies[1] += p1 > 0 ? -(p1 * Math.log(p1) / log2) : 0;
                 double p2 = sumRight > 0 ? dists[2][i] / sumRight : 0;
@@ -383,21 +509,25 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
             }
 
             entropies[0] = parentEntropy
-                    - sumLeft / data.numInstances() * entropies[1]
-                    - sumRight / data.numInstances() * entropies[2]
-                    - sumMissing / data.numInstances() * entropies[3];
-
-            dists[0] = entropies;
+                    - sumLeft / numInstances * entropies[1]
+                    - sumRight / numInstances * entropies[2]
+                    - sumMissing / numInstances * entropies[3];
+        }
 
-            return dists;
+        double[][] copy(double[][] dists) {
+            double[][] copy = new double[dists.length][];
+            for (int i = 0; i < dists.length; i++) {
+                copy[i] = dists[i].clone();
+            }
+            return copy;
         }
 
         //Margin gain for tie breaks
-        double findMargin(Instances data, int att, double threshold) {
+        double findMargin(double[] values, int[] order, double threshold) {
             double min = Double.MAX_VALUE;
 
-            for (Instance inst : data) {
-                double n = Math.abs(inst.value(att) - threshold);
+            for (int idx : order) {
+                double n = Math.abs(values[idx] - threshold);
                 if (n < min) {
                     min = n;
                 }
@@ -406,19 +536,31 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
             return min;
         }
 
-        Instances[] splitData(Instances data) {
-            Instances[] split = new Instances[3];
-            split[0] = new Instances(data, data.numInstances());
-            split[1] = new Instances(data, data.numInstances());
-            split[2] = new Instances(data, data.numInstances());
-
-            for (Instance inst : data) {
-                if (Double.isNaN(inst.value(bestSplit))) {
-                    split[2].add(inst);
-                } else if (inst.value(bestSplit) <= bestThreshold) {
-                    split[0].add(inst);
+        //Partitions the sorted orders of every attribute into left, right and missing, keeping each sorted
+        int[][][] splitData(double[] splitValues, int[][] sorted, int numInstances) {
+            byte[] branch = new byte[splitValues.length];
+            int[] counts = new int[3];
+            for (int idx : sorted[bestSplit]) {
+                if (Double.isNaN(splitValues[idx])) {
+                    branch[idx] = 2;
+                } else if (splitValues[idx] <= bestThreshold) {
+                    branch[idx] = 0;
                 } else {
-                    split[1].add(inst);
+                    branch[idx] = 1;
+                }
+                counts[branch[idx]]++;
+            }
+
+            int[][][] split = new int[3][numAttributes][];
+            for (int i = 0; i < numAttributes; i++) {
+                for (int b = 0; b < 3; b++) {
+                    split[b][i] = new int[counts[b]];
+                }
+
+                int[] pos = new int[3];
+                for (int idx : sorted[i]) {
+                    int b = branch[idx];
+                    split[b][i][pos[b]++] = idx;
                 }
             }
 
@@ -439,6 +581,20 @@ public class ContinuousIntervalTree extends AbstractClassifier implements Random
             }
         }
 
+        double[] distributionForInstance(double[] inst) {
+            if (bestSplit > -1) {
+                if (Double.isNaN(inst[bestSplit])) {
+                    return children[2].distributionForInstance(inst);
+                } else if (inst[bestSplit] <= bestThreshold) {
+                    return children[0].distributionForInstance(inst);
+                } else {
+                    return children[1].distributionForInstance(inst);
+                }
+            } else {
+                return leafDistribution;
+            }
+        }
+
         double[] distributionForInstance(double[][] inst, Function<Interval, Double>[] functions,
                                          int[][] intervals, int[] attributes, int[] dimensions) {
             if (bestSplit > -1) {
@@ -0,0 +1,89 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package machine_learning.classifiers;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.Random;
+
+public class ContinuousIntervalTreeTest {
+
+    // column-major copy of the attributes of data, features[attribute][instance]
+    private static double[][] features(Instances data) {
+        final double[][] features = new double[data.numAttributes() - 1][data.numInstances()];
+        for(int n = 0; n < data.numInstances(); n++) {
+            for(int a = 0; a < features.length; a++) {
+                features[a][n] = data.instance(n).value(a);
+            }
+        }
+        return features;
+    }
+
+    private static int[] labels(Instances data) {
+        final int[] labels = new int[data.numInstances()];
+        for(int n = 0; n < labels.length; n++) {
+            labels[n] = (int) data.instance(n).classValue();
+        }
+        return labels;
+    }
+
+    private static void assertSamePredictions(Instances train, Instances test) throws Exception {
+        for(int seed = 0; seed < 3; seed++) {
+            final ContinuousIntervalTree fromInstances = new ContinuousIntervalTree();
+            fromInstances.setSeed(seed);
+            fromInstances.buildClassifier(train);
+            final ContinuousIntervalTree fromMatrix = new ContinuousIntervalTree();
+            fromMatrix.setSeed(seed);
+            fromMatrix.buildClassifier(features(train), labels(train), train.numClasses());
+
+            for(Instance inst : test) {
+                final double[] expected = fromInstances.distributionForInstance(inst);
+                final double[] values = inst.toDoubleArray();
+                Assert.assertArrayEquals(expected, fromMatrix.distributionForInstance(inst), 0);
+                Assert.assertArrayEquals(expected, fromMatrix.distributionForInstance(values), 0);
+                Assert.assertArrayEquals(expected, fromInstances.distributionForInstance(values), 0);
+            }
+        }
+    }
+
+    @Test
+    public void primitiveAndInstancesPathsPredictTheSame() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        assertSamePredictions(data[0], data[1]);
+    }
+
+    @Test
+    public void primitiveAndInstancesPathsPredictTheSameWithMissingValues() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(1);
+        final Random random = new Random(0);
+        for(Instances split : data) {
+            for(Instance inst : split) {
+                for(int a = 0; a < split.numAttributes() - 1; a++) {
+                    if(random.nextInt(10) == 0) {
+                        inst.setValue(a, Utils.missingValue());
+                    }
+                }
+            }
+        }
+        assertSamePredictions(data[0], data[1]);
+    }
+}
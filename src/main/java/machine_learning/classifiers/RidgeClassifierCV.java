@@ -17,25 +17,33 @@
 package machine_learning.classifiers;
 
 import experiments.data.DatasetLoading;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.eigen.Eigen;
-import org.nd4j.linalg.factory.Nd4j;
 import tsml.classifiers.MultiThreadable;
 import tsml.transformers.ROCKET;
 import utilities.ClassifierTools;
+import utilities.numericalmethods.SymmetricEigenDecomposition;
 import weka.classifiers.AbstractClassifier;
 import weka.core.Instance;
 import weka.core.Instances;
 
-import java.util.Arrays;
-
-import static utilities.InstanceTools.resampleTrainAndTestInstances;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Ridge classification with cross-validation to select the alpha value.
  * <p>
  * Based on RidgeClassifierCV from sklearn.
  * https://scikit-learn.org/stable/modules/generated/sklearn.linear_model.RidgeClassifierCV.html
+ * <p>
+ * Pure Java implementation. When there are no more instances than attributes (i.e. ROCKET features) the efficient
+ * leave-one-out cross-validation is done on the eigendecomposition of the n x n gram matrix, otherwise on the
+ * eigendecomposition of the attribute covariance matrix so memory stays O(min(n, m)^2).
+ * <p>
+ * For large numbers of instances the classifier can also be built in batches using partialFit and finishFit. Only the
+ * sums for X^T X and X^T y are kept, and alpha is selected using generalised cross-validation, the rotation invariant
+ * form of leave-one-out, as the individual training instances are not available.
  *
  * @author Matthew Middlehurst
  */
@@ -45,14 +53,25 @@ public class RidgeClassifierCV extends AbstractClassifier implements MultiThread
     private final double[] alphas = {1.00000000e-03, 4.64158883e-03, 2.15443469e-02, 1.00000000e-01,
             4.64158883e-01, 2.15443469e+00, 1.00000000e+01, 4.64158883e+01, 2.15443469e+02, 1.00000000e+03};
 
-    private INDArray coefficients;
+    //coefficients[target][attribute]
+    private double[][] coefficients;
     private double[] intercept;
 
     private int numThreads = 1;
-    private static boolean printedNumThreadsError = false;
+    private transient ExecutorService ex;
 
     private double bestScore = -999999;
 
+    //streaming build sums, relative to the first instance seen to limit cancellation when centring
+    private transient long streamCount;
+    private transient int streamClasses;
+    private transient double[] streamShift;
+    private transient double[] streamSum;
+    private transient double[] streamLabelSum;
+    private transient double[] streamLabelSumSq;
+    private transient double[][] streamXtX;
+    private transient double[][] streamXtY;
+
     public double getBestScore() {
         return bestScore;
     }
@@ -67,143 +86,559 @@ public class RidgeClassifierCV extends AbstractClassifier implements MultiThread
         if (instances.classIndex() != instances.numAttributes() - 1)
             throw new Exception("Class attribute must be the final index.");
 
-        //Set to OMP_NUM_THREADS=1 for single thread run
-        //Check if OMP_NUM_THREADS matches numThreads
-        if (!printedNumThreadsError) {
-            String value = System.getenv("OMP_NUM_THREADS");
-            if (value == null && numThreads != Runtime.getRuntime().availableProcessors())
-                System.err.println("RidgeClassifierCV: OMP_NUM_THREADS environmental variable not set. Set it to the " +
-                        "number of threads you wish to use or set numThreads to " +
-                        "Runtime.getRuntime().availableProcessors(). Must be consistent with numThreads field." +
-                        System.lineSeparator() + "Example: OMP_NUM_THREADS=1 java tsml.jar");
-            if (value != null && Integer.parseInt(value) != numThreads)
-                System.err.println("RidgeClassifierCV: OMP_NUM_THREADS environmental variable and numThreads do not " +
-                        "match.");
-            printedNumThreadsError = true;
-        }
-
-        bestScore = -999999;
-
         double[][] data = new double[instances.numInstances()][instances.numAttributes() - 1];
+        int[] classVals = new int[data.length];
         for (int i = 0; i < data.length; i++) {
             Instance inst = instances.get(i);
             for (int n = 0; n < data[i].length; n++) {
                 data[i][n] = inst.value(n);
             }
+            classVals[i] = (int) inst.classValue();
         }
 
-        double[][] labels;
-        if (instances.numClasses() > 2) {
-            labels = new double[data.length][instances.numClasses()];
-            for (int i = 0; i < data.length; i++) {
-                Instance inst = instances.get(i);
-                for (int n = 0; n < labels[i].length; n++) {
-                    if (inst.classValue() == n) {
-                        labels[i][n] = 1;
-                    } else {
-                        labels[i][n] = -1;
-                    }
+        buildClassifier(data, classVals, instances.numClasses());
+    }
+
+    /**
+     * Build the classifier from a primitive data matrix. The data array is standardised in place.
+     *
+     * @param data       data[instance][attribute]
+     * @param classVals  class value of each instance
+     * @param numClasses number of class values
+     */
+    public void buildClassifier(double[][] data, int[] classVals, int numClasses) throws Exception {
+        bestScore = -999999;
+
+        double[][] labels = encodeLabels(classVals, numClasses);
+
+        double[] xOffset = new double[data[0].length];
+        double[] yOffset = new double[labels[0].length];
+        double[] xScale = new double[data[0].length];
+        preprocessData(data, labels, xOffset, yOffset, xScale);
+
+        if (numThreads > 1) ex = Executors.newFixedThreadPool(numThreads);
+        try {
+            double[][] bestCoef = data.length <= data[0].length ? solveGram(data, labels) : solveCovariance(data,
+                    labels);
+            setCoefficients(bestCoef, xOffset, yOffset, xScale);
+        } finally {
+            if (ex != null) {
+                ex.shutdown();
+                ex = null;
+            }
+        }
+    }
+
+    /**
+     * Add a batch of instances to a streaming build. Only O(m^2) sums are kept between calls, so the full training
+     * set never has to be held in memory. Call finishFit once all batches have been added.
+     *
+     * @param batch      batch[instance][attribute]
+     * @param classVals  class value of each instance in the batch
+     * @param numClasses number of class values, must be the same for every batch
+     */
+    public void partialFit(double[][] batch, int[] classVals, int numClasses) throws Exception {
+        if (batch.length == 0) return;
+
+        if (streamXtX == null) {
+            int m = batch[0].length;
+            int t = numClasses > 2 ? numClasses : 1;
+            streamCount = 0;
+            streamClasses = numClasses;
+            streamShift = batch[0].clone();
+            streamSum = new double[m];
+            streamLabelSum = new double[t];
+            streamLabelSumSq = new double[t];
+            streamXtX = new double[m][m];
+            streamXtY = new double[m][t];
+        } else if (numClasses != streamClasses || batch[0].length != streamShift.length) {
+            throw new Exception("RidgeClassifierCV: batch does not match the shape of previous batches.");
+        }
+
+        double[][] labels = encodeLabels(classVals, numClasses);
+        double[][] shifted = new double[batch.length][];
+        for (int i = 0; i < batch.length; i++) {
+            shifted[i] = new double[streamShift.length];
+            for (int n = 0; n < shifted[i].length; n++) {
+                shifted[i][n] = batch[i][n] - streamShift[n];
+                streamSum[n] += shifted[i][n];
+            }
+            for (int n = 0; n < labels[i].length; n++) {
+                streamLabelSum[n] += labels[i][n];
+                streamLabelSumSq[n] += labels[i][n] * labels[i][n];
+            }
+        }
+        streamCount += batch.length;
+
+        //upper triangle of X^T X, mirrored in finishFit
+        for (double[] row : shifted) {
+            for (int n = 0; n < row.length; n++) {
+                double v = row[n];
+                if (v == 0) continue;
+                double[] xtx = streamXtX[n];
+                for (int j = n; j < row.length; j++) {
+                    xtx[j] += v * row[j];
                 }
             }
-        } else {
-            labels = new double[data.length][1];
-            for (int i = 0; i < data.length; i++) {
-                if (instances.get(i).classValue() == 1) {
-                    labels[i][0] = 1;
-                } else {
-                    labels[i][0] = -1;
+        }
+
+        for (int i = 0; i < shifted.length; i++) {
+            for (int n = 0; n < shifted[i].length; n++) {
+                for (int j = 0; j < labels[i].length; j++) {
+                    streamXtY[n][j] += shifted[i][n] * labels[i][j];
                 }
             }
         }
+    }
 
-        double[] xOffset = new double[data[0].length];
-        double[] yOffset = new double[labels[0].length];
-        double[] xScale = new double[data[0].length];
-        preprocessData(data, labels, xOffset, yOffset, xScale);
+    /**
+     * Complete a streaming build started with partialFit, selecting alpha with generalised cross-validation.
+     */
+    public void finishFit() throws Exception {
+        if (streamXtX == null) throw new Exception("RidgeClassifierCV: finishFit called before partialFit.");
+
+        bestScore = -999999;
+
+        int m = streamShift.length;
+        int t = streamLabelSum.length;
+        double count = streamCount;
+
+        double[] mean = new double[m];
+        for (int n = 0; n < m; n++) {
+            mean[n] = streamSum[n] / count;
+        }
+        double[] yOffset = new double[t];
+        for (int n = 0; n < t; n++) {
+            yOffset[n] = streamLabelSum[n] / count;
+        }
+
+        //centred and scaled covariance
+        double[] xScale = new double[m];
+        for (int n = 0; n < m; n++) {
+            xScale[n] = Math.sqrt(Math.max(streamXtX[n][n] - count * mean[n] * mean[n], 0));
+            if (xScale[n] == 0) xScale[n] = 1;
+        }
 
-        //original uses SVD when no. instances > no. attributes
-        INDArray matrix = Nd4j.create(data);
-        INDArray q = matrix.mmul(matrix.transpose());
-        INDArray eigvals = Eigen.symmetricGeneralizedEigenvalues(q);
-        INDArray qt_y = q.transpose();
-        qt_y = qt_y.mmul(Nd4j.create(labels));
+        double[][] cov = new double[m][m];
+        for (int n = 0; n < m; n++) {
+            for (int j = n; j < m; j++) {
+                cov[n][j] = (streamXtX[n][j] - count * mean[n] * mean[j]) / (xScale[n] * xScale[j]);
+                cov[j][n] = cov[n][j];
+            }
+        }
 
-        INDArray bestCoef = null;
+        double[][] xty = new double[m][t];
+        for (int n = 0; n < m; n++) {
+            for (int j = 0; j < t; j++) {
+                xty[n][j] = (streamXtY[n][j] - count * mean[n] * yOffset[j]) / xScale[n];
+            }
+        }
+
+        double[] yty = new double[t];
+        for (int j = 0; j < t; j++) {
+            yty[j] = streamLabelSumSq[j] - count * yOffset[j] * yOffset[j];
+        }
+
+        SymmetricEigenDecomposition eig = new SymmetricEigenDecomposition(cov);
+        double[] eigvals = eig.getEigenvalues();
+        double[][] v = eig.getEigenvectors();
+        double[][] z = multiply(v, xty);
+
+        double[] bestW = null;
         for (double alpha : alphas) {
-            double[] w = new double[(int) eigvals.size(0)];
+            double[] w = new double[eigvals.length];
+            double dof = 1;
             for (int i = 0; i < w.length; i++) {
-                w[i] = 1. / (eigvals.getDouble(i) + alpha);
+                w[i] = 1. / (Math.max(eigvals[i], 0) + alpha);
+                dof += Math.max(eigvals[i], 0) * w[i];
             }
 
-            double[][] p = new double[1][data.length];
-            Arrays.fill(p[0], Math.sqrt(data.length) / data.length);
-            INDArray sw = Nd4j.create(p);
-            double[] k = sw.mmul(q).toDoubleVector();
-            for (int i = 0; i < k.length; i++) k[i] = Math.abs(k[i]);
-            int idx = argmax(k);
+            double denominator = 1 - dof / count;
+            denominator *= denominator;
+
+            double e = 0;
+            for (int j = 0; j < t; j++) {
+                double rss = yty[j];
+                for (int i = 0; i < w.length; i++) {
+                    double zw = z[i][j] * w[i];
+                    rss += -2 * z[i][j] * zw + Math.max(eigvals[i], 0) * zw * zw;
+                }
+                e += Math.max(rss, 0) / count / denominator;
+            }
+            e /= t;
+            e = 1 - e;
+
+            if (e > bestScore) {
+                bestScore = e;
+                bestW = w;
+            }
+        }
+
+        double[][] coef = coefficientsFromEigen(v, z, bestW);
+
+        double[] xOffset = new double[m];
+        for (int n = 0; n < m; n++) {
+            xOffset[n] = mean[n] + streamShift[n];
+        }
+        setCoefficients(coef, xOffset, yOffset, xScale);
+
+        streamShift = null;
+        streamSum = null;
+        streamLabelSum = null;
+        streamLabelSumSq = null;
+        streamXtX = null;
+        streamXtY = null;
+    }
+
+    @Override
+    public double classifyInstance(Instance inst) {
+        double[] x = new double[coefficients[0].length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = inst.value(i);
+        }
+        return classifyInstance(x);
+    }
+
+    public double classifyInstance(double[] inst) {
+        double[] x = new double[intercept.length];
+        for (int i = 0; i < x.length; i++) {
+            double sum = intercept[i];
+            double[] coef = coefficients[i];
+            for (int n = 0; n < coef.length; n++) {
+                sum += inst[n] * coef[n];
+            }
+            x[i] = sum;
+        }
+
+        return x.length > 1 ? argmax(x) : (x[0] > 0 ? 1 : 0);
+    }
+
+    /**
+     * Classifies a batch of instances with one matrix multiplication, split between threads when multi threading.
+     *
+     * @param data instances, one per row
+     * @return predicted class value of each instance
+     */
+    public double[] classifyInstances(double[][] data) throws Exception {
+        double[][] scores = multiplyByTranspose(data, coefficients);
+        double[] preds = new double[data.length];
+        for (int i = 0; i < data.length; i++) {
+            double[] x = scores[i];
+            for (int j = 0; j < x.length; j++) {
+                x[j] += intercept[j];
+            }
+            preds[i] = x.length > 1 ? argmax(x) : (x[0] > 0 ? 1 : 0);
+        }
+        return preds;
+    }
+
+    //Leave-one-out using the eigendecomposition of X X^T, returns the dual coefficients X^T c
+    private double[][] solveGram(double[][] data, double[][] labels) throws Exception {
+        int n = data.length;
+        double[][] gram = gramMatrix(data);
+
+        //eigenvectors as rows
+        SymmetricEigenDecomposition eig = new SymmetricEigenDecomposition(gram);
+        double[] eigvals = eig.getEigenvalues();
+        double[][] q = eig.getEigenvectors();
+        double[][] qtY = multiply(q, labels);
+
+        //the eigenvector closest to the constant intercept vector is not penalised
+        double[] k = new double[n];
+        double sw = Math.sqrt(n) / n;
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (double v : q[i]) {
+                sum += sw * v;
+            }
+            k[i] = Math.abs(sum);
+        }
+        int idx = argmax(k);
+
+        double[][] bestC = null;
+        for (double alpha : alphas) {
+            double[] w = new double[n];
+            for (int i = 0; i < n; i++) {
+                w[i] = 1. / (eigvals[i] + alpha);
+            }
             w[idx] = 0;
 
-            double[][] d = new double[w.length][(int) qt_y.size(1)];
-            for (int i = 0; i < d.length; i++) {
-                for (int n = 0; n < d[i].length; n++) {
-                    d[i][n] = w[i] * qt_y.getDouble(i, n);
+            double[][] c = coefficientsFromEigen(q, qtY, w);
+
+            double[] gInverseDiag = new double[n];
+            for (int j = 0; j < n; j++) {
+                if (w[j] == 0) continue;
+                double[] qj = q[j];
+                for (int i = 0; i < n; i++) {
+                    gInverseDiag[i] += w[j] * qj[i] * qj[i];
                 }
             }
 
-            INDArray coefs = q.mmul(Nd4j.create(d));
+            double e = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < c[i].length; j++) {
+                    double looe = c[i][j] / gInverseDiag[i];
+                    e += looe * looe;
+                }
+            }
+            e /= n * c[0].length;
+            e = 1 - e;
 
-            double[] sums = new double[w.length];
-            for (int i = 0; i < w.length; i++) {
-                for (int n = 0; n < q.size(0); n++) {
-                    sums[n] += w[i] * Math.pow(q.getDouble(n, i), 2);
+            if (e > bestScore) {
+                bestScore = e;
+                bestC = c;
+            }
+        }
+
+        //primal coefficients X^T c
+        int m = data[0].length;
+        int t = bestC[0].length;
+        double[][] coef = new double[m][t];
+        for (int i = 0; i < n; i++) {
+            double[] row = data[i];
+            for (int a = 0; a < m; a++) {
+                for (int j = 0; j < t; j++) {
+                    coef[a][j] += row[a] * bestC[i][j];
                 }
             }
+        }
+        return coef;
+    }
+
+    //Leave-one-out using the eigendecomposition of X^T X, used when there are more instances than attributes
+    private double[][] solveCovariance(double[][] data, double[][] labels) throws Exception {
+        int n = data.length;
+        int m = data[0].length;
+        int t = labels[0].length;
+
+        double[][] cov = gramMatrix(transpose(data));
+
+        //eigenvectors as rows
+        SymmetricEigenDecomposition eig = new SymmetricEigenDecomposition(cov);
+        double[] eigvals = eig.getEigenvalues();
+        double[][] v = eig.getEigenvectors();
+
+        //data projected onto the eigenvectors
+        double[][] u = multiplyByTranspose(data, v);
+        double[][] z = multiplyTransposed(u, labels);
+
+        double[][] bestZw = null;
+        for (double alpha : alphas) {
+            double[] w = new double[m];
+            for (int i = 0; i < m; i++) {
+                w[i] = 1. / (Math.max(eigvals[i], 0) + alpha);
+            }
 
             double e = 0;
-            for (int i = 0; i < sums.length; i++) {
-                for (int n = 0; n < coefs.size(1); n++) {
-                    e += Math.pow(coefs.getDouble(i, n) / sums[i], 2);
+            for (int i = 0; i < n; i++) {
+                //the unpenalised intercept adds 1/n to every leverage
+                double h = 1. / n;
+                double[] pred = new double[t];
+                for (int a = 0; a < m; a++) {
+                    double uw = u[i][a] * w[a];
+                    h += uw * u[i][a];
+                    for (int j = 0; j < t; j++) {
+                        pred[j] += uw * z[a][j];
+                    }
+                }
+
+                for (int j = 0; j < t; j++) {
+                    double looe = (labels[i][j] - pred[j]) / (1 - h);
+                    e += looe * looe;
                 }
             }
-            e /= sums.length * coefs.size(1);
+            e /= n * t;
             e = 1 - e;
 
             if (e > bestScore) {
                 bestScore = e;
-                bestCoef = coefs;
+                bestZw = new double[m][t];
+                for (int a = 0; a < m; a++) {
+                    for (int j = 0; j < t; j++) {
+                        bestZw[a][j] = z[a][j] * w[a];
+                    }
+                }
             }
         }
 
-        INDArray a = bestCoef.transpose().mmul(matrix);
-        double[][] b = a.size(0) == 1 ? new double[][]{a.toDoubleVector()} : a.toDoubleMatrix();
-        for (int i = 0; i < b.length; i++) {
-            for (int n = 0; n < b[i].length; n++) {
-                b[i][n] /= xScale[n];
+        return multiplyTransposed(v, bestZw);
+    }
+
+    //v^T diag(w) z, for eigenvectors as the rows of v
+    private double[][] coefficientsFromEigen(double[][] v, double[][] z, double[] w) {
+        double[][] zw = new double[z.length][z[0].length];
+        for (int i = 0; i < z.length; i++) {
+            for (int j = 0; j < z[i].length; j++) {
+                zw[i][j] = z[i][j] * w[i];
             }
         }
+        return multiplyTransposed(v, zw);
+    }
 
-        double[][] c = new double[][]{xOffset};
-        coefficients = Nd4j.create(b).transpose();
-        INDArray d = Nd4j.create(c).mmul(coefficients);
-        intercept = new double[yOffset.length];
-        for (int i = 0; i < intercept.length; i++) {
-            intercept[i] = yOffset[i] - d.getDouble(i);
+    private void setCoefficients(double[][] coef, double[] xOffset, double[] yOffset, double[] xScale) {
+        int m = coef.length;
+        int t = coef[0].length;
+        coefficients = new double[t][m];
+        intercept = new double[t];
+        for (int j = 0; j < t; j++) {
+            double d = 0;
+            for (int a = 0; a < m; a++) {
+                coefficients[j][a] = coef[a][j] / xScale[a];
+                d += xOffset[a] * coefficients[j][a];
+            }
+            intercept[j] = yOffset[j] - d;
         }
     }
 
-    @Override
-    public double classifyInstance(Instance inst) {
-        double[][] data = new double[1][(int) coefficients.size(0)];
-        for (int i = 0; i < data[0].length; i++) {
-            data[0][i] = inst.value(i);
+    private double[][] encodeLabels(int[] classVals, int numClasses) {
+        double[][] labels;
+        if (numClasses > 2) {
+            labels = new double[classVals.length][numClasses];
+            for (int i = 0; i < classVals.length; i++) {
+                for (int n = 0; n < labels[i].length; n++) {
+                    if (classVals[i] == n) {
+                        labels[i][n] = 1;
+                    } else {
+                        labels[i][n] = -1;
+                    }
+                }
+            }
+        } else {
+            labels = new double[classVals.length][1];
+            for (int i = 0; i < classVals.length; i++) {
+                if (classVals[i] == 1) {
+                    labels[i][0] = 1;
+                } else {
+                    labels[i][0] = -1;
+                }
+            }
         }
+        return labels;
+    }
 
-        double[] x = Nd4j.create(data).mmul(coefficients).toDoubleVector();
-        for (int i = 0; i < intercept.length; i++) {
-            x[i] += intercept[i];
+    //a b^T, the rows of a are split between threads when multi threading
+    private double[][] multiplyByTranspose(double[][] a, double[][] b) throws Exception {
+        double[][] result = new double[a.length][b.length];
+
+        runRows(a.length, i -> {
+            double[] row = a[i];
+            for (int j = 0; j < b.length; j++) {
+                result[i][j] = dot(row, b[j]);
+            }
+        });
+        return result;
+    }
+
+    //a a^T, the rows of a are split between threads when multi threading
+    private double[][] gramMatrix(double[][] a) throws Exception {
+        int n = a.length;
+        double[][] gram = new double[n][n];
+
+        runRows(n, i -> {
+            double[] row = a[i];
+            for (int j = 0; j <= i; j++) {
+                gram[i][j] = dot(row, a[j]);
+            }
+        });
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                gram[j][i] = gram[i][j];
+            }
         }
+        return gram;
+    }
 
-        return x.length > 1 ? argmax(x) : (x[0] > 0 ? 1 : 0);
+    //a b
+    private double[][] multiply(double[][] a, double[][] b) throws Exception {
+        int inner = b.length;
+        int cols = b[0].length;
+        double[][] result = new double[a.length][cols];
+
+        runRows(a.length, i -> {
+            double[] row = a[i];
+            double[] out = result[i];
+            for (int k = 0; k < inner; k++) {
+                double v = row[k];
+                if (v == 0) continue;
+                double[] bk = b[k];
+                for (int j = 0; j < cols; j++) {
+                    out[j] += v * bk[j];
+                }
+            }
+        });
+        return result;
+    }
+
+    //a^T b
+    private double[][] multiplyTransposed(double[][] a, double[][] b) {
+        double[][] result = new double[a[0].length][b[0].length];
+        for (int k = 0; k < a.length; k++) {
+            double[] ak = a[k];
+            double[] bk = b[k];
+            for (int i = 0; i < ak.length; i++) {
+                double v = ak[i];
+                if (v == 0) continue;
+                for (int j = 0; j < bk.length; j++) {
+                    result[i][j] += v * bk[j];
+                }
+            }
+        }
+        return result;
+    }
+
+    private double[][] transpose(double[][] a) {
+        double[][] t = new double[a[0].length][a.length];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < a[i].length; j++) {
+                t[j][i] = a[i][j];
+            }
+        }
+        return t;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    private interface RowTask {
+        void run(int row);
+    }
+
+    //Runs the task for each row, interleaving the rows between threads when multi threading
+    private void runRows(int numRows, RowTask task) throws Exception {
+        if (ex == null || numRows < numThreads) {
+            for (int i = 0; i < numRows; i++) {
+                task.run(i);
+            }
+            return;
+        }
+
+        ArrayList<Future<Void>> futures = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            final int start = t;
+            futures.add(ex.submit((Callable<Void>) () -> {
+                for (int i = start; i < numRows; i += numThreads) {
+                    task.run(i);
+                }
+                return null;
+            }));
+        }
+
+        for (Future<Void> f : futures) {
+            f.get();
+        }
     }
 
     private void preprocessData(double[][] data, double[][] labels, double[] xOffset, double[] yOffset,
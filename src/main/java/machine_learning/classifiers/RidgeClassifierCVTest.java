@@ -0,0 +1,214 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package machine_learning.classifiers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.matrix.Matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RidgeClassifierCVTest {
+
+    private static final double[] ALPHAS = {1.00000000e-03, 4.64158883e-03, 2.15443469e-02, 1.00000000e-01,
+            4.64158883e-01, 2.15443469e+00, 1.00000000e+01, 4.64158883e+01, 2.15443469e+02, 1.00000000e+03};
+
+    // gaussian noise with the class value added to the first few attributes
+    private static double[][] randomData(int numInstances, int numAttributes, int[] classVals, int numClasses,
+                                         Random random) {
+        final double[][] data = new double[numInstances][numAttributes];
+        for(int i = 0; i < numInstances; i++) {
+            classVals[i] = random.nextInt(numClasses);
+            for(int a = 0; a < numAttributes; a++) {
+                data[i][a] = random.nextGaussian() + (a < 3 ? classVals[i] : 0);
+            }
+        }
+        return data;
+    }
+
+    private static double[][] copy(double[][] data) {
+        final double[][] copy = new double[data.length][];
+        for(int i = 0; i < data.length; i++) {
+            copy[i] = data[i].clone();
+        }
+        return copy;
+    }
+
+    private static double[][] encode(int[] classVals, int numClasses) {
+        final int t = numClasses > 2 ? numClasses : 1;
+        final double[][] labels = new double[classVals.length][t];
+        for(int i = 0; i < classVals.length; i++) {
+            for(int j = 0; j < t; j++) {
+                labels[i][j] = (t == 1 ? classVals[i] == 1 : classVals[i] == j) ? 1 : -1;
+            }
+        }
+        return labels;
+    }
+
+    // ridge regression with an unpenalised intercept fit directly on the given rows, returns
+    // {intercept, weights...} for each target
+    private static double[][] fitRidge(double[][] x, double[][] y, boolean[] include, double alpha) {
+        final int m = x[0].length;
+        final int t = y[0].length;
+        final double[] xMean = new double[m];
+        final double[] yMean = new double[t];
+        int count = 0;
+        for(int i = 0; i < x.length; i++) {
+            if(!include[i]) continue;
+            count++;
+            for(int a = 0; a < m; a++) xMean[a] += x[i][a];
+            for(int j = 0; j < t; j++) yMean[j] += y[i][j];
+        }
+        for(int a = 0; a < m; a++) xMean[a] /= count;
+        for(int j = 0; j < t; j++) yMean[j] /= count;
+
+        final double[][] xtx = new double[m][m];
+        final double[][] xty = new double[m][t];
+        for(int i = 0; i < x.length; i++) {
+            if(!include[i]) continue;
+            for(int a = 0; a < m; a++) {
+                final double va = x[i][a] - xMean[a];
+                for(int b = 0; b < m; b++) xtx[a][b] += va * (x[i][b] - xMean[b]);
+                for(int j = 0; j < t; j++) xty[a][j] += va * (y[i][j] - yMean[j]);
+            }
+        }
+        for(int a = 0; a < m; a++) xtx[a][a] += alpha;
+        final double[][] w = new Matrix(xtx).solve(new Matrix(xty)).getArray();
+
+        final double[][] model = new double[t][m + 1];
+        for(int j = 0; j < t; j++) {
+            model[j][0] = yMean[j];
+            for(int a = 0; a < m; a++) {
+                model[j][a + 1] = w[a][j];
+                model[j][0] -= xMean[a] * w[a][j];
+            }
+        }
+        return model;
+    }
+
+    private static double[] predict(double[][] model, double[] x) {
+        final double[] scores = new double[model.length];
+        for(int j = 0; j < model.length; j++) {
+            scores[j] = model[j][0];
+            for(int a = 0; a < x.length; a++) scores[j] += model[j][a + 1] * x[a];
+        }
+        return scores;
+    }
+
+    private static double predictClass(double[] scores) {
+        if(scores.length == 1) return scores[0] > 0 ? 1 : 0;
+        int best = 0;
+        for(int j = 1; j < scores.length; j++) {
+            if(scores[j] > scores[best]) best = j;
+        }
+        return best;
+    }
+
+    // attributes centred and scaled to unit norm over the training set, as RidgeClassifierCV does
+    private static double[][] standardise(double[][] train, double[][] data) {
+        final int m = train[0].length;
+        final double[] mean = new double[m];
+        final double[] scale = new double[m];
+        for(double[] row : train) {
+            for(int a = 0; a < m; a++) mean[a] += row[a] / train.length;
+        }
+        for(double[] row : train) {
+            for(int a = 0; a < m; a++) scale[a] += (row[a] - mean[a]) * (row[a] - mean[a]);
+        }
+        final double[][] result = new double[data.length][m];
+        for(int i = 0; i < data.length; i++) {
+            for(int a = 0; a < m; a++) result[i][a] = (data[i][a] - mean[a]) / Math.sqrt(scale[a]);
+        }
+        return result;
+    }
+
+    // selects alpha by refitting without each instance in turn, then predicts the test data with the full fit
+    private static void assertMatchesExhaustiveLOOCV(int numInstances, int numAttributes, int numClasses, int seed)
+            throws Exception {
+        final Random random = new Random(seed);
+        final int[] trainClassVals = new int[numInstances];
+        final double[][] train = randomData(numInstances, numAttributes, trainClassVals, numClasses, random);
+        final int[] testClassVals = new int[50];
+        final double[][] test = randomData(50, numAttributes, testClassVals, numClasses, random);
+
+        final double[][] x = standardise(train, train);
+        final double[][] y = encode(trainClassVals, numClasses);
+        final boolean[] include = new boolean[numInstances];
+        double bestScore = -999999;
+        double bestAlpha = 0;
+        for(double alpha : ALPHAS) {
+            double e = 0;
+            for(int i = 0; i < numInstances; i++) {
+                Arrays.fill(include, true);
+                include[i] = false;
+                final double[] scores = predict(fitRidge(x, y, include, alpha), x[i]);
+                for(int j = 0; j < scores.length; j++) {
+                    e += (y[i][j] - scores[j]) * (y[i][j] - scores[j]);
+                }
+            }
+            e = 1 - e / (numInstances * y[0].length);
+            if(e > bestScore) {
+                bestScore = e;
+                bestAlpha = alpha;
+            }
+        }
+        Arrays.fill(include, true);
+        final double[][] model = fitRidge(x, y, include, bestAlpha);
+        final double[][] standardisedTest = standardise(train, test);
+
+        final RidgeClassifierCV ridge = new RidgeClassifierCV();
+        ridge.buildClassifier(copy(train), trainClassVals, numClasses);
+        Assert.assertEquals(bestScore, ridge.getBestScore(), 1e-8);
+        for(int i = 0; i < test.length; i++) {
+            Assert.assertEquals(predictClass(predict(model, standardisedTest[i])), ridge.classifyInstance(test[i]),
+                    0);
+        }
+    }
+
+    @Test
+    public void gramSolverMatchesExhaustiveLOOCV() throws Exception {
+        assertMatchesExhaustiveLOOCV(20, 40, 2, 0);
+        assertMatchesExhaustiveLOOCV(20, 40, 3, 1);
+    }
+
+    @Test
+    public void covarianceSolverMatchesExhaustiveLOOCV() throws Exception {
+        assertMatchesExhaustiveLOOCV(60, 8, 2, 2);
+        assertMatchesExhaustiveLOOCV(60, 8, 3, 3);
+    }
+
+    @Test
+    public void multiThreadedBuildPredictsTheSame() throws Exception {
+        final Random random = new Random(4);
+        final int[] classVals = new int[100];
+        final double[][] train = randomData(100, 150, classVals, 3, random);
+        final double[][] test = randomData(50, 150, new int[50], 3, random);
+
+        final RidgeClassifierCV single = new RidgeClassifierCV();
+        single.buildClassifier(copy(train), classVals, 3);
+        final RidgeClassifierCV multi = new RidgeClassifierCV();
+        multi.enableMultiThreading(4);
+        multi.buildClassifier(copy(train), classVals, 3);
+
+        Assert.assertEquals(single.getBestScore(), multi.getBestScore(), 0);
+        Assert.assertArrayEquals(single.classifyInstances(test), multi.classifyInstances(test), 0);
+        for(int i = 0; i < test.length; i++) {
+            Assert.assertEquals(single.classifyInstance(test[i]), multi.classifyInstance(test[i]), 0);
+        }
+    }
+}
@@ -226,6 +226,10 @@ public abstract class AbstractEnsemble extends EnhancedAbstractClassifier implem
             return classifier instanceof TrainTimeContractable;
         }
         
+        public boolean isMemoryContractable() {
+            return classifier instanceof MemoryContractable;
+        }
+        
         public boolean isTestTimeContractable() {
             return classifier instanceof TestTimeContractable;
         }
@@ -24,6 +24,10 @@
  * We have cloned the code from RotationForest rather than extend it because core changes occur in most methods, and
  * to decouple from Weka, which has removed random forest from the latest releases.
  *
+ * The principal components of each group are found on primitive arrays rather than with the weka PrincipalComponents
+ * filter, and each tree projects a series with one RotationMatrix. If multithreading is enabled trees are built in
+ * batches of numThreads, each tree's bag and seed drawn before the batch starts so the forest is the same for any
+ * number of threads.
  */
 
 
@@ -32,25 +36,27 @@ package machine_learning.classifiers.ensembles;
 import evaluation.evaluators.CrossValidationEvaluator;
 import tsml.classifiers.Checkpointable;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainTimeContractable;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.*;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Normalize;
-import weka.filters.unsupervised.attribute.PrincipalComponents;
 import weka.filters.unsupervised.attribute.RemoveUseless;
-import weka.filters.unsupervised.instance.RemovePercentage;
 
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 
 public class EnhancedRotationForest extends EnhancedAbstractClassifier
-        implements TrainTimeContractable, Checkpointable, Serializable{
+        implements TrainTimeContractable, Checkpointable, MultiThreadable, Serializable{
 
     Classifier baseClassifier;
     ArrayList<Classifier> classifiers;
@@ -64,15 +70,12 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
     protected int removedPercentage = 50;
     /** The attributes of each group */
     protected double probPerClass =0.5;
-    ArrayList< int[][]> groups;
-    /** The type of projection filter */
-    protected Filter projectionFilter;
-    /** The projection filters */
-    protected ArrayList<Filter []> projectionFilters;
+    /** The proportion of the variance of each group kept by the principal components */
+    protected double varianceCovered = 1.0;
+    /** The rotation of each tree */
+    protected ArrayList<RotationMatrix> rotations;
     /** Headers of the transformed dataset */
     protected ArrayList<Instances> headers;
-    /** Headers of the reduced datasets */
-    protected ArrayList<Instances []> reducedHeaders;
     /** Filter that remove useless attributes */
     protected RemoveUseless removeUseless = null;
     /** Filter that normalized the attributes */
@@ -101,6 +104,9 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
     private int seriesLength;
     private int numInstances;
 
+    private int numThreads = 1;
+    private boolean multiThread = false;
+    private transient ExecutorService ex;
 
 
     /**
@@ -110,22 +116,11 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         super(CAN_ESTIMATE_OWN_PERFORMANCE);
         trainEstimateMethod = TrainEstimateMethod.OOB;
         baseClassifier = new weka.classifiers.trees.J48();
-        projectionFilter = defaultFilter();
         checkpointPath=null;
         timeUsed=0;
 
     }
 
-    /**
-     * Default projection method.
-     */
-    protected Filter defaultFilter() {
-        PrincipalComponents filter = new PrincipalComponents();
-        //filter.setNormalize(false);
-        filter.setVarianceCovered(1.0);
-        return filter;
-    }
-
     public boolean isContracted(){ return trainTimeContract;}
     /**
      * Sets the minimum size of a group.
@@ -222,39 +217,24 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
 
 
     /**
-     * Sets the filter used to project the data.
+     * Sets the proportion of the variance of each group kept by the principal components.
      *
-     * @param projectionFilter the filter.
+     * @param varianceCovered the proportion, components are kept in order of variance until it is reached.
      */
-    public void setProjectionFilter( Filter projectionFilter ) {
-
-        this.projectionFilter = projectionFilter;
-    }
+    public void setVarianceCovered( double varianceCovered ) throws IllegalArgumentException {
 
-    /**
-     * Gets the filter used to project the data.
-     *
-     * @return 		the filter.
-     */
-    public Filter getProjectionFilter() {
-        return projectionFilter;
+        if( varianceCovered <= 0 || varianceCovered > 1 )
+            throw new IllegalArgumentException( "VarianceCovered has to be >0 and <=1." );
+        this.varianceCovered = varianceCovered;
     }
 
     /**
-     * Gets the filter specification string, which contains the class name of
-     * the filter and any options to the filter
+     * Gets the proportion of the variance of each group kept by the principal components.
      *
-     * @return the filter string.
+     * @return 		the proportion.
      */
-    /* Taken from FilteredClassifier */
-    protected String getProjectionFilterSpec() {
-
-        Filter c = getProjectionFilter();
-        if (c instanceof OptionHandler) {
-            return c.getClass().getName() + " "
-                    + Utils.joinOptions(((OptionHandler)c).getOptions());
-        }
-        return c.getClass().getName();
+    public double getVarianceCovered() {
+        return varianceCovered;
     }
 
     @Override
@@ -291,12 +271,10 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
             if (baseClassifier == null) {
                 throw new Exception("A base classifier has not been specified!");
             }//Initialise:
-            groups=new ArrayList<>();
             // These arrays keep the information of the transformed data set
             headers =new ArrayList<>();
             //Store the PCA transforms
-            projectionFilters =new ArrayList<>();
-            reducedHeaders = new ArrayList<>();
+            rotations =new ArrayList<>();
             classifiers=new ArrayList<>();
             numTrees = 0;
         }
@@ -318,20 +296,14 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
             trainDistributions = new double[numInstances][numClasses];
             oobCounts = new int[numInstances];
         }
-        //Can do this just once if not bagging
-        Instances [] instancesOfClass;
-        instancesOfClass = new Instances[numClasses];
-        for( int i = 0; i < instancesOfClass.length; i++ ) {
-            instancesOfClass[i] = new Instances( data, 0 );
-        }
-        for(Instance instance:data) {
-            if( instance.classIsMissing() )
-                continue; //Ignore instances with missing class value
-            else{
-                int c = (int)instance.classValue();
-                instancesOfClass[c].add( instance );
-            }
+        //The filtered data as primitive rows, indexed as the attributes of data
+        double[][] rows = new double[numInstances][];
+        double[] weights = new double[numInstances];
+        for(int i=0;i<numInstances;i++){
+            rows[i] = data.instance(i).toDoubleArray();
+            weights[i] = data.instance(i).weight();
         }
+        Instances header = new Instances(data, 0);
         if(isContracted()&& getEstimateOwnPerformance() && !bagging){ //Split the contract to train and estimate time
             //Split in half if OOB
             switch(trainEstimateMethod){
@@ -348,58 +320,55 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
                     break;
             }
         }
-        long singleTreeTime;
         long currentTime=System.nanoTime()-startTime;
+        //Each thread keeps one builder, so the PCA buffers are reused by all the trees it builds
+        ThreadLocal<RotationMatrix.Builder> builders =
+                ThreadLocal.withInitial(() -> new RotationMatrix.Builder(varianceCovered));
         do{//Always build at least one tree
-//Formed bag data set if bagging
-            singleTreeTime=System.nanoTime();
-            Instances trainD=data;
-            boolean[] inBag=null;
-            if(bagging){
-                //Resample data with replacement
- //               long t1 = System.nanoTime();
-                inBag = new boolean[data.numInstances()];
-                trainD = data.resampleWithWeights(rand, inBag);
-                instancesOfClass = new Instances[numClasses];
-                for( int i = 0; i < instancesOfClass.length; i++ ) {
-                    instancesOfClass[i] = new Instances( trainD, 0 );
-                }
-                for(Instance instance:trainD) {
-                    int c = (int)instance.classValue();
-                    instancesOfClass[c].add( instance );
+            //Draw the bag and seed of each tree in the batch here, so the trees do not depend on the number of threads
+            int batchSize = multiThread ? Math.max(1, Math.min(numThreads, minNumTrees - classifiers.size())) : 1;
+            TreeBuild[] batch = new TreeBuild[batchSize];
+            for(int b=0;b<batchSize;b++){
+                int[] bag=null;
+                boolean[] inBag=null;
+                if(bagging){
+                    //Resample data with replacement
+                    bag = new int[numInstances];
+                    inBag = new boolean[numInstances];
+                    for(int k=0;k<numInstances;k++){
+                        bag[k] = rand.nextInt(numInstances);
+                        inBag[bag[k]] = true;
+                    }
                 }
+                batch[b] = new TreeBuild(numTrees+b, bag, inBag, rand.nextLong());
+            }
+            printLineDebug(" Building trees "+(numTrees+1)+" to "+(numTrees+batchSize)+" with "+seriesLength+" attributes current total build time = "+currentTime/1000000000+" seconds contract time = "+trainContractTimeNanos/1000000000);
+            if(multiThread){
+                ArrayList<Future<TreeBuild>> futures = new ArrayList<>(batchSize);
+                for(TreeBuild tree:batch)
+                    futures.add(getExecutor().submit(() -> buildTree(rows, weights, header, tree, builders.get())));
+                for(Future<TreeBuild> f:futures)
+                    f.get();
+            }
+            else{
+                buildTree(rows, weights, header, batch[0], builders.get());
             }
-//TO DO: Alter the num attributes or cases for very big data
-            int numAtts=trainD.numAttributes()-1;
-            printLineDebug(" Building tree "+(numTrees+1)+" with "+numAtts+" attributes current total build time = "+currentTime/1000000000+" seconds contract time = "+trainContractTimeNanos/1000000000);
-            Classifier c= buildTree(trainD,instancesOfClass,numTrees, numAtts);
-            classifiers.add(c);
-            if(bagging) { // Get bagged distributions
-                for(int i=0;i<data.numInstances();i++){
-                    if(!inBag[i]){
-                        oobCounts[i]++;
-                        try {
-                            Instance convertedInstance = convertInstance(data.instance(i), numTrees);
-                            double[] dist = c.distributionForInstance(convertedInstance);
-                            for(int j=0;j<dist.length;j++)
-                                trainDistributions[i][j]+=dist[j];
-                        }catch(Exception e){
-                            System.out.println(" Exception thrown for instance "+i+" using the following tree = "+c);
-//                            System.out.println(" Train data =  "+trainData+ " original data   = "+data);
-                            System.out.println(" Instance it crashes on ="+data.instance(i));
-                            for(int k=i+1;k<data.numInstances();k++){
-                                System.out.println(" instance k "+k+" prediction = "+c.classifyInstance(data.instance(k)));
-                            }
-                            System.exit(1);
+            //Add the trees in order, summing the bagged distributions
+            for(TreeBuild tree:batch){
+                rotations.add(tree.rotation);
+                headers.add(tree.header);
+                classifiers.add(tree.classifier);
+                if(bagging) {
+                    for(int i=0;i<numInstances;i++){
+                        if(!tree.inBag[i]){
+                            oobCounts[i]++;
+                            for(int j=0;j<numClasses;j++)
+                                trainDistributions[i][j]+=tree.oobDistributions[i][j];
                         }
                     }
                 }
+                numTrees++;
             }
-            numTrees++;
-            //If the first one takes too long, adjust length parameter
-            //Not used yet
-            long endTreeTime=System.nanoTime();
-            singleTreeTime=endTreeTime-singleTreeTime;
             currentTime=System.nanoTime()-startTime;
         }while((!trainTimeContract || withinTrainContract(currentTime)) && classifiers.size() < minNumTrees);
         //Build the classifier
@@ -524,105 +493,109 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         }
     }
 
-    /** Build a rotation forest tree, possibly not using all the attributes to speed things up
+    /** Build a rotation forest tree, the rotation of the groups of attributes and the base classifier on the rotated
+     * bag. If bagging also finds the distributions of the out of bag instances.
      *
-     * @param data
-     * @param instancesOfClass
-     * @param i
-     * @param numAtts
+     * @param rows the filtered train data
+     * @param weights the weight of each row
+     * @param header header of the filtered train data
+     * @param tree the tree to build, holding its bag and seed
+     * @param builder finds the principal components of each group
      * @throws Exception
      */
-    public Classifier buildTree(Instances data, Instances [] instancesOfClass, int i, int numAtts) throws Exception{
-        int[][] g=generateGroupFromSize(data, rand,numAtts);
-        Filter[] projection=Filter.makeCopies(projectionFilter, g.length );
-        projectionFilters.add(projection);
-        groups.add(g);
-        Instances[] reducedHeaders = new Instances[ g.length ];
-        this.reducedHeaders.add(reducedHeaders);
-
-        ArrayList<Attribute> transformedAttributes = new ArrayList<>( data.numAttributes() );
-        // Construction of the dataset for each group of attributes
-        for( int j = 0; j < g.length; j++ ) {
-            ArrayList<Attribute> fv = new ArrayList<>( g[j].length + 1 );
-            for( int k = 0; k < g[j].length; k++ ) {
-                String newName = data.attribute( g[j][k] ).name()
-                        + "_" + k;
-                fv.add(data.attribute( g[j][k] ).copy(newName) );
+    private TreeBuild buildTree(double[][] rows, double[] weights, Instances header, TreeBuild tree,
+                                RotationMatrix.Builder builder) throws Exception{
+        Random random = new Random(tree.seed);
+        int classIndex = header.classIndex();
+        int n = tree.bag == null ? rows.length : tree.bag.length;
+        double[][] bagRows = new double[n][];
+        double[] bagWeights = new double[n];
+        for(int k=0;k<n;k++){
+            int r = tree.bag == null ? k : tree.bag[k];
+            bagRows[k] = rows[r];
+            bagWeights[k] = weights[r];
+        }
+        //Bag rows of each class, ignoring instances with missing class value
+        int[] classCounts = new int[numClasses];
+        for(double[] row:bagRows)
+            if(!Utils.isMissingValue(row[classIndex]))
+                classCounts[(int)row[classIndex]]++;
+        int[][] rowsOfClass = new int[numClasses][];
+        for(int c=0;c<numClasses;c++)
+            rowsOfClass[c] = new int[classCounts[c]];
+        classCounts = new int[numClasses];
+        for(int k=0;k<n;k++){
+            if(!Utils.isMissingValue(bagRows[k][classIndex])){
+                int c = (int)bagRows[k][classIndex];
+                rowsOfClass[c][classCounts[c]++] = k;
             }
-            fv.add( (Attribute)data.classAttribute( ).copy() );
-            Instances dataSubSet = new Instances( "rotated-" + i + "-" + j + "-",
-                    fv, 0);
-            dataSubSet.setClassIndex( dataSubSet.numAttributes() - 1 );
-            // Select instances for the dataset
-            reducedHeaders[j] = new Instances( dataSubSet, 0 );
-            boolean [] selectedClasses = selectClasses( instancesOfClass.length,
-                    rand );
+        }
+
+        int[][] g=generateGroupFromSize(header, random, header.numAttributes()-1);
+        int[] sample = new int[n];
+        for( int j = 0; j < g.length; j++ ) {
+            // Select instances for the group
+            boolean [] selectedClasses = selectClasses( numClasses, random );
+            int numSelected = 0;
             for( int c = 0; c < selectedClasses.length; c++ ) {
                 if( !selectedClasses[c] )
                     continue;
-                for(Instance instance:instancesOfClass[c]) {
-                    Instance newInstance = new DenseInstance(dataSubSet.numAttributes());
-                    newInstance.setDataset( dataSubSet );
-                    for( int k = 0; k < g[j].length; k++ ) {
-                        newInstance.setValue( k, instance.value( g[j][k] ) );
-                    }
-                    newInstance.setClassValue( instance.classValue( ) );
-                    dataSubSet.add( newInstance );
-                }
+                System.arraycopy(rowsOfClass[c], 0, sample, numSelected, rowsOfClass[c].length);
+                numSelected += rowsOfClass[c].length;
             }
-            dataSubSet.randomize(rand);
-            // Remove a percentage of the instances
-            Instances originalDataSubSet = dataSubSet;
-            dataSubSet.randomize(rand);
-            RemovePercentage rp = new RemovePercentage();
-            rp.setPercentage(100-removedPercentage );
-            rp.setInputFormat( dataSubSet );
-            dataSubSet = Filter.useFilter( dataSubSet, rp );
-            if( dataSubSet.numInstances() < 2 ) {
-                dataSubSet = originalDataSubSet;
+            // Remove a percentage of the instances, as RemovePercentage with 100 - removedPercentage after shuffling
+            permute(sample, numSelected, random);
+            int numKept = numSelected - (int)Math.round(numSelected * (100 - removedPercentage) / 100.0);
+            if( numKept < 2 ) {
+                numKept = numSelected;
             }
             // Project the data
-
-            projection[j].setInputFormat( dataSubSet );
-            Instances projectedData = null;
-            do {
-                try {
-                    projectedData = Filter.useFilter( dataSubSet,
-                            projection[j] );
-                } catch ( Exception e ) {
-                    // The data could not be projected, we add some random instances
-                    addRandomInstances( dataSubSet, 10, rand );
-                }
-            } while( projectedData == null );
-
-            // Include the projected attributes in the attributes of the
-            // transformed dataset
-            for( int a = 0; a < projectedData.numAttributes() - 1; a++ ) {
-                String newName = projectedData.attribute(a).name() + "_" + j;
-                transformedAttributes.add( projectedData.attribute(a).copy(newName));
-            }
+            builder.addGroup(g[j], bagRows, sample, numKept);
         }
-
-        transformedAttributes.add((Attribute)data.classAttribute().copy() );
-        Instances buildClas = new Instances( "rotated-" + i + "-",
-                transformedAttributes, 0 );
+        RotationMatrix rotation = builder.build();
+
+        ArrayList<Attribute> transformedAttributes = new ArrayList<>( rotation.numOutputs() + 1 );
+        for( int a = 0; a < rotation.numOutputs(); a++ )
+            transformedAttributes.add( new Attribute( "rotated_" + a ) );
+        transformedAttributes.add((Attribute)header.classAttribute().copy() );
+        Instances buildClas = new Instances( "rotated-" + tree.treeNum + "-",
+                transformedAttributes, n );
         buildClas.setClassIndex( buildClas.numAttributes() - 1 );
-        headers.add(new Instances( buildClas, 0 ));
 
         // Project all the training data
-        for(Instance instance:data) {
-            Instance newInstance = convertInstance( instance, i );
-            buildClas.add( newInstance );
-        }
+        for( int k = 0; k < n; k++ )
+            buildClas.add( convertInstance( bagRows[k], classIndex, bagWeights[k], rotation, buildClas ) );
         Classifier c= AbstractClassifier.makeCopy(baseClassifier);
         // Build the base classifier
         if (c instanceof Randomizable) {
-            ((Randomizable) c).setSeed(rand.nextInt());
+            ((Randomizable) c).setSeed(random.nextInt());
         }
         c.buildClassifier( buildClas );
-        return c;
+
+        tree.rotation = rotation;
+        tree.header = new Instances( buildClas, 0 );
+        tree.classifier = c;
+        if(tree.inBag != null) { // Get bagged distributions
+            tree.oobDistributions = new double[rows.length][];
+            for(int i=0;i<rows.length;i++){
+                if(!tree.inBag[i])
+                    tree.oobDistributions[i] = c.distributionForInstance(
+                            convertInstance( rows[i], classIndex, weights[i], rotation, tree.header ) );
+            }
+        }
+        return tree;
     }
 
+    private ExecutorService getExecutor() {
+        //Daemon threads, so an unused pool does not keep the JVM alive
+        if (ex == null)
+            ex = Executors.newFixedThreadPool(numThreads, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+        return ex;
+    }
 
     private void copyParameters(EnhancedRotationForest other) {
         this.minNumTrees = other.minNumTrees;
@@ -635,36 +608,13 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         this.minGroup = other.minGroup;
         this.maxGroup = other.maxGroup;
         this.removedPercentage=other.removedPercentage;
-
+        this.varianceCovered = other.varianceCovered;
+        this.numThreads = other.numThreads;
+        this.multiThread = other.multiThread;
 
     }
 
 
-    /**
-     * Adds random instances to the dataset.
-     *
-     * @param dataset the dataset
-     * @param numInstances the number of instances
-     * @param random a random number generator
-     */
-    protected void addRandomInstances( Instances dataset, int numInstances,
-                                       Random random ) {
-        int n = dataset.numAttributes();
-        double [] v = new double[ n ];
-        for( int i = 0; i < numInstances; i++ ) {
-            for( int j = 0; j < n; j++ ) {
-                Attribute att = dataset.attribute( j );
-                if( att.isNumeric() ) {
-                    v[ j ] = random.nextDouble();
-                }
-                else if ( att.isNominal() ) {
-                    v[ j ] = random.nextInt( att.numValues() );
-                }
-            }
-            dataset.add( new DenseInstance( 1, v ) );
-        }
-    }
-
     /**
      * Checks minGroup and maxGroup
      *
@@ -787,8 +737,19 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
      * @param random  the random number generator.
      */
     protected void permute( int v[], Random random ) {
+        permute( v, v.length, random );
+    }
 
-        for(int i = v.length - 1; i > 0; i-- ) {
+    /**
+     * permutes the first length elements of a given array.
+     *
+     * @param v       the array to permute
+     * @param length  the number of elements to permute.
+     * @param random  the random number generator.
+     */
+    protected void permute( int v[], int length, Random random ) {
+
+        for(int i = length - 1; i > 0; i-- ) {
             int j = random.nextInt( i + 1 );
             if( i != j ) {
                 int tmp = v[i];
@@ -802,11 +763,12 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
      * prints the groups.
      */
     protected void printGroups( ) {
-        for( int i = 0; i < groups.size(); i++ ) {
-            for( int j = 0; j < groups.get(i).length; j++ ) {
+        for( int i = 0; i < rotations.size(); i++ ) {
+            int[][] groups = rotations.get(i).getGroups();
+            for( int j = 0; j < groups.length; j++ ) {
                 System.err.print( "( " );
-                for( int k = 0; k < groups.get(i)[j].length; k++ ) {
-                    System.err.print(groups.get(i)[j][k] );
+                for( int k = 0; k < groups[j].length; k++ ) {
+                    System.err.print(groups[j][k] );
                     System.err.print( " " );
                 }
                 System.err.print( ") " );
@@ -825,31 +787,27 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
      */
     protected Instance convertInstance( Instance instance, int i )
             throws Exception {
-        Instance newInstance = new DenseInstance( headers.get(i).numAttributes( ) );
-        newInstance.setWeight(instance.weight());
-        newInstance.setDataset(headers.get(i));
-        int currentAttribute = 0;
-
-        // Project the data for each group
-        int[][] g=groups.get(i);
-        for( int j = 0; j < g.length; j++ ) {
-            Instance auxInstance = new DenseInstance(g[j].length + 1 );
-            int k;
-            for( k = 0; k < g[j].length; k++ ) {
-                auxInstance.setValue( k, instance.value( g[j][k] ) );
-            }
-            auxInstance.setValue( k, instance.classValue( ) );
-            auxInstance.setDataset(reducedHeaders.get(i)[ j ] );
-            Filter[] projection=projectionFilters.get(i);
-            projection[j].input( auxInstance );
-            auxInstance = projection[j].output( );
-            projection[j].batchFinished();
-            for( int a = 0; a < auxInstance.numAttributes() - 1; a++ ) {
-                newInstance.setValue( currentAttribute++, auxInstance.value( a ) );
-            }
-        }
+        return convertInstance( instance.toDoubleArray(), instance.classIndex(), instance.weight(),
+                rotations.get(i), headers.get(i) );
+    }
 
-        newInstance.setClassValue( instance.classValue() );
+    /**
+     * Rotates a filtered series, indexed as the attributes of the filtered train data.
+     *
+     * @param x the series, including the class value
+     * @param classIndex the index of the class value in x
+     * @param weight the weight of the instance
+     * @param rotation the rotation of the tree
+     * @param header the header of the transformed data for the tree
+     * @return the transformed instance
+     */
+    private static Instance convertInstance( double[] x, int classIndex, double weight, RotationMatrix rotation,
+                                             Instances header ) {
+        double[] values = new double[ rotation.numOutputs() + 1 ];
+        rotation.project( x, values );
+        values[ values.length - 1 ] = x[ classIndex ];
+        Instance newInstance = new DenseInstance( weight, values );
+        newInstance.setDataset( header );
         return newInstance;
     }
 
@@ -872,17 +830,27 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         instance =normalize.output();
         normalize.batchFinished();
 
-        double [] sums = new double [instance.numClasses()], newProbs;
-
-        for (int i = 0; i < classifiers.size(); i++) {
-            Instance convertedInstance = convertInstance(instance, i);
-            if (instance.classAttribute().isNumeric() == true) {
-                sums[0] += classifiers.get(i).classifyInstance(convertedInstance);
-            } else {
-                newProbs = classifiers.get(i).distributionForInstance(convertedInstance);
-                for (int j = 0; j < newProbs.length; j++)
-                    sums[j] += newProbs[j];
+        double[] x = instance.toDoubleArray();
+        int classIndex = instance.classIndex();
+        double weight = instance.weight();
+        boolean numeric = instance.classAttribute().isNumeric();
+        double [] sums;
+        if (multiThread) {
+            //Each thread sums the predictions of a block of trees
+            int blockSize = (classifiers.size() + numThreads - 1) / numThreads;
+            ArrayList<Future<double[]>> futures = new ArrayList<>(numThreads);
+            for (int start = 0; start < classifiers.size(); start += blockSize) {
+                int from = start, to = Math.min(start + blockSize, classifiers.size());
+                futures.add(getExecutor().submit(() -> sumPredictions(x, classIndex, weight, numeric, from, to)));
+            }
+            sums = new double [instance.numClasses()];
+            for (Future<double[]> f : futures) {
+                double[] blockSums = f.get();
+                for (int j = 0; j < sums.length; j++)
+                    sums[j] += blockSums[j];
             }
+        } else {
+            sums = sumPredictions(x, classIndex, weight, numeric, 0, classifiers.size());
         }
         if (instance.classAttribute().isNumeric() == true) {
             sums[0] /= (double)classifiers.size();
@@ -895,6 +863,22 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         }
     }
 
+    private double[] sumPredictions(double[] x, int classIndex, double weight, boolean numeric, int from, int to)
+            throws Exception {
+        double [] sums = new double [numClasses], newProbs;
+        for (int i = from; i < to; i++) {
+            Instance convertedInstance = convertInstance(x, classIndex, weight, rotations.get(i), headers.get(i));
+            if (numeric) {
+                sums[0] += classifiers.get(i).classifyInstance(convertedInstance);
+            } else {
+                newProbs = classifiers.get(i).distributionForInstance(convertedInstance);
+                for (int j = 0; j < newProbs.length; j++)
+                    sums[j] += newProbs[j];
+            }
+        }
+        return sums;
+    }
+
     @Override
     public String getParameters() {
         String result="RemovePercent,"+this.getRemovedPercentage()+",NumFeatures,"+this.getMaxGroup();
@@ -925,11 +909,9 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
         minGroup = saved.minGroup;
         maxGroup = saved.maxGroup;
         removedPercentage = saved.removedPercentage;
-        groups = saved.groups;
-        projectionFilter = saved.projectionFilter;
-        projectionFilters = saved.projectionFilters;
+        varianceCovered = saved.varianceCovered;
+        rotations = saved.rotations;
         headers = saved.headers;
-        reducedHeaders = saved.reducedHeaders;
         removeUseless = saved.removeUseless;
         normalize = saved.normalize;
 
@@ -967,5 +949,43 @@ public class EnhancedRotationForest extends EnhancedAbstractClassifier
     public long getTrainContractTimeNanos() { return trainContractTimeNanos; }
 
     public void setBagging(boolean b){ bagging =b;}
+
+    /**
+     * Enables multi threading with a set number of threads to use.
+     *
+     * @param numThreads number of threads available for multi threading
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads) {
+        if (numThreads > 1) {
+            this.numThreads = numThreads;
+            multiThread = true;
+        } else {
+            this.numThreads = 1;
+            multiThread = false;
+        }
+    }
+
+    /**
+     * Holds the bag and seed of a tree to build, and the tree once built.
+     */
+    private static class TreeBuild {
+        private final int treeNum;
+        private final int[] bag;
+        private final boolean[] inBag;
+        private final long seed;
+
+        private RotationMatrix rotation;
+        private Instances header;
+        private Classifier classifier;
+        private double[][] oobDistributions;
+
+        private TreeBuild(int treeNum, int[] bag, boolean[] inBag, long seed) {
+            this.treeNum = treeNum;
+            this.bag = bag;
+            this.inBag = inBag;
+            this.seed = seed;
+        }
+    }
 }
 
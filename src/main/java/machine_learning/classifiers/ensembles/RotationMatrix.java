@@ -0,0 +1,224 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package machine_learning.classifiers.ensembles;
+
+import utilities.numericalmethods.SymmetricEigenDecomposition;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The rotation of one rotation forest tree. Each group of attributes is projected onto its principal components, as
+ * found by weka.filters.unsupervised.attribute.PrincipalComponents with standardised attributes, and the projections
+ * of all groups are concatenated.
+ * <p>
+ * The matrix is block diagonal, so only the weights within each group are stored. The standardisation of each
+ * attribute is folded into the weights and an offset, so projecting a series is one pass over the matrix.
+ */
+public class RotationMatrix implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int[][] groups;
+
+    //output o is the sum over k of weights[o][k] * x[inputs[o][k]], minus offsets[o]
+    private final int[][] inputs;
+    private final double[][] weights;
+    private final double[] offsets;
+
+    private RotationMatrix(int[][] groups, int[][] inputs, double[][] weights, double[] offsets) {
+        this.groups = groups;
+        this.inputs = inputs;
+        this.weights = weights;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @return the attributes of each group
+     */
+    public int[][] getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return number of attributes after projection
+     */
+    public int numOutputs() {
+        return offsets.length;
+    }
+
+    /**
+     * @param x series, indexed as the attributes of the groups
+     * @param out projected series written to out[0] to out[numOutputs() - 1]
+     */
+    public void project(double[] x, double[] out) {
+        for (int o = 0; o < offsets.length; o++) {
+            int[] in = inputs[o];
+            double[] w = weights[o];
+            double sum = -offsets[o];
+            for (int k = 0; k < in.length; k++)
+                sum += w[k] * x[in[k]];
+            out[o] = sum;
+        }
+    }
+
+    /**
+     * Finds the principal components of each group in turn. The covariance and eigendecomposition buffers are kept
+     * between groups and matrices, so one builder should be used for all the trees built by a thread.
+     * Not thread safe.
+     */
+    public static class Builder {
+
+        private final double varianceCovered;
+
+        private final ArrayList<int[]> groups = new ArrayList<>();
+        private final ArrayList<int[]> inputs = new ArrayList<>();
+        private final ArrayList<double[]> weights = new ArrayList<>();
+        private final ArrayList<Double> offsets = new ArrayList<>();
+
+        private double[] means = new double[0];
+        private double[] stdDevs = new double[0];
+        private double[] values = new double[0];
+        private int[] varying = new int[0];
+        private double[][] correlation = new double[0][0];
+        private final SymmetricEigenDecomposition eigen = new SymmetricEigenDecomposition(0);
+
+        /**
+         * @param varianceCovered proportion of the variance of each group kept, components are added in order of
+         *                        variance until it is reached
+         */
+        public Builder(double varianceCovered) {
+            this.varianceCovered = varianceCovered;
+        }
+
+        /**
+         * Adds the principal components of a group of attributes, found from a sample of the data. Attributes
+         * constant in the sample cannot be rotated and are passed through unchanged.
+         *
+         * @param group attributes of the group
+         * @param data series, one per row
+         * @param rows rows of data in the sample
+         * @param numRows number of rows in the sample, from rows[0]
+         */
+        public void addGroup(int[] group, double[][] data, int[] rows, int numRows) {
+            int g = group.length;
+            if (means.length < g) {
+                means = new double[g];
+                stdDevs = new double[g];
+                values = new double[g];
+                varying = new int[g];
+                correlation = new double[g][g];
+            }
+
+            int p = 0;
+            for (int a = 0; a < g; a++) {
+                int att = group[a];
+                double sum = 0;
+                for (int r = 0; r < numRows; r++)
+                    sum += data[rows[r]][att];
+                double mean = sum / numRows;
+                double sumSq = 0;
+                for (int r = 0; r < numRows; r++) {
+                    double diff = data[rows[r]][att] - mean;
+                    sumSq += diff * diff;
+                }
+                double variance = numRows > 1 ? sumSq / (numRows - 1) : 0;
+                if (variance > 0) {
+                    means[p] = mean;
+                    stdDevs[p] = Math.sqrt(variance);
+                    varying[p++] = att;
+                }
+            }
+            groups.add(group);
+
+            if (p > 0) {
+                //correlation matrix of the varying attributes, lower triangle only
+                for (int a = 0; a < p; a++)
+                    for (int b = 0; b <= a; b++)
+                        correlation[a][b] = 0;
+                for (int r = 0; r < numRows; r++) {
+                    double[] x = data[rows[r]];
+                    for (int a = 0; a < p; a++) {
+                        double z = (x[varying[a]] - means[a]) / stdDevs[a];
+                        values[a] = z;
+                        double[] row = correlation[a];
+                        for (int b = 0; b <= a; b++)
+                            row[b] += z * values[b];
+                    }
+                }
+                for (int a = 0; a < p; a++)
+                    for (int b = 0; b <= a; b++)
+                        correlation[a][b] /= numRows - 1;
+
+                eigen.decompose(correlation, p);
+                double[] eigenvalues = eigen.getEigenvalues();
+                double[][] eigenvectors = eigen.getEigenvectors();
+                double total = 0;
+                for (int c = 0; c < p; c++)
+                    total += eigenvalues[c];
+
+                int[] in = new int[p];
+                System.arraycopy(varying, 0, in, 0, p);
+                double cumulative = 0;
+                for (int c = p - 1; c >= 0; c--) {
+                    double[] w = new double[p];
+                    double offset = 0;
+                    for (int a = 0; a < p; a++) {
+                        w[a] = eigenvectors[c][a] / stdDevs[a];
+                        offset += w[a] * means[a];
+                    }
+                    inputs.add(in);
+                    weights.add(w);
+                    offsets.add(offset);
+
+                    cumulative += eigenvalues[c];
+                    if (cumulative / total >= varianceCovered)
+                        break;
+                }
+            }
+
+            if (p < g) {
+                int k = 0;
+                for (int a = 0; a < g; a++) {
+                    if (k < p && varying[k] == group[a]) {
+                        k++;
+                        continue;
+                    }
+                    inputs.add(new int[]{group[a]});
+                    weights.add(new double[]{1});
+                    offsets.add(0.0);
+                }
+            }
+        }
+
+        /**
+         * @return the rotation of the groups added since the last call, the builder is then empty
+         */
+        public RotationMatrix build() {
+            double[] o = new double[offsets.size()];
+            for (int i = 0; i < o.length; i++)
+                o[i] = offsets.get(i);
+            RotationMatrix matrix = new RotationMatrix(groups.toArray(new int[0][]), inputs.toArray(new int[0][]),
+                    weights.toArray(new double[0][]), o);
+            groups.clear();
+            inputs.clear();
+            weights.clear();
+            offsets.clear();
+            return matrix;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package machine_learning.classifiers.ensembles;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RotationMatrixTest {
+
+    private static double[][] data(int numRows, int numAtts, Random random) {
+        final double[][] data = new double[numRows][numAtts];
+        for(int i = 0; i < numRows; i++) {
+            final double shared = random.nextGaussian();
+            for(int j = 0; j < numAtts; j++) {
+                data[i][j] = j + shared * (j % 3) + random.nextGaussian();
+            }
+        }
+        return data;
+    }
+
+    private static int[] allRows(int numRows) {
+        final int[] rows = new int[numRows];
+        for(int i = 0; i < numRows; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    @Test
+    public void componentsAreUncorrelatedAndKeepTheVariance() {
+        final Random random = new Random(0);
+        final double[][] data = data(50, 7, random);
+        final int[] group = {1, 2, 4, 5};
+        final RotationMatrix.Builder builder = new RotationMatrix.Builder(1.0);
+        builder.addGroup(group, data, allRows(data.length), data.length);
+        final RotationMatrix rotation = builder.build();
+        Assert.assertEquals(group.length, rotation.numOutputs());
+
+        final double[][] projected = new double[data.length][rotation.numOutputs()];
+        for(int i = 0; i < data.length; i++) {
+            rotation.project(data[i], projected[i]);
+        }
+        double total = 0;
+        double previous = Double.MAX_VALUE;
+        for(int a = 0; a < group.length; a++) {
+            for(int b = 0; b <= a; b++) {
+                double sum = 0;
+                for(double[] row : projected) {
+                    sum += row[a] * row[b];
+                }
+                sum /= data.length - 1;
+                if(a == b) {
+                    // components have zero mean and decreasing variance
+                    Assert.assertTrue(sum <= previous + 1e-9);
+                    previous = sum;
+                    total += sum;
+                } else {
+                    Assert.assertEquals(0, sum, 1e-9);
+                }
+            }
+        }
+        // the standardised attributes each have variance 1
+        Assert.assertEquals(group.length, total, 1e-9);
+    }
+
+    @Test
+    public void constantAttributesArePassedThrough() {
+        final Random random = new Random(1);
+        final double[][] data = data(20, 4, random);
+        for(double[] row : data) {
+            row[2] = 3;
+        }
+        final RotationMatrix.Builder builder = new RotationMatrix.Builder(1.0);
+        builder.addGroup(new int[] {0, 2, 3}, data, allRows(data.length), data.length);
+        final RotationMatrix rotation = builder.build();
+        Assert.assertEquals(3, rotation.numOutputs());
+        final double[] out = new double[3];
+        rotation.project(data[5], out);
+        Assert.assertEquals(3, out[2], 0);
+    }
+
+    @Test
+    public void reusedBuilderMatchesNewBuilder() {
+        final Random random = new Random(2);
+        final double[][] data = data(40, 12, random);
+        final int[][] groups = {{0, 1, 2, 3, 4, 5}, {6, 7}, {8, 9, 10, 11}};
+        final RotationMatrix.Builder reused = new RotationMatrix.Builder(1.0);
+        for(int[] group : groups) {
+            reused.addGroup(group, data, allRows(data.length), data.length);
+        }
+        final RotationMatrix rotation = reused.build();
+        int offset = 0;
+        final double[] expected = new double[rotation.numOutputs()];
+        final double[] actual = new double[rotation.numOutputs()];
+        rotation.project(data[3], actual);
+        for(int[] group : groups) {
+            final RotationMatrix.Builder builder = new RotationMatrix.Builder(1.0);
+            builder.addGroup(group, data, allRows(data.length), data.length);
+            final RotationMatrix single = builder.build();
+            final double[] out = new double[single.numOutputs()];
+            single.project(data[3], out);
+            System.arraycopy(out, 0, expected, offset, out.length);
+            offset += out.length;
+        }
+        Assert.assertArrayEquals(expected, actual, 1e-12);
+    }
+}
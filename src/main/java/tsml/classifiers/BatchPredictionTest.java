@@ -0,0 +1,128 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import tsml.classifiers.dictionary_based.TDE;
+import tsml.classifiers.distance_based.knn.KNN;
+import tsml.classifiers.interval_based.CIF;
+import tsml.classifiers.interval_based.DrCIF;
+import tsml.classifiers.interval_based.TSF;
+import tsml.classifiers.kernel_based.Arsenal;
+import tsml.classifiers.kernel_based.ROCKETClassifier;
+import weka.core.Instances;
+
+import java.util.function.Supplier;
+
+/**
+ * Checks that the batch distributionsForInstances gives exactly the same distributions as calling
+ * distributionForInstance on each test instance, both single and multi threaded.
+ */
+public class BatchPredictionTest {
+
+    private static Instances train;
+    private static Instances test;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        train = data[0];
+        test = data[1];
+    }
+
+    private static void assertBatchMatchesPerInstance(Supplier<EnhancedAbstractClassifier> supplier) throws Exception {
+        for(int numThreads : new int[] {1, 4}) {
+            final EnhancedAbstractClassifier classifier = supplier.get();
+            classifier.setSeed(0);
+            if(numThreads > 1) {
+                ((MultiThreadable) classifier).enableMultiThreading(numThreads);
+            }
+            classifier.buildClassifier(train);
+            final double[][] batch = classifier.distributionsForInstances(test);
+            Assert.assertEquals(test.numInstances(), batch.length);
+            for(int i = 0; i < test.numInstances(); i++) {
+                Assert.assertArrayEquals(classifier.getClass().getSimpleName() + " with " + numThreads
+                        + " threads, instance " + i, classifier.distributionForInstance(test.get(i)), batch[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void rocket() throws Exception {
+        assertBatchMatchesPerInstance(() -> {
+            final ROCKETClassifier classifier = new ROCKETClassifier();
+            classifier.setNumKernels(1000);
+            return classifier;
+        });
+    }
+
+    @Test
+    public void arsenal() throws Exception {
+        assertBatchMatchesPerInstance(() -> {
+            final Arsenal classifier = new Arsenal();
+            classifier.setNumKernels(500);
+            classifier.setEnsembleSize(5);
+            return classifier;
+        });
+    }
+
+    @Test
+    public void tsf() throws Exception {
+        assertBatchMatchesPerInstance(() -> {
+            final TSF classifier = new TSF();
+            classifier.setNumTrees(100);
+            return classifier;
+        });
+    }
+
+    @Test
+    public void cif() throws Exception {
+        assertBatchMatchesPerInstance(() -> {
+            final CIF classifier = new CIF();
+            classifier.setNumTrees(50);
+            return classifier;
+        });
+    }
+
+    @Test
+    public void drcif() throws Exception {
+        assertBatchMatchesPerInstance(() -> {
+            final DrCIF classifier = new DrCIF();
+            classifier.setNumTrees(50);
+            return classifier;
+        });
+    }
+
+    @Test
+    public void tde() throws Exception {
+        assertBatchMatchesPerInstance(() -> {
+            final TDE classifier = new TDE();
+            classifier.setParametersConsidered(50);
+            classifier.setMaxEnsembleSize(10);
+            return classifier;
+        });
+    }
+
+    @Test
+    public void knn() throws Exception {
+        assertBatchMatchesPerInstance(KNN::new);
+    }
+
+}
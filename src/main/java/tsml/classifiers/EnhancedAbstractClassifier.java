@@ -18,6 +18,7 @@
 package tsml.classifiers;
 
 import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
 import weka.classifiers.AbstractClassifier;
 import evaluation.storage.ClassifierResults;
 
@@ -80,7 +81,8 @@ ClassifierResults trainResults can also store other information about the traini
 abstract public class EnhancedAbstractClassifier extends AbstractClassifier implements SaveParameterInfo,
                                                                                        Serializable,
                                                                                        Randomizable,
-                                                                                       TSClassifier {
+                                                                                       TSClassifier,
+                                                                                       BatchPredictor {
 
 /** Store information of training. The minimum should be the build time, tune time and/or estimate acc time      */
     protected ClassifierResults trainResults = new ClassifierResults();
@@ -90,6 +92,8 @@ abstract public class EnhancedAbstractClassifier extends AbstractClassifier impl
     protected Random rand=new Random(seed);
     protected boolean seedClassifier=false;
     protected transient boolean debug=false;
+    /** preferred number of instances passed to distributionsForInstances at once, see BatchPredictor */
+    private String batchSize = "100";
 
     /**
      * get the classifier RNG	
@@ -497,6 +501,45 @@ abstract public class EnhancedAbstractClassifier extends AbstractClassifier impl
                 return Utils.missingValue();
         }
     }
+
+    @Override
+    public void setBatchSize(String size) {
+        batchSize = size;
+    }
+
+    @Override
+    public String getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Find class probabilities of a batch of instances. By default distributionForInstance is called for each
+     * instance, classifiers with a cost per call, such as transforming the instance, wrapping it in a new Instances or
+     * submitting work to a thread pool, should override this to predict the whole batch at once.
+     *
+     * @param insts the instances to get predictions for
+     * @return probability of each class for each instance
+     * @throws Exception if a problem occurs
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        double[][] dists = new double[insts.numInstances()][];
+        for (int i = 0; i < dists.length; i++)
+            dists[i] = distributionForInstance(insts.instance(i));
+        return dists;
+    }
+
+    /**
+     * TSClassifier batch prediction, the instances are converted and passed to distributionsForInstances.
+     *
+     * @param data the instances to get predictions for
+     * @return probability of each class for each instance
+     * @throws Exception if a problem occurs
+     */
+    @Override
+    public double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
+        return distributionsForInstances(Converter.toArff(data));
+    }
     
     /**
      * Sets a printing-friendly and/or context/parameter-aware name that can optionally 
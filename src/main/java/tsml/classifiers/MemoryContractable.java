@@ -23,7 +23,10 @@ import tsml.classifiers.distance_based.utils.system.memory.MemoryWatchable;
  * Interface that allows the user to impose a memory contract of a classifier that
     implements this interface
 
-    known classifiers: None
+    known classifiers: DrCIF, TDE, ShapeletTransformClassifier, ProximityForest, HIVE_COTE
+ *
+ * The limit is a budget on the estimated size of the model as it is built, members are added whilst they fit. Limits
+ * given in MEGABYTE and GIGABYTE are converted with binary units, i.e. 1024 * 1024 bytes to the megabyte.
  *
  * Provide default implementation of the memory stats getters which classifiers should track. It's most easily
  * tracked through the GcMemoryWatchable interface so you don't have to track the stats yourself!
@@ -45,4 +48,18 @@ public interface MemoryContractable {
     //pass in an value from the DataUnit enum and the amount of said values.
     void setMemoryLimit(DataUnit unit, long amount);
 
+    //the limit in bytes, zero or less if no limit has been set.
+    long getMemoryLimit();
+
+    static long toBytes(DataUnit unit, long amount) {
+        switch(unit) {
+            case GIGABYTE:
+                return amount * 1024 * 1024 * 1024;
+            case MEGABYTE:
+                return amount * 1024 * 1024;
+            default:
+                return amount;
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.Converter;
 import weka.classifiers.Classifier;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 public interface TSClassifier{
@@ -44,9 +45,11 @@ public interface TSClassifier{
     }
 
     public default double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
-        double[][] out = new double[data.numInstances()][];
-
         Instances data_inst = Converter.toArff(data);
+        if (getClassifier() instanceof BatchPredictor)
+            return ((BatchPredictor) getClassifier()).distributionsForInstances(data_inst);
+
+        double[][] out = new double[data.numInstances()][];
         int i=0;
         for(Instance inst : data_inst)
             out[i++] = getClassifier().distributionForInstance(inst);
@@ -984,6 +984,21 @@ public class IndividualTDE extends EnhancedAbstractClassifier implements Compara
         return classifyInstance(Converter.fromArff(instance));
     }
 
+    /**
+     * Classifies a batch of instances, creating the bag of each and finding its nearest neighbour in turn, without
+     * converting each instance to and from weka Instances.
+     *
+     * @param data instances to classify
+     * @return predicted class value of each instance
+     */
+    @Override
+    public double[] classifyInstances(TimeSeriesInstances data) throws Exception{
+        double[] preds = new double[data.numInstances()];
+        for (int i = 0; i < preds.length; i++)
+            preds[i] = classifyInstance(data.get(i));
+        return preds;
+    }
+
     @Override
     public double[] distributionForInstance(TimeSeriesInstance instance) throws Exception{
         double pred = classifyInstance(instance);
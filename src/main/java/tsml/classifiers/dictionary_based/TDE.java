@@ -24,6 +24,7 @@ import tsml.classifiers.*;
 import tsml.classifiers.dictionary_based.bitword.BitWord;
 import tsml.classifiers.dictionary_based.bitword.BitWordInt;
 import tsml.classifiers.dictionary_based.bitword.BitWordLong;
+import tsml.classifiers.distance_based.utils.system.memory.MemoryBudget;
 import tsml.data_containers.TSCapabilities;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
@@ -56,7 +57,7 @@ import static utilities.Utilities.argMax;
  * @author Matthew Middlehurst
  */
 public class TDE extends EnhancedAbstractClassifier implements TrainTimeContractable,
-        Checkpointable, TechnicalInformationHandler, MultiThreadable, Visualisable, Interpretable {
+        Checkpointable, TechnicalInformationHandler, MultiThreadable, Visualisable, Interpretable, MemoryContractable {
 
     /**
      * Paper defining TDE.
@@ -122,6 +123,9 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
     private boolean trainTimeContract = false;
     private boolean underContractTime = true;
 
+    private long memoryLimit = 0;
+    private transient MemoryBudget memoryBudget;
+
     private ArrayList<Double> paramAccuracy;
     private ArrayList<Double> paramTime;
 
@@ -290,7 +294,7 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         StringBuilder sb = new StringBuilder();
         sb.append(super.getParameters());
         sb.append(",numClassifiers,").append(classifiers.size()).append(",contractTime,")
-                .append(trainContractTimeNanos);
+                .append(trainContractTimeNanos).append(",memoryLimit,").append(memoryLimit);
 
         for (int i = 0; i < classifiers.size(); ++i) {
             IndividualTDE indiv = classifiers.get(i);
@@ -410,11 +414,24 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             parametersConsidered = Integer.MAX_VALUE;
         }
 
+        //Memory contract, the ensemble is only grown while the estimated size of its members fits
+        memoryBudget = new MemoryBudget(memoryLimit);
+        memoryBudget.addShared(data, ex);
+        for (IndividualTDE indiv : classifiers) {
+            memoryBudget.addMember(indiv);
+        }
+
         //Build ensemble if not set to just load ser files
         if (!(checkpoint && loadAndFinish)) {
             buildTDE(data);
         }
 
+        if (memoryBudget.isLimited()) {
+            trainResults.setMemory(memoryBudget.getUsed());
+            trainResults.setMemoryLimit(memoryLimit);
+        }
+        memoryBudget = null;
+
         if (checkpoint) {
             checkpoint(null, false);
         }
@@ -492,8 +509,12 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                     : series;
             indiv.buildClassifier(data);
 
-            double accuracy = individualTrainAcc(indiv, data, classifiers.size() < maxEnsembleSize
-                    ? -99999999 : lowestAcc);
+            //the ensemble is full once it reaches maxEnsembleSize or the new classifier would not fit in memory
+            long indivSize = memoryBudget.sizeOf(indiv);
+            boolean full = classifiers.size() >= maxEnsembleSize
+                    || (!classifiers.isEmpty() && !memoryBudget.hasRoomFor(indivSize));
+
+            double accuracy = individualTrainAcc(indiv, data, full ? lowestAcc : -99999999);
             indiv.setAccuracy(accuracy);
             if (accuracy == 0) indiv.setWeight(Double.MIN_VALUE);
             else indiv.setWeight(Math.pow(accuracy, 4));
@@ -509,6 +530,7 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                     IndividualTDE b = it.next();
                     if (b.getAccuracy() < maxAcc * cutoffThreshold) {
                         it.remove();
+                        memoryBudget.removeMember(b);
 
                         if (checkpoint) {
                             checkpointIDs.add(b.getEnsembleID());
@@ -518,12 +540,16 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
             }
 
             if (!cutoff || indiv.getAccuracy() >= maxAcc * cutoffThreshold) {
-                if (classifiers.size() < maxEnsembleSize) {
+                //members may have been removed by the cutoff
+                full = classifiers.size() >= maxEnsembleSize
+                        || (!classifiers.isEmpty() && !memoryBudget.hasRoomFor(indivSize));
+                if (!full) {
                     if (accuracy < lowestAcc) {
                         lowestAccIdx = classifiers.size();
                         lowestAcc = accuracy;
                     }
                     classifiers.add(indiv);
+                    memoryBudget.addMember(indiv, indivSize);
 
                     if (checkpoint) {
                         indiv.setEnsembleID(checkpointIDs.remove(0));
@@ -534,12 +560,18 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
                     lowestAccIdx = (int) newLowestAcc[0];
                     lowestAcc = newLowestAcc[1];
 
-                    IndividualTDE rm = classifiers.remove(lowestAccIdx);
-                    classifiers.add(lowestAccIdx, indiv);
+                    //only swap if the new classifier fits in place of the one it replaces
+                    if (memoryBudget.hasRoomFor(indivSize
+                            - memoryBudget.getMemberSize(classifiers.get(lowestAccIdx)))) {
+                        IndividualTDE rm = classifiers.remove(lowestAccIdx);
+                        classifiers.add(lowestAccIdx, indiv);
+                        memoryBudget.removeMember(rm);
+                        memoryBudget.addMember(indiv, indivSize);
 
-                    if (checkpoint) {
-                        indiv.setEnsembleID(rm.getEnsembleID());
-                        checkpointChange = true;
+                        if (checkpoint) {
+                            indiv.setEnsembleID(rm.getEnsembleID());
+                            checkpointChange = true;
+                        }
                     }
                 }
             }
@@ -1076,6 +1108,70 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         return distributionForInstance(Converter.fromArff(instance));
     }
 
+    /**
+     * Find class probabilities of a batch of instances. Each member of the ensemble classifies the whole batch in
+     * turn, so when multi threading a task is submitted for each member rather than for each member and instance.
+     *
+     * @param data TimeSeriesInstances object
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override //TSClassifier
+    public double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
+        double[][] distributions = new double[data.numInstances()][];
+        if (interpSavePath != null) {
+            for (int n = 0; n < distributions.length; n++)
+                distributions[n] = distributionForInstance(data.get(n));
+            return distributions;
+        }
+
+        double[][] preds = new double[classifiers.size()][];
+        if (multiThread) {
+            ArrayList<Future<double[]>> futures = new ArrayList<>(classifiers.size());
+            for (IndividualTDE classifier : classifiers)
+                futures.add(ex.submit(() -> classifier.classifyInstances(data)));
+
+            for (int i = 0; i < preds.length; i++)
+                preds[i] = futures.get(i).get();
+        } else {
+            for (int i = 0; i < preds.length; i++)
+                preds[i] = classifiers.get(i).classifyInstances(data);
+        }
+
+        for (int n = 0; n < distributions.length; n++) {
+            double[] classHist = new double[numClasses];
+            double sum = 0;
+            for (int i = 0; i < preds.length; i++) {
+                double weight = classifiers.get(i).getWeight();
+                classHist[(int) preds[i][n]] += weight;
+                sum += weight;
+            }
+
+            distributions[n] = new double[numClasses];
+            if (sum != 0) {
+                for (int i = 0; i < classHist.length; ++i)
+                    distributions[n][i] += classHist[i] / sum;
+            } else {
+                for (int i = 0; i < classHist.length; ++i)
+                    distributions[n][i] += 1.0 / numClasses;
+            }
+        }
+
+        return distributions;
+    }
+
+    /**
+     * Find class probabilities of a batch of instances, see distributionForInstances(TimeSeriesInstances).
+     *
+     * @param insts weka Instances object
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override //BatchPredictor
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        return distributionForInstances(Converter.fromArff(insts));
+    }
+
     /**
      * Classify an instance using the trained model.
      *
@@ -1112,6 +1208,23 @@ public class TDE extends EnhancedAbstractClassifier implements TrainTimeContract
         trainTimeContract = true;
     }
 
+    /**
+     * Set the memory limit for the ensemble. Once a new classifier would not fit, the ensemble is treated as full and
+     * new classifiers only replace the least accurate member.
+     *
+     * @param unit   unit of the amount
+     * @param amount memory limit
+     */
+    @Override //MemoryContractable
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryLimit = MemoryContractable.toBytes(unit, amount);
+    }
+
+    @Override //MemoryContractable
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
     /**
      * Check if a contracted classifier is within its train time limit.
      *
@@ -23,12 +23,12 @@ import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.cursors.LongDoubleCursor;
 import com.carrotsearch.hppc.cursors.LongIntCursor;
 import de.bwaldvogel.liblinear.*;
-import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
 import evaluation.evaluators.CrossValidationEvaluator;
 import evaluation.storage.ClassifierResults;
 import experiments.data.DatasetLoading;
 import tsml.classifiers.EnhancedAbstractClassifier;
 import utilities.ClassifierTools;
+import utilities.numericalmethods.SpectralEngine;
 import weka.classifiers.Classifier;
 import weka.core.*;
 
@@ -1508,13 +1508,10 @@ public class WEASEL extends EnhancedAbstractClassifier implements TechnicalInfor
 
     private int windowSize = 0;
     private int startOffset = 0;
-    private transient DoubleFFT_1D fft = null;
 
     public MFT(int windowSize, boolean normMean) {
       this.windowSize = windowSize;
 
-      this.fft = new DoubleFFT_1D(this.windowSize);
-
       // ignore DC value?
       this.startOffset = normMean ? 2 : 0;
     }
@@ -1550,7 +1547,7 @@ public class WEASEL extends EnhancedAbstractClassifier implements TechnicalInfor
 
       double[] data = new double[this.windowSize];
       System.arraycopy(series, 0, data, 0, Math.min(this.windowSize, series.length));
-      this.fft.realForward(data);
+      SpectralEngine.realForward(data);
       data[1] = 0; // DC-coefficient imaginary part
 
       // make it even length for uneven windowSize
@@ -1623,7 +1620,7 @@ public class WEASEL extends EnhancedAbstractClassifier implements TechnicalInfor
           double[] data2 = toArrayNoClass(timeSeries);
           System.arraycopy(data2, 0, dft, 0, Math.min(this.windowSize, data.length));
 
-          this.fft.realForward(dft);
+          SpectralEngine.realForward(dft);
           dft[1] = 0; // DC-coefficient imag part
 
           // if windowSize > mftData.queryLength, the remaining data should be 0 now.
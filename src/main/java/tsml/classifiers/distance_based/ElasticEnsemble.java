@@ -21,6 +21,9 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import tsml.classifiers.legacy.elastic_ensemble.DTW1NN;
 import tsml.classifiers.legacy.elastic_ensemble.ED1NN;
 import tsml.classifiers.legacy.elastic_ensemble.ERP1NN;
@@ -37,6 +40,7 @@ import utilities.WritableTestResults;
 import experiments.data.DatasetLoading;
 import java.util.concurrent.TimeUnit;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MultiThreadable;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 
@@ -54,7 +58,7 @@ import weka.core.TechnicalInformationHandler;
 
  * @author sjx07ngu
  */
-public class ElasticEnsemble extends EnhancedAbstractClassifier implements WritableTestResults,TechnicalInformationHandler{
+public class ElasticEnsemble extends EnhancedAbstractClassifier implements WritableTestResults,TechnicalInformationHandler,MultiThreadable{
 
     
     @Override
@@ -112,6 +116,9 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
     protected boolean usesDer = false;
     protected static Derivative df = new Derivative();
     
+    protected int numThreads = 1;
+    protected boolean multiThread = false;
+    
     // utility to enable AJBs COTE 
     protected double[] previousPredictions = null;
     
@@ -291,6 +298,23 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
         this.resampleId = resampleId;
         this.writeToFile = true;
     }
+    
+    /**
+     * Enables multi threading. The LOOCV param searches of all constituents share a pool of numThreads threads. 
+     * Results are the same as single threaded.
+     * 
+     * @param numThreads number of threads available for multi threading
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads){
+        if(numThreads > 1){
+            this.numThreads = numThreads;
+            this.multiThread = true;
+        }else{
+            this.numThreads = 1;
+            this.multiThread = false;
+        }
+    }
   
     /**
      * Builds classifier. If building from file, cv weights and predictions will be loaded from file. If running from scratch, training cv will be performed for constituents to find best params, cv accs, and cv preds
@@ -354,20 +378,11 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
                 cvAccs[c] = cvAcc;
             }
         }else{
-            double[] cvAccAndPreds;
+            double[][] cvAccAndPreds = searchConstituents();
             for(int c = 0; c < classifiers.length; c++){
-                if(writeToFile){
-                    classifiers[c].setFileWritingOn(this.resultsDir, this.datasetName, this.resampleId);
-                }
-                if(isDerivative(classifiersToUse[c])){
-                    cvAccAndPreds = classifiers[c].loocv(derTrain);
-                }else{
-                    cvAccAndPreds = classifiers[c].loocv(train);
-                }
-                
-                cvAccs[c] = cvAccAndPreds[0];
+                cvAccs[c] = cvAccAndPreds[c][0];
                 for(int i = 0; i < train.numInstances(); i++){
-                    this.cvPreds[c][i] = cvAccAndPreds[i+1];
+                    this.cvPreds[c][i] = cvAccAndPreds[c][i+1];
                 }
             }
             
@@ -382,6 +397,48 @@ public class ElasticEnsemble extends EnhancedAbstractClassifier implements Writa
 
     }
     
+    /**
+     * Finds the params of each constituent by LOOCV on the training data. When multi threading, the param id 
+     * sequences of every constituent are evaluated as tasks in a single pool, see Efficient1NN.loocv.
+     * 
+     * @return cv accuracy followed by the cv predictions for each constituent
+     * @throws Exception 
+     */
+    private double[][] searchConstituents() throws Exception{
+        double[][] cvAccAndPreds = new double[classifiers.length][];
+        for(int c = 0; c < classifiers.length; c++){
+            if(writeToFile){
+                classifiers[c].setFileWritingOn(this.resultsDir, this.datasetName, this.resampleId);
+            }
+        }
+        
+        if(!multiThread){
+            for(int c = 0; c < classifiers.length; c++){
+                cvAccAndPreds[c] = classifiers[c].loocv(isDerivative(classifiersToUse[c]) ? derTrain : train);
+            }
+            return cvAccAndPreds;
+        }
+        
+        ExecutorService ex = Executors.newFixedThreadPool(numThreads);
+        // each constituent only waits on its tasks in ex, so is run outside of it
+        ExecutorService constituentEx = Executors.newCachedThreadPool();
+        try{
+            ArrayList<Future<double[]>> futures = new ArrayList<>(classifiers.length);
+            for(int c = 0; c < classifiers.length; c++){
+                Efficient1NN classifier = classifiers[c];
+                Instances data = isDerivative(classifiersToUse[c]) ? derTrain : train;
+                futures.add(constituentEx.submit(() -> classifier.loocv(data, ex)));
+            }
+            for(int c = 0; c < classifiers.length; c++){
+                cvAccAndPreds[c] = futures.get(c).get();
+            }
+        }finally{
+            constituentEx.shutdownNow();
+            ex.shutdownNow();
+        }
+        return cvAccAndPreds;
+    }
+    
     /**
      * Returns an Efficient1NN object corresponding to the input enum. Output classifier includes the correct internal information for handling LOOCV/param tuning.
      * @param classifier
@@ -150,6 +150,9 @@ public class FastElasticEnsemble extends ElasticEnsemble {
             }
         } else {
             double[] cvAccAndPreds;
+            // the lower bound statistics of each series are shared by the constituents using the same data
+            SequenceStatsCache trainCache = new SequenceStatsCache(train, train.numAttributes() - 1);
+            SequenceStatsCache derTrainCache = usesDer ? new SequenceStatsCache(derTrain, derTrain.numAttributes() - 1) : null;
             for (int c = 0; c < classifiers.length; c++) {
                 if (writeToFile) {
                     classifiers[c].setFileWritingOn(this.resultsDir, this.datasetName, this.resampleId);
@@ -161,9 +164,9 @@ public class FastElasticEnsemble extends ElasticEnsemble {
                         cvAccAndPreds = classifiers[c].loocv(train);
                     }
                 } else if (isDerivative(classifiersToUse[c])) {
-                    cvAccAndPreds = classifiers[c].fastParameterSearch(derTrain);
+                    cvAccAndPreds = classifiers[c].fastParameterSearch(derTrain, derTrainCache);
                 } else {
-                    cvAccAndPreds = classifiers[c].fastParameterSearch(train);
+                    cvAccAndPreds = classifiers[c].fastParameterSearch(train, trainCache);
                 }
 
                 cvAccs[c] = cvAccAndPreds[0];
@@ -19,16 +19,17 @@ package tsml.classifiers.distance_based;
 
 import tsml.classifiers.EnhancedAbstractClassifier;
 import tsml.classifiers.multivariate.MultivariateAbstractClassifier;
+import tsml.data_containers.TimeSeriesInstance;
 import tsml.transformers.DWT;
 import tsml.transformers.HOG1D;
 import tsml.transformers.Slope;
-import tsml.transformers.Subsequences;
 import tsml.transformers.*;
 import utilities.multivariate_tools.MultivariateInstanceTools;
 import weka.classifiers.AbstractClassifier;
 import weka.core.*;
 import weka.core.converters.ConverterUtils;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
@@ -61,21 +62,15 @@ public class ShapeDTW_1NN extends EnhancedAbstractClassifier {
     //Authors also propose a weighting factor which is a value to multiply the output of the second transformation
     //by. This produces an output in the form compound = (ShapeDescriptor,weightingFactor*secondShapeDescriptor).
     private double weightingFactor = 1.0;
-    // Transformer for extracting the neighbourhoods
-    private Subsequences subsequenceTransformer;
-    // NN_DTW_Subsequences for performing classification on the training data
-    private NN_DTW_Subsequences nnDtwSubsequences;
-    //The Dimension independent transformers
-    private DimensionIndependentTransformer d1;
-    private DimensionIndependentTransformer d2;
     // Another method proposed is to combine the results of two shapeDescriptors together, if this is set to
     // true, then the results of shapeDescriptor and secondShapeDescriptor are concatenated together.
     private boolean useSecondShapeDescriptor = false;
     private final Transformer [] VALID_TRANSFORMERS = new Transformer[] {new PAA(), new DWT(),
                                                                          new Derivative(), new Slope(),
                                                                          new HOG1D()};
-    // For storing the dataset when creating the compound shape descriptors.
-    private Instances compoundDataset;
+    // The shape descriptors of each training series, one row per point in the series.
+    private double [][][] trainDescriptors;
+    private double [] trainClassValues;
 
     /**
      * Private constructor with settings:
@@ -86,8 +81,6 @@ public class ShapeDTW_1NN extends EnhancedAbstractClassifier {
         super(CANNOT_ESTIMATE_OWN_PERFORMANCE);
         this.subsequenceLength = 30;
         this.shapeDescriptor = null;
-        this.subsequenceTransformer = new Subsequences(subsequenceLength);
-        this.nnDtwSubsequences = new NN_DTW_Subsequences();
     }
 
     public ShapeDTW_1NN(int subsequenceLength,Transformer shapeDescriptor,boolean useSecondShapeDescriptor,
@@ -95,8 +88,6 @@ public class ShapeDTW_1NN extends EnhancedAbstractClassifier {
         super(CANNOT_ESTIMATE_OWN_PERFORMANCE);
         this.subsequenceLength = subsequenceLength;
         this.shapeDescriptor = shapeDescriptor;
-        this.subsequenceTransformer = new Subsequences(subsequenceLength);
-        this.nnDtwSubsequences = new NN_DTW_Subsequences();
         this.secondShapeDescriptor = secondShapeDescriptor;
         this.useSecondShapeDescriptor = useSecondShapeDescriptor;
     }
@@ -130,187 +121,221 @@ public class ShapeDTW_1NN extends EnhancedAbstractClassifier {
     public void setWeightingFactor(double newWeightingFactor) {this.weightingFactor = newWeightingFactor;}
 
     /**
-     * Private method for performing the subsequence extraction on a set of instances as
-     * well as the shape descriptor function for training (if not null).
+     * Private method for computing the shape descriptors of a series. The series is normalised and padded at either
+     * end as in the Subsequences transformer, and each row is the descriptor of the subsequence about that point,
+     * followed by the weighted second descriptor if required. The subsequences are read from a sliding window rather
+     * than extracted.
      *
-     * @param data
-     * @return
+     * @param inst
+     * @return the descriptors, one row per point in the series.
      */
-    private Instances preprocessData(Instances data) {
-        Instances transformedData = this.subsequenceTransformer.transform(data);
-        Instances shapeDesc1;
-        Instances shapeDesc2 = null;
-        //If shape descriptor is null aka 'raw', use the subsequences.
-        if (this.shapeDescriptor == null) {
-            shapeDesc1 = new Instances(transformedData);
-        } else {
-            this.d1 = new DimensionIndependentTransformer(this.shapeDescriptor);
-            shapeDesc1 = this.d1.transform(transformedData);
-        }
-        //Test if a second shape descriptor is required
-        if(useSecondShapeDescriptor) {
-            if(this.secondShapeDescriptor == null) {
-                shapeDesc2 = new Instances(transformedData);
-            } else {
-                this.d2 = new DimensionIndependentTransformer(this.secondShapeDescriptor);
-                shapeDesc2 = this.d2.transform(transformedData);
+    private double [][] describe(Instance inst) {
+        double [] series = new double[inst.numAttributes()-1];
+        for(int i=0,j=0;i<inst.numAttributes();i++) {
+            if(i != inst.classIndex()) {
+                series[j++] = inst.value(i);
+            }
+        }
+        double [] padded = padSeries(normaliseSeries(series));
+        double [][] shapeDesc1 = describe(padded,series.length,this.shapeDescriptor);
+        if(!useSecondShapeDescriptor) {
+            return shapeDesc1;
+        }
+        double [][] shapeDesc2 = describe(padded,series.length,this.secondShapeDescriptor);
+        double [][] combined = new double[series.length][];
+        for(int i=0;i<series.length;i++) {
+            combined[i] = new double[shapeDesc1[i].length+shapeDesc2[i].length];
+            System.arraycopy(shapeDesc1[i],0,combined[i],0,shapeDesc1[i].length);
+            //multiply the second shape descriptor by a weighting factor
+            for(int j=0;j<shapeDesc2[i].length;j++) {
+                combined[i][shapeDesc1[i].length+j] = shapeDesc2[i][j]*this.weightingFactor;
             }
         }
-        Instances combinedInsts = combineInstances(shapeDesc1,shapeDesc2);
-        return combinedInsts;
+        return combined;
     }
 
     /**
-     * Private method for performing the subsequence extraction on an instance as
-     * well as the shape descriptor function for testing (if not null).
+     * Private method for z-normalising a series, as in the Subsequences transformer.
      *
-     * @param data
+     * @param series
      * @return
      */
-    private Instance preprocessData(Instance data) {
-        Instance transformedData = this.subsequenceTransformer.transform(data);
-        Instance shapeDesc1;
-        Instance shapeDesc2 = null;
-        //If shape descriptor is null aka 'raw', use the subsequences.
-        if (this.shapeDescriptor == null) {
-            shapeDesc1 = transformedData;
-        } else {
-            shapeDesc1 = this.d1.transform(transformedData);
-        }
-        //Test if a second shape descriptor is required
-        if(useSecondShapeDescriptor) {
-            if(this.secondShapeDescriptor == null) {
-                shapeDesc2 = transformedData;
-            } else {
-                shapeDesc2 = this.d2.transform(transformedData);
-            }
+    private static double [] normaliseSeries(double [] series) {
+        double mean = 0.0;
+        for(double x: series) {
+            mean += x;
         }
-        Instance combinedInsts = combineInstances(shapeDesc1,shapeDesc2);
-        return combinedInsts;
+        mean /= series.length;
+        double sd = 0.0;
+        for(double x: series) {
+            sd += Math.pow(x - mean,2);
+        }
+        sd = Math.sqrt(sd/series.length);
+        double [] normalised = new double[series.length];
+        for(int i=0;i<series.length;i++) {
+            normalised[i] = (series[i]-mean)/sd;
+        }
+        return normalised;
     }
 
     /**
-     * Private function for concatenating two shape descriptors together.
+     * Private method for padding either end of a series by half the subsequence length with the first and last
+     * values, so there is a subsequence starting at each index for each point in the series.
      *
-     * @param shapeDesc1
-     * @param shapeDesc2
+     * @param series
      * @return
      */
-    private Instances combineInstances(Instances shapeDesc1,Instances shapeDesc2) {
-        if(shapeDesc2 == null) {
-            return shapeDesc1;
-        }
-        //Create the header for the new data to be stored in.
-        Instances compoundHeader = createCompoundHeader(shapeDesc1,shapeDesc2);
-        for(int i=0;i<shapeDesc1.numInstances();i++) {
-            Instances relationHeader = new Instances(compoundHeader.attribute(0).relation());
-            DenseInstance newInst = new DenseInstance(2);
-            newInst.setDataset(compoundHeader);
-            //Combine all the dimensions together to create the relation
-            Instances relation = createRelationalData(shapeDesc1.get(i), shapeDesc2.get(i), relationHeader);
-            //Add relation to the first value of newInst
-            int index = newInst.attribute(0).addRelation(relation);
-            newInst.setValue(0, index);
-            //Add the class value.
-            newInst.setValue(1, shapeDesc1.get(i).classValue());
-            compoundHeader.add(newInst);
-        }
-        compoundHeader.setClassIndex(1);
-        this.compoundDataset = compoundHeader;
-        return compoundHeader;
+    private double [] padSeries(double [] series) {
+        int padAmount = subsequenceLength/2;
+        double [] padded = new double[series.length+2*padAmount];
+        Arrays.fill(padded,0,padAmount,series[0]);
+        System.arraycopy(series,0,padded,padAmount,series.length);
+        Arrays.fill(padded,padAmount+series.length,padded.length,series[series.length-1]);
+        return padded;
     }
 
     /**
-     * Private function for creating the header for the compound shape descriptor data.
+     * Private method for applying a shape descriptor to each subsequence of a padded series. PAA and Slope are
+     * updated as the window slides; the other descriptors are applied to each window in turn.
      *
-     * @param shapeDesc1 - Instances of the first shape descriptor.
-     * @param shapeDesc2 - Instances of the second shape descriptor.
+     * @param padded
+     * @param length - the length of the series before padding.
+     * @param descriptor
      * @return
      */
-    private Instances createCompoundHeader(Instances shapeDesc1,Instances shapeDesc2) {
-        // Create the Instances object
-        ArrayList<Attribute> atts = new ArrayList<>();
-        //Create the relational attribute
-        ArrayList<Attribute> relationalAtts = new ArrayList<>();
-        int numAttributes = shapeDesc1.attribute(0).relation().numAttributes() +
-                shapeDesc2.attribute(0).relation().numAttributes();
-        // Add the original elements
-        for (int i = 0; i < numAttributes; i++)
-            relationalAtts.add(new Attribute("Compound_element_" + i));
-        // Create the relational table
-        Instances relationTable = new Instances("Compound_Elements", relationalAtts, shapeDesc1.numInstances());
-        // Create the attribute from the relational table
-        atts.add(new Attribute("relationalAtt", relationTable));
-        // Add the class attribute
-        atts.add(shapeDesc1.classAttribute());
-        Instances compoundShapeDesc = new Instances("Compound_Elements",atts,shapeDesc1.numInstances());
-        return compoundShapeDesc;
+    private double [][] describe(double [] padded,int length,Transformer descriptor) {
+        if(descriptor instanceof PAA) {
+            return slidingPAA(padded,length,((PAA) descriptor).getNumIntervals());
+        } else if(descriptor instanceof Slope) {
+            return slidingSlope(padded,length,((Slope) descriptor).getNumIntervals());
+        }
+        double [][] descriptors = new double[length][];
+        double [][] window = new double[1][subsequenceLength];
+        for(int i=0;i<length;i++) {
+            System.arraycopy(padded,i,window[0],0,subsequenceLength);
+            if(descriptor == null) {
+                descriptors[i] = window[0].clone();
+            } else {
+                descriptors[i] = descriptor.transform(new TimeSeriesInstance(window)).get(0).toValueArray();
+            }
+        }
+        return descriptors;
     }
 
     /**
-     * Private function for creating the relation along each dimension within
-     * inst1 and inst2.
+     * Private method for the PAA of each subsequence. PAA is linear, so the weight of each point of the subsequence in
+     * each frame is found once. A frame is a run of whole points plus part points at either end, and the sum of the
+     * whole points is kept up to date as the window slides.
      *
-     * @param inst1
-     * @param inst2
+     * @param padded
+     * @param length
+     * @param numIntervals
      * @return
      */
-    private Instances createRelationalData(Instance inst1, Instance inst2, Instances header) {
-        Instances rel1 = inst1.relationalValue(0);
-        Instances rel2 = inst2.relationalValue(0);
-
-        //  Iterate over each dimension
-        for(int i=0;i<rel1.numInstances();i++) {
-            double [] dim1 = rel1.get(i).toDoubleArray();
-            double [] dim2 = rel2.get(i).toDoubleArray();
-            //multiply dim2 by a weighting factor
-            for(int j=0;j<dim2.length;j++) {
-                dim2[j] = dim2[j]*this.weightingFactor;
+    private double [][] slidingPAA(double [] padded,int length,int numIntervals) {
+        double [][] weights = new double[numIntervals][subsequenceLength];
+        double [] unit = new double[subsequenceLength];
+        for(int r=0;r<subsequenceLength;r++) {
+            unit[r] = 1;
+            double [] frames = PAA.convertInstance(unit,numIntervals);
+            for(int k=0;k<numIntervals;k++) {
+                weights[k][r] = frames[k];
             }
-
-            double [] both = new double[dim1.length+dim2.length];
-            System.arraycopy(dim1,0,both,0,dim1.length);
-            System.arraycopy(dim2,0,both,dim1.length,dim2.length);
-//            ArrayUtils.addAll(dim1,dim2);
-            //Create the new Instance
-            DenseInstance newInst = new DenseInstance(both.length);
-            for(int j=0;j<both.length;j++) {
-                newInst.setValue(j,both[j]);
+            unit[r] = 0;
+        }
+        // the first and last points with weight in each frame
+        int [] firsts = new int[numIntervals];
+        int [] lasts = new int[numIntervals];
+        double [] sums = new double[numIntervals];
+        for(int k=0;k<numIntervals;k++) {
+            firsts[k] = 0;
+            while(firsts[k] < subsequenceLength-1 && weights[k][firsts[k]] == 0) {
+                firsts[k]++;
+            }
+            lasts[k] = subsequenceLength-1;
+            while(lasts[k] > firsts[k] && weights[k][lasts[k]] == 0) {
+                lasts[k]--;
+            }
+            for(int r=firsts[k]+1;r<lasts[k];r++) {
+                sums[k] += padded[r];
+            }
+        }
+        double [][] descriptors = new double[length][numIntervals];
+        for(int i=0;i<length;i++) {
+            for(int k=0;k<numIntervals;k++) {
+                int first = firsts[k];
+                int last = lasts[k];
+                double frame = weights[k][first]*padded[i+first];
+                if(last > first) {
+                    frame += weights[k][last]*padded[i+last];
+                    if(last > first+1) {
+                        // whole points in a frame all have the same weight
+                        frame += weights[k][first+1]*sums[k];
+                        sums[k] += padded[i+last] - padded[i+first+1];
+                    }
+                }
+                descriptors[i][k] = frame;
             }
-            header.add(newInst);
         }
-        return header;
+        return descriptors;
     }
 
     /**
-     * Private function for concatenating two shape descriptors together.
+     * Private method for the Slope of each subsequence. The least squares terms of each interval are read in place from
+     * the padded series rather than from copies of each interval. They are not updated as the window slides, as the
+     * gradient of a flat interval must come out as exactly zero.
      *
-     * @param shapeDesc1
-     * @param shapeDesc2
+     * @param padded
+     * @param length
+     * @param numIntervals
      * @return
      */
-    private Instance combineInstances(Instance shapeDesc1, Instance shapeDesc2) {
-        if(shapeDesc2 == null) {
-            return shapeDesc1;
+    private double [][] slidingSlope(double [] padded,int length,int numIntervals) {
+        if(numIntervals < 1) {
+            throw new IllegalArgumentException("numIntervals must be greater than zero.");
+        }
+        if(numIntervals > subsequenceLength) {
+            throw new IllegalArgumentException("numIntervals cannot be longer than the time series length.");
+        }
+        // split the subsequence into intervals as Slope does
+        int [] starts = new int[numIntervals];
+        int [] sizes = new int[numIntervals];
+        double [] xSquaredDiffs = new double[numIntervals];
+        int numElementsRemaining = subsequenceLength;
+        for(int k=0,start=0;k<numIntervals;k++) {
+            starts[k] = start;
+            sizes[k] = numElementsRemaining/(numIntervals-k);
+            numElementsRemaining -= sizes[k];
+            start += sizes[k];
+            double meanX = (sizes[k]+1)/2.0;
+            for(int r=1;r<=sizes[k];r++) {
+                xSquaredDiffs[k] += Math.pow(r-meanX,2);
+            }
+        }
+        double [][] descriptors = new double[length][numIntervals];
+        for(int i=0;i<length;i++) {
+            for(int k=0;k<numIntervals;k++) {
+                int start = i+starts[k];
+                int size = sizes[k];
+                double meanX = (size+1)/2.0;
+                double meanY = 0.0;
+                for(int r=0;r<size;r++) {
+                    meanY += padded[start+r];
+                }
+                meanY /= size;
+                double ySquaredDiff = 0.0;
+                double xyDiff = 0.0;
+                for(int r=0;r<size;r++) {
+                    double y = padded[start+r] - meanY;
+                    ySquaredDiff += y*y;
+                    xyDiff += (r+1-meanX)*y;
+                }
+                double w = ySquaredDiff - xSquaredDiffs[k];
+                double r = 2*xyDiff;
+                descriptors[i][k] = r == 0 ? 0 : (w + Math.sqrt(w*w + r*r))/r;
+            }
         }
-        Instance combinedInst = new DenseInstance(2);
-        //Create the relational table
-        ArrayList<Attribute> relationalAtts = new ArrayList<>();
-        int numAttributes = shapeDesc1.attribute(0).relation().numAttributes() +
-                shapeDesc2.attribute(0).relation().numAttributes();
-        // Add the original elements
-        for (int i = 0; i < numAttributes; i++)
-            relationalAtts.add(new Attribute("Compound_element_" + i));
-        // Create the relational table
-        Instances relationTable = new Instances("Compound_Elements", relationalAtts,
-                                                shapeDesc1.attribute(0).relation().numInstances());
-        Instances relation = createRelationalData(shapeDesc1,shapeDesc2,relationTable);
-        combinedInst.setDataset(this.compoundDataset);
-        int index = combinedInst.attribute(0).addRelation(relation);
-        combinedInst.setValue(0, index);
-        //Add the class value.
-        combinedInst.setValue(1, shapeDesc1.classValue());
-        return combinedInst;
+        return descriptors;
     }
 
     @Override
@@ -322,8 +347,12 @@ public class ShapeDTW_1NN extends EnhancedAbstractClassifier {
         // Record the build time.
         long buildTime = System.nanoTime();
         // Train the classifier
-        Instances transformedData = this.preprocessData(trainInst);
-        this.nnDtwSubsequences.buildClassifier(transformedData);
+        this.trainDescriptors = new double[trainInst.numInstances()][][];
+        this.trainClassValues = new double[trainInst.numInstances()];
+        for(int i=0;i<trainInst.numInstances();i++) {
+            this.trainDescriptors[i] = describe(trainInst.get(i));
+            this.trainClassValues[i] = trainInst.get(i).classValue();
+        }
         // Store the timing results.
         buildTime = System.nanoTime() - buildTime ;
         this.trainResults.setBuildTime(buildTime);
@@ -332,14 +361,91 @@ public class ShapeDTW_1NN extends EnhancedAbstractClassifier {
 
     @Override
     public double [] distributionForInstance(Instance testInst) throws Exception {
-        Instance transformedData = this.preprocessData(testInst);
-        return this.nnDtwSubsequences.distributionForInstance(transformedData);
+        double [] distribution = new double[testInst.numClasses()];
+        distribution[(int) classifyInstance(testInst)] = 1;
+        return distribution;
     }
 
+    /**
+     * Find the training instance with the lowest DTW distance between shape descriptors. Ties are split at random as
+     * in NN_DTW_Subsequences.
+     *
+     * @param testInst
+     * @return
+     */
     @Override
     public double classifyInstance(Instance testInst) throws Exception {
-        Instance transformedData = this.preprocessData(testInst);
-        return this.nnDtwSubsequences.classifyInstance(transformedData);
+        double [][] descriptors = describe(testInst);
+        double bsfDistance = Double.POSITIVE_INFINITY;
+        ArrayList<Integer> closest = new ArrayList<>();
+        for(int i=0;i<trainDescriptors.length;i++) {
+            double dist = distance(descriptors,trainDescriptors[i],bsfDistance);
+            if(dist < bsfDistance) {
+                bsfDistance = dist;
+                closest.clear();
+                closest.add(i);
+            } else if(dist == bsfDistance) {
+                closest.add(i);
+            }
+        }
+        //If only one, return it.
+        if(closest.size() == 1) {
+            return trainClassValues[closest.get(0)];
+        }
+        //Else, choose a random one
+        Random rnd = new Random(0);
+        int index = rnd.nextInt(closest.size());
+        return trainClassValues[closest.get(index)];
+    }
+
+    /**
+     * DTW with no warping window between two series of shape descriptors, where the cost of matching two points is the
+     * squared euclidean distance between their descriptors. Abandons once every cell in a row of the cost matrix is
+     * beyond the limit.
+     *
+     * @param a
+     * @param b
+     * @param limit
+     * @return the distance, or positive infinity if it is beyond the limit.
+     */
+    public static double distance(double [][] a, double [][] b, double limit) {
+        int n = a.length;
+        int m = b.length;
+        double [] prev = new double[m];
+        double [] curr = new double[m];
+        curr[0] = squaredEuclidean(a[0],b[0]);
+        double min = curr[0];
+        for(int j=1;j<m;j++) {
+            curr[j] = curr[j-1] + squaredEuclidean(a[0],b[j]);
+            min = Math.min(min,curr[j]);
+        }
+        if(min > limit) {
+            return Double.POSITIVE_INFINITY;
+        }
+        for(int i=1;i<n;i++) {
+            double [] temp = prev;
+            prev = curr;
+            curr = temp;
+            curr[0] = prev[0] + squaredEuclidean(a[i],b[0]);
+            min = curr[0];
+            for(int j=1;j<m;j++) {
+                curr[j] = Math.min(curr[j-1],Math.min(prev[j],prev[j-1])) + squaredEuclidean(a[i],b[j]);
+                min = Math.min(min,curr[j]);
+            }
+            if(min > limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return curr[m-1];
+    }
+
+    private static double squaredEuclidean(double [] a, double [] b) {
+        double total = 0.0;
+        for(int i=0;i<a.length;i++) {
+            double diff = a[i] - b[i];
+            total += diff*diff;
+        }
+        return total;
     }
 
     /**
@@ -0,0 +1,233 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.distances;
+
+import tsml.data_containers.PairwiseMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * Distances between the series of two sets, the rows and the columns. Between a set and itself under a symmetric
+ * distance measure only the lower triangle is stored, otherwise every row and column. The values are held in a
+ * PairwiseMatrix, on the heap or for matrices beyond the heap in a memory mapped file.
+ * <p>
+ * The matrix is divided into square tiles, the unit of work of the DistanceMatrixEngine. Completed tiles are
+ * recorded, so a partially computed matrix can be serialised as a checkpoint and the remaining tiles computed after
+ * it is loaded. A mapped matrix serialises the path of its file rather than its values, so the file is left in place.
+ */
+public class DistanceMatrix implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private final int numRows;
+    private final int numCols;
+    private final boolean symmetric;
+    private final int tileSize;
+    private final PairwiseMatrix storage;
+    // guarded by this
+    private transient BitSet completeTiles;
+    private transient int numCompleteTiles;
+
+    /**
+     * @param numRows number of rows
+     * @param numCols number of columns, equal to the rows if symmetric
+     * @param symmetric whether the rows and columns are the same series under a symmetric distance measure
+     * @param tileSize number of rows and columns in each tile
+     * @param file file to memory map the matrix to, or null to hold it on the heap. The file is created or
+     *             overwritten.
+     * @throws IOException if the file cannot be mapped
+     */
+    public DistanceMatrix(int numRows, int numCols, boolean symmetric, int tileSize, File file) throws IOException {
+        if(numRows < 0 || numCols < 0) {
+            throw new IllegalArgumentException("negative dimensions: " + numRows + " x " + numCols);
+        }
+        if(symmetric && numRows != numCols) {
+            throw new IllegalArgumentException("symmetric matrix must be square: " + numRows + " x " + numCols);
+        }
+        if(tileSize < 1) {
+            throw new IllegalArgumentException("tile size must be positive: " + tileSize);
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.symmetric = symmetric;
+        this.tileSize = tileSize;
+        if(file == null) {
+            storage = symmetric ? new PairwiseMatrix(numRows) : new PairwiseMatrix(numRows, numCols);
+        } else {
+            storage = symmetric ? new PairwiseMatrix(numRows, file) : new PairwiseMatrix(numRows, numCols, file);
+        }
+        completeTiles = new BitSet(numTiles());
+    }
+
+    public static DistanceMatrix symmetric(int size) {
+        try {
+            return new DistanceMatrix(size, size, true, DEFAULT_TILE_SIZE, null);
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static DistanceMatrix symmetric(int size, File file) throws IOException {
+        return new DistanceMatrix(size, size, true, DEFAULT_TILE_SIZE, file);
+    }
+
+    public static DistanceMatrix rectangular(int numRows, int numCols) {
+        try {
+            return new DistanceMatrix(numRows, numCols, false, DEFAULT_TILE_SIZE, null);
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static DistanceMatrix rectangular(int numRows, int numCols, File file) throws IOException {
+        return new DistanceMatrix(numRows, numCols, false, DEFAULT_TILE_SIZE, file);
+    }
+
+    /**
+     * @return number of stored entries
+     */
+    public long numEntries() {
+        return storage.numEntries();
+    }
+
+    /**
+     * @return the distance between row i and column j. The diagonal of a symmetric matrix is 0.
+     */
+    public double get(int i, int j) {
+        if(symmetric && i == j) {
+            return 0;
+        }
+        return storage.get(i, j);
+    }
+
+    /**
+     * Sets the distance between row i and column j, which for a symmetric matrix is also that between row j and
+     * column i.
+     */
+    public void set(int i, int j, double distance) {
+        if(symmetric && i == j) {
+            throw new IllegalArgumentException("the diagonal of a symmetric matrix is always 0: " + i);
+        }
+        storage.set(i, j, distance);
+    }
+
+    /**
+     * @param i row index
+     * @param row array of at least getNumCols() elements to write the distances of the row to
+     * @return the row array
+     */
+    public double[] getRow(int i, double[] row) {
+        for(int j = 0; j < numCols; j++) {
+            row[j] = get(i, j);
+        }
+        return row;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return the mapped file, or null if held on the heap
+     */
+    public File getFile() {
+        return storage.getFile();
+    }
+
+    public int numTileRows() {
+        return (numRows + tileSize - 1) / tileSize;
+    }
+
+    public int numTileCols() {
+        return (numCols + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * @return number of tiles, which for a symmetric matrix are those on or below the diagonal
+     */
+    public int numTiles() {
+        final int numTileRows = numTileRows();
+        return symmetric ? numTileRows * (numTileRows + 1) / 2 : numTileRows * numTileCols();
+    }
+
+    /**
+     * @param tileRow row of the tile, covering rows from tileRow * getTileSize()
+     * @param tileCol column of the tile, no more than tileRow if symmetric
+     * @return index of the tile
+     */
+    public int tileIndex(int tileRow, int tileCol) {
+        return symmetric ? tileRow * (tileRow + 1) / 2 + tileCol : tileRow * numTileCols() + tileCol;
+    }
+
+    public synchronized boolean isTileComplete(int tileIndex) {
+        return completeTiles.get(tileIndex);
+    }
+
+    /**
+     * Records that every distance of a tile has been set. The distances must be set before, as a checkpoint taken
+     * afterwards includes them.
+     */
+    public synchronized void setTileComplete(int tileIndex) {
+        if(!completeTiles.get(tileIndex)) {
+            completeTiles.set(tileIndex);
+            numCompleteTiles++;
+        }
+    }
+
+    public synchronized int numCompleteTiles() {
+        return numCompleteTiles;
+    }
+
+    public synchronized boolean isComplete() {
+        return numCompleteTiles == numTiles();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // tiles completed after the snapshot may be partially written, they are recomputed when resumed
+        final BitSet complete;
+        synchronized(this) {
+            complete = (BitSet) completeTiles.clone();
+        }
+        out.defaultWriteObject();
+        out.writeObject(complete);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        completeTiles = (BitSet) in.readObject();
+        numCompleteTiles = completeTiles.cardinality();
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.distances;
+
+import tsml.classifiers.distance_based.utils.system.copy.CopierUtils;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Computes the pairwise distances of a DistanceMatrix, between a set of series and itself (train x train) or between
+ * two sets (test x train). The matrix is computed tile by tile, so each tile compares a few rows to a few columns
+ * while they are in cache, and with several threads the tiles are shared out by a fork join pool. Distance measures
+ * keep working state, so each thread uses its own copy.
+ * <p>
+ * If only the nearest neighbours of each row are needed, e.g. for a knn, the distances can be early abandoned beyond
+ * the k-th smallest distance found so far in the row. Only the k nearest distances of each row, and any ties, are then
+ * exact, the others may be positive infinity.
+ * <p>
+ * Tiles already complete in the matrix are skipped, so a matrix loaded from a checkpoint is resumed where it stopped.
+ * The checkpointer is called between tiles, or periodically with several threads, to save the matrix as it fills.
+ */
+public class DistanceMatrixEngine {
+
+    /**
+     * Saves a checkpoint of a partially computed matrix, if due
+     */
+    public interface Checkpointer {
+        void checkpoint() throws Exception;
+    }
+
+    // how often the checkpointer is called while the threads fill the matrix
+    private static final long CHECKPOINT_POLL_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final DistanceMeasure distanceMeasure;
+    private int numThreads = 1;
+    private int numNeighbours = 0;
+    private Checkpointer checkpointer;
+
+    public DistanceMatrixEngine(DistanceMeasure distanceMeasure) {
+        this.distanceMeasure = distanceMeasure;
+    }
+
+    public DistanceMeasure getDistanceMeasure() {
+        return distanceMeasure;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads number of threads, 1 or less to compute on the calling thread with the distance measure itself
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getNumNeighbours() {
+        return numNeighbours;
+    }
+
+    /**
+     * @param numNeighbours number of nearest distances in each row which must be exact, or 0 for every distance
+     */
+    public void setNumNeighbours(int numNeighbours) {
+        this.numNeighbours = numNeighbours;
+    }
+
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    /**
+     * @param data the series
+     * @return a new matrix on the heap of the distances between the series, symmetric if the distance measure is
+     */
+    public DistanceMatrix newMatrix(TimeSeriesInstances data) {
+        final int size = data.numInstances();
+        return distanceMeasure.isSymmetric() ? DistanceMatrix.symmetric(size) : DistanceMatrix.rectangular(size, size);
+    }
+
+    /**
+     * Computes the distances between the series of data, excluding each series with itself
+     *
+     * @param data the series
+     * @return the distance matrix
+     * @throws Exception if a checkpoint cannot be saved
+     */
+    public DistanceMatrix compute(TimeSeriesInstances data) throws Exception {
+        final DistanceMatrix matrix = newMatrix(data);
+        compute(matrix, data, data);
+        return matrix;
+    }
+
+    /**
+     * Computes the distances between a set of series and another
+     *
+     * @param rows the series of the rows, e.g. the test data
+     * @param cols the series of the columns, e.g. the train data
+     * @return the distance matrix
+     * @throws Exception if a checkpoint cannot be saved
+     */
+    public DistanceMatrix compute(TimeSeriesInstances rows, TimeSeriesInstances cols) throws Exception {
+        final DistanceMatrix matrix = DistanceMatrix.rectangular(rows.numInstances(), cols.numInstances());
+        compute(matrix, rows, cols);
+        return matrix;
+    }
+
+    /**
+     * Computes the incomplete tiles of a matrix. If rows and cols are the same object the distance of each series to
+     * itself is not computed and is not one of its nearest neighbours.
+     *
+     * @param matrix the matrix, symmetric only if rows and cols are the same and the distance measure is symmetric
+     * @param rows the series of the rows
+     * @param cols the series of the columns
+     * @throws Exception if a checkpoint cannot be saved
+     */
+    public void compute(DistanceMatrix matrix, TimeSeriesInstances rows, TimeSeriesInstances cols) throws Exception {
+        if(matrix.getNumRows() != rows.numInstances() || matrix.getNumCols() != cols.numInstances()) {
+            throw new IllegalArgumentException("matrix of " + matrix.getNumRows() + " x " + matrix.getNumCols()
+                                                       + " does not match data of " + rows.numInstances() + " x "
+                                                       + cols.numInstances());
+        }
+        if(matrix.isSymmetric() && (rows != cols || !distanceMeasure.isSymmetric())) {
+            throw new IllegalArgumentException("symmetric matrix requires the same rows and columns and a symmetric "
+                                                       + "distance measure");
+        }
+        final Fill fill = new Fill(matrix, rows, cols);
+        if(fill.numTiles == 0) {
+            return;
+        }
+        if(numThreads <= 1 || fill.numTiles == 1) {
+            for(int t = 0; t < fill.numTiles; t++) {
+                fill.computeTile(t, distanceMeasure);
+                if(checkpointer != null) {
+                    checkpointer.checkpoint();
+                }
+            }
+            return;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            final ForkJoinTask<Void> task = pool.submit(new TileTask(fill, 0, fill.numTiles));
+            while(true) {
+                try {
+                    task.get(CHECKPOINT_POLL_INTERVAL, TimeUnit.NANOSECONDS);
+                    break;
+                } catch(TimeoutException e) {
+                    if(checkpointer != null) {
+                        checkpointer.checkpoint();
+                    }
+                }
+            }
+        } catch(ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if(cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // the incomplete tiles of a matrix and the nearest distances of its rows
+    private class Fill {
+        private final DistanceMatrix matrix;
+        private final TimeSeriesInstances rows;
+        private final TimeSeriesInstances cols;
+        private final boolean excludeDiagonal;
+        private final int[] tileRows;
+        private final int[] tileCols;
+        private final int numTiles;
+        private final Nearest[] nearest;
+        private final ThreadLocal<DistanceMeasure> distanceMeasures =
+                ThreadLocal.withInitial(() -> CopierUtils.deepCopy(distanceMeasure));
+
+        private Fill(DistanceMatrix matrix, TimeSeriesInstances rows, TimeSeriesInstances cols) {
+            this.matrix = matrix;
+            this.rows = rows;
+            this.cols = cols;
+            excludeDiagonal = rows == cols;
+            tileRows = new int[matrix.numTiles()];
+            tileCols = new int[matrix.numTiles()];
+            nearest = numNeighbours > 0 ? new Nearest[rows.numInstances()] : null;
+            if(nearest != null) {
+                for(int i = 0; i < nearest.length; i++) {
+                    nearest[i] = new Nearest(numNeighbours);
+                }
+            }
+            // tiles in row major order, so the nearest distances of a row are found from its first tiles onwards
+            int n = 0;
+            for(int r = 0; r < matrix.numTileRows(); r++) {
+                final int end = matrix.isSymmetric() ? r + 1 : matrix.numTileCols();
+                for(int c = 0; c < end; c++) {
+                    if(matrix.isTileComplete(matrix.tileIndex(r, c))) {
+                        if(nearest != null) {
+                            // resume the nearest distances from the checkpointed tile
+                            forEachEntry(r, c, (i, j) -> offer(i, j, matrix.get(i, j)));
+                        }
+                    } else {
+                        tileRows[n] = r;
+                        tileCols[n] = c;
+                        n++;
+                    }
+                }
+            }
+            numTiles = n;
+        }
+
+        private void forEachEntry(int tileRow, int tileCol, Entry entry) {
+            final int tileSize = matrix.getTileSize();
+            final int rowStart = tileRow * tileSize;
+            final int rowEnd = Math.min(matrix.getNumRows(), rowStart + tileSize);
+            final int colStart = tileCol * tileSize;
+            final int colEnd = Math.min(matrix.getNumCols(), colStart + tileSize);
+            for(int i = rowStart; i < rowEnd; i++) {
+                // a symmetric matrix only holds the lower triangle
+                final int end = matrix.isSymmetric() ? Math.min(colEnd, i) : colEnd;
+                for(int j = colStart; j < end; j++) {
+                    if(!(excludeDiagonal && i == j)) {
+                        entry.apply(i, j);
+                    }
+                }
+            }
+        }
+
+        private void offer(int i, int j, double distance) {
+            nearest[i].offer(distance);
+            if(matrix.isSymmetric()) {
+                nearest[j].offer(distance);
+            }
+        }
+
+        private void computeTile(int t, DistanceMeasure distanceMeasure) {
+            forEachEntry(tileRows[t], tileCols[t], (i, j) -> {
+                double limit = Double.POSITIVE_INFINITY;
+                if(nearest != null) {
+                    limit = nearest[i].limit;
+                    if(matrix.isSymmetric()) {
+                        // the distance is shared by both rows so must be exact within the limit of either
+                        limit = Math.max(limit, nearest[j].limit);
+                    }
+                }
+                final TimeSeriesInstance a = rows.get(i);
+                final double distance = distanceMeasure.distance(a, cols.get(j), limit);
+                matrix.set(i, j, distance);
+                if(nearest != null) {
+                    offer(i, j, distance);
+                }
+            });
+            matrix.setTileComplete(matrix.tileIndex(tileRows[t], tileCols[t]));
+        }
+    }
+
+    private interface Entry {
+        void apply(int i, int j);
+    }
+
+    // the k smallest distances offered to a row, the largest of which is the limit for early abandoning
+    private static class Nearest {
+        private final double[] distances;
+        private volatile double limit = Double.POSITIVE_INFINITY;
+
+        private Nearest(int k) {
+            distances = new double[k];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        }
+
+        private synchronized void offer(double distance) {
+            int i = distances.length - 1;
+            if(distance >= distances[i]) {
+                return;
+            }
+            while(i > 0 && distances[i - 1] > distance) {
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            distances[i] = distance;
+            limit = distances[distances.length - 1];
+        }
+    }
+
+    // computes a range of tiles, split in half until a single tile is left
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Fill fill;
+        private final int start;
+        private final int end;
+
+        private TileTask(Fill fill, int start, int end) {
+            this.fill = fill;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override protected void compute() {
+            if(end - start == 1) {
+                fill.computeTile(start, fill.distanceMeasures.get());
+            } else {
+                final int mid = (start + end) >>> 1;
+                invokeAll(new TileTask(fill, start, mid), new TileTask(fill, mid, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.distances;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.utils.system.copy.CopierUtils;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DistanceMatrixTest {
+
+    private TimeSeriesInstances train;
+    private TimeSeriesInstances test;
+    private DTWDistance dtw;
+
+    private static TimeSeriesInstances data(int numInstances, Random random) {
+        final double[][][] values = new double[numInstances][1][12];
+        final int[] labels = new int[numInstances];
+        for(int i = 0; i < numInstances; i++) {
+            for(int j = 0; j < values[i][0].length; j++) {
+                values[i][0][j] = random.nextGaussian();
+            }
+            labels[i] = i % 2;
+        }
+        return new TimeSeriesInstances(values, labels, new String[] {"a", "b"});
+    }
+
+    @Before
+    public void before() {
+        final Random random = new Random(0);
+        train = data(23, random);
+        test = data(10, random);
+        dtw = new DTWDistance();
+        dtw.setWindow(0.5);
+    }
+
+    @Test
+    public void testSymmetricMatchesDistance() throws Exception {
+        final DistanceMatrixEngine engine = new DistanceMatrixEngine(dtw);
+        engine.setNumThreads(3);
+        final DistanceMatrix matrix = new DistanceMatrix(train.numInstances(), train.numInstances(), true, 4, null);
+        engine.compute(matrix, train, train);
+        Assert.assertTrue(matrix.isComplete());
+        for(int i = 0; i < train.numInstances(); i++) {
+            Assert.assertEquals(0, matrix.get(i, i), 0);
+            for(int j = 0; j < i; j++) {
+                final double expected = dtw.distance(train.get(i), train.get(j));
+                Assert.assertEquals(expected, matrix.get(i, j), 0);
+                Assert.assertEquals(expected, matrix.get(j, i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testRectangularMatchesDistance() throws Exception {
+        final DistanceMatrixEngine engine = new DistanceMatrixEngine(dtw);
+        engine.setNumThreads(2);
+        final DistanceMatrix matrix = new DistanceMatrix(test.numInstances(), train.numInstances(), false, 3, null);
+        engine.compute(matrix, test, train);
+        for(int i = 0; i < test.numInstances(); i++) {
+            for(int j = 0; j < train.numInstances(); j++) {
+                Assert.assertEquals(dtw.distance(test.get(i), train.get(j)), matrix.get(i, j), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testEarlyAbandonKeepsNearestExact() throws Exception {
+        final int k = 3;
+        final DistanceMatrixEngine engine = new DistanceMatrixEngine(dtw);
+        engine.setNumNeighbours(k);
+        final DistanceMatrix exact = new DistanceMatrixEngine(dtw).compute(train);
+        final DistanceMatrix abandoned = engine.compute(train);
+        final double[] expected = new double[train.numInstances()];
+        final double[] actual = new double[train.numInstances()];
+        for(int i = 0; i < train.numInstances(); i++) {
+            exact.getRow(i, expected);
+            abandoned.getRow(i, actual);
+            // exclude the series itself
+            expected[i] = actual[i] = Double.POSITIVE_INFINITY;
+            Arrays.sort(expected);
+            Arrays.sort(actual);
+            for(int j = 0; j < k; j++) {
+                Assert.assertEquals(expected[j], actual[j], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpointInFile() throws Exception {
+        final File file = File.createTempFile("distances", ".bin");
+        file.deleteOnExit();
+        final DistanceMatrix matrix = new DistanceMatrix(train.numInstances(), train.numInstances(), true, 5, file);
+        final DistanceMatrixEngine engine = new DistanceMatrixEngine(dtw);
+        final byte[][] checkpoint = new byte[1][];
+        engine.setCheckpointer(() -> {
+            if(matrix.numCompleteTiles() == 4) {
+                checkpoint[0] = CopierUtils.serialise(matrix);
+                throw new InterruptedException("stop after checkpoint");
+            }
+        });
+        try {
+            engine.compute(matrix, train, train);
+            Assert.fail("expected the computation to stop");
+        } catch(InterruptedException ignored) {}
+        Assert.assertFalse(matrix.isComplete());
+
+        final DistanceMatrix resumed = CopierUtils.deserialise(checkpoint[0]);
+        Assert.assertEquals(4, resumed.numCompleteTiles());
+        engine.setCheckpointer(null);
+        engine.compute(resumed, train, train);
+        Assert.assertTrue(resumed.isComplete());
+        final DistanceMatrix expected = new DistanceMatrixEngine(dtw).compute(train);
+        for(int i = 0; i < train.numInstances(); i++) {
+            for(int j = 0; j < train.numInstances(); j++) {
+                Assert.assertEquals(expected.get(i, j), resumed.get(i, j), 0);
+            }
+        }
+    }
+}
@@ -45,6 +45,17 @@ public interface DistanceMeasure extends Serializable, ParamHandler {
         return true;
     }
 
+    // whether the distance measure is a metric, i.e. symmetric and obeying the triangle inequality, so the distances
+    // of two series to a third bound the distance between them
+    default boolean isMetric() {
+        return false;
+    }
+
+    // whether the square root of the distance is a metric, e.g. the squared euclidean distance
+    default boolean isSquaredMetric() {
+        return false;
+    }
+
     default double distance(final Instance a, final Instance b) {
         return distance(a, b, Double.POSITIVE_INFINITY);
     }
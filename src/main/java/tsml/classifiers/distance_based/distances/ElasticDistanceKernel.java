@@ -0,0 +1,93 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.distances;
+
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.utils.system.copy.CopierUtils;
+import weka.classifiers.functions.supportVector.PrecomputedKernel;
+import weka.core.Instances;
+
+/**
+ * Kernel on a distance measure, K(a, b) = exp(-gamma * d(a, b)), for use with SMO or LibSVM
+ * (LibSVM.setPrecomputedKernel). With an elastic distance such as DTW, MSM or TWED the kernel is not guaranteed to
+ * be positive semi-definite, but works well in practice.
+ * <p>
+ * The distances between training instances are computed once, in parallel if setNumThreads is used, so gamma and
+ * the SVM parameters can be tuned without recomputing them. The train data should be passed to the SVM unfiltered,
+ * e.g. SMO with setFilterType(new SelectedTag(SMO.FILTER_NONE, SMO.TAGS_FILTER)), so the distances are between the
+ * series themselves.
+ */
+public class ElasticDistanceKernel extends PrecomputedKernel {
+
+    private static final long serialVersionUID = 1L;
+
+    private DistanceMeasure distanceMeasure;
+    private double gamma = 1;
+
+    public ElasticDistanceKernel() {
+        this(new DTWDistance());
+    }
+
+    public ElasticDistanceKernel(DistanceMeasure distanceMeasure) {
+        setDistanceMeasure(distanceMeasure);
+    }
+
+    /**
+     * Sets the distance measure, discarding any precomputed distances. Changing the parameters of the measure itself
+     * should be followed by clearGramMatrix.
+     */
+    public void setDistanceMeasure(DistanceMeasure distanceMeasure) {
+        this.distanceMeasure = distanceMeasure;
+        clearGramMatrix();
+    }
+
+    public DistanceMeasure getDistanceMeasure() {
+        return distanceMeasure;
+    }
+
+    public void setGamma(double gamma) {
+        this.gamma = gamma;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    @Override public String globalInfo() {
+        return "Kernel on a distance measure, K(a, b) = exp(-gamma * d(a, b)), with the train distances precomputed.";
+    }
+
+    @Override public void precompute(Instances data) throws Exception {
+        distanceMeasure.buildDistanceMeasure(data);
+        super.precompute(data);
+    }
+
+    @Override protected PairFunction newPairFunction() {
+        // distance measures keep working state, so each thread has its own copy
+        final DistanceMeasure copy = CopierUtils.deepCopy(distanceMeasure);
+        return copy::distance;
+    }
+
+    @Override protected double kernel(double distance) {
+        return Math.exp(-gamma * distance);
+    }
+
+    @Override public String toString() {
+        return "ElasticDistanceKernel: K(a, b) = exp(-" + gamma + " * " + distanceMeasure.getName() + "(a, b))";
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.classifiers.distance_based.distances;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.data_containers.PairwiseMatrix;
+import utilities.InstanceTools;
+import weka.core.Instances;
+
+import java.io.File;
+import java.util.Random;
+
+public class ElasticDistanceKernelTest {
+
+    private Instances instances;
+    private DTWDistance dtw;
+
+    @Before
+    public void before() {
+        final Random random = new Random(0);
+        final double[][] data = new double[12][9];
+        for(int i = 0; i < data.length; i++) {
+            for(int j = 0; j < data[i].length - 1; j++) {
+                data[i][j] = random.nextGaussian();
+            }
+            data[i][data[i].length - 1] = i % 2;
+        }
+        instances = InstanceTools.toWekaInstancesWithClass(data);
+        dtw = new DTWDistance();
+        dtw.setWindow(0.5);
+    }
+
+    @Test
+    public void testKernelMatchesDistance() throws Exception {
+        final ElasticDistanceKernel kernel = new ElasticDistanceKernel(dtw);
+        kernel.setGamma(0.1);
+        kernel.setNumThreads(3);
+        kernel.buildKernel(instances);
+        for(int i = 0; i < instances.numInstances(); i++) {
+            for(int j = 0; j < instances.numInstances(); j++) {
+                final double expected = Math.exp(-0.1 * dtw.distance(instances.get(i), instances.get(j)));
+                Assert.assertEquals(expected, kernel.eval(i, j, instances.get(i)), 1e-12);
+                Assert.assertEquals(expected, kernel.eval(-1, j, instances.get(i)), 1e-12);
+            }
+        }
+        Assert.assertEquals(instances.numInstances() * instances.numInstances(), kernel.numCacheHits());
+    }
+
+    @Test
+    public void testCopiesShareTheMatrixForSubsets() throws Exception {
+        final ElasticDistanceKernel kernel = new ElasticDistanceKernel(dtw);
+        kernel.precompute(instances);
+        final ElasticDistanceKernel copy = (ElasticDistanceKernel) kernel.copy();
+        final Instances subset = new Instances(instances, 0);
+        for(int i = instances.numInstances() - 1; i >= 0; i -= 2) {
+            subset.add(instances.get(i));
+        }
+        copy.buildKernel(subset);
+        Assert.assertSame(kernel.getGramMatrix(), copy.getGramMatrix());
+        for(int i = 0; i < subset.numInstances(); i++) {
+            for(int j = 0; j < subset.numInstances(); j++) {
+                Assert.assertEquals(Math.exp(-dtw.distance(subset.get(i), subset.get(j))),
+                        copy.eval(i, j, subset.get(i)), 1e-12);
+            }
+        }
+        Assert.assertEquals(0, copy.numEvals());
+    }
+
+    @Test
+    public void testMappedMatrixMatchesHeap() throws Exception {
+        final File file = File.createTempFile("gram", ".bin");
+        file.deleteOnExit();
+        final PairwiseMatrix heap = new PairwiseMatrix(20);
+        final PairwiseMatrix mapped = new PairwiseMatrix(20, file);
+        heap.fill(() -> (i, j) -> i * 31 + j, 1);
+        mapped.fill(() -> (i, j) -> i * 31 + j, 4);
+        for(int i = 0; i < 20; i++) {
+            for(int j = 0; j < 20; j++) {
+                Assert.assertEquals(heap.get(i, j), mapped.get(i, j), 0);
+                Assert.assertEquals(heap.get(i, j), heap.get(j, i), 0);
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ import tsml.data_containers.TimeSeriesInstances;
 import utilities.InstanceTools;
 import weka.core.Instances;
 
+import java.util.Random;
+
 import static tsml.classifiers.distance_based.distances.dtw.spaces.DDTWDistanceSpace.newDDTWDistance;
 
 /**
@@ -115,6 +117,31 @@ public class DTWDistanceTest {
         Assert.assertEquals(distance, otherDistance, 0d);
     }
     
+    @Test
+    public void testEnvelopeLowerBound() {
+        final Random random = new Random(0);
+        final double[][][] values = new double[20][2][16];
+        for(double[][] series : values) {
+            for(double[] dimension : series) {
+                for(int i = 0; i < dimension.length; i++) {
+                    dimension[i] = random.nextGaussian();
+                }
+            }
+        }
+        final TimeSeriesInstances tsinsts = new TimeSeriesInstances(values, new double[values.length]);
+        for(double window : new double[] {0, 0.1, 0.3, 1}) {
+            final DTWDistance dtw = new DTWDistance();
+            dtw.setWindow(window);
+            for(int i = 0; i < tsinsts.numInstances(); i++) {
+                final DTWEnvelope envelope = new DTWEnvelope(tsinsts.get(i), window);
+                for(int j = 0; j < tsinsts.numInstances(); j++) {
+                    final double distance = dtw.distance(tsinsts.get(j), tsinsts.get(i));
+                    Assert.assertTrue(envelope.lowerBound(tsinsts.get(j), Double.POSITIVE_INFINITY) <= distance + 1e-9);
+                }
+            }
+        }
+    }
+    
     public static class DTWParamTest extends ParamHandlerTest {
 
         @Override public Object getHandler() {
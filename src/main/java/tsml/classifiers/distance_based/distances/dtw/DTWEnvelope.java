@@ -0,0 +1,94 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.distances.dtw;
+
+import tsml.data_containers.TimeSeriesInstance;
+
+import java.io.Serializable;
+
+/**
+ * The LB_Keogh envelope of a series, the maximum and minimum of each dimension within the DTW window around each time
+ * point. The squared distance of a series of the same length to the envelope is a lower bound of its DTWDistance to
+ * the enveloped series, found in linear time, so comparisons which cannot beat a limit can be skipped before the
+ * quadratic distance is computed.
+ */
+public class DTWEnvelope implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int length;
+    private final double[][] upper;
+    private final double[][] lower;
+
+    /**
+     * @param series the series to envelope
+     * @param window the window of the DTWDistance, as a proportion of the series length
+     */
+    public DTWEnvelope(TimeSeriesInstance series, double window) {
+        length = series.getMaxLength();
+        final int numDimensions = series.getNumDimensions();
+        // for series of equal length DTWDistance warps each point at most this many points
+        final int radius = (int) Math.floor(window * length);
+        upper = new double[numDimensions][length];
+        lower = new double[numDimensions][length];
+        for(int d = 0; d < numDimensions; d++) {
+            final double[] values = series.get(d).toValueArray();
+            for(int i = 0; i < length; i++) {
+                final int start = Math.max(0, i - radius);
+                final int end = Math.min(length - 1, i + radius);
+                double max = Double.NEGATIVE_INFINITY;
+                double min = Double.POSITIVE_INFINITY;
+                for(int j = start; j <= end; j++) {
+                    max = Math.max(max, values[j]);
+                    min = Math.min(min, values[j]);
+                }
+                upper[d][i] = max;
+                lower[d][i] = min;
+            }
+        }
+    }
+
+    /**
+     * @param query a series
+     * @param limit the bound is abandoned once it exceeds the limit
+     * @return a lower bound of the DTWDistance between the query and the enveloped series, or 0 if they differ in
+     * length or dimensions
+     */
+    public double lowerBound(TimeSeriesInstance query, double limit) {
+        if(query.getMaxLength() != length || query.getNumDimensions() != upper.length) {
+            return 0;
+        }
+        double sum = 0;
+        for(int d = 0; d < upper.length; d++) {
+            final double[] u = upper[d];
+            final double[] l = lower[d];
+            final double[] values = query.get(d).toValueArray();
+            for(int i = 0; i < length; i++) {
+                final double value = values[i];
+                if(value > u[i]) {
+                    sum += (value - u[i]) * (value - u[i]);
+                } else if(value < l[i]) {
+                    sum += (value - l[i]) * (value - l[i]);
+                }
+            }
+            if(sum > limit) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+}
@@ -23,7 +23,12 @@ import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
 import tsml.data_containers.TimeSeriesInstance;
 
 public class EDistance extends BaseDistanceMeasure {
-    
+
+    // the distance is the sum of squared differences
+    @Override public boolean isSquaredMetric() {
+        return true;
+    }
+
     public double distance(final TimeSeriesInstance a, TimeSeriesInstance b, final double limit) {
         double sum = 0;
 
@@ -48,6 +48,11 @@ public class MSMDistance extends MatrixBasedDistanceMeasure {
         this.c = c;
     }
 
+    // MSM is a metric over univariate series of equal length for any non-negative cost
+    @Override public boolean isMetric() {
+        return c >= 0;
+    }
+
     /**
      * Find the cost for doing a move / split / merge for the univariate case.
      * @param newPoint
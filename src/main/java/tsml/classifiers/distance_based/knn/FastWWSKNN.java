@@ -0,0 +1,424 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+ 
+package tsml.classifiers.distance_based.knn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tsml.classifiers.MultiThreadable;
+import tsml.classifiers.TrainEstimateTimeable;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.utils.classifiers.BaseClassifier;
+import tsml.classifiers.distance_based.utils.classifiers.checkpointing.CheckpointConfig;
+import tsml.classifiers.distance_based.utils.classifiers.checkpointing.Checkpointed;
+import tsml.classifiers.distance_based.utils.classifiers.contracting.ContractedTrain;
+import tsml.classifiers.distance_based.utils.classifiers.results.ResultUtils;
+import tsml.classifiers.distance_based.utils.collections.CollectionUtils;
+import tsml.classifiers.distance_based.utils.collections.params.ParamSet;
+import tsml.classifiers.distance_based.utils.system.timing.StopWatch;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import evaluation.storage.ClassifierResults;
+import experiments.data.DatasetLoading;
+import utilities.ArrayUtilities;
+import utilities.ClassifierTools;
+
+import static tsml.classifiers.distance_based.distances.dtw.DTW.WINDOW_FLAG;
+
+/**
+ * 1NN DTW with the warping window tuned by leave one out cross validation, in the style of FastWWS (Tan et al.,
+ * Efficient search of the best warping window for Dynamic Time Warping, SDM 2018).
+ * <p>
+ * The windows are those of DTWDistanceParams plus the full window, searched from largest to smallest. Distances are cached per pair of
+ * train instances along with the smallest window their warping path fits inside, so a distance is only recomputed once
+ * the window cuts through its path. A cached distance that no longer fits, or one abandoned early, is a lower bound
+ * for the smaller windows and prunes the pair outright when it exceeds the nearest neighbour distance found so far.
+ * Ties for the nearest neighbour are kept, so the train estimate for each window is the same as a KNN with k=1 over
+ * DTWDistance at that window. The best scoring window is kept, preferring smaller windows when tied.
+ * <p>
+ * Each step evaluates one train instance at one window, so the search can be contracted and checkpointed. A contract
+ * cut short uses the best window fully evaluated so far.
+ * <p>
+ * The search shares distances between windows, so it cannot be a KNN, whose LOOCV searches over a single distance
+ * measure. Once the window is chosen, prediction is left to a 1NN KNN with DTWDistance at that window.
+ */
+public class FastWWSKNN extends BaseClassifier implements Checkpointed, ContractedTrain, TrainEstimateTimeable,
+                                                                 MultiThreadable {
+
+    public static void main(String[] args) throws Exception {
+        final int seed = 0;
+        final FastWWSKNN classifier = new FastWWSKNN();
+        classifier.setSeed(seed);
+        ClassifierTools.trainTestPrint(classifier, DatasetLoading.sampleGunPoint(seed), seed);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String NUM_WINDOWS_FLAG = "n";
+
+    // the windows searched are i / numWindows for i in [0, numWindows]
+    private int numWindows = 100;
+    private TimeSeriesInstances trainData;
+    // the distance measure at the best window
+    private DTWDistance distanceMeasure;
+    // 1NN over the distance measure at the best window, used for prediction
+    private KNN knn;
+    private int numThreads = 1;
+    
+    // per pair of train insts, the distance or a lower bound for it. The pairs are indexed by the lower triangle
+    private double[] pairDistances;
+    // per pair of train insts, the smallest window index the distance is exact for. Larger than the current window 
+    // index if the distance is only a lower bound
+    private int[] pairValidFrom;
+    
+    // progress through the search
+    private int windowIndex;
+    private int instIndex;
+    private double score;
+    private double[][] distributions;
+    private long[] predictionTimes;
+    
+    // the best window so far
+    private int bestWindowIndex;
+    private double bestScore;
+    private double[][] bestDistributions;
+    private long[] bestPredictionTimes;
+    
+    private final StopWatch runTimer = new StopWatch();
+    private final StopWatch evaluationTimer = new StopWatch();
+    // the max time taken to evaluate an inst at a window
+    private long longestStepTime;
+    private final CheckpointConfig checkpointConfig = new CheckpointConfig();
+    private long trainTimeLimit = -1;
+
+    public FastWWSKNN() {
+        super(true);
+    }
+
+    @Override public ParamSet getParams() {
+        return super.getParams().add(NUM_WINDOWS_FLAG, numWindows);
+    }
+
+    @Override public void setParams(final ParamSet params) throws Exception {
+        super.setParams(params);
+        setNumWindows(params.get(NUM_WINDOWS_FLAG, numWindows));
+    }
+
+    @Override public String getParameters() {
+        return super.getParameters() + "," + WINDOW_FLAG + "," + getWindow();
+    }
+
+    @Override public CheckpointConfig getCheckpointConfig() {
+        return checkpointConfig;
+    }
+
+    @Override public long getRunTime() {
+        return runTimer.elapsedTime();
+    }
+
+    @Override public long getTrainTime() {
+        return getRunTime() - getCheckpointingTime() - getTrainEstimateTime();
+    }
+
+    @Override public long getTrainEstimateTime() {
+        return evaluationTimer.elapsedTime();
+    }
+
+    @Override public long getTrainTimeLimit() {
+        return trainTimeLimit;
+    }
+
+    @Override public void setTrainTimeLimit(final long trainTimeLimit) {
+        this.trainTimeLimit = trainTimeLimit;
+    }
+
+    @Override public boolean isFullyBuilt() {
+        return windowIndex < 0;
+    }
+
+    @Override public void buildClassifier(final TimeSeriesInstances data) throws Exception {
+        final long timeStamp = System.nanoTime();
+        checkpointConfig.setLogger(getLogger());
+
+        if(isRebuild()) {
+            // attempt to load from a checkpoint, otherwise initialise classifier from scratch
+            if(!loadCheckpoint()) {
+                super.buildClassifier(data);
+                trainData = data;
+                final int numInstances = data.numInstances();
+                pairDistances = new double[numInstances * (numInstances - 1) / 2];
+                pairValidFrom = new int[pairDistances.length];
+                Arrays.fill(pairValidFrom, Integer.MAX_VALUE);
+                windowIndex = numWindows;
+                bestWindowIndex = -1;
+                bestScore = -1;
+                bestDistributions = null;
+                bestPredictionTimes = null;
+                startWindow();
+                longestStepTime = 0;
+                runTimer.reset();
+                evaluationTimer.reset();
+                checkpointConfig.resetCheckpointingTime();
+            }
+        }
+        // start from the same time point, no time missed while dealing with checkpoints
+        runTimer.start(timeStamp);
+
+        checkpointConfig.setLastCheckpointRunTime(getRunTime());
+        evaluationTimer.start();
+        boolean workDone = false;
+        while(!isFullyBuilt() && insideTrainTimeLimit(getRunTime() + longestStepTime)) {
+            final long stepTimeStamp = System.nanoTime();
+            evaluate(instIndex);
+            instIndex++;
+            if(instIndex == trainData.numInstances()) {
+                // all insts evaluated at this window
+                if(score >= bestScore) {
+                    bestScore = score;
+                    bestWindowIndex = windowIndex;
+                    bestDistributions = distributions;
+                    bestPredictionTimes = predictionTimes;
+                }
+                windowIndex--;
+                startWindow();
+            }
+            workDone = true;
+            longestStepTime = Math.max(longestStepTime, System.nanoTime() - stepTimeStamp);
+            saveCheckpoint();
+        }
+
+        if(workDone || trainResults.getPredClassVals() == null) {
+            generateTrainResults();
+        }
+        evaluationTimer.stop();
+        
+        runTimer.stop();
+        
+        if(workDone) {
+            forceSaveCheckpoint();
+        }
+        
+        ResultUtils.setInfo(trainResults, this, trainData);
+    }
+    
+    private void startWindow() {
+        instIndex = 0;
+        score = 0;
+        distributions = new double[trainData.numInstances()][];
+        predictionTimes = new long[trainData.numInstances()];
+    }
+    
+    private void generateTrainResults() throws Exception {
+        double[][] distributions = bestDistributions;
+        long[] predictionTimes = bestPredictionTimes;
+        int windowIndex = bestWindowIndex;
+        if(windowIndex < 0) {
+            // no window fully evaluated yet, so use what there is of the current window
+            distributions = this.distributions;
+            predictionTimes = this.predictionTimes;
+            windowIndex = this.windowIndex;
+        }
+        distanceMeasure = new DTWDistance();
+        distanceMeasure.setWindow(getWindow(windowIndex));
+        knn = new KNN();
+        knn.setDistanceMeasure(distanceMeasure);
+        knn.setK(1);
+        knn.setEstimateOwnPerformance(false);
+        knn.setSeed(getSeed());
+        knn.enableMultiThreading(numThreads);
+        knn.buildClassifier(trainData);
+        trainResults = new ClassifierResults();
+        for(int i = 0; i < trainData.numInstances(); i++) {
+            double[] distribution = distributions[i];
+            if(distribution == null) {
+                distribution = ArrayUtilities.uniformDistribution(trainData.numClasses());
+            }
+            final int prediction = CollectionUtils.bestIndex(ArrayUtilities.asList(distribution), getRandom());
+            final TimeSeriesInstance instance = trainData.get(i);
+            trainResults.addPrediction(instance.getLabelIndex(), distribution, prediction, predictionTimes[i], null);
+        }
+    }
+    
+    private double getWindow(int windowIndex) {
+        return (double) windowIndex / numWindows;
+    }
+    
+    private static int pairIndex(int i, int j) {
+        if(i < j) {
+            final int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return i * (i - 1) / 2 + j;
+    }
+
+    /**
+     * Find the nearest neighbours of a train inst at the current window, leaving that inst out
+     * @param i the index of the train inst
+     */
+    private void evaluate(int i) {
+        final long timeStamp = System.nanoTime();
+        final DTWDistance distanceMeasure = new DTWDistance();
+        distanceMeasure.setWindow(getWindow(windowIndex));
+        distanceMeasure.setRecordCostMatrix(true);
+        final TimeSeriesInstance inst = trainData.get(i);
+        final List<Integer> nearestNeighbourIndices = new ArrayList<>();
+        double limit = Double.POSITIVE_INFINITY;
+        for(int j = 0; j < trainData.numInstances(); j++) {
+            if(j == i) {
+                continue;
+            }
+            final int pairIndex = pairIndex(i, j);
+            double distance = pairDistances[pairIndex];
+            if(pairValidFrom[pairIndex] > windowIndex) {
+                // the distance is only a lower bound
+                if(distance > limit) {
+                    // cannot be a nearest neighbour
+                    continue;
+                }
+                final TimeSeriesInstance neighbour = trainData.get(j);
+                distance = distanceMeasure.distance(inst, neighbour, limit);
+                if(distance == Double.POSITIVE_INFINITY) {
+                    // abandoned, so the distance is beyond the limit for this and all smaller windows
+                    pairDistances[pairIndex] = limit;
+                    continue;
+                }
+                pairDistances[pairIndex] = distance;
+                pairValidFrom[pairIndex] = findValidFrom(inst, neighbour, distanceMeasure.costMatrix());
+            }
+            if(distance < limit) {
+                limit = distance;
+                nearestNeighbourIndices.clear();
+                nearestNeighbourIndices.add(j);
+            } else if(distance == limit) {
+                nearestNeighbourIndices.add(j);
+            }
+        }
+        // ties for the nearest neighbour get an equal share of the vote
+        final double[] distribution = new double[trainData.numClasses()];
+        for(Integer j : nearestNeighbourIndices) {
+            distribution[trainData.get(j).getLabelIndex()]++;
+        }
+        ArrayUtilities.normalise(distribution, true);
+        distributions[i] = distribution;
+        predictionTimes[i] = System.nanoTime() - timeStamp;
+        score += distribution[inst.getLabelIndex()];
+    }
+
+    /**
+     * Find the smallest window the warping path of a distance computed at the current window fits inside. The distance
+     * is the same for any window from there up to the current window.
+     * @param a the first inst passed to the distance measure
+     * @param b the second inst passed to the distance measure
+     * @param costMatrix the cost matrix recorded by the distance measure
+     * @return the smallest window index
+     */
+    private int findValidFrom(TimeSeriesInstance a, TimeSeriesInstance b, double[][] costMatrix) {
+        // the cost matrix has the longest series on the rows, as in DTWDistance
+        final int aLength = Math.max(a.getMaxLength(), b.getMaxLength());
+        final int bLength = Math.min(a.getMaxLength(), b.getMaxLength());
+        // trace the warping path back from the end
+        final int[] pathRows = new int[aLength + bLength];
+        final int[] pathCols = new int[pathRows.length];
+        int pathLength = 0;
+        int row = aLength - 1;
+        int col = bLength - 1;
+        pathRows[pathLength] = row;
+        pathCols[pathLength++] = col;
+        while(row > 0 || col > 0) {
+            if(row == 0) {
+                col--;
+            } else if(col == 0) {
+                row--;
+            } else {
+                final double diagonal = costMatrix[row - 1][col - 1];
+                final double top = costMatrix[row - 1][col];
+                final double left = costMatrix[row][col - 1];
+                if(diagonal <= top && diagonal <= left) {
+                    row--;
+                    col--;
+                } else if(top <= left) {
+                    row--;
+                } else {
+                    col--;
+                }
+            }
+            pathRows[pathLength] = row;
+            pathCols[pathLength++] = col;
+        }
+        // shrink the window until it cuts the path, using the same window bounds as DTWDistance. Series of length 1
+        // have a single cell, so the step is never used
+        final double step = aLength == 1 ? 0 : (double) (bLength - 1) / (aLength - 1);
+        int validFrom = windowIndex;
+        while(validFrom > 0) {
+            final double windowSize = getWindow(validFrom - 1) * bLength;
+            for(int k = 0; k < pathLength; k++) {
+                final double mid = pathRows[k] == 0 ? 0 : pathRows[k] * step;
+                final int start = Math.max(0, (int) Math.ceil(mid - windowSize));
+                final int end = Math.min(bLength - 1, (int) Math.floor(mid + windowSize));
+                if(pathCols[k] < start || pathCols[k] > end) {
+                    return validFrom;
+                }
+            }
+            validFrom--;
+        }
+        return validFrom;
+    }
+
+    @Override public double[] distributionForInstance(final TimeSeriesInstance testInst) throws Exception {
+        return knn.distributionForInstance(testInst);
+    }
+
+    @Override public double[][] distributionForInstances(final TimeSeriesInstances testData) throws Exception {
+        return knn.distributionForInstances(testData);
+    }
+
+    public long getTestTime() {
+        return knn.getTestTime();
+    }
+
+    @Override public void enableMultiThreading(final int numThreads) {
+        this.numThreads = numThreads;
+        if(knn != null) {
+            knn.enableMultiThreading(numThreads);
+        }
+    }
+
+    /**
+     * @return the best window found, or the window being searched if none have been fully evaluated yet
+     */
+    public double getWindow() {
+        return distanceMeasure == null ? -1 : distanceMeasure.getWindow();
+    }
+
+    public DTWDistance getDistanceMeasure() {
+        return distanceMeasure;
+    }
+
+    public int getNumWindows() {
+        return numWindows;
+    }
+
+    public void setNumWindows(final int numWindows) {
+        if(numWindows < 1) {
+            throw new IllegalArgumentException("number of windows must be at least 1: " + numWindows);
+        }
+        this.numWindows = numWindows;
+    }
+}
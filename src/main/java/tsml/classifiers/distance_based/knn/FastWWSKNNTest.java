@@ -0,0 +1,150 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.knn;
+
+import evaluation.storage.ClassifierResults;
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
+import utilities.ArrayUtilities;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+public class FastWWSKNNTest {
+
+    /**
+     * LOOCV of 1NN DTW at every window, computing every distance in full, checked against the window, LOOCV
+     * distributions and accuracy found by FastWWSKNN.
+     */
+    private static void assertMatchesExhaustiveSearch(TimeSeriesInstances train, int numWindows) throws Exception {
+        final int numInstances = train.numInstances();
+        int bestWindowIndex = -1;
+        double bestScore = -1;
+        double[][] bestDistributions = null;
+        for(int w = 0; w <= numWindows; w++) {
+            final DTWDistance dtw = new DTWDistance();
+            dtw.setWindow((double) w / numWindows);
+            final double[][] distributions = new double[numInstances][];
+            double score = 0;
+            for(int i = 0; i < numInstances; i++) {
+                double nearest = Double.POSITIVE_INFINITY;
+                final double[] distribution = new double[train.numClasses()];
+                for(int j = 0; j < numInstances; j++) {
+                    if(j == i) {
+                        continue;
+                    }
+                    final double distance = dtw.distance(train.get(i), train.get(j));
+                    if(distance < nearest) {
+                        nearest = distance;
+                        Arrays.fill(distribution, 0);
+                    }
+                    if(distance == nearest) {
+                        distribution[train.get(j).getLabelIndex()]++;
+                    }
+                }
+                ArrayUtilities.normalise(distribution, true);
+                distributions[i] = distribution;
+                score += distribution[train.get(i).getLabelIndex()];
+            }
+            // the smallest window wins ties
+            if(score > bestScore) {
+                bestScore = score;
+                bestWindowIndex = w;
+                bestDistributions = distributions;
+            }
+        }
+
+        final FastWWSKNN classifier = new FastWWSKNN();
+        classifier.setNumWindows(numWindows);
+        classifier.setSeed(0);
+        classifier.buildClassifier(train);
+        Assert.assertEquals((double) bestWindowIndex / numWindows, classifier.getWindow(), 0);
+
+        final ClassifierResults trainResults = classifier.getTrainResults();
+        int correct = 0;
+        for(int i = 0; i < numInstances; i++) {
+            Assert.assertArrayEquals(bestDistributions[i], trainResults.getProbabilityDistribution(i), 0);
+            if(trainResults.getPredClassValue(i) == train.get(i).getLabelIndex()) {
+                correct++;
+            }
+        }
+        Assert.assertEquals((double) correct / numInstances, trainResults.getAcc(), 0);
+        // ties are broken at random, so the accuracy is within the tied share of the expected score
+        Assert.assertEquals(bestScore / numInstances, trainResults.getAcc(), 0.1);
+    }
+
+    @Test
+    public void windowMatchesExhaustiveSearch() throws Exception {
+        assertMatchesExhaustiveSearch(Converter.fromArff(DatasetLoading.sampleItalyPowerDemand(0)[0]), 100);
+    }
+
+    @Test
+    public void windowMatchesExhaustiveSearchOnLongerSeries() throws Exception {
+        // a slice of the train data keeps the exhaustive search quick
+        final Instances train = DatasetLoading.sampleGunPoint(0)[0];
+        assertMatchesExhaustiveSearch(Converter.fromArff(new Instances(train, 0, 20)), 10);
+    }
+
+    @Test
+    public void searchesTheFullWindow() throws Exception {
+        // the series of each class have the same spike 4 steps apart, so only the full window matches them up
+        final TimeSeriesInstances train = new TimeSeriesInstances(new double[][][] {
+                {{0, 9, 0, 0, 0, 0, 0}}, {{0, 0, 0, 0, 0, 9, 0}}, {{0, -9, 0, 0, 0, 0, 0}}, {{0, 0, 0, 0, 0, -9, 0}}
+        }, new int[] {0, 0, 1, 1}, new String[] {"a", "b"});
+        final FastWWSKNN classifier = new FastWWSKNN();
+        classifier.setNumWindows(2);
+        classifier.buildClassifier(train);
+        Assert.assertEquals(1, classifier.getWindow(), 0);
+        Assert.assertEquals(1, classifier.getTrainResults().getAcc(), 0);
+    }
+
+    @Test
+    public void predictionsMatchKnn() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        final TimeSeriesInstances train = Converter.fromArff(data[0]);
+        final TimeSeriesInstances test = Converter.fromArff(data[1]);
+        final FastWWSKNN classifier = new FastWWSKNN();
+        classifier.setNumWindows(10);
+        classifier.buildClassifier(train);
+        final KNN knn = new KNN();
+        knn.setDistanceMeasure(classifier.getDistanceMeasure());
+        knn.setK(1);
+        knn.setEstimateOwnPerformance(false);
+        knn.buildClassifier(train);
+        final double[][] distributions = classifier.distributionForInstances(test);
+        for(int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals(knn.distributionForInstance(test.get(i)), distributions[i], 0);
+            Assert.assertArrayEquals(distributions[i], classifier.distributionForInstance(test.get(i)), 0);
+        }
+    }
+
+    @Test
+    public void buildsOnLengthOneSeries() throws Exception {
+        final TimeSeriesInstances train = new TimeSeriesInstances(new double[][][] {
+                {{1}}, {{2}}, {{8}}, {{9}}
+        }, new int[] {0, 0, 1, 1}, new String[] {"a", "b"});
+        final FastWWSKNN classifier = new FastWWSKNN();
+        classifier.setNumWindows(10);
+        classifier.buildClassifier(train);
+        Assert.assertEquals(0, classifier.getWindow(), 0);
+        Assert.assertEquals(1, classifier.getTrainResults().getAcc(), 0);
+    }
+}
@@ -23,7 +23,10 @@ import java.util.concurrent.TimeUnit;
 
 import evaluation.storage.ClassifierResults;
 import experiments.data.DatasetLoading;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainEstimateTimeable;
+import tsml.classifiers.distance_based.distances.DistanceMatrix;
+import tsml.classifiers.distance_based.distances.DistanceMatrixEngine;
 import tsml.classifiers.distance_based.distances.DistanceMeasure;
 import tsml.classifiers.distance_based.distances.ed.EDistance;
 import tsml.classifiers.distance_based.utils.classifiers.configs.Configs;
@@ -48,7 +51,7 @@ import utilities.ArrayUtilities;
 import utilities.ClassifierTools;
 
 public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, ContractedTrain, TrainEstimateTimeable,
-                                                         ContractedTest {
+                                                         ContractedTest, MultiThreadable {
 
     public static void main(String[] args) throws Exception {
         final int seed = 0;
@@ -135,6 +138,11 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
     private TimeSeriesInstances trainData;
     private List<Search> searches;
     private List<Integer> remainingSearchIndices;
+    // the train distances for loocv, computed up front when the whole neighbourhood is searched
+    private DistanceMatrix trainDistances;
+    // index of the train data for predictions, built on the first prediction
+    private NeighbourIndex neighbourIndex;
+    private boolean useNeighbourIndex = true;
     // will ensure loocv searches use at least this many neighbours. The limit may be exceeded if the distance measure
     // is symmetric and neighbours are produced as a by product from other searches
     private int neighbourhoodSizeLimit;
@@ -159,6 +167,9 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
     public static final String NEIGHBOURHOOD_SIZE_LIMIT_FLAG = "n";
     public static final String AUTO_K_FLAG = "a";
     
+    // number of threads used to compute distance matrices
+    private int numThreads = 1;
+    
     private final CheckpointConfig checkpointConfig = new CheckpointConfig();
     private long trainTimeLimit = -1;
     private long testTimeLimit = -1;
@@ -265,11 +276,19 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
                 neighbourhoodSize = 0;
                 trainData = data;
                 longestAddNeighbourTime = 0;
+                // resetting stops the run timer, so restart it from the same time point
                 runTimer.reset();
+                runTimer.start(timeStamp);
                 evaluationTimer.reset();
                 checkpointConfig.resetCheckpointingTime();
+                trainDistances = null;
+                neighbourIndex = null;
                 if(getEstimateOwnPerformance()) {
                     evaluationTimer.start();
+                    if(isFullNeighbourhood()) {
+                        // every distance is needed, so compute the matrix in tiles rather than per search
+                        trainDistances = newDistanceMatrixEngine(k).newMatrix(data);
+                    }
                     // init the searches for loocv
                     searches = new ArrayList<>();
                     remainingSearchIndices = new UnorderedArrayList<>();
@@ -300,8 +319,30 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         ResultUtils.setInfo(trainResults, this, trainData);
     }
     
+    // whether loocv examines every neighbour of every train instance, in no particular order
+    private boolean isFullNeighbourhood() {
+        return !hasTrainTimeLimit() && neighbourhoodSizeLimit < 0 && neighbourhoodSizeLimitProportional >= 1
+                       && !earlyPredictActive();
+    }
+    
+    // an engine for distances which only need to be exact for the given number of nearest neighbours
+    private DistanceMatrixEngine newDistanceMatrixEngine(final int numNeighbours) {
+        final DistanceMatrixEngine engine = new DistanceMatrixEngine(distanceMeasure);
+        engine.setNumThreads(numThreads);
+        if(earlyAbandonDistances) {
+            engine.setNumNeighbours(numNeighbours);
+        }
+        return engine;
+    }
+    
     private void estimatePerformance() throws Exception {
         evaluationTimer.start();
+        if(trainDistances != null && !trainDistances.isComplete()) {
+            // autoK has not picked a k yet, so keep the distances of the largest
+            final DistanceMatrixEngine engine = newDistanceMatrixEngine(k);
+            engine.setCheckpointer(this::saveCheckpoint);
+            engine.compute(trainDistances, trainData, trainData);
+        }
         // if neighbourhood is empty, then set workDone to true to regenerate the (not yet made) train results
         // otherwise, more neighbours must be added before the train results are regenerated
         boolean workDone = neighbourhoodSize == 0;
@@ -404,6 +445,11 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
     
     @Override public double[] distributionForInstance(final TimeSeriesInstance testInst) throws Exception {
         testTimer.resetAndStart();
+        if(isIndexedPrediction()) {
+            final double[] distribution = predictFromIndex(testInst);
+            testTimer.stop();
+            return distribution;
+        }
         final Search search = new Search(testInst);
         if(autoK) {
             search.setK(bestK);
@@ -418,6 +464,91 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         return search.predict();
     }
 
+    /**
+     * Find the class probabilities of a batch of test instances. Without a test time limit or early prediction every
+     * test instance is compared to every train instance, so rather than a randomised search per test instance the
+     * test x train distance matrix is computed by a DistanceMatrixEngine. If the neighbour index is used and
+     * multithreading is not enabled each test instance is instead queried against the index, which skips train
+     * instances that cannot be nearest neighbours. The index is not thread safe, so when multithreaded the engine
+     * computes the matrix in parallel instead.
+     *
+     * @param testData the instances to get predictions for
+     * @return probability of each class for each instance
+     * @throws Exception if a distance cannot be computed
+     */
+    @Override public double[][] distributionForInstances(final TimeSeriesInstances testData) throws Exception {
+        if(testTimeLimit >= 0 || earlyPredictActive()) {
+            return super.distributionForInstances(testData);
+        }
+        testTimer.resetAndStart();
+        if(isIndexedPrediction() && numThreads <= 1) {
+            final double[][] distributions = new double[testData.numInstances()][];
+            for(int i = 0; i < distributions.length; i++) {
+                distributions[i] = predictFromIndex(testData.get(i));
+            }
+            testTimer.stop();
+            return distributions;
+        }
+        final DistanceMatrix distances = newDistanceMatrixEngine(autoK ? bestK : k).compute(testData, trainData);
+        final int numTrain = trainData.numInstances();
+        final double[][] distributions = new double[testData.numInstances()][];
+        for(int i = 0; i < distributions.length; i++) {
+            final PrunedMap<Double, Integer> nearestNeighbourIndices = PrunedMap.asc(autoK ? bestK : k);
+            for(int j = 0; j < numTrain; j++) {
+                nearestNeighbourIndices.add(distances.get(i, j), j);
+            }
+            distributions[i] = ArrayUtilities.uniformDistribution(trainData.numClasses());
+            if(!nearestNeighbourIndices.isEmpty()) {
+                vote(nearestNeighbourIndices, distributions[i]);
+            }
+        }
+        testTimer.stop();
+        return distributions;
+    }
+    
+    // whether predictions find the nearest neighbours through the index rather than a search of the train data
+    private boolean isIndexedPrediction() {
+        return useNeighbourIndex && testTimeLimit < 0 && !earlyPredictActive();
+    }
+    
+    private double[] predictFromIndex(final TimeSeriesInstance testInst) {
+        if(neighbourIndex == null) {
+            neighbourIndex = NeighbourIndex.newIndex(distanceMeasure, trainData);
+            neighbourIndex.setSeed(getSeed());
+            neighbourIndex.build(trainData);
+        }
+        final PrunedMap<Double, Integer> nearestNeighbourIndices = neighbourIndex.nearest(testInst, autoK ? bestK : k);
+        final double[] distribution = ArrayUtilities.uniformDistribution(trainData.numClasses());
+        if(!nearestNeighbourIndices.isEmpty()) {
+            vote(nearestNeighbourIndices, distribution);
+        }
+        return distribution;
+    }
+    
+    // the class distribution of the nearest neighbours
+    private void vote(final PrunedMap<Double, Integer> nearestNeighbourIndices, final double[] distribution) {
+        Arrays.fill(distribution, 0d);
+        // note that more than k neighbours may be held as the nearest neighbours if there are ties.
+        // it makes most sense to keep the ties. The ties should get the kth
+        final Double lastKey = nearestNeighbourIndices.lastKey();
+        for(Double distance : nearestNeighbourIndices.keySet()) {
+            final List<Integer> instIndices = nearestNeighbourIndices.get(distance);
+            final double weight;
+            if(distance.equals(lastKey)) {
+                // last list contains any tie breaks for the kth nearest neighbour
+                // give any ties equal share for the kth vote
+                weight = 1d / instIndices.size();
+            } else {
+                weight = 1d;
+            }
+            for(Integer i : instIndices) {
+                final TimeSeriesInstance nearestNeighbour = trainData.get(i);
+                distribution[nearestNeighbour.getLabelIndex()] += weight;
+            }
+        }
+        ArrayUtilities.normalise(distribution, true);
+    }
+
     public DistanceMeasure getDistanceMeasure() {
         return distanceMeasure;
     }
@@ -454,6 +585,27 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         return k == 1 && earlyPredict;
     }
 
+    public boolean isUseNeighbourIndex() {
+        return useNeighbourIndex;
+    }
+
+    /**
+     * @param useNeighbourIndex whether predictions without a test time limit or early prediction find the nearest
+     *                          neighbours through a NeighbourIndex of the train data, built on the first prediction,
+     *                          rather than comparing to every train instance. Multithreaded batch predictions
+     *                          compare to every train instance in parallel instead.
+     */
+    public void setUseNeighbourIndex(final boolean useNeighbourIndex) {
+        this.useNeighbourIndex = useNeighbourIndex;
+    }
+
+    /**
+     * @return the index used for predictions, holding its build and query stats, or null if not yet built
+     */
+    public NeighbourIndex getNeighbourIndex() {
+        return neighbourIndex;
+    }
+
     public boolean isEarlyAbandonDistances() {
         return earlyAbandonDistances;
     }
@@ -478,6 +630,10 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         this.testTimeLimit = testTimeLimit;
     }
 
+    @Override public void enableMultiThreading(final int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     @Override public long getTestTime() {
         return testTimer.elapsedTime();
     }
@@ -648,8 +804,12 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
                     limit = Math.max(this.limit, altSearch.getLimit());
                 }
 
-                // compute the distance to the neighbour
-                distance = distanceMeasure.distance(getTarget(), neighbour, limit);
+                // compute the distance to the neighbour, or look it up if all the train distances are computed
+                if(trainDistances != null && isTargetInTrainData()) {
+                    distance = trainDistances.get(targetIndexInTrainData, neighbourIndexInTrainData);
+                } else {
+                    distance = distanceMeasure.distance(getTarget(), neighbour, limit);
+                }
                 nearest = add(neighbourIndexInTrainData, distance);
                 
                 if(nearest && earlyPredict) {
@@ -713,26 +873,7 @@ public class KNN extends BaseClassifier implements ParamHandler, Checkpointed, C
         public double[] predict() {
             if(updateDistribution) {
                 updateDistribution = false;
-                Arrays.fill(distribution, 0d);
-                // note that more than k neighbours may be held as the nearest neighbours if there are ties.
-                // it makes most sense to keep the ties. The ties should get the kth
-                final Double lastKey = nearestNeighbourIndices.lastKey();
-                for(Double distance : nearestNeighbourIndices.keySet()) {
-                    final List<Integer> instIndices = nearestNeighbourIndices.get(distance);
-                    final double weight;
-                    if(distance.equals(lastKey)) {
-                        // last list contains any tie breaks for the kth nearest neighbour
-                        // give any ties equal share for the kth vote
-                        weight = 1d / instIndices.size();
-                    } else {
-                        weight = 1d;
-                    }
-                    for(Integer i : instIndices) {
-                        final TimeSeriesInstance nearestNeighbour = trainData.get(i);
-                        distribution[nearestNeighbour.getLabelIndex()] += weight;
-                    }
-                }
-                ArrayUtilities.normalise(distribution, true);
+                vote(nearestNeighbourIndices, distribution);
             }
             return distribution;
         }
@@ -0,0 +1,175 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.knn;
+
+import java.io.Serializable;
+
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.utils.collections.pruned.PrunedMap;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import weka.core.neighboursearch.PerformanceStats;
+
+/**
+ * An index over a set of series which finds the nearest neighbours of a query under any DistanceMeasure without
+ * comparing the query to every series. Results are exact, the neighbours and their distances are those of a linear
+ * scan, including any ties for the kth nearest neighbour.
+ * <p>
+ * The work of building the index and of each query is recorded in PerformanceStats, where the points visited are the
+ * distances computed. An index is not thread safe.
+ */
+public abstract class NeighbourIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // bounds computed from distances may be out by rounding error, so are only trusted beyond this relative tolerance
+    private static final double TOLERANCE = 1e-9;
+
+    private final DistanceMeasure distanceMeasure;
+    private TimeSeriesInstances data;
+    private int seed = 0;
+    private PerformanceStats buildStats;
+    private PerformanceStats queryStats;
+    private long buildTime;
+
+    public NeighbourIndex(final DistanceMeasure distanceMeasure) {
+        this.distanceMeasure = distanceMeasure;
+    }
+
+    /**
+     * Picks the index suited to a distance measure: a VPTree for metric distances, otherwise a PivotTable.
+     *
+     * @param distanceMeasure the distance measure
+     * @param data the series to be indexed
+     * @return a new index, not yet built
+     */
+    public static NeighbourIndex newIndex(final DistanceMeasure distanceMeasure, final TimeSeriesInstances data) {
+        if((distanceMeasure.isMetric() || distanceMeasure.isSquaredMetric()) && data.isEqualLength()
+                   && !data.isMultivariate()) {
+            return new VPTree(distanceMeasure);
+        }
+        return new PivotTable(distanceMeasure);
+    }
+
+    /**
+     * Builds the index. The distance measure must already be built.
+     *
+     * @param data the series to index
+     */
+    public void build(final TimeSeriesInstances data) {
+        final long timeStamp = System.nanoTime();
+        this.data = data;
+        buildStats = newPerformanceStats();
+        queryStats = newPerformanceStats();
+        buildStats.searchStart();
+        buildIndex(buildStats);
+        buildStats.searchFinish();
+        buildTime = System.nanoTime() - timeStamp;
+    }
+
+    /**
+     * Finds the k nearest neighbours of a query.
+     *
+     * @param query the query series
+     * @param k the number of neighbours
+     * @return the distance to each nearest neighbour mapped to their index in the data, holding more than k neighbours
+     * if there are ties for the kth nearest
+     */
+    public PrunedMap<Double, Integer> nearest(final TimeSeriesInstance query, final int k) {
+        if(data == null) {
+            throw new IllegalStateException("index not built");
+        }
+        final PrunedMap<Double, Integer> nearest = PrunedMap.asc(k);
+        queryStats.searchStart();
+        search(query, nearest, queryStats);
+        queryStats.searchFinish();
+        return nearest;
+    }
+
+    protected abstract void buildIndex(PerformanceStats stats);
+
+    protected abstract void search(TimeSeriesInstance query, PrunedMap<Double, Integer> nearest,
+            PerformanceStats stats);
+
+    protected PerformanceStats newPerformanceStats() {
+        return new PerformanceStats();
+    }
+
+    // the distance between two series, abandoned beyond the limit
+    protected double distance(final TimeSeriesInstance a, final TimeSeriesInstance b, final double limit,
+            final PerformanceStats stats) {
+        stats.incrPointCount();
+        return distanceMeasure.distance(a, b, limit);
+    }
+
+    // the distance under which a neighbour is one of the nearest neighbours
+    protected static double limit(final PrunedMap<Double, Integer> nearest) {
+        return nearest.size() < nearest.getLimit() ? Double.POSITIVE_INFINITY : nearest.lastKey();
+    }
+
+    // adds a neighbour if it is one of the nearest neighbours
+    protected static void offer(final PrunedMap<Double, Integer> nearest, final double distance, final int index) {
+        if(distance <= limit(nearest)) {
+            nearest.add(distance, index);
+        }
+    }
+
+    // whether a lower bound of a distance rules it out of the nearest neighbours
+    protected static boolean exceeds(final double bound, final double limit) {
+        return bound - limit > TOLERANCE * Math.max(1, limit);
+    }
+
+    public DistanceMeasure getDistanceMeasure() {
+        return distanceMeasure;
+    }
+
+    public TimeSeriesInstances getData() {
+        return data;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed seeds any random choices made building the index
+     */
+    public void setSeed(final int seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the distances computed building the index, as the points visited by a single search
+     */
+    public PerformanceStats getBuildStats() {
+        return buildStats;
+    }
+
+    /**
+     * @return the distances computed by each query since the index was built
+     */
+    public PerformanceStats getQueryStats() {
+        return queryStats;
+    }
+
+    /**
+     * @return time taken to build the index in nanoseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+}
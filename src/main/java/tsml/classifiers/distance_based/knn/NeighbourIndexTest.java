@@ -0,0 +1,114 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.knn;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.ed.EDistance;
+import tsml.classifiers.distance_based.distances.erp.ERPDistance;
+import tsml.classifiers.distance_based.distances.msm.MSMDistance;
+import tsml.classifiers.distance_based.utils.collections.pruned.PrunedMap;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class NeighbourIndexTest {
+
+    private TimeSeriesInstances train;
+    private TimeSeriesInstances test;
+
+    // random walks, with every tenth a repeat of the one before so there are ties
+    private static TimeSeriesInstances data(int numInstances, Random random) {
+        final double[][][] values = new double[numInstances][1][20];
+        final int[] labels = new int[numInstances];
+        for(int i = 0; i < numInstances; i++) {
+            if(i % 10 == 9) {
+                values[i][0] = values[i - 1][0].clone();
+            } else {
+                for(int j = 1; j < values[i][0].length; j++) {
+                    values[i][0][j] = values[i][0][j - 1] + random.nextGaussian();
+                }
+            }
+            labels[i] = i % 2;
+        }
+        return new TimeSeriesInstances(values, labels, new String[] {"a", "b"});
+    }
+
+    @Before
+    public void before() {
+        final Random random = new Random(0);
+        train = data(150, random);
+        test = data(20, random);
+    }
+
+    private static List<Integer> sorted(List<Integer> values) {
+        final List<Integer> list = new ArrayList<>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    private void assertMatchesLinearScan(DistanceMeasure distanceMeasure, Class<?> indexClass) {
+        distanceMeasure.buildDistanceMeasure(train);
+        final NeighbourIndex index = NeighbourIndex.newIndex(distanceMeasure, train);
+        Assert.assertEquals(indexClass, index.getClass());
+        index.build(train);
+        for(int k : new int[] {1, 4}) {
+            for(int i = 0; i < test.numInstances(); i++) {
+                final PrunedMap<Double, Integer> expected = PrunedMap.asc(k);
+                for(int j = 0; j < train.numInstances(); j++) {
+                    expected.add(distanceMeasure.distance(test.get(i), train.get(j)), j);
+                }
+                final PrunedMap<Double, Integer> actual = index.nearest(test.get(i), k);
+                Assert.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+                for(Double distance : expected.keySet()) {
+                    Assert.assertEquals(sorted(expected.get(distance)), sorted(actual.get(distance)));
+                }
+            }
+        }
+        Assert.assertEquals(2 * test.numInstances(), index.getQueryStats().getNumQueries());
+        Assert.assertTrue(index.getQueryStats().getMeanPointsVisited() <= train.numInstances());
+        Assert.assertTrue(index.getBuildStats().getTotalPointsVisited() > 0);
+    }
+
+    @Test
+    public void testEDistanceVPTree() {
+        assertMatchesLinearScan(new EDistance(), VPTree.class);
+    }
+
+    @Test
+    public void testMSMDistanceVPTree() {
+        assertMatchesLinearScan(new MSMDistance(), VPTree.class);
+    }
+
+    @Test
+    public void testDTWDistancePivotTable() {
+        final DTWDistance dtw = new DTWDistance();
+        dtw.setWindow(0.1);
+        assertMatchesLinearScan(dtw, PivotTable.class);
+    }
+
+    @Test
+    public void testERPDistancePivotTable() {
+        assertMatchesLinearScan(new ERPDistance(), PivotTable.class);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.dtw.DTWEnvelope;
+import tsml.classifiers.distance_based.utils.collections.pruned.PrunedMap;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import weka.core.neighboursearch.PerformanceStats;
+
+/**
+ * A table of the distances from every series to a few pivot series, chosen far apart. A query is compared to the
+ * pivots, then to the other series in order of how closely their distances to the pivots match its own, so the
+ * nearest neighbours tend to be found first and the distances to the rest are abandoned early.
+ * <p>
+ * For a metric distance measure the pivots also bound the distance to each series by the triangle inequality,
+ * skipping any series which cannot be a nearest neighbour. For DTWDistance, which is not a metric, series of the
+ * query's length are first filtered by the LB_Keogh bound of the query's envelope.
+ */
+public class PivotTable extends NeighbourIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    private int numPivots = 16;
+    private int[] pivots;
+    // distance from series i to pivot p is held at i * pivots.length + p
+    private double[] table;
+    private boolean metric;
+    private boolean squared;
+
+    public PivotTable(final DistanceMeasure distanceMeasure) {
+        super(distanceMeasure);
+    }
+
+    @Override protected void buildIndex(final PerformanceStats stats) {
+        final DistanceMeasure distanceMeasure = getDistanceMeasure();
+        final TimeSeriesInstances data = getData();
+        final int n = data.numInstances();
+        metric = distanceMeasure.isMetric() || distanceMeasure.isSquaredMetric();
+        squared = !distanceMeasure.isMetric();
+        pivots = new int[Math.min(numPivots, n)];
+        table = new double[n * pivots.length];
+        if(pivots.length == 0) {
+            return;
+        }
+        // farthest first: each pivot is the series furthest from its nearest pivot so far
+        final double[] nearestPivotDistances = new double[n];
+        Arrays.fill(nearestPivotDistances, Double.POSITIVE_INFINITY);
+        final boolean[] isPivot = new boolean[n];
+        int pivot = new Random(getSeed()).nextInt(n);
+        for(int p = 0; p < pivots.length; p++) {
+            pivots[p] = pivot;
+            isPivot[pivot] = true;
+            final TimeSeriesInstance pivotInst = data.get(pivot);
+            int furthest = -1;
+            for(int i = 0; i < n; i++) {
+                final double distance = distance(data.get(i), pivotInst, Double.POSITIVE_INFINITY, stats);
+                table[i * pivots.length + p] = distance;
+                nearestPivotDistances[i] = Math.min(nearestPivotDistances[i], distance);
+                if(!isPivot[i] && (furthest < 0 || nearestPivotDistances[i] > nearestPivotDistances[furthest])) {
+                    furthest = i;
+                }
+            }
+            pivot = furthest;
+        }
+    }
+
+    // the distance used to bound the others
+    private double metric(final double distance) {
+        return squared ? Math.sqrt(distance) : distance;
+    }
+
+    @Override protected void search(final TimeSeriesInstance query, final PrunedMap<Double, Integer> nearest,
+            final PerformanceStats stats) {
+        final TimeSeriesInstances data = getData();
+        final int n = data.numInstances();
+        final int numPivots = pivots.length;
+        final boolean[] visited = new boolean[n];
+        final double[] queryDistances = new double[numPivots];
+        for(int p = 0; p < numPivots; p++) {
+            final double distance = distance(query, data.get(pivots[p]), Double.POSITIVE_INFINITY, stats);
+            offer(nearest, distance, pivots[p]);
+            queryDistances[p] = metric ? metric(distance) : distance;
+            visited[pivots[p]] = true;
+        }
+
+        // the largest difference in distance to a pivot, a lower bound for metric distances and an estimate otherwise
+        final double[] bounds = new double[n];
+        final long[] order = new long[n];
+        for(int i = 0; i < n; i++) {
+            double bound = 0;
+            for(int p = 0; p < numPivots; p++) {
+                final double distance = table[i * numPivots + p];
+                bound = Math.max(bound, Math.abs(queryDistances[p] - (metric ? metric(distance) : distance)));
+            }
+            bounds[i] = bound;
+            // non-negative floats sort in the order of their bits, so the index can ride in the low bits
+            order[i] = ((long) Float.floatToIntBits((float) bound) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        final DTWEnvelope envelope = getDistanceMeasure() instanceof DTWDistance ?
+            new DTWEnvelope(query, ((DTWDistance) getDistanceMeasure()).getWindow()) : null;
+        for(long key : order) {
+            final int i = (int) key;
+            if(visited[i]) {
+                continue;
+            }
+            final double limit = limit(nearest);
+            if(metric && exceeds(bounds[i], metric(limit))) {
+                continue;
+            }
+            final TimeSeriesInstance candidate = data.get(i);
+            if(envelope != null && envelope.lowerBound(candidate, limit) > limit) {
+                continue;
+            }
+            offer(nearest, distance(query, candidate, limit, stats), i);
+        }
+    }
+
+    public int getNumPivots() {
+        return numPivots;
+    }
+
+    /**
+     * @param numPivots the number of pivots, each costing a distance to every series when building and a distance to
+     *                  the query when searching
+     */
+    public void setNumPivots(final int numPivots) {
+        this.numPivots = Math.max(1, numPivots);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.knn;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.utils.collections.pruned.PrunedMap;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import weka.core.neighboursearch.PerformanceStats;
+import weka.core.neighboursearch.TreePerformanceStats;
+
+/**
+ * A vantage point tree for metric distance measures. Each node splits its series at the median distance to a vantage
+ * point chosen at random, so by the triangle inequality a query only visits the children whose range of distances to
+ * the vantage point can hold a series nearer than the current kth nearest neighbour. Distances whose square root is a
+ * metric, such as the squared euclidean distance, are bounded on the square root.
+ * <p>
+ * Building takes O(n log n) distances. Leaves hold up to leafSize series along with their distance to the parent
+ * vantage point, which filters them before any distance to the query is computed.
+ */
+public class VPTree extends NeighbourIndex {
+
+    private static final long serialVersionUID = 1L;
+
+    private int leafSize = 8;
+    private boolean squared;
+    private Node root;
+
+    public VPTree(final DistanceMeasure distanceMeasure) {
+        super(distanceMeasure);
+    }
+
+    private static class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+        // internal nodes: the vantage point and the range of distances from it to the series in each child
+        private int vantagePoint = -1;
+        private double innerMax;
+        private double outerMin;
+        private double outerMax;
+        private Node inner;
+        private Node outer;
+        // leaves: the series and their distance to the vantage point of the parent
+        private int[] points;
+        private double[] parentDistances;
+    }
+
+    @Override protected PerformanceStats newPerformanceStats() {
+        return new TreePerformanceStats();
+    }
+
+    @Override protected void buildIndex(final PerformanceStats stats) {
+        final DistanceMeasure distanceMeasure = getDistanceMeasure();
+        if(!distanceMeasure.isMetric() && !distanceMeasure.isSquaredMetric()) {
+            throw new IllegalArgumentException(distanceMeasure.getName() + " is not a metric");
+        }
+        squared = !distanceMeasure.isMetric();
+        final int n = getData().numInstances();
+        final int[] points = new int[n];
+        for(int i = 0; i < n; i++) {
+            points[i] = i;
+        }
+        final double[] parentDistances = new double[n];
+        // the root has no parent
+        Arrays.fill(parentDistances, Double.NaN);
+        root = n == 0 ? null : build(points, parentDistances, 0, n, new Random(getSeed()), stats);
+    }
+
+    // the metric distance of a distance
+    private double metric(final double distance) {
+        return squared ? Math.sqrt(distance) : distance;
+    }
+
+    private Node build(final int[] points, final double[] parentDistances, final int from, final int to,
+            final Random random, final PerformanceStats stats) {
+        final Node node = new Node();
+        if(to - from <= leafSize) {
+            node.points = Arrays.copyOfRange(points, from, to);
+            node.parentDistances = Arrays.copyOfRange(parentDistances, from, to);
+            return node;
+        }
+        swap(points, parentDistances, from, from + random.nextInt(to - from));
+        node.vantagePoint = points[from];
+        final TimeSeriesInstances data = getData();
+        final TimeSeriesInstance vantagePoint = data.get(node.vantagePoint);
+        for(int i = from + 1; i < to; i++) {
+            parentDistances[i] = metric(distance(vantagePoint, data.get(points[i]), Double.POSITIVE_INFINITY, stats));
+        }
+        sort(points, parentDistances, from + 1, to);
+        // the inner child holds the nearer half, the outer the rest
+        final int mid = from + 1 + (to - from) / 2;
+        node.innerMax = parentDistances[mid - 1];
+        node.inner = build(points, parentDistances, from + 1, mid, random, stats);
+        if(mid < to) {
+            node.outerMin = parentDistances[mid];
+            node.outerMax = parentDistances[to - 1];
+            node.outer = build(points, parentDistances, mid, to, random, stats);
+        }
+        return node;
+    }
+
+    private static void swap(final int[] points, final double[] distances, final int i, final int j) {
+        final int point = points[i];
+        points[i] = points[j];
+        points[j] = point;
+        final double distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+    }
+
+    // sorts points from (inclusive) to (exclusive) by their distance
+    private static void sort(final int[] points, final double[] distances, final int from, final int to) {
+        final long[] keys = new long[to - from];
+        for(int i = from; i < to; i++) {
+            // distances are non-negative so their bits sort in the same order
+            keys[i - from] = Double.doubleToLongBits(distances[i]);
+        }
+        final Integer[] order = new Integer[to - from];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        final int[] sortedPoints = new int[order.length];
+        for(int i = 0; i < order.length; i++) {
+            sortedPoints[i] = points[from + order[i]];
+        }
+        for(int i = 0; i < order.length; i++) {
+            points[from + i] = sortedPoints[i];
+            distances[from + i] = Double.longBitsToDouble(keys[order[i]]);
+        }
+    }
+
+    @Override protected void search(final TimeSeriesInstance query, final PrunedMap<Double, Integer> nearest,
+            final PerformanceStats stats) {
+        if(root != null) {
+            search(root, query, Double.NaN, nearest, (TreePerformanceStats) stats);
+        }
+    }
+
+    private void search(final Node node, final TimeSeriesInstance query, final double parentDistance,
+            final PrunedMap<Double, Integer> nearest, final TreePerformanceStats stats) {
+        final TimeSeriesInstances data = getData();
+        if(node.points != null) {
+            stats.incrLeafCount();
+            for(int i = 0; i < node.points.length; i++) {
+                // the difference in distance to the parent vantage point bounds the distance to the query
+                if(!Double.isNaN(parentDistance)
+                           && exceeds(Math.abs(parentDistance - node.parentDistances[i]), metric(limit(nearest)))) {
+                    continue;
+                }
+                final int point = node.points[i];
+                offer(nearest, distance(query, data.get(point), limit(nearest), stats), point);
+            }
+            return;
+        }
+        stats.incrIntNodeCount();
+        // the exact distance to the vantage point is needed to bound the children, so it is not abandoned
+        final double distance = distance(query, data.get(node.vantagePoint), Double.POSITIVE_INFINITY, stats);
+        offer(nearest, distance, node.vantagePoint);
+        final double d = metric(distance);
+        // visit the child the query falls in first, as it most likely holds the nearest neighbours
+        if(d <= node.innerMax) {
+            searchInner(node, query, d, nearest, stats);
+            searchOuter(node, query, d, nearest, stats);
+        } else {
+            searchOuter(node, query, d, nearest, stats);
+            searchInner(node, query, d, nearest, stats);
+        }
+    }
+
+    private void searchInner(final Node node, final TimeSeriesInstance query, final double distance,
+            final PrunedMap<Double, Integer> nearest, final TreePerformanceStats stats) {
+        if(!exceeds(distance - node.innerMax, metric(limit(nearest)))) {
+            search(node.inner, query, distance, nearest, stats);
+        }
+    }
+
+    private void searchOuter(final Node node, final TimeSeriesInstance query, final double distance,
+            final PrunedMap<Double, Integer> nearest, final TreePerformanceStats stats) {
+        if(node.outer == null) {
+            return;
+        }
+        final double bound = Math.max(node.outerMin - distance, distance - node.outerMax);
+        if(!exceeds(bound, metric(limit(nearest)))) {
+            search(node.outer, query, distance, nearest, stats);
+        }
+    }
+
+    public int getLeafSize() {
+        return leafSize;
+    }
+
+    /**
+     * @param leafSize the most series held in a leaf, which are compared to the query by a linear scan
+     */
+    public void setLeafSize(final int leafSize) {
+        this.leafSize = Math.max(1, leafSize);
+    }
+}
@@ -22,6 +22,8 @@ import evaluation.evaluators.Evaluator;
 import evaluation.evaluators.OutOfBagEvaluator;
 import evaluation.storage.ClassifierResults;
 import experiments.data.DatasetLoading;
+import tsml.classifiers.MemoryContractable;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.TrainEstimateTimeable;
 import tsml.classifiers.distance_based.utils.classifiers.*;
 import tsml.classifiers.distance_based.utils.classifiers.checkpointing.CheckpointConfig;
@@ -33,11 +35,13 @@ import tsml.classifiers.distance_based.utils.classifiers.contracting.ContractedT
 import tsml.classifiers.distance_based.utils.classifiers.contracting.ContractedTrain;
 import tsml.classifiers.distance_based.utils.system.logging.LogUtils;
 import tsml.classifiers.distance_based.utils.classifiers.results.ResultUtils;
+import tsml.classifiers.distance_based.utils.system.memory.MemoryBudget;
 import tsml.classifiers.distance_based.utils.system.memory.MemoryWatchable;
 import tsml.classifiers.distance_based.utils.system.memory.MemoryWatcher;
 import tsml.classifiers.distance_based.utils.system.timing.StopWatch;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
+import tsml.transformers.TransformStore;
 import utilities.ClassifierTools;
 
 import java.util.*;
@@ -52,7 +56,8 @@ import static utilities.Utilities.argMax;
  * Contributors: goastler
  */
 public class ProximityForest extends BaseClassifier implements ContractedTrain, ContractedTest, TrainEstimateTimeable,
-                                                                       Checkpointed, MemoryWatchable {
+                                                                       Checkpointed, MemoryWatchable, MemoryContractable,
+                                                                       MultiThreadable {
 
     public static void main(String[] args) throws Exception {
 ////        Thread.sleep(10000);
@@ -140,6 +145,10 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
     private long trainTimeLimit;
     // the test time limit / contract
     private long testTimeLimit;
+    // the memory limit in bytes for the estimated size of the forest, <= 0 for no limit
+    private long memoryLimit;
+    // tracks the estimated size of the forest against the memory limit whilst building
+    private transient MemoryBudget memoryBudget;
     // how long this took to build. THIS INCLUDES THE TRAIN ESTIMATE!
     private final StopWatch runTimer = new StopWatch();
     // how long testing took
@@ -156,6 +165,12 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
     private double[][] trainEstimateDistributions;
     private final StopWatch evaluationTimer = new StopWatch();
     private long[] trainEstimatePredictionTimes;
+    // the number of threads each tree is built with
+    private int numThreads = 1;
+    // transforms shared by all trees caching transforms, so each inst is transformed once per forest rather than per tree
+    private TransformStore transformCache;
+    // the maximum number of transformed insts held in memory per transformer, -1 for twice the size of the train data
+    private int maxTransformCacheSize = -1;
 
     @Override public long getMaxMemoryUsage() {
         return memoryWatcher.getMaxMemoryUsage();
@@ -200,6 +215,10 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
                 treeTrainResults = new ArrayList<>();
                 // zero tree build time so the first tree build will always set the bar
                 longestTrainStageTime = 0;
+                // the train data is transformed once for all trees. Leave room for as many test insts again
+                transformCache = new TransformStore();
+                transformCache.setMaxCacheSize(maxTransformCacheSize < 0 ? 2 * trainData.numInstances() : maxTransformCacheSize);
+                transformCache.fit(trainData);
                 // init the running train estimate variables if using OOB
                 if(estimateOwnPerformance && trainEstimateMethod.equals(TrainEstimateMethod.OOB)) {
                     trainEstimatePredictionTimes = new long[trainData.numInstances()];
@@ -254,12 +273,21 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
             LogUtils.logTimeContract(runTimer.elapsedTime(), trainTimeLimit, getLogger(), "train");
             getLogger().info("cross validation finished, acc " + trainResults.getAcc());
         }
+        // size up the forest so far against the memory limit, the train data is shared by all trees
+        memoryBudget = new MemoryBudget(memoryLimit);
+        memoryBudget.addShared(trainData, trainEstimateDistributions, trainEstimatePredictionTimes, transformCache);
+        for(int i = 0; i < trees.size(); i++) {
+            addToMemoryBudget(i);
+        }
         while(
                 // there's remaining trees to be built
                 insideNumTreeLimit()
                 &&
                 // and there's remaining time left to build more trees
                 insideTrainTimeLimit(runTimer.elapsedTime() + longestTrainStageTime)
+                &&
+                // and there's room for another tree as large as the largest so far
+                memoryBudget.canAddMember()
         ) {
             // reset the tree build timer
             trainStageTimer.resetAndStart();
@@ -268,6 +296,14 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
             final ProximityTree tree = proximityTreeBuilder.build();
             final int treeSeed = rand.nextInt();
             tree.setSeed(treeSeed);
+            tree.enableMultiThreading(numThreads);
+            if(tree.isCacheTransforms()) {
+                // share transforms between trees rather than each tree transforming the same insts
+                if(!Objects.equals(transformCache.getCacheDirectory(), tree.getTransformCacheDirectory())) {
+                    transformCache.setCacheDirectory(tree.getTransformCacheDirectory());
+                }
+                tree.setCacheTransforms(transformCache);
+            }
             // setup the constituent
             trees.add(tree);
             // estimate the performance of the tree
@@ -304,6 +340,7 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
             getLogger().info(() -> "building tree " + treeIndex);
             tree.setRebuild(true);
             tree.buildClassifier(trainData);
+            addToMemoryBudget(treeIndex);
             // tree fully built
             trainStageTimer.stop();
             workDone = true;
@@ -345,8 +382,21 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
         // save the final checkpoint
         if(workDone) {
             ResultUtils.setInfo(trainResults, this, trainData);
+            if(memoryBudget.isLimited()) {
+                getLogger().info(() -> "estimated forest size " + memoryBudget.getUsed() + " bytes of a " + memoryLimit + " byte limit");
+                trainResults.setMemoryLimit(memoryLimit);
+            }
             forceSaveCheckpoint();
         }
+        memoryBudget = null;
+    }
+
+    private void addToMemoryBudget(int treeIndex) {
+        if(estimateOwnPerformance && trainEstimateMethod.equals(TrainEstimateMethod.OOB)) {
+            memoryBudget.addMember(trees.get(treeIndex), treeEvaluators.get(treeIndex), treeTrainResults.get(treeIndex));
+        } else {
+            memoryBudget.addMember(trees.get(treeIndex));
+        }
     }
 
     @Override
@@ -442,6 +492,16 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
         return insideTrainTimeLimit(time);
     }
     
+    @Override
+    public void setMemoryLimit(final DataUnit unit, final long amount) {
+        memoryLimit = MemoryContractable.toBytes(unit, amount);
+    }
+
+    @Override
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
     @Override
     public long getTestTimeLimit() {
         return testTimeLimit;
@@ -465,6 +525,29 @@ public class ProximityForest extends BaseClassifier implements ContractedTrain,
         return testTimer.elapsedTime();
     }
 
+    public TransformStore getTransformCache() {
+        return transformCache;
+    }
+
+    public int getMaxTransformCacheSize() {
+        return maxTransformCacheSize;
+    }
+
+    /**
+     * @param maxTransformCacheSize the maximum number of transformed insts held in memory per transformer shared by
+     *                              the trees, -1 for twice the size of the train data
+     */
+    public void setMaxTransformCacheSize(final int maxTransformCacheSize) {
+        this.maxTransformCacheSize = maxTransformCacheSize;
+        if(transformCache != null && maxTransformCacheSize >= 0) {
+            transformCache.setMaxCacheSize(maxTransformCacheSize);
+        }
+    }
+
+    @Override public void enableMultiThreading(final int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     @Override public CheckpointConfig getCheckpointConfig() {
         return checkpointConfig;
     }
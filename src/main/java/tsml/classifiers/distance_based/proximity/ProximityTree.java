@@ -20,6 +20,7 @@ package tsml.classifiers.distance_based.proximity;
 import com.google.common.collect.Lists;
 import experiments.data.DatasetLoading;
 import org.junit.Assert;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.distance_based.distances.DistanceMeasure;
 import tsml.classifiers.distance_based.distances.IndependentDistanceMeasure;
 import tsml.classifiers.distance_based.distances.dtw.spaces.*;
@@ -58,16 +59,26 @@ import tsml.classifiers.distance_based.utils.system.timing.StopWatch;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.transformers.CachedTransformer;
+import tsml.transformers.TransformStore;
 import tsml.transformers.Derivative;
 import tsml.transformers.TransformPipeline;
 import tsml.transformers.Transformer;
 import utilities.ArrayUtilities;
 import utilities.ClassifierTools;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static tsml.classifiers.distance_based.utils.collections.checks.Checks.requireReal;
 
@@ -76,7 +87,8 @@ import static tsml.classifiers.distance_based.utils.collections.checks.Checks.re
  * <p>
  * Contributors: goastler
  */
-public class ProximityTree extends BaseClassifier implements ContractedTest, ContractedTrain, Checkpointed, MemoryWatchable {
+public class ProximityTree extends BaseClassifier implements ContractedTest, ContractedTrain, Checkpointed, MemoryWatchable,
+                                                            MultiThreadable {
 
     public static void main(String[] args) throws Exception {
 //        System.out.println(CONFIGS);
@@ -198,7 +210,17 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
     // enhanced early abandon distance computation via ordering partition examination to hit the most likely closest exemplar sooner
     private boolean partitionExaminationReordering;
     // cache certain transformers to avoid repetition
-    private Map<Transformer, CachedTransformer> transformerCache;
+    private TransformStore transformerCache;
+    // whether the cache is supplied externally, e.g. shared by the trees of a forest, and fitted by its owner
+    private boolean sharedTransformCache;
+    // directory to persist cached transforms to so they are reused across builds, folds and processes. null to cache in memory only
+    private File transformCacheDirectory;
+    // the number of threads to build splits with
+    private int numThreads = 1;
+    // the threads to build splits with whilst building, null if not multithreading
+    private transient ForkJoinPool pool;
+    // the fewest insts partitioned by each thread when partitioning the data at a split concurrently
+    private static final int MIN_PARTITION_BLOCK_SIZE = 64;
 
     public DistanceMode getDistanceMode() {
         return distanceMode;
@@ -248,18 +270,37 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
 
     public void setCacheTransforms(final boolean cacheTransforms) {
         if(cacheTransforms) {
-            transformerCache = new HashMap<>();
+            transformerCache = new TransformStore();
         } else {
             transformerCache = null;
         }
+        sharedTransformCache = false;
     }
 
     /**
-     * Set the cache to an external cache
+     * Set the cache to an external cache, e.g. one shared by all trees in a forest. The cache must be fitted to data
+     * containing the train data by its owner, and is not cleared when building.
      * @param cache
      */
-    public void setCacheTransforms(final Map<Transformer, CachedTransformer> cache) {
+    public void setCacheTransforms(final TransformStore cache) {
         transformerCache = cache;
+        sharedTransformCache = cache != null;
+    }
+
+    public TransformStore getTransformCache() {
+        return transformerCache;
+    }
+
+    public File getTransformCacheDirectory() {
+        return transformCacheDirectory;
+    }
+
+    /**
+     * Persist cached transforms to disk, keyed by instance content and transformer config. Only used when caching transforms.
+     * @param transformCacheDirectory
+     */
+    public void setTransformCacheDirectory(final File transformCacheDirectory) {
+        this.transformCacheDirectory = transformCacheDirectory;
     }
 
     public enum DimensionSamplingMode {
@@ -375,12 +416,14 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
                 tree = new BaseTree<>();
                 nodeBuildQueue = new LinkedList<>();
                 longestTrainStageTime = 0;
-                if(isCacheTransforms()) {
+                if(isCacheTransforms() && !sharedTransformCache) {
                     // clear out any old cached versions
-                    transformerCache = new HashMap<>();
+                    transformerCache = new TransformStore();
+                    transformerCache.setCacheDirectory(transformCacheDirectory);
+                    transformerCache.fit(trainData);
                 }
                 // setup the root node
-                final TreeNode<Split> root = new BaseTreeNode<>(new Split(trainData, new IndexList(trainData.numInstances())), null);
+                final TreeNode<Split> root = new BaseTreeNode<>(new Split(trainData, IntStream.range(0, trainData.numInstances()).toArray()), null);
                 // add the root node to the tree
                 tree.setRoot(root);
                 // add the root node to the build queue
@@ -398,35 +441,49 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         boolean workDone = false;
         // maintain a timer for how long nodes take to build
         final StopWatch trainStageTimer = new StopWatch();
-        while(
-                // there's remaining nodes to be built
-                !nodeBuildQueue.isEmpty()
-                &&
-                // there is enough time for another split to be built
-                insideTrainTimeLimit( runTimer.elapsedTime() + longestTrainStageTime)
-        ) {
-            // time how long it takes to build the node
-            trainStageTimer.resetAndStart();
-            // get the next node to be built
-            final TreeNode<Split> node = nodeBuildQueue.removeFirst();
-            // partition the data at the node
-            Split split = node.getValue();
-            // find the best of R partitioning attempts
-            split = buildSplit(split);
-            node.setValue(split);
-            // for each partition of data build a child node
-            final List<TreeNode<Split>> children = buildChildNodes(node);
-            // add the child nodes to the build queue
-            enqueueNodes(children);
-            // done building this node
-            trainStageTimer.stop();
-            workDone = true;
-            // checkpoint if necessary
-            saveCheckpoint();
-            // update the train timer
-            LogUtils.logTimeContract(runTimer.elapsedTime(), trainTimeLimit, getLogger(), "train");
-            // calculate the longest time taken to build a node given
-            longestTrainStageTime = Math.max(longestTrainStageTime, trainStageTimer.elapsedTime());
+        // threads to build splits with, if multithreading
+        pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+        try {
+            while(
+                    // there's remaining nodes to be built
+                    !nodeBuildQueue.isEmpty()
+                    &&
+                    // there is enough time for another split to be built
+                    insideTrainTimeLimit( runTimer.elapsedTime() + longestTrainStageTime)
+            ) {
+                // time how long it takes to build the node(s)
+                trainStageTimer.resetAndStart();
+                // get the next node(s) to be built. Breadth first, the whole frontier can be built at once
+                final List<TreeNode<Split>> nodes = new ArrayList<>();
+                if(breadthFirst && pool != null) {
+                    nodes.addAll(nodeBuildQueue);
+                    nodeBuildQueue.clear();
+                } else {
+                    nodes.add(nodeBuildQueue.removeFirst());
+                }
+                // find the best of R partitioning attempts at each node
+                buildSplits(nodes);
+                for(TreeNode<Split> node : nodes) {
+                    // for each partition of data build a child node
+                    final List<TreeNode<Split>> children = buildChildNodes(node);
+                    // add the child nodes to the build queue
+                    enqueueNodes(children);
+                }
+                // done building the node(s)
+                trainStageTimer.stop();
+                workDone = true;
+                // checkpoint if necessary
+                saveCheckpoint();
+                // update the train timer
+                LogUtils.logTimeContract(runTimer.elapsedTime(), trainTimeLimit, getLogger(), "train");
+                // calculate the longest time taken to build a node given
+                longestTrainStageTime = Math.max(longestTrainStageTime, trainStageTimer.elapsedTime());
+            }
+        } finally {
+            if(pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
         }
         // stop resource monitoring
         memoryWatcher.stop();
@@ -457,7 +514,7 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         List<TreeNode<Split>> children = new ArrayList<>(split.numPartitions());
         for(int i = 0; i < split.numPartitions(); i++) {
             final TimeSeriesInstances data = split.getPartitionData(i);
-            final List<Integer> dataIndicesInTrainData = split.getPartitionDataIndicesInTrainData(i);
+            final int[] dataIndicesInTrainData = split.getPartitionDataIndicesInTrainData(i);
             final Split child = new Split(data, dataIndicesInTrainData);
             children.add(new BaseTreeNode<>(child, parent));
         }
@@ -566,22 +623,119 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         return "ProximityTree{tree=" + tree + "}";
     }
 
-    private Split buildSplit(Split unbuiltSplit) {
-        Split bestSplit = null;
-        final TimeSeriesInstances data = unbuiltSplit.getData();
-        final List<Integer> dataIndices = unbuiltSplit.getDataIndicesInTrainData();
-        // need to find the best of R splits
-        // linearly go through r splits and select the best
-        for(int i = 0; i < r; i++) {
-            // construct a new split
-            final Split split = new Split(data, dataIndices);
-            split.buildSplit();
-            final double score = split.getScore();
-            if(bestSplit == null || score > bestSplit.getScore()) {
-                bestSplit = split;
+    /**
+     * Build the best of R splits at each node. The candidate splits are built concurrently when multithreading, each
+     * with its own source of random choices seeded in turn from this tree, so the tree is the same however many
+     * threads are used.
+     *
+     * @param nodes the nodes holding the unbuilt splits
+     */
+    private void buildSplits(List<TreeNode<Split>> nodes) {
+        final List<Split> candidates = new ArrayList<>(nodes.size() * r);
+        for(TreeNode<Split> node : nodes) {
+            final Split unbuiltSplit = node.getValue();
+            final TimeSeriesInstances data = unbuiltSplit.getData();
+            final int[] dataIndices = unbuiltSplit.getDataIndicesInTrainData();
+            for(int i = 0; i < r; i++) {
+                // construct a new split
+                candidates.add(new Split(data, dataIndices, new Random(rand.nextLong())));
             }
         }
-        return Objects.requireNonNull(bestSplit);
+        runAll(candidates.stream().map(split -> (Runnable) split::buildSplit).collect(Collectors.toList()));
+        // need to find the best of R splits at each node
+        for(int n = 0; n < nodes.size(); n++) {
+            Split bestSplit = null;
+            for(Split split : candidates.subList(n * r, (n + 1) * r)) {
+                final double score = split.getScore();
+                if(bestSplit == null || score > bestSplit.getScore()) {
+                    bestSplit = split;
+                }
+            }
+            nodes.get(n).setValue(Objects.requireNonNull(bestSplit));
+        }
+    }
+
+    /**
+     * Run tasks on the pool when multithreading, otherwise one after another. Tasks may run further tasks.
+     *
+     * @param tasks the tasks
+     */
+    private void runAll(List<Runnable> tasks) {
+        if(pool == null || tasks.size() < 2) {
+            tasks.forEach(Runnable::run);
+            return;
+        }
+        final List<ForkJoinTask<?>> forkJoinTasks = tasks.stream().map(ForkJoinTask::adapt).collect(Collectors.toList());
+        if(ForkJoinTask.inForkJoinPool()) {
+            // already a task on the pool, so join the tasks by working on them rather than blocking a thread
+            ForkJoinTask.invokeAll(forkJoinTasks);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(forkJoinTasks)));
+        }
+    }
+
+    /**
+     * Deep copy a distance measure for use on another thread, as it may hold scratch space for the distance
+     * computation. Any cached transformers are shared rather than copied as they may hold many transformed insts.
+     *
+     * @param distanceMeasure the distance measure
+     * @return the copy
+     */
+    private static DistanceMeasure copyForThread(DistanceMeasure distanceMeasure) {
+        final List<Object> shared = new ArrayList<>();
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try(ObjectOutputStream out = new ObjectOutputStream(bytes) {
+                {
+                    enableReplaceObject(true);
+                }
+                
+                @Override protected Object replaceObject(final Object obj) {
+                    if(obj instanceof CachedTransformer) {
+                        shared.add(obj);
+                        return new SharedObject(shared.size() - 1);
+                    }
+                    return obj;
+                }
+            }) {
+                out.writeObject(distanceMeasure);
+            }
+            try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())) {
+                {
+                    enableResolveObject(true);
+                }
+                
+                @Override protected Object resolveObject(final Object obj) {
+                    if(obj instanceof SharedObject) {
+                        return shared.get(((SharedObject) obj).index);
+                    }
+                    return obj;
+                }
+            }) {
+                return (DistanceMeasure) in.readObject();
+            }
+        } catch(IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // stands in for an object shared between a distance measure and its copy
+    private static class SharedObject implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final int index;
+
+        private SharedObject(final int index) {
+            this.index = index;
+        }
+    }
+
+    @Override public void enableMultiThreading(final int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
     }
 
     public boolean isEarlyExemplarCheck() {
@@ -610,30 +764,37 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
 
     private class Split implements Serializable, Iterator<Integer> {
 
-        public Split(TimeSeriesInstances data, List<Integer> dataIndicesInTrainData) {
+        public Split(TimeSeriesInstances data, int[] dataIndicesInTrainData) {
             setData(data, dataIndicesInTrainData);
         }
+
+        public Split(TimeSeriesInstances data, int[] dataIndicesInTrainData, Random random) {
+            this(data, dataIndicesInTrainData);
+            this.random = Objects.requireNonNull(random);
+        }
         
         // the distance function for comparing instances to exemplars
         private DistanceMeasure distanceMeasure;
         // the data at this split (i.e. before being partitioned)
         private TimeSeriesInstances data; // the split data
-        private List<Integer> dataIndicesInTrainData; // the indices of the split data in the train data
+        private int[] dataIndicesInTrainData; // the indices of the split data in the train data
         // the partitions of the data, each containing data for the partition and exemplars representing the partition
         // store pairwise set of data in the partition and corresponding exemplar
-        private List<Integer> exemplarIndicesInSplitData;
-        private List<TimeSeriesInstance> exemplars;
-        private List<List<Integer>> partitionedDataIndicesInSplitData; // each list is a partition containing indices of insts in that partition. I.e. [[1,2,3],[4,5,6]] means partition 0 contains the 1,2,3rd inst at this split while partition 1 contains 4,5,6th inst at this split
+        private int[] exemplarIndicesInSplitData;
+        private TimeSeriesInstance[] exemplars;
+        private int[][] partitionedDataIndicesInSplitData; // each array is a partition containing indices of insts in that partition. I.e. [[1,2,3],[4,5,6]] means partition 0 contains the 1,2,3rd inst at this split while partition 1 contains 4,5,6th inst at this split. Arrays are grown as insts are added, so only the first partitionSizes[i] entries are in partition i
+        private int[] partitionSizes;
         
         // partitionIndices houses all the partitions to look at when partitioning. This obviously stays consistent (i.e. look at all partitions in order) when not using early abandon
-        private List<Integer> partitionIndices = null;
+        private int[] partitionIndices = null;
         
-        // maintain a list of desc partition sizes per class. This ensures (when enabled) partitions are examined in
+        // maintain the partition indices in desc order of partition size per class. This ensures (when enabled) partitions are examined in
         // most likely first order
-        private List<List<Integer>> partitionOrderByClass;
+        private int[][] partitionOrderByClass;
         
         // exemplars are normally checked ad-hoc during distance computation. Obviously checking which partition and exemplar belongs to is a waste of computation, as the distance will be zero and trump all other exemplars distances for other partitions. Therefore, it is important to check first. Original pf checked for exemplars as it went along, meaning for partition 5 it would compare exemplar 5 to exemplar 1..4 before realising it's an exemplar. Therefore, we can store the exemplar mapping to partition index and do a quick lookup before calculating distances. This is likely to only save a small amount of time, but increases as the breadth of trees / classes increases. I.e. for a 100 class problem, looking through 99 exemplars before realising we're examining the exemplar for the 100th partition is a large waste.
-        private Map<Integer, Integer> exemplarIndexInSplitDataToPartitionIndex = null;
+        // the partition index of each inst in the split data which is an exemplar, -1 otherwise
+        private int[] exemplarPartitionIndices = null;
 
         // cache the scores
         private boolean findScore = true;
@@ -648,6 +809,10 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         
         private double[] distribution;
         
+        // the source of random choices whilst building. Each split has its own so splits can be built concurrently
+        // with the same result as one after another
+        private transient Random random;
+        
         public double[] distributionForInstance(TimeSeriesInstance testInst) {
             // report the prediction as the same as the data distribution at this split
             if(distribution == null) {
@@ -659,14 +824,6 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             }
             return distribution;
         }
-        
-        public List<Integer> getPartitionIndices() {
-            return partitionIndices;
-        }
-
-        public List<List<Integer>> getPartitionOrderByClass() {
-            return partitionOrderByClass;
-        }
 
         private Labels<Integer> getParentLabels() {
             return new Labels<>(new AbstractList<Integer>() {
@@ -683,16 +840,21 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         public double getScore() {
             if(findScore) {
                 findScore = false;
-                score = splitScorer.score(getParentLabels(), partitionedDataIndicesInSplitData.stream().map(partition -> new Labels<>(new AbstractList<Integer>() {
-                    @Override public Integer get(final int i) {
-                        final Integer instIndexInSplitData = partition.get(i);
-                        return data.get(instIndexInSplitData).getLabelIndex();
-                    }
-
-                    @Override public int size() {
-                        return partition.size();
-                    }
-                })).collect(Collectors.toList()));
+                final List<Labels<Integer>> partitionLabels = new ArrayList<>(numPartitions());
+                for(int i = 0; i < numPartitions(); i++) {
+                    final int[] partition = partitionedDataIndicesInSplitData[i];
+                    final int size = partitionSizes[i];
+                    partitionLabels.add(new Labels<>(new AbstractList<Integer>() {
+                        @Override public Integer get(final int i) {
+                            return data.get(partition[i]).getLabelIndex();
+                        }
+
+                        @Override public int size() {
+                            return size;
+                        }
+                    }));
+                }
+                score = splitScorer.score(getParentLabels(), partitionLabels);
                 requireReal(score);
             }
             return score;
@@ -720,37 +882,36 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             findScore = true;
             // get the inst to be partitioned
             final TimeSeriesInstance inst = data.get(instIndexInSplitData);
-            Integer closestPartitionIndex = null;
+            int closestPartitionIndex = -1;
             if(earlyExemplarCheck) {
                 // check for exemplars. If the inst is an exemplar, we already know what partition it represents and therefore belongs to
-                closestPartitionIndex = exemplarIndexInSplitDataToPartitionIndex.get(instIndexInSplitData);
+                closestPartitionIndex = exemplarPartitionIndices[instIndexInSplitData];
             }
 
-            // if null then not exemplar / not doing quick exemplar checking
-            List<Integer> partitionIndicesOrder = null;
-            int closestPartitionIndexIndex = -1;
-            if(closestPartitionIndex == null) {
+            // if -1 then not exemplar / not doing quick exemplar checking
+            if(closestPartitionIndex < 0) {
+                final int[] partitionIndicesOrder;
                 if(partitionExaminationReordering) {
                     // use the desc order of partition size for the given class
-                    partitionIndicesOrder = partitionOrderByClass.get(inst.getLabelIndex());
+                    partitionIndicesOrder = partitionOrderByClass[inst.getLabelIndex()];
                 } else {
                     // otherwise just loop through all partitions in order looking for the closest. Order is static and never changed
                     partitionIndicesOrder = partitionIndices;
                 }
-                closestPartitionIndexIndex = findPartitionIndexIndexFor(inst, instIndexInSplitData, partitionIndicesOrder);
-                closestPartitionIndex = partitionIndicesOrder.get(closestPartitionIndexIndex);
+                final int[] closestPartitionIndices = new int[partitionIndicesOrder.length];
+                final int numClosest = findClosestPartitionIndices(distanceMeasure,
+                        transformedDataAtSplit.get(instIndexInSplitData), instIndexInSplitData, partitionIndicesOrder,
+                        closestPartitionIndices);
+                // random pick the best partition for the instance
+                closestPartitionIndex = closestPartitionIndices[RandomUtils.choiceIndex(numClosest, random)];
             }
 
-            final List<Integer> partition = partitionedDataIndicesInSplitData.get(closestPartitionIndex);
-            partition.add(instIndexInSplitData);
+            addToPartition(closestPartitionIndex, instIndexInSplitData);
             
-            // if using partition reordering and order has been set
-            if(partitionExaminationReordering && partitionIndicesOrder != null) {
+            // if using partition reordering
+            if(partitionExaminationReordering) {
                 // we know the partition which the inst will be allocated to
                 // need to update the partition order to maintain desc size
-                partitionIndicesOrder.set(closestPartitionIndexIndex, partition.size());
-
-                // continue shifting up the current partition until it is in the correct ascending order
                 // e.g. index: [2,4,0,3,1]
                 //      sizes: [3,2,2,2,1]
                 //      would become (after incrementing size of partition 3, the closest partition, say):
@@ -759,25 +920,94 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
                 //      shift the partition 3 upwards until desc order restored:
                 //      index: [2,3,4,0,1]
                 //      sizes: [3,3,2,2,1]
-                int i = closestPartitionIndexIndex - 1;
-                while(i >= 1 && partitionIndicesOrder.get(i - 1) > partitionIndicesOrder.get(i)) {
-                    Collections.swap(partitionIndicesOrder, i - 1, i);
+                final int[] order = partitionOrderByClass[inst.getLabelIndex()];
+                int i = 0;
+                while(order[i] != closestPartitionIndex) {
+                    i++;
+                }
+                for(; i > 0 && partitionSizes[order[i - 1]] < partitionSizes[order[i]]; i--) {
+                    final int tmp = order[i - 1];
+                    order[i - 1] = order[i];
+                    order[i] = tmp;
                 }
-
             }
             
             return closestPartitionIndex;
         }
         
+        private void addToPartition(int partitionIndex, int instIndexInSplitData) {
+            int[] partition = partitionedDataIndicesInSplitData[partitionIndex];
+            final int size = partitionSizes[partitionIndex];
+            if(size == partition.length) {
+                partition = Arrays.copyOf(partition, Math.max(4, size * 2));
+                partitionedDataIndicesInSplitData[partitionIndex] = partition;
+            }
+            partition[size] = instIndexInSplitData;
+            partitionSizes[partitionIndex] = size + 1;
+        }
+        
+        /**
+         * Partition every inst concurrently, in blocks of insts. This is only possible when the partitions are
+         * examined in a fixed order, as reordering depends on the partitions of the insts before. Ties are broken
+         * afterwards in order of inst, so the random choices, and therefore the partitions, are the same as
+         * partitioning the insts one after another.
+         */
+        private void partitionConcurrently(int numBlocks) {
+            final int numInsts = data.numInstances();
+            // the closest partition of each inst, or -1 if there's a tie
+            final int[] closestPartitionIndices = new int[numInsts];
+            final int[][] ties = new int[numInsts][];
+            final List<Runnable> blocks = new ArrayList<>(numBlocks);
+            for(int b = 0; b < numBlocks; b++) {
+                final int from = (int) ((long) numInsts * b / numBlocks);
+                final int to = (int) ((long) numInsts * (b + 1) / numBlocks);
+                // each block has its own copy of the distance measure as it may hold scratch space
+                final DistanceMeasure blockDistanceMeasure = copyForThread(distanceMeasure);
+                blocks.add(() -> {
+                    final int[] closest = new int[partitionIndices.length];
+                    for(int i = from; i < to; i++) {
+                        if(earlyExemplarCheck && exemplarPartitionIndices[i] >= 0) {
+                            closestPartitionIndices[i] = exemplarPartitionIndices[i];
+                            continue;
+                        }
+                        final int numClosest = findClosestPartitionIndices(blockDistanceMeasure,
+                                transformedDataAtSplit.get(i), i, partitionIndices, closest);
+                        if(numClosest == 1) {
+                            closestPartitionIndices[i] = closest[0];
+                        } else {
+                            closestPartitionIndices[i] = -1;
+                            ties[i] = Arrays.copyOf(closest, numClosest);
+                        }
+                    }
+                });
+            }
+            runAll(blocks);
+            for(int i = 0; i < numInsts; i++) {
+                final int partitionIndex = closestPartitionIndices[i] >= 0 ? closestPartitionIndices[i] :
+                                                   ties[i][RandomUtils.choiceIndex(ties[i].length, random)];
+                addToPartition(partitionIndex, i);
+            }
+            instIndexInSplitData = numInsts - 1;
+            findScore = true;
+        }
+        
         public void cleanup() {
             transformedDataAtSplit = null;
+            // trim the partitions down to size
+            for(int i = 0; i < numPartitions(); i++) {
+                partitionedDataIndicesInSplitData[i] = Arrays.copyOf(partitionedDataIndicesInSplitData[i], partitionSizes[i]);
+            }
 
             // quick check that partitions line up with num insts
             if(isDebug()) {
-                final HashSet<Integer> set = new HashSet<>();
-                partitionedDataIndicesInSplitData.forEach(set::addAll);
-                if(!new HashSet<>(new IndexList(data.numInstances())).containsAll(set)) {
-                    throw new IllegalStateException("data indices mismatch");
+                final boolean[] seen = new boolean[data.numInstances()];
+                for(int[] partition : partitionedDataIndicesInSplitData) {
+                    for(int instIndex : partition) {
+                        if(instIndex < 0 || instIndex >= seen.length || seen[instIndex]) {
+                            throw new IllegalStateException("data indices mismatch");
+                        }
+                        seen[instIndex] = true;
+                    }
                 }
             }
         }
@@ -789,8 +1019,8 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
          */
         private Transformer getCachedTransformer(Transformer transformer) {
             if(transformerCache != null) {
-                // get from internal source
-                return transformerCache.computeIfAbsent(transformer, x -> new CachedTransformer(transformer));
+                // get from the store, which may be shared between splits built concurrently and other trees
+                return transformerCache.get(transformer);
             } else {
                 return transformer;
             }
@@ -808,12 +1038,12 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
                     final int numChoices;
                     if(DimensionSamplingMode.SUBSET.equals(dimensionSamplingMode)) {
                         // select anywhere between 1..all dimensions
-                        numDimensions = RandomUtils.choiceIndex(numDimensions, getRandom()) + 1;
+                        numDimensions = RandomUtils.choiceIndex(numDimensions, random) + 1;
                     } else {
                         // select only 1 dimension
                         numDimensions = 1;
                     }
-                    final List<Integer> dimensionIndices = RandomUtils.choiceIndex(data.getMaxNumDimensions(), getRandom(), numDimensions);
+                    final List<Integer> dimensionIndices = RandomUtils.choiceIndex(data.getMaxNumDimensions(), random, numDimensions);
                     // build a hSlicer to slice insts to the specified dimensions
                     final HSlicer hSlicer = new HSlicer(dimensionIndices);
                     // add the hslice to the transform pipeline
@@ -858,11 +1088,11 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             
             // pick the distance function
             // pick a random space
-            ParamSpaceBuilder distanceMeasureSpaceBuilder = RandomUtils.choice(distanceMeasureSpaceBuilders, getRandom());
+            ParamSpaceBuilder distanceMeasureSpaceBuilder = RandomUtils.choice(distanceMeasureSpaceBuilders, random);
             // built that space
             ParamSpace distanceMeasureSpace = distanceMeasureSpaceBuilder.build(transformedDataAtSplit);
             // randomly pick the distance function / parameters from that space
-            final ParamSet paramSet = RandomSearch.choice(distanceMeasureSpace, getRandom());
+            final ParamSet paramSet = RandomSearch.choice(distanceMeasureSpace, random);
             // there is only one distance function in the ParamSet returned
             distanceMeasure = Objects.requireNonNull((DistanceMeasure) paramSet.get(DistanceMeasure.DISTANCE_MEASURE_FLAG));
             
@@ -890,7 +1120,7 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
                 if(distanceMode.equals(DistanceMode.RANDOM)) {
                     // then random pick from the remaining modes
                     final Integer index = RandomUtils
-                                                  .choiceIndexExcept(DistanceMode.values().length, getRandom(),
+                                                  .choiceIndexExcept(DistanceMode.values().length, random,
                                                           DistanceMode.RANDOM.ordinal());
                     distanceMode = DistanceMode.values()[index];
                 }
@@ -919,51 +1149,57 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             // change the view of the data into per class
             final List<List<Integer>> instIndicesByClass = data.getInstIndicesByClass();
             // pick exemplars per class
-            partitionedDataIndicesInSplitData = new ArrayList<>(data.numClasses());
-            exemplars = new ArrayList<>(data.numClasses());
-            exemplarIndicesInSplitData = new ArrayList<>(data.numClasses());
+            final List<Integer> exemplarIndices = new ArrayList<>(data.numClasses());
             // generate a partition per class
             for(final List<Integer> sameClassInstIndices : instIndicesByClass) {
                 // avoid empty classes, no need to create partition / exemplars from them
                 if(!sameClassInstIndices.isEmpty()) {
                     // get the indices of all instances with the specified class
                     // random pick exemplars from this 
-                    final Integer exemplarIndexInSplitData = RandomUtils.choice(sameClassInstIndices, getRandom());
-                    exemplarIndicesInSplitData.add(exemplarIndexInSplitData);
-                    // generate the partition with empty data and the chosen exemplar instances
-                    final ArrayList<Integer> partition = new ArrayList<>();
-                    partitionedDataIndicesInSplitData.add(partition);
-                    // find the index of the exemplar in the dataIndices (i.e. the exemplar may be the 5th instance 
-                    // in the data but the 5th instance may have index 33 in the train data)
-                    TimeSeriesInstance exemplar = transformedDataAtSplit.get(exemplarIndexInSplitData);
-                    exemplars.add(exemplar);
+                    exemplarIndices.add(RandomUtils.choice(sameClassInstIndices, random));
                 }
             }
+            final int numPartitions = exemplarIndices.size();
+            exemplarIndicesInSplitData = new int[numPartitions];
+            exemplars = new TimeSeriesInstance[numPartitions];
+            // generate the partitions with empty data and the chosen exemplar instances
+            partitionedDataIndicesInSplitData = new int[numPartitions][];
+            partitionSizes = new int[numPartitions];
+            // size each partition for an even split of the data, they grow if need be
+            final int initialPartitionSize = data.numInstances() / Math.max(1, numPartitions) + 1;
+            for(int i = 0; i < numPartitions; i++) {
+                exemplarIndicesInSplitData[i] = exemplarIndices.get(i);
+                partitionedDataIndicesInSplitData[i] = new int[initialPartitionSize];
+                // the exemplar is held in its transformed form, as it's compared to the transformed data
+                exemplars[i] = transformedDataAtSplit.get(exemplarIndicesInSplitData[i]);
+            }
         }
         
         private void setupMisc() {
-            // the list of partition indices to browse through when allocating an inst to a partition
-           partitionIndices = new IndexList(partitionedDataIndicesInSplitData.size());
+            // the partition indices to browse through when allocating an inst to a partition
+            partitionIndices = new int[numPartitions()];
+            for(int i = 0; i < partitionIndices.length; i++) {
+                partitionIndices[i] = i;
+            }
             if(partitionExaminationReordering) {
                 // init the desc order of partitions for each class
                 
-                // for each class, make a list holding the partition indices in desc order of size
+                // for each class, make an array holding the partition indices in desc order of size
                 // this order will be maintained as insts are allocated to partitions, hence maintaining a list of
                 // the most likely partition to end up in given an inst is of a certain class
-                partitionOrderByClass = new ArrayList<>(data.numClasses());
+                partitionOrderByClass = new int[data.numClasses()][];
                 for(int i = 0; i < data.numClasses(); i++) {
-                    partitionOrderByClass.add(new ArrayList<>(partitionIndices));
+                    partitionOrderByClass[i] = partitionIndices.clone();
                 }
             }
 
-
             if(earlyExemplarCheck) {
-                exemplarIndexInSplitDataToPartitionIndex = new HashMap<>();
+                exemplarPartitionIndices = new int[data.numInstances()];
+                Arrays.fill(exemplarPartitionIndices, -1);
 
-                // chuck all exemplars in a map to check against before doing distance computation
-                for(int i = 0; i < exemplarIndicesInSplitData.size(); i++) {
-                    final Integer exemplarIndexInSplitData = exemplarIndicesInSplitData.get(i);
-                    exemplarIndexInSplitDataToPartitionIndex.put(exemplarIndexInSplitData, i);
+                // chuck all exemplars in a lookup to check against before doing distance computation
+                for(int i = 0; i < exemplarIndicesInSplitData.length; i++) {
+                    exemplarPartitionIndices[exemplarIndicesInSplitData[i]] = i;
                 }
                 
             }
@@ -974,8 +1210,13 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
          */
         public void buildSplit() {
             setup();
-            while(hasNext()) {
-                next();
+            final int numBlocks = Math.min(numThreads, data.numInstances() / MIN_PARTITION_BLOCK_SIZE);
+            if(pool != null && numBlocks > 1 && !partitionExaminationReordering) {
+                partitionConcurrently(numBlocks);
+            } else {
+                while(hasNext()) {
+                    next();
+                }
             }
             cleanup();
         }
@@ -983,52 +1224,43 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         public DistanceMeasure getDistanceMeasure() {
             return distanceMeasure;
         }
-        
-        public int findPartitionIndexFor(final TimeSeriesInstance inst, int instIndexInSplitData, List<Integer> partitionIndices) {
-            final int partitionIndexIndex = findPartitionIndexIndexFor(inst, instIndexInSplitData, partitionIndices);
-            return partitionIndices.get(partitionIndexIndex);
-        }
 
         /**
-         * get the partition of the given instance. The returned partition is the set of data the given instance belongs to based on its proximity to the exemplar instances representing the partition.
+         * Find the partitions with the closest exemplar to the given instance. Distances are abandoned once beyond the
+         * closest so far when early abandon is enabled, which still finds any ties exactly.
          *
-         * @param inst
+         * @param distanceMeasure the distance measure, or a copy of it for the current thread
+         * @param inst the transformed inst
          * @param instIndexInSplitData the index of the inst in the data at this node. If the inst is not in the data at this node then set this to -1
-         * @return
+         * @param partitionIndices the partitions to examine, in order
+         * @param closestPartitionIndices populated with the closest partitions, in order of examination
+         * @return the number of closest partitions, more than one if there's a tie
          */
-        public int findPartitionIndexIndexFor(TimeSeriesInstance inst, int instIndexInSplitData, List<Integer> partitionIndicesIterator) {
-            // replace inst with transformed version (i.e. apply the multivariate strategy)
-            if(instIndexInSplitData >= 0) {
-                inst = transformedDataAtSplit.get(instIndexInSplitData);
-            } else {
-                inst = pipeline.transform(inst);
-            }
-            // a map to maintain the closest partition indices
-            final PrunedMap<Double, Integer> filter = PrunedMap.asc(1);
+        private int findClosestPartitionIndices(DistanceMeasure distanceMeasure, TimeSeriesInstance inst,
+                int instIndexInSplitData, int[] partitionIndices, int[] closestPartitionIndices) {
             // maintain a limit on distance computation
-            double limit = Double.POSITIVE_INFINITY;
+            double min = Double.POSITIVE_INFINITY;
+            int numClosest = 0;
             // loop through exemplars / partitions
-            for(int i = 0; i < partitionIndicesIterator.size(); i++) {
-                final Integer exemplarIndexInSplitData = exemplarIndicesInSplitData.get(i);
+            for(final int partitionIndex : partitionIndices) {
                 // check the instance isn't an exemplar
-                if(!earlyExemplarCheck && instIndexInSplitData == exemplarIndexInSplitData) {
-                    return i;
+                if(instIndexInSplitData == exemplarIndicesInSplitData[partitionIndex]) {
+                    closestPartitionIndices[0] = partitionIndex;
+                    return 1;
                 }
-                final TimeSeriesInstance exemplar = exemplars.get(i);
                 // find the distance
-                final double distance = distanceMeasure.distance(exemplar, inst, limit);
-                // add the distance and partition to the map
-                if(filter.add(distance, i)) {
+                final double distance = distanceMeasure.distance(exemplars[partitionIndex], inst,
+                        earlyAbandonDistances ? min : Double.POSITIVE_INFINITY);
+                if(distance < min) {
                     // new min dist
-                    // set new limit if early abandon enabled
-                    if(earlyAbandonDistances) {
-                        limit = distance;
-                    }
+                    min = distance;
+                    closestPartitionIndices[0] = partitionIndex;
+                    numClosest = 1;
+                } else if(distance == min) {
+                    closestPartitionIndices[numClosest++] = partitionIndex;
                 }
             }
-            
-            // random pick the best partition for the instance
-            return RandomUtils.choice(filter.valuesList(), rand);
+            return numClosest;
         }
 
         /**
@@ -1037,20 +1269,26 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
          * @return
          */
         public int findPartitionIndexFor(final TimeSeriesInstance inst) {
-            return findPartitionIndexFor(inst, -1, partitionIndices);
+            // replace inst with transformed version (i.e. apply the multivariate strategy)
+            final TimeSeriesInstance transformed = pipeline.transform(inst);
+            final int[] closestPartitionIndices = new int[partitionIndices.length];
+            final int numClosest = findClosestPartitionIndices(distanceMeasure, transformed, -1, partitionIndices,
+                    closestPartitionIndices);
+            // random pick the best partition for the instance
+            return closestPartitionIndices[RandomUtils.choiceIndex(numClosest, rand)];
         }
 
         public TimeSeriesInstances getData() {
             return data;
         }
 
-        public void setData(TimeSeriesInstances data, List<Integer> dataIndices) {
+        public void setData(TimeSeriesInstances data, int[] dataIndices) {
             this.dataIndicesInTrainData = Objects.requireNonNull(dataIndices);
             this.data = Objects.requireNonNull(data);
-            Assert.assertEquals(data.numInstances(), dataIndices.size());
+            Assert.assertEquals(data.numInstances(), dataIndices.length);
         }
 
-        public List<Integer> getDataIndicesInTrainData() {
+        public int[] getDataIndicesInTrainData() {
             return dataIndicesInTrainData;
         }
         
@@ -1060,22 +1298,22 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
             if(distanceMeasure != null) {
                 // then split has been built
                 sb.append("df=").append(distanceMeasure);
-                sb.append(", partitionedDataIndices=").append(getPartitionedDataIndicesInTrainData());
+                sb.append(", partitionedDataIndices=").append(Arrays.deepToString(getPartitionedDataIndicesInTrainData()));
                 sb.append(", ");
             }
-            sb.append("dataIndices=").append(dataIndicesInTrainData);
+            sb.append("dataIndices=").append(Arrays.toString(dataIndicesInTrainData));
                     
             return sb.toString();
         }
         
         public int numPartitions() {
-            return partitionedDataIndicesInSplitData.size();
+            return partitionedDataIndicesInSplitData.length;
         }
         
-        public List<List<Integer>> getPartitionedDataIndicesInTrainData() {
-            List<List<Integer>> indices = new ArrayList<>();
+        public int[][] getPartitionedDataIndicesInTrainData() {
+            final int[][] indices = new int[numPartitions()][];
             for(int i = 0; i < numPartitions(); i++) {
-                indices.add(getPartitionDataIndicesInTrainData(i));
+                indices[i] = getPartitionDataIndicesInTrainData(i);
             }
             return indices;
         }
@@ -1089,14 +1327,21 @@ public class ProximityTree extends BaseClassifier implements ContractedTest, Con
         }
         
         public TimeSeriesInstances getPartitionData(int i) {
-            final List<TimeSeriesInstance> data =
-                    partitionedDataIndicesInSplitData.get(i).stream().map(this.data::get)
-                            .collect(Collectors.toList());
+            final int[] partition = partitionedDataIndicesInSplitData[i];
+            final List<TimeSeriesInstance> data = new ArrayList<>(partitionSizes[i]);
+            for(int j = 0; j < partitionSizes[i]; j++) {
+                data.add(this.data.get(partition[j]));
+            }
             return new TimeSeriesInstances(data, this.data.getClassLabels());
         }
         
-        public List<Integer> getPartitionDataIndicesInTrainData(int i) {
-            return partitionedDataIndicesInSplitData.get(i).stream().map(dataIndicesInTrainData::get).collect(Collectors.toList());
+        public int[] getPartitionDataIndicesInTrainData(int i) {
+            final int[] partition = partitionedDataIndicesInSplitData[i];
+            final int[] indices = new int[partitionSizes[i]];
+            for(int j = 0; j < indices.length; j++) {
+                indices[j] = dataIndicesInTrainData[partition[j]];
+            }
+            return indices;
         }
 
     }
@@ -130,6 +130,19 @@ public abstract class BaseClassifier extends EnhancedAbstractClassifier implemen
 
     @Override public abstract double[] distributionForInstance(final TimeSeriesInstance inst) throws Exception;
 
+    @Override
+    public final double[][] distributionsForInstances(final Instances instances) throws Exception {
+        return distributionForInstances(Converter.fromArff(instances));
+    }
+
+    @Override public double[][] distributionForInstances(final TimeSeriesInstances data) throws Exception {
+        final double[][] distributions = new double[data.numInstances()][];
+        for(int i = 0; i < distributions.length; i++) {
+            distributions[i] = distributionForInstance(data.get(i));
+        }
+        return distributions;
+    }
+
     @Override public String[] getOptions() {
         return ParamHandler.super.getOptions();
     }
@@ -0,0 +1,213 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.classifiers.checkpointing;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import tsml.classifiers.distance_based.utils.system.serial.KryoModelSerialiser;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Purpose: append-only checkpoint file for classifiers which build their model incrementally, e.g. an ensemble adding
+ * members. Rather than rewriting the whole classifier at each checkpoint, only the members built since the last
+ * checkpoint are appended, followed by a small record of the remaining state.
+ *
+ * Records are encoded with Kryo on the calling thread, so the caller may carry on modifying its state straight away,
+ * and written to disk by a background thread. Each record is framed by its length and a CRC32 checksum, so a record
+ * torn by the process being killed mid write is detected and dropped when the log is read back.
+ *
+ * Not thread safe, records should be appended from one thread.
+ */
+public class CheckpointLog implements Closeable {
+
+    private final File file;
+    private final Kryo kryo;
+    private final Output output = new Output(1 << 16, -1);
+    private final DataOutputStream out;
+    private final ExecutorService writer;
+    private volatile IOException writeException;
+
+    /**
+     * Opens the log for appending, creating the file if it does not exist.
+     *
+     * @param file the log file
+     * @param kryo the kryo instance to encode records with, configured as the records need
+     */
+    public CheckpointLog(File file, Kryo kryo) throws IOException {
+        this(file, kryo, null);
+    }
+
+    /**
+     * Opens the log, replacing any existing content with the given records before appending. Use this when resuming
+     * to drop records which are no longer needed, e.g. the state records superseded by the latest.
+     */
+    public CheckpointLog(File file, Kryo kryo, List<?> records) throws IOException {
+        this.file = file;
+        this.kryo = kryo;
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null) {
+            parent.mkdirs();
+        }
+        if(records != null) {
+            // write to a temp file and swap it in so the old log survives a failure part way through
+            final File temp = new File(file.getPath() + ".tmp");
+            try(DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                for(Object record : records) {
+                    writeRecord(tempOut, encode(record));
+                }
+            }
+            if(file.exists() && !file.delete()) {
+                throw new IOException("unable to replace " + file);
+            }
+            if(!temp.renameTo(file)) {
+                throw new IOException("unable to rename " + temp + " to " + file);
+            }
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "CheckpointLog-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return a kryo instance which can encode classes without registration or no-arg constructors
+     */
+    public static Kryo newKryo() {
+        return KryoModelSerialiser.newKryo();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Encodes the record immediately and queues it to be written.
+     *
+     * @throws IOException if an earlier write failed
+     */
+    public void append(Object record) throws IOException {
+        checkWriteException();
+        final byte[] bytes = encode(record);
+        writer.execute(() -> {
+            if(writeException != null) {
+                return;
+            }
+            try {
+                writeRecord(out, bytes);
+                out.flush();
+            } catch(IOException e) {
+                writeException = e;
+            }
+        });
+    }
+
+    /**
+     * Blocks until all appended records have been written.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> {}).get();
+        } catch(Exception e) {
+            throw new IOException(e);
+        }
+        checkWriteException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted whilst writing " + file);
+        } finally {
+            out.close();
+        }
+        checkWriteException();
+    }
+
+    /**
+     * Reads all complete records from a log. Reading stops at the first torn or corrupt record.
+     *
+     * @param file the log file
+     * @param kryo kryo configured as when the records were written
+     * @return the records in the order they were appended
+     */
+    public static List<Object> read(File file, Kryo kryo) throws IOException {
+        final List<Object> records = new ArrayList<>();
+        // bytes left after the current record header, so a torn length is never allocated
+        long remaining = file.length();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while(true) {
+                final byte[] bytes;
+                try {
+                    final int length = in.readInt();
+                    final long checksum = in.readLong();
+                    remaining -= Integer.BYTES + Long.BYTES;
+                    if(length < 0 || length > remaining) {
+                        break;
+                    }
+                    remaining -= length;
+                    bytes = new byte[length];
+                    in.readFully(bytes);
+                    if(checksum(bytes) != checksum) {
+                        break;
+                    }
+                } catch(EOFException e) {
+                    break;
+                }
+                records.add(kryo.readClassAndObject(new Input(bytes)));
+            }
+        }
+        return records;
+    }
+
+    private byte[] encode(Object record) {
+        output.reset();
+        kryo.writeClassAndObject(output, record);
+        return output.toBytes();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.writeLong(checksum(bytes));
+        out.write(bytes);
+    }
+
+    private static long checksum(byte[] bytes) {
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private void checkWriteException() throws IOException {
+        if(writeException != null) {
+            throw new IOException("failed writing checkpoint log " + file, writeException);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.classifiers.checkpointing;
+
+import com.esotericsoftware.kryo.Kryo;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CheckpointLogTest {
+
+    private File file;
+    private Kryo kryo;
+    private List<Object> records;
+    // length of the log after each record has been written
+    private long[] ends;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("checkpoint", ".log");
+        file.deleteOnExit();
+        kryo = CheckpointLog.newKryo();
+        records = new ArrayList<>();
+        records.add("first");
+        records.add(new int[] {1, 2, 3});
+        records.add(new double[][] {{0.5}, {1.5, 2.5}});
+        records.add(new ArrayList<>(Arrays.asList("a", "b", "c")));
+        records.add(42L);
+        ends = new long[records.size()];
+        try(CheckpointLog log = new CheckpointLog(file, kryo, new ArrayList<>())) {
+            for(int i = 0; i < records.size(); i++) {
+                log.append(records.get(i));
+                log.flush();
+                ends[i] = file.length();
+            }
+        }
+    }
+
+    private static void assertRecordsEqual(List<Object> expected, List<Object> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            Assert.assertTrue(Arrays.deepEquals(new Object[] {expected.get(i)}, new Object[] {actual.get(i)}));
+        }
+    }
+
+    private void truncate(long length) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    @Test
+    public void readsAppendedRecords() throws IOException {
+        assertRecordsEqual(records, CheckpointLog.read(file, kryo));
+    }
+
+    @Test
+    public void truncatedLogRecoversToLastWholeRecord() throws IOException {
+        final byte[] whole = Files.readAllBytes(file.toPath());
+        for(int length = 0; length <= whole.length; length++) {
+            Files.write(file.toPath(), Arrays.copyOf(whole, length));
+            int numWhole = 0;
+            while(numWhole < ends.length && ends[numWhole] <= length) {
+                numWhole++;
+            }
+            assertRecordsEqual(records.subList(0, numWhole), CheckpointLog.read(file, kryo));
+        }
+    }
+
+    @Test
+    public void corruptRecordIsDropped() throws IOException {
+        // flip a byte in the body of the third record
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final long position = ends[2] - 1;
+            raf.seek(position);
+            final int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+        assertRecordsEqual(records.subList(0, 2), CheckpointLog.read(file, kryo));
+    }
+
+    @Test
+    public void tornLengthIsNotAllocated() throws IOException {
+        // a header claiming a record far longer than the file
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(ends[3]);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+        assertRecordsEqual(records.subList(0, 4), CheckpointLog.read(file, kryo));
+    }
+
+    @Test
+    public void resumesAfterTruncation() throws IOException {
+        truncate(ends[2] + 3);
+        final List<Object> recovered = CheckpointLog.read(file, kryo);
+        assertRecordsEqual(records.subList(0, 3), recovered);
+
+        // rewrite the log from the recovered records, dropping the torn tail, then carry on appending
+        try(CheckpointLog log = new CheckpointLog(file, kryo, recovered)) {
+            log.append("resumed");
+        }
+        final List<Object> expected = new ArrayList<>(records.subList(0, 3));
+        expected.add("resumed");
+        assertRecordsEqual(expected, CheckpointLog.read(file, kryo));
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
@@ -0,0 +1,160 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.memory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Purpose: track the estimated footprint of an ensemble against a memory limit whilst it is built.
+ *
+ * Shared objects, e.g. the train data, are counted once and excluded when sizing members. Members are sized with
+ * SizeOf when added, and the largest member seen so far is used to decide whether another will fit. The budget holds
+ * references to the shared objects and members, so it should be discarded once the build is complete. An unlimited
+ * budget sizes nothing, so it costs nothing to keep one in place when no limit has been set.
+ */
+public class MemoryBudget {
+
+    private final long limit;
+    private final Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<Object, Long> members = new IdentityHashMap<>();
+    private long sharedSize = 0;
+    private long membersSize = 0;
+    private long largestMemberSize = 0;
+
+    /**
+     * @param limit the limit in bytes, a limit of zero or less is unlimited
+     */
+    public MemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public boolean isLimited() {
+        return limit > 0;
+    }
+
+    /**
+     * Count objects used by the whole ensemble, which members may also reference.
+     *
+     * @return the size in bytes not already counted
+     */
+    public long addShared(Object... objs) {
+        if(!isLimited()) {
+            return 0;
+        }
+        long size = 0;
+        for(Object obj : objs) {
+            size += SizeOf.deepSizeOf(obj, shared, shared);
+        }
+        sharedSize += size;
+        return size;
+    }
+
+    /**
+     * @return the size in bytes the member would add to the budget, excluding shared objects
+     */
+    public long sizeOf(Object member) {
+        if(!isLimited()) {
+            return 0;
+        }
+        return SizeOf.deepSizeOf(member, shared);
+    }
+
+    /**
+     * @param parts the member and any per member state held alongside it, e.g. the intervals for a tree
+     * @return the size in bytes of the member
+     */
+    public long addMember(Object member, Object... parts) {
+        if(!isLimited()) {
+            return 0;
+        }
+        long size = sizeOf(member);
+        for(Object part : parts) {
+            size += sizeOf(part);
+        }
+        addMember(member, size);
+        return size;
+    }
+
+    public void addMember(Object member, long size) {
+        if(!isLimited()) {
+            return;
+        }
+        final Long previous = members.put(member, size);
+        if(previous != null) {
+            membersSize -= previous;
+        }
+        membersSize += size;
+        largestMemberSize = Math.max(largestMemberSize, size);
+    }
+
+    public void removeMember(Object member) {
+        final Long size = members.remove(member);
+        if(size != null) {
+            membersSize -= size;
+        }
+    }
+
+    /**
+     * @return the size in bytes the member was added with, zero if it is not a member
+     */
+    public long getMemberSize(Object member) {
+        final Long size = members.get(member);
+        return size == null ? 0 : size;
+    }
+
+    public int getNumMembers() {
+        return members.size();
+    }
+
+    public long getLargestMemberSize() {
+        return largestMemberSize;
+    }
+
+    /**
+     * @return the estimated size in bytes of the shared objects and members
+     */
+    public long getUsed() {
+        return sharedSize + membersSize;
+    }
+
+    public boolean hasRoomFor(long size) {
+        return !isLimited() || getUsed() + size <= limit;
+    }
+
+    /**
+     * @return whether a member as large as the largest seen so far would fit
+     */
+    public boolean canAddMember() {
+        return canAddMembers(1);
+    }
+
+    public boolean canAddMembers(int numMembers) {
+        return hasRoomFor(numMembers * largestMemberSize);
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryBudget{used=" + getUsed() + ", limit=" + limit + ", members=" + members.size() + "}";
+    }
+}
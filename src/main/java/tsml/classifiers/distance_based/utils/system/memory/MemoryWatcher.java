@@ -30,7 +30,6 @@ import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.MemoryUsage;
 import java.util.*;
 
-import org.nd4j.linalg.io.Assert;
 import tsml.classifiers.distance_based.utils.system.timing.Stated;
 import utilities.Utilities;
 
@@ -143,7 +142,7 @@ public class MemoryWatcher extends Stated implements MemoryWatchable {
             super.stop();
             activeListener = false;
         }
-        Assert.isNull(listener);
+        if(listener != null) throw new IllegalStateException("listener should not be set after deserialization");
 
     }
 
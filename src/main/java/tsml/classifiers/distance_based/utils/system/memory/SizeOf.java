@@ -0,0 +1,168 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.memory;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Purpose: estimate the heap footprint of an object graph by walking its fields with reflection.
+ *
+ * Sizes assume a 64 bit HotSpot JVM, with compressed references when the max heap is under 32GB. Field padding within
+ * an object is ignored, so the result is an estimate rather than an exact count. Classes, class loaders, threads,
+ * loggers and enum constants are shared by the whole JVM and are not counted.
+ */
+public class SizeOf {
+
+    private static final boolean COMPRESSED_REFS = Runtime.getRuntime().maxMemory() < 32L * 1024 * 1024 * 1024;
+    private static final int REF_SIZE = COMPRESSED_REFS ? 4 : 8;
+    private static final int OBJECT_HEADER = COMPRESSED_REFS ? 12 : 16;
+    private static final int ARRAY_HEADER = 16;
+    private static final int ALIGNMENT = 8;
+
+    // non-static fields of each class, including those of super classes
+    private static final Map<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Long> SHALLOW_SIZES = new ConcurrentHashMap<>();
+
+    private SizeOf() {}
+
+    public static long deepSizeOf(Object obj) {
+        return deepSizeOf(obj, Collections.emptySet());
+    }
+
+    /**
+     * @param obj the root of the object graph
+     * @param exclude objects, compared by identity, which are not counted or walked through. E.g. the train data
+     *                referenced by a model.
+     * @return the estimated size in bytes of all objects reachable from obj
+     */
+    public static long deepSizeOf(Object obj, Set<Object> exclude) {
+        return deepSizeOf(obj, exclude, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    /**
+     * @param obj the root of the object graph
+     * @param exclude objects, compared by identity, which are not counted or walked through. E.g. the train data
+     *                referenced by a model.
+     * @param visited identity set which every counted object is added to. Passing the exclude set here as well
+     *                accumulates a graph into it, so later calls do not count it again.
+     * @return the estimated size in bytes of all objects reachable from obj
+     */
+    public static long deepSizeOf(Object obj, Set<Object> exclude, Set<Object> visited) {
+        final Deque<Object> stack = new ArrayDeque<>();
+        long size = 0;
+        push(obj, stack, visited, exclude);
+        while(!stack.isEmpty()) {
+            final Object current = stack.pop();
+            final Class<?> type = current.getClass();
+            if(type.isArray()) {
+                final int length = Array.getLength(current);
+                final Class<?> component = type.getComponentType();
+                if(component.isPrimitive()) {
+                    size += align(ARRAY_HEADER + (long) length * primitiveSize(component));
+                } else {
+                    size += align(ARRAY_HEADER + (long) length * REF_SIZE);
+                    for(Object element : (Object[]) current) {
+                        push(element, stack, visited, exclude);
+                    }
+                }
+            } else {
+                size += shallowSizeOf(type);
+                for(Field field : fields(type)) {
+                    try {
+                        push(field.get(current), stack, visited, exclude);
+                    } catch(IllegalAccessException ignored) {
+                        // cannot read the field, only its reference is counted
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static void push(Object obj, Deque<Object> stack, Set<Object> visited, Set<Object> exclude) {
+        if(obj == null || isShared(obj) || (exclude != visited && exclude.contains(obj)) || !visited.add(obj)) {
+            return;
+        }
+        stack.push(obj);
+    }
+
+    private static boolean isShared(Object obj) {
+        return obj instanceof Class || obj instanceof ClassLoader || obj instanceof Thread
+                || obj instanceof ThreadGroup || obj instanceof Logger || obj instanceof Enum;
+    }
+
+    private static long shallowSizeOf(Class<?> type) {
+        return SHALLOW_SIZES.computeIfAbsent(type, t -> {
+            long size = OBJECT_HEADER;
+            for(Class<?> c = t; c != null; c = c.getSuperclass()) {
+                for(Field field : c.getDeclaredFields()) {
+                    if(!Modifier.isStatic(field.getModifiers())) {
+                        size += field.getType().isPrimitive() ? primitiveSize(field.getType()) : REF_SIZE;
+                    }
+                }
+            }
+            return align(size);
+        });
+    }
+
+    private static Field[] fields(Class<?> type) {
+        return FIELDS.computeIfAbsent(type, t -> {
+            final List<Field> fields = new ArrayList<>();
+            for(Class<?> c = t; c != null; c = c.getSuperclass()) {
+                for(Field field : c.getDeclaredFields()) {
+                    if(!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                        try {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        } catch(RuntimeException ignored) {
+                            // inaccessible on newer JVMs, only the reference is counted
+                        }
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        });
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if(type == long.class || type == double.class) {
+            return 8;
+        } else if(type == int.class || type == float.class) {
+            return 4;
+        } else if(type == short.class || type == char.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,59 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.memory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SizeOfTest {
+
+    @Test
+    public void primitiveArray() {
+        Assert.assertEquals(16 + 8 * 100, SizeOf.deepSizeOf(new double[100]));
+    }
+
+    @Test
+    public void sharedReferencesCountedOnce() {
+        final double[] a = new double[100];
+        Assert.assertEquals(SizeOf.deepSizeOf(new Object[2]) + SizeOf.deepSizeOf(a),
+                SizeOf.deepSizeOf(new Object[] {a, a}));
+    }
+
+    @Test
+    public void excludedObjectsNotCounted() {
+        final double[] data = new double[1000];
+        final Set<Object> exclude = Collections.newSetFromMap(new IdentityHashMap<>());
+        exclude.add(data);
+        Assert.assertEquals(SizeOf.deepSizeOf(new Object[1]), SizeOf.deepSizeOf(new Object[] {data}, exclude));
+    }
+
+    @Test
+    public void budgetStopsAtLimit() {
+        final MemoryBudget budget = new MemoryBudget(10000);
+        int numMembers = 0;
+        while(budget.canAddMember()) {
+            budget.addMember(new double[100]);
+            numMembers++;
+        }
+        Assert.assertEquals(10000 / 816, numMembers);
+        Assert.assertTrue(budget.getUsed() <= budget.getLimit());
+    }
+}
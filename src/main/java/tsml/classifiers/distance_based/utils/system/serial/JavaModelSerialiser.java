@@ -0,0 +1,47 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.serial;
+
+import java.io.*;
+
+/**
+ * Purpose: save and load models with default Java serialisation.
+ */
+public class JavaModelSerialiser implements ModelSerialiser {
+
+    @Override
+    public String getExtension() {
+        return ".ser";
+    }
+
+    @Override
+    public void save(Object model, File file) throws IOException {
+        try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(model);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A> A load(File file) throws IOException {
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (A) in.readObject();
+        } catch(ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
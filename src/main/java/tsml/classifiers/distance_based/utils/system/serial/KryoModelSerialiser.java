@@ -0,0 +1,262 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.serial;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.ClosureSerializer;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import machine_learning.classifiers.ContinuousIntervalTree;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import tsml.classifiers.dictionary_based.IndividualTDE;
+import tsml.classifiers.dictionary_based.bitword.BitWord;
+import tsml.classifiers.dictionary_based.bitword.BitWordInt;
+import tsml.classifiers.dictionary_based.bitword.BitWordLong;
+import tsml.data_containers.TimeSeries;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.transformers.ROCKET;
+import tsml.transformers.shapelet_tools.Shapelet;
+import utilities.generic_storage.SerialisableComparablePair;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Purpose: save and load models with Kryo. Much faster and smaller than Java serialisation for models holding many
+ * small objects, e.g. boxed doubles in TimeSeries or the bags of TDE, which get compact serializers here.
+ *
+ * Core tsml types are registered so they are written as small ids rather than class names. Ids are assigned in
+ * registration order, so new registrations must be appended to keep existing model files readable.
+ *
+ * Classes which customise their Java serialisation (writeObject, readObject, readResolve, writeReplace or
+ * Externalizable) still use Java serialisation, as their state may not be recoverable from their fields alone.
+ *
+ * Files which fit in a single buffer are memory mapped when loading rather than streamed.
+ */
+public class KryoModelSerialiser implements ModelSerialiser {
+
+    @Override
+    public String getExtension() {
+        return ".kryo";
+    }
+
+    @Override
+    public void save(Object model, File file) throws IOException {
+        final Kryo kryo = newKryo();
+        try(Output output = new Output(new FileOutputStream(file), 1 << 16)) {
+            kryo.writeClassAndObject(output, model);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A> A load(File file) throws IOException {
+        final Kryo kryo = newKryo();
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if(channel.size() <= Integer.MAX_VALUE) {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return (A) kryo.readClassAndObject(new ByteBufferInput(buffer));
+            }
+        }
+        try(Input input = new Input(new FileInputStream(file), 1 << 16)) {
+            return (A) kryo.readClassAndObject(input);
+        }
+    }
+
+    /**
+     * @return a kryo instance with the core tsml types registered. Classes which are not registered can still be
+     * encoded, as can classes without no-arg constructors. Kryo is not thread safe, use one instance per thread.
+     */
+    public static Kryo newKryo() {
+        final Kryo kryo = new Kryo() {
+            // Kryo declares the parameter as a raw Class, so it cannot be parameterised in an override
+            @SuppressWarnings("rawtypes")
+            @Override
+            public Serializer<?> getDefaultSerializer(final Class type) {
+                if(hasJavaSerialisationHooks(type)) {
+                    return new JavaSerializer();
+                }
+                return super.getDefaultSerializer(type);
+            }
+        };
+        kryo.setRegistrationRequired(false);
+        kryo.setWarnUnregisteredClasses(false);
+        kryo.setReferences(true);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        kryo.register(ClosureSerializer.Closure.class, new ClosureSerializer());
+        // append only, see class doc
+        kryo.register(double[][].class);
+        kryo.register(double[][][].class);
+        kryo.register(int[][].class);
+        kryo.register(int[][][].class);
+        kryo.register(ArrayList.class);
+        kryo.register(LinkedList.class);
+        kryo.register(HashMap.class);
+        kryo.register(TreeMap.class);
+        kryo.register(Random.class);
+        kryo.register(TimeSeries.class, new TimeSeriesSerializer());
+        kryo.register(TimeSeriesInstance.class);
+        kryo.register(TimeSeriesInstances.class);
+        kryo.register(Instances.class, new InstancesSerializer());
+        kryo.register(DenseInstance.class);
+        kryo.register(ContinuousIntervalTree.class);
+        kryo.register(IndividualTDE.class);
+        kryo.register(IndividualTDE.Bag.class, new BagSerializer());
+        kryo.register(SerialisableComparablePair.class);
+        kryo.register(BitWordInt.class);
+        kryo.register(BitWordLong.class);
+        kryo.register(Shapelet.class);
+        kryo.register(ROCKET.class);
+        return kryo;
+    }
+
+    private static boolean hasJavaSerialisationHooks(Class<?> type) {
+        if(Externalizable.class.isAssignableFrom(type)) {
+            return true;
+        }
+        // the jdk classes are handled by kryo's own serializers
+        for(Class<?> c = type; c != null && !c.getName().startsWith("java."); c = c.getSuperclass()) {
+            for(Method method : c.getDeclaredMethods()) {
+                switch(method.getName()) {
+                    case "writeObject":
+                    case "readObject":
+                    case "readResolve":
+                    case "writeReplace":
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the values as a primitive array rather than a list of boxed doubles.
+     */
+    public static class TimeSeriesSerializer extends Serializer<TimeSeries> {
+
+        @Override
+        public void write(final Kryo kryo, final Output output, final TimeSeries series) {
+            final double[] values = series.toValueArray();
+            output.writeVarInt(values.length, true);
+            output.writeDoubles(values, 0, values.length);
+        }
+
+        @Override
+        public TimeSeries read(final Kryo kryo, final Input input, final Class<? extends TimeSeries> type) {
+            final int length = input.readVarInt(true);
+            return new TimeSeries(input.readDoubles(length));
+        }
+    }
+
+    /**
+     * Writes the header with Java serialisation, as attributes hold the string and relational values, then each
+     * instance as its weight and values. Sparse instances stay sparse, any other instance is read back as a
+     * DenseInstance.
+     */
+    public static class InstancesSerializer extends Serializer<Instances> {
+
+        private final JavaSerializer headerSerializer = new JavaSerializer();
+
+        @Override
+        public void write(final Kryo kryo, final Output output, final Instances data) {
+            kryo.writeObject(output, new Instances(data, 0), headerSerializer);
+            output.writeVarInt(data.numInstances(), true);
+            for(Instance instance : data) {
+                output.writeDouble(instance.weight());
+                if(instance instanceof SparseInstance) {
+                    output.writeBoolean(true);
+                    output.writeVarInt(instance.numValues(), true);
+                    for(int i = 0; i < instance.numValues(); i++) {
+                        output.writeVarInt(instance.index(i), true);
+                        output.writeDouble(instance.valueSparse(i));
+                    }
+                } else {
+                    output.writeBoolean(false);
+                    final double[] values = instance.toDoubleArray();
+                    output.writeDoubles(values, 0, values.length);
+                }
+            }
+        }
+
+        @Override
+        public Instances read(final Kryo kryo, final Input input, final Class<? extends Instances> type) {
+            final Instances header = kryo.readObject(input, Instances.class, headerSerializer);
+            final int numInstances = input.readVarInt(true);
+            final Instances data = new Instances(header, numInstances);
+            kryo.reference(data);
+            for(int i = 0; i < numInstances; i++) {
+                final double weight = input.readDouble();
+                if(input.readBoolean()) {
+                    final int numValues = input.readVarInt(true);
+                    final int[] indices = new int[numValues];
+                    final double[] values = new double[numValues];
+                    for(int j = 0; j < numValues; j++) {
+                        indices[j] = input.readVarInt(true);
+                        values[j] = input.readDouble();
+                    }
+                    data.add(new SparseInstance(weight, values, indices, data.numAttributes()));
+                } else {
+                    data.add(new DenseInstance(weight, input.readDoubles(data.numAttributes())));
+                }
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Writes the class value and each word, level and count. The map serializer would drop the class value.
+     */
+    public static class BagSerializer extends Serializer<IndividualTDE.Bag> {
+
+        @Override
+        public void write(final Kryo kryo, final Output output, final IndividualTDE.Bag bag) {
+            output.writeVarInt(bag.getClassVal(), false);
+            output.writeVarInt(bag.size(), true);
+            for(Map.Entry<SerialisableComparablePair<BitWord, Byte>, Integer> entry : bag.entrySet()) {
+                kryo.writeClassAndObject(output, entry.getKey().var1);
+                output.writeByte(entry.getKey().var2);
+                output.writeVarInt(entry.getValue(), true);
+            }
+        }
+
+        @Override
+        public IndividualTDE.Bag read(final Kryo kryo, final Input input,
+                final Class<? extends IndividualTDE.Bag> type) {
+            final IndividualTDE.Bag bag = new IndividualTDE.Bag(input.readVarInt(false));
+            kryo.reference(bag);
+            final int size = input.readVarInt(true);
+            for(int i = 0; i < size; i++) {
+                final BitWord word = (BitWord) kryo.readClassAndObject(input);
+                final byte level = input.readByte();
+                bag.put(new SerialisableComparablePair<>(word, level), input.readVarInt(true));
+            }
+            return bag;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.serial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.dictionary_based.IndividualTDE;
+import tsml.classifiers.dictionary_based.bitword.BitWordInt;
+import tsml.data_containers.TimeSeriesInstances;
+import utilities.generic_storage.SerialisableComparablePair;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+public class KryoModelSerialiserTest {
+
+    private static <A> A roundTrip(A model) throws IOException {
+        final ModelSerialiser serialiser = new KryoModelSerialiser();
+        final File file = File.createTempFile("model", serialiser.getExtension());
+        file.deleteOnExit();
+        serialiser.save(model, file);
+        return serialiser.load(file);
+    }
+
+    @Test
+    public void timeSeriesInstances() throws IOException {
+        final double[][][] values = {{{1, 2, 3}, {4, 5, 6}}, {{7, 8, 9}, {10, 11, 12}}};
+        final TimeSeriesInstances data = new TimeSeriesInstances(values, new int[] {0, 1}, new String[] {"a", "b"});
+        final TimeSeriesInstances loaded = roundTrip(data);
+        Assert.assertArrayEquals(data.getClassLabels(), loaded.getClassLabels());
+        Assert.assertArrayEquals(data.getClassIndexes(), loaded.getClassIndexes());
+        for(int i = 0; i < values.length; i++) {
+            for(int j = 0; j < values[i].length; j++) {
+                Assert.assertArrayEquals(values[i][j], loaded.get(i).get(j).toValueArray(), 0d);
+            }
+        }
+    }
+
+    @Test
+    public void instances() throws IOException {
+        final ArrayList<Attribute> atts = new ArrayList<>();
+        atts.add(new Attribute("x"));
+        final ArrayList<String> labels = new ArrayList<>();
+        labels.add("a");
+        labels.add("b");
+        atts.add(new Attribute("class", labels));
+        final Instances data = new Instances("test", atts, 2);
+        data.setClassIndex(1);
+        data.add(new DenseInstance(1, new double[] {0.5, 0}));
+        data.add(new DenseInstance(2, new double[] {-3, 1}));
+        final Instances loaded = roundTrip(data);
+        Assert.assertTrue(data.equalHeaders(loaded));
+        Assert.assertEquals(1, loaded.classIndex());
+        for(int i = 0; i < data.numInstances(); i++) {
+            Assert.assertArrayEquals(data.get(i).toDoubleArray(), loaded.get(i).toDoubleArray(), 0d);
+            Assert.assertEquals(data.get(i).weight(), loaded.get(i).weight(), 0d);
+            Assert.assertSame(loaded, loaded.get(i).dataset());
+        }
+    }
+
+    @Test
+    public void bag() throws Exception {
+        final IndividualTDE.Bag bag = new IndividualTDE.Bag(3);
+        bag.put(new SerialisableComparablePair<>(new BitWordInt(new int[] {1, 2}), (byte) 0), 5);
+        bag.put(new SerialisableComparablePair<>(new BitWordInt(new int[] {3, 0}), (byte) 1), 2);
+        final IndividualTDE.Bag loaded = roundTrip(bag);
+        Assert.assertEquals(3, loaded.getClassVal());
+        Assert.assertEquals(bag, loaded);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.distance_based.utils.system.serial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Purpose: save and load trained models, e.g. a classifier after buildClassifier. Implementations differ in encoding,
+ * pick one by name with forName.
+ */
+public interface ModelSerialiser {
+
+    /**
+     * @return the file extension, including the dot, for files written by this serialiser
+     */
+    String getExtension();
+
+    void save(Object model, File file) throws IOException;
+
+    <A> A load(File file) throws IOException;
+
+    /**
+     * Defers loading until the model is first needed, e.g. so a service can start before its models are read. The
+     * model is loaded at most once.
+     *
+     * @param file the model file
+     * @return supplier of the loaded model
+     */
+    default <A> SerSupplier<A> lazyLoad(File file) {
+        return new SerSupplier<A>() {
+            private A model;
+
+            @Override
+            public synchronized A get() {
+                if(model == null) {
+                    try {
+                        model = load(file);
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return model;
+            }
+        };
+    }
+
+    /**
+     * @param name "java" or "kryo", case insensitive
+     * @return the serialiser of that name
+     */
+    static ModelSerialiser forName(String name) {
+        switch(name.toLowerCase()) {
+            case "java":
+                return new JavaModelSerialiser();
+            case "kryo":
+                return new KryoModelSerialiser();
+            default:
+                throw new IllegalArgumentException("unknown model serialiser: " + name);
+        }
+    }
+}
@@ -33,4 +33,12 @@ public abstract class AbstractEarlyClassifier extends AbstractClassifier {
     public void setThresholds(int[] t){ thresholds = t; }
 
     public void setNormalise(boolean b) { normalise = b; }
+
+    /**
+     * Open a session to classify a single series point by point, updating the classifier state from new points only
+     * rather than reprocessing the whole prefix at each threshold. Must be called after buildClassifier.
+     *
+     * @return new stream session
+     */
+    public abstract EarlyClassificationStream openStream();
 }
@@ -0,0 +1,142 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.early_classification;
+
+/**
+ * Session for classifying a single series as it arrives, created by AbstractEarlyClassifier.openStream().
+ * Points are pushed with update, and the classifier is queried each time the series length reaches one of its
+ * thresholds until the decision maker accepts a prediction.
+ * <p>
+ * Subclasses can do their own incremental work per point in pointAdded. When normalising, the prefix is normalised
+ * with the same arithmetic as InstanceTools.zNormaliseWithClass, so a stream gives exactly the same predictions as
+ * passing the truncated series to distributionForInstance.
+ * Decision makers keep state between thresholds, so sessions from the same classifier should be driven one at a time,
+ * as with repeated calls to distributionForInstance.
+ */
+public abstract class EarlyClassificationStream {
+
+    protected final int[] thresholds;
+    protected final boolean normalise;
+
+    //series values seen so far, unnormalised
+    protected final double[] series;
+    protected int length = 0;
+
+    private int nextThreshold = 0;
+    private double[] decision;
+    private int decisionLength = -1;
+
+    protected EarlyClassificationStream(int[] thresholds, boolean normalise) {
+        this.thresholds = thresholds;
+        this.normalise = normalise;
+        series = new double[thresholds[thresholds.length - 1]];
+    }
+
+    /**
+     * Add new points to the end of the series.
+     *
+     * @param values new points in time order
+     * @return the class probabilities if a decision has been made, including by a previous update, null otherwise
+     * @throws Exception if the classifier or decision maker fails
+     */
+    public double[] update(double... values) throws Exception {
+        for (double value : values) {
+            if (decision != null) break;
+            if (length == series.length)
+                throw new IllegalStateException("Stream is already at the full series length " + series.length);
+
+            series[length] = value;
+            length++;
+            pointAdded(length - 1);
+
+            if (nextThreshold < thresholds.length && length == thresholds[nextThreshold]) {
+                double[] probs = thresholdReached(nextThreshold);
+                nextThreshold++;
+                if (probs != null) {
+                    decision = probs;
+                    decisionLength = length;
+                }
+            }
+        }
+        return decision;
+    }
+
+    public boolean isDecided() { return decision != null; }
+
+    /**
+     * @return class probabilities for the decision, null if no decision has been made yet
+     */
+    public double[] getDecision() { return decision; }
+
+    /**
+     * @return series length when the decision was made, -1 if no decision has been made yet
+     */
+    public int getDecisionLength() { return decisionLength; }
+
+    public int getLength() { return length; }
+
+    public double getEarliness() { return decisionLength / (double) series.length; }
+
+    /**
+     * Copy of the series seen so far, z-normalised if the classifier normalises. The statistics are computed in two
+     * passes over the prefix as in InstanceTools.zNormaliseWithClass rather than kept as running totals, as split
+     * points learnt from the batch normalised data are sensitive to the last bit of the values.
+     *
+     * @param out array to write to, at least length long and with any further values left untouched
+     * @return out
+     */
+    protected double[] prefix(double[] out) {
+        if (!normalise || length < 2) {
+            System.arraycopy(series, 0, out, 0, length);
+        } else {
+            double meanSum = 0;
+            for (int i = 0; i < length; i++) {
+                meanSum += series[i];
+            }
+            double mean = meanSum / length;
+
+            double squareSum = 0;
+            for (int i = 0; i < length; i++) {
+                double temp = series[i] - mean;
+                squareSum += temp * temp;
+            }
+
+            double stdev = Math.sqrt(squareSum / (length - 1));
+            if (stdev == 0) stdev = 1;
+            for (int i = 0; i < length; i++) {
+                out[i] = (series[i] - mean) / stdev;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Called after each point is added, before any threshold for the new length is evaluated.
+     *
+     * @param index index of the new point in series
+     */
+    protected void pointAdded(int index) { }
+
+    /**
+     * Get the class probabilities at a threshold and pass them to the decision maker.
+     *
+     * @param thresholdIndex index of the threshold the series length has reached
+     * @return the probabilities if the decision maker accepts them, null otherwise
+     * @throws Exception if the classifier or decision maker fails
+     */
+    protected abstract double[] thresholdReached(int thresholdIndex) throws Exception;
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.early_classification;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.classifiers.interval_based.TSF;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+import static utilities.InstanceTools.truncateInstances;
+
+public class EarlyClassificationStreamTest {
+
+    /**
+     * Classifies each test series by passing its truncations to distributionForInstance threshold by threshold with
+     * one classifier, and by streaming its values through openStream with another built the same way, checking the
+     * decisions are made at the same length with the same probabilities.
+     */
+    private static void assertStreamMatchesBatch(AbstractEarlyClassifier batch, AbstractEarlyClassifier stream,
+                                                 int maxTestInstances) throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        final Instances train = data[0];
+        final Instances test = data[1];
+        batch.buildClassifier(train);
+        stream.buildClassifier(train);
+
+        final int[] thresholds = batch.getThresholds();
+        Assert.assertArrayEquals(thresholds, stream.getThresholds());
+        final int length = test.numAttributes() - 1;
+        final Instances[] truncated = new Instances[thresholds.length];
+        for(int i = 0; i < thresholds.length; i++) {
+            truncated[i] = truncateInstances(test, length, thresholds[i]);
+        }
+
+        for(int n = 0; n < Math.min(maxTestInstances, test.numInstances()); n++) {
+            double[] expected = null;
+            int expectedLength = -1;
+            for(int i = 0; i < thresholds.length && expected == null; i++) {
+                expected = batch.distributionForInstance(truncated[i].get(n));
+                expectedLength = thresholds[i];
+            }
+
+            final Instance inst = test.get(n);
+            final double[] values = Arrays.copyOf(inst.toDoubleArray(), length);
+            final EarlyClassificationStream session = stream.openStream();
+            final double[] actual = session.update(values);
+
+            Assert.assertNotNull(expected);
+            Assert.assertNotNull(actual);
+            Assert.assertEquals(expectedLength, session.getDecisionLength());
+            Assert.assertArrayEquals(expected, actual, 0);
+        }
+    }
+
+    private static EarlyDecisionMakerClassifier buildDecisionMakerClassifier(boolean normalise) {
+        final TSF tsf = new TSF();
+        tsf.setNumTrees(50);
+        // tree votes are tie broken with a shared Random, averaging the tree probabilities keeps predictions
+        // independent of the order instances are classified in
+        tsf.setProbabilityEnsemble(true);
+        final ProbabilityThreshold decisionMaker = new ProbabilityThreshold();
+        decisionMaker.setConsecutivePredictions(2);
+        final EarlyDecisionMakerClassifier classifier = new EarlyDecisionMakerClassifier(tsf, decisionMaker);
+        classifier.setSeed(0);
+        classifier.setNormalise(normalise);
+        return classifier;
+    }
+
+    @Test
+    public void decisionMakerClassifierStreamMatchesBatch() throws Exception {
+        assertStreamMatchesBatch(buildDecisionMakerClassifier(false), buildDecisionMakerClassifier(false),
+                Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void normalisedDecisionMakerClassifierStreamMatchesBatch() throws Exception {
+        assertStreamMatchesBatch(buildDecisionMakerClassifier(true), buildDecisionMakerClassifier(true),
+                Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void shapeletTransformClassifierStreamMatchesBatch() throws Exception {
+        // rotation forest predictions are slow, so only the first few test series are compared
+        assertStreamMatchesBatch(new ShapeletTransformEarlyClassifier(), new ShapeletTransformEarlyClassifier(), 20);
+    }
+}
@@ -19,9 +19,11 @@ import experiments.data.DatasetLoading;
 import tsml.classifiers.interval_based.TSF;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Randomizable;
+import weka.core.Utils;
 
 import java.util.Arrays;
 import java.util.Random;
@@ -42,6 +44,8 @@ public class EarlyDecisionMakerClassifier extends AbstractEarlyClassifier implem
     private EarlyDecisionMaker decisionMaker;
 
     private Classifier[] classifiers;
+    //truncated headers for each threshold, used to build instances for stream sessions
+    private Instances[] headers;
 
     private int seed = 0;
     private Random rand;
@@ -114,6 +118,12 @@ public class EarlyDecisionMakerClassifier extends AbstractEarlyClassifier implem
             }
             decisionMaker.fit(data, blankClassifiers, thresholds);
         }
+
+        headers = new Instances[thresholds.length];
+        Instances header = new Instances(data, 0);
+        for (int i = 0; i < thresholds.length; i++) {
+            headers[i] = truncateInstances(header, data.numAttributes() - 1, thresholds[i]);
+        }
     }
 
     @Override
@@ -133,12 +143,31 @@ public class EarlyDecisionMakerClassifier extends AbstractEarlyClassifier implem
         }
         if (idx == -1) throw new Exception("Input instance length does not match any given timestamps.");
 
-        double[] probs;
-        boolean decision;
-
         Instance newData = instance;
         if (normalise) newData = zNormaliseWithClass(instance);
 
+        return distributionForThreshold(idx, newData);
+    }
+
+    @Override
+    public EarlyClassificationStream openStream() {
+        return new EarlyClassificationStream(thresholds, normalise) {
+            @Override
+            protected double[] thresholdReached(int thresholdIndex) throws Exception {
+                double[] arr = prefix(new double[length + 1]);
+                arr[length] = Utils.missingValue();
+                Instance inst = new DenseInstance(1, arr);
+                inst.setDataset(headers[thresholdIndex]);
+                return distributionForThreshold(thresholdIndex, inst);
+            }
+        };
+    }
+
+    //instance is already truncated to the threshold length and normalised if required
+    private double[] distributionForThreshold(int idx, Instance newData) throws Exception {
+        double[] probs;
+        boolean decision;
+
         if (loadFromFile){
             probs = loadedResults[idx].getProbabilityDistribution(testInstanceCounter);
             decision = decisionMaker.decide(idx, probs);
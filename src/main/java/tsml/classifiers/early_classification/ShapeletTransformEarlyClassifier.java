@@ -17,6 +17,7 @@ package tsml.classifiers.early_classification;
 import evaluation.storage.ClassifierResults;
 import experiments.data.DatasetLoading;
 import tsml.transformers.ShapeletTransform;
+import tsml.transformers.shapelet_tools.Shapelet;
 import tsml.transformers.shapelet_tools.ShapeletTransformFactory;
 import tsml.transformers.shapelet_tools.ShapeletTransformFactoryOptions;
 import tsml.transformers.shapelet_tools.ShapeletTransformTimingUtilities;
@@ -25,12 +26,17 @@ import tsml.transformers.shapelet_tools.quality_measures.ShapeletQuality;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearch;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearchOptions;
 import utilities.InstanceTools;
+import utilities.rescalers.ZNormalisation;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.meta.RotationForest;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Utils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import static utilities.ArrayUtilities.mean;
@@ -52,6 +58,10 @@ public class ShapeletTransformEarlyClassifier extends AbstractEarlyClassifier {
     private Instances shapeletData;
     private int[] redundantFeatures;
 
+    //header and normalised content of the shapelets remaining after redundant features are removed, for streams
+    private Instances transformHeader;
+    private double[][] streamShapelets;
+
     private int seed;
     private Random rand;
 
@@ -109,6 +119,15 @@ public class ShapeletTransformEarlyClassifier extends AbstractEarlyClassifier {
         transform = new ShapeletTransformFactory(transformOptions.build()).getTransform();
         shapeletData = transform.fitTransform(newData);
         redundantFeatures = InstanceTools.removeRedundantTrainAttributes(shapeletData);
+        transformHeader = new Instances(shapeletData, 0);
+
+        ArrayList<Shapelet> shapelets = new ArrayList<>(transform.getShapelets());
+        for (int del: redundantFeatures)
+            shapelets.remove(del);
+        streamShapelets = new double[shapelets.size()][];
+        for (int i = 0; i < streamShapelets.length; i++){
+            streamShapelets[i] = shapelets.get(i).getContent().getShapeletContent();
+        }
 
         RotationForest rotf = new RotationForest();
         rotf.setNumIterations(200);
@@ -155,6 +174,69 @@ public class ShapeletTransformEarlyClassifier extends AbstractEarlyClassifier {
         return decision ? probs : null;
     }
 
+    /**
+     * Stream session which keeps the best subsequence distance to each shapelet, only comparing shapelets against the
+     * new subsequences ending at each added point. Subsequences are z-normalised individually, so distances do not
+     * depend on normalisation of the whole prefix and nothing is recomputed when the running statistics change.
+     */
+    @Override
+    public EarlyClassificationStream openStream() {
+        return new EarlyClassificationStream(thresholds, normalise) {
+            private final double[] bestSums = new double[streamShapelets.length];
+
+            {
+                Arrays.fill(bestSums, Double.MAX_VALUE);
+            }
+
+            @Override
+            protected void pointAdded(int index) {
+                for (int i = 0; i < streamShapelets.length; i++){
+                    double[] shapelet = streamShapelets[i];
+                    int start = index - shapelet.length + 1;
+                    if (start < 0) continue;
+
+                    //z-normalise the new subsequence as in ZNormalisation.rescaleSeries
+                    double mean = 0;
+                    for (int j = start; j <= index; j++){
+                        mean += series[j];
+                    }
+                    mean /= shapelet.length;
+                    double stdv = 0;
+                    for (int j = start; j <= index; j++){
+                        double temp = series[j] - mean;
+                        stdv += temp * temp;
+                    }
+                    stdv /= shapelet.length;
+                    stdv = stdv < ZNormalisation.ROUNDING_ERROR_CORRECTION ? 0.0 : Math.sqrt(stdv);
+
+                    //early abandon once the subsequence cannot improve the best distance
+                    double sum = 0;
+                    for (int j = 0; j < shapelet.length && sum < bestSums[i]; j++){
+                        double temp = shapelet[j] - (stdv == 0.0 ? 0.0 : (series[start + j] - mean) / stdv);
+                        sum += temp * temp;
+                    }
+                    if (sum < bestSums[i]) bestSums[i] = sum;
+                }
+            }
+
+            @Override
+            protected double[] thresholdReached(int thresholdIndex) throws Exception {
+                double[] arr = new double[streamShapelets.length + 1];
+                for (int i = 0; i < streamShapelets.length; i++){
+                    arr[i] = bestSums[i] == 0.0 ? 0.0 : 1.0 / streamShapelets[i].length * bestSums[i];
+                }
+                arr[arr.length - 1] = Utils.missingValue();
+                Instance inst = new DenseInstance(1, arr);
+                inst.setDataset(transformHeader);
+
+                double[] probs = classifier.distributionForInstance(inst);
+                boolean decision = decisionMaker.decide(thresholdIndex, probs);
+
+                return decision ? probs : null;
+            }
+        };
+    }
+
     public static void main(String[] args) throws Exception{
         int fold = 0;
         String dataset = "ItalyPowerDemand";
@@ -25,6 +25,7 @@ import machine_learning.classifiers.ensembles.AbstractEnsemble;
 import machine_learning.classifiers.ensembles.voting.MajorityConfidence;
 import machine_learning.classifiers.ensembles.weightings.TrainAcc;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MemoryContractable;
 import tsml.classifiers.TrainTimeContractable;
 import tsml.classifiers.Tuneable;
 import tsml.classifiers.dictionary_based.BOSS;
@@ -62,13 +63,17 @@ import java.util.concurrent.TimeUnit;
  *
  * Version 1.0:
  */
-public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationHandler, TrainTimeContractable, Tuneable {
+public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationHandler, TrainTimeContractable, Tuneable,
+        MemoryContractable {
 
     //TrainTimeContractable
     protected boolean trainTimeContract = false;
     protected long trainContractTimeNanos = TimeUnit.DAYS.toNanos(7); // if contracting with no time limit given, default to 7 days.
     protected TimeUnit contractTrainTimeUnit = TimeUnit.NANOSECONDS;
 
+    //MemoryContractable, in bytes. Split evenly between the memory contractable modules, 0 for no limit
+    protected long memoryLimit = 0;
+
     /**
      * Utility if we want to be conservative while contracting with the overhead 
      * of the ensemble and any variance with the base classifiers' abilities to adhere 
@@ -274,8 +279,12 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
             printLineDebug(" In build of HC2: contract time = "+trainContractTimeNanos/1000000000/60/60+" hours ");
             setupContracting();
         }
+        if (memoryLimit > 0)
+            setupMemoryContract();
 
         super.buildClassifier(Converter.toArff(data));
+        if (memoryLimit > 0)
+            setMemoryResults();
         trainResults.setParas(getParameters());
         printLineDebug("*************** Finished HIVE-COTE Build with train time " +
                 (trainResults.getBuildTime()/1000000000/60/60.0) + " hours, Train+Estimate time = "+(trainResults.getBuildPlusEstimateTime()/1000000000/60/60.0)+" hours ***************");
@@ -299,8 +308,12 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
             printLineDebug(" In build of HC2: contract time = "+trainContractTimeNanos/1000000000/60/60+" hours ");
             setupContracting();
         }
+        if (memoryLimit > 0)
+            setupMemoryContract();
 
         super.buildClassifier(data);
+        if (memoryLimit > 0)
+            setMemoryResults();
         trainResults.setParas(getParameters());
         printLineDebug("*************** Finished HIVE-COTE Build with train time " +
                 (trainResults.getBuildTime()/1000000000/60/60.0) + " hours, Train+Estimate time = "+(trainResults.getBuildPlusEstimateTime()/1000000000/60/60.0)+" hours ***************");
@@ -401,6 +414,53 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
                 ((TrainTimeContractable) module.getClassifier()).setTrainTimeLimit(highFidelityUnit, highFidelityTimePerClassifier);
     }
 
+    /**
+     * Splits the memory limit evenly among the memory contractable base classifiers. As with the time contract, any
+     * others are ignored, and all modules are kept once built so the split is the same whether threaded or not.
+     */
+    protected void setupMemoryContract() {
+        int numContractableClassifiers = 0;
+        for (EnsembleModule module : modules) {
+            if (module.isMemoryContractable())
+                numContractableClassifiers++;
+            else
+                System.out.println("WARNING: trying to limit the memory of " + ensembleName + ", but base classifier "
+                        + module.getModuleName() + " is not memory contractable, and is therefore not considered in the "
+                        + "limit.");
+        }
+        if (numContractableClassifiers == 0)
+            return;
+
+        long memoryPerClassifier = Math.max(1, memoryLimit / numContractableClassifiers);
+        printLineDebug(" Memory limit per classifier = " + memoryPerClassifier + " bytes");
+        for (EnsembleModule module : modules)
+            if (module.isMemoryContractable())
+                ((MemoryContractable) module.getClassifier()).setMemoryLimit(memoryPerClassifier);
+    }
+
+    /**
+     * Records the limit and the sum of the sizes the modules reported, if any did, in the train results.
+     */
+    protected void setMemoryResults() {
+        long memory = 0;
+        for (EnsembleModule module : modules)
+            if (module.trainResults != null && module.trainResults.getMemory() > 0)
+                memory += module.trainResults.getMemory();
+        if (memory > 0)
+            trainResults.setMemory(memory);
+        trainResults.setMemoryLimit(memoryLimit);
+    }
+
+    @Override //MemoryContractable
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryLimit = MemoryContractable.toBytes(unit, amount);
+    }
+
+    @Override //MemoryContractable
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
     public void setAlpha(double alpha){
         this.alpha = alpha;
         this.weightingScheme = new TrainAcc(this.alpha);
@@ -448,6 +508,7 @@ public class HIVE_COTE extends AbstractEnsemble implements TechnicalInformationH
         String str="WeightingScheme,"+weightingScheme+","+"VotingScheme,"+votingScheme+",alpha,"+alpha+
                 ",seedClassifier,"+seedClassifier+",seed,"+seed;
         if (trainTimeContract) str += ",contractTime(hrs),"+trainContractTimeNanos/1000000000/60/60.0;
+        if (memoryLimit > 0) str += ",memoryLimit(bytes),"+memoryLimit;
 
         for (EnsembleModule module : modules)
             str+=","+module.getModuleName()+","+module.posteriorWeights[0];
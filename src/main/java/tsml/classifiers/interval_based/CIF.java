@@ -596,7 +596,9 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             int instIdx = 0;
             int lastIdx = -1;
 
-            //2. Generate and store attributes
+            //2. Generate and store attributes in a column-major feature matrix
+            double[][] features = new double[numIntervals * numAttributes][numInstances];
+            int[] labels = data.getClassIndexes();
             for (int k = 0; k < numInstances; k++) {
                 //For each instance
                 if (bagging) {
@@ -609,7 +611,9 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
                             instInclusions[instIdx]--;
 
                             if (instIdx == lastIdx) {
-                                result.set(k, new DenseInstance(result.instance(k - 1)));
+                                for (double[] f : features)
+                                    f[k] = f[k - 1];
+                                labels[k] = labels[k - 1];
                                 sameInst = true;
                             } else {
                                 lastIdx = instIdx;
@@ -621,7 +625,7 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
 
                     if (sameInst) continue;
 
-                    result.instance(k).setValue(result.classIndex(), data.get(instIdx).getLabelIndex());
+                    labels[k] = data.get(instIdx).getLabelIndex();
                 } else {
                     instIdx = k;
                 }
@@ -635,12 +639,12 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
 
                     for (int g = 0; g < numAttributes; g++) {
                         if (subsampleAtt[g] < 22) {
-                            result.instance(k).setValue(j * numAttributes + g,
-                                    c22.getSummaryStatByIndex(subsampleAtt[g], j, intervalArray));
+                            features[j * numAttributes + g][k] =
+                                    c22.getSummaryStatByIndex(subsampleAtt[g], j, intervalArray);
                         } else {
-                            result.instance(k).setValue(j * numAttributes + g,
+                            features[j * numAttributes + g][k] =
                                     FeatureSet.calcFeatureByIndex(subsampleAtt[g], interval[j][0],
-                                            interval[j][1], series));
+                                            interval[j][1], series);
                         }
                     }
                 }
@@ -651,7 +655,12 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             if (seedClassifier && tree instanceof Randomizable)
                 ((Randomizable) tree).setSeed(seed * (i + 1));
 
-            tree.buildClassifier(result);
+            if (tree instanceof ContinuousIntervalTree)
+                ((ContinuousIntervalTree) tree).buildClassifier(features, labels, numClasses);
+            else {
+                toInstances(features, labels, result);
+                tree.buildClassifier(result);
+            }
 
             if (bagging && getEstimateOwnPerformance()) {
                 long t1 = System.nanoTime();
@@ -711,6 +720,23 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
         }
     }
 
+    /**
+     * Write a column-major feature matrix and class labels into the rows of result, for base classifiers other than
+     * the ContinuousIntervalTree which must be built from Instances.
+     *
+     * @param features column-major feature matrix, features[attribute][instance]
+     * @param labels   class value of each instance
+     * @param result   Instances formatted for transformed data, with a row for each instance
+     */
+    private static void toInstances(double[][] features, int[] labels, Instances result) {
+        for (int k = 0; k < labels.length; k++) {
+            Instance inst = result.instance(k);
+            for (int a = 0; a < features.length; a++)
+                inst.setValue(a, features[a][k]);
+            inst.setValue(result.classIndex(), labels[k]);
+        }
+    }
+
     /**
      * Build the CIF classifier using multiple threads.
      * Unable to checkpoint until after the build process while using multiple threads.
@@ -733,11 +759,15 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
 
             int end = trees.size() + buildStep;
             for (int i = trees.size(); i < end; ++i) {
-                Instances resultCopy = new Instances(result, numInstances);
-                for (int n = 0; n < numInstances; n++) {
-                    DenseInstance in = new DenseInstance(result.numAttributes());
-                    in.setValue(result.numAttributes() - 1, result.instance(n).classValue());
-                    resultCopy.add(in);
+                //the default tree is built from a primitive feature matrix, others need their own Instances
+                Instances resultCopy = null;
+                if (!(base instanceof ContinuousIntervalTree)) {
+                    resultCopy = new Instances(result, numInstances);
+                    for (int n = 0; n < numInstances; n++) {
+                        DenseInstance in = new DenseInstance(result.numAttributes());
+                        in.setValue(result.numAttributes() - 1, result.instance(n).classValue());
+                        resultCopy.add(in);
+                    }
                 }
 
                 futures.add(ex.submit(new TreeBuildThread(i, dimensions, classVals, resultCopy)));
@@ -913,29 +943,8 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
                 d[c]++;
             }
         } else {
-            //Build transformed instance
             for (int i = 0; i < trees.size(); i++) {
-                Catch22 c22 = new Catch22();
-                c22.setOutlierNormalise(outlierNorm);
-
-                for (int j = 0; j < numIntervals; j++) {
-                    double[] series = dimensions[intervalDimensions.get(i)[j]];
-                    double[] intervalArray = Arrays.copyOfRange(series, intervals.get(i)[j][0],
-                            intervals.get(i)[j][1] + 1);
-
-                    for (int g = 0; g < numAttributes; g++) {
-                        if (subsampleAtts.get(i)[g] < 22) {
-                            testHolder.instance(0).setValue(j * numAttributes + g,
-                                    c22.getSummaryStatByIndex(subsampleAtts.get(i)[g], j, intervalArray));
-                        } else {
-                            testHolder.instance(0).setValue(j * numAttributes + g,
-                                    FeatureSet.calcFeatureByIndex(subsampleAtts.get(i)[g], intervals.get(i)[j][0],
-                                            intervals.get(i)[j][1], series));
-                        }
-                    }
-                }
-
-                int c = (int) trees.get(i).classifyInstance(testHolder.instance(0));
+                int c = classifyTransformed(i, dimensions, testHolder.instance(0));
                 d[c]++;
             }
         }
@@ -966,6 +975,98 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
         return distributionForInstance(Converter.fromArff(ins));
     }
 
+    /**
+     * Classify an instance with tree i when the base classifier is not a ContinuousIntervalTree, writing the interval
+     * features of the tree into inst.
+     *
+     * @param i          index of the tree
+     * @param dimensions series of the instance
+     * @param inst       instance to hold the transformed features
+     * @return predicted class value
+     * @throws Exception failure to classify
+     */
+    private int classifyTransformed(int i, double[][] dimensions, Instance inst) throws Exception {
+        Catch22 c22 = new Catch22();
+        c22.setOutlierNormalise(outlierNorm);
+
+        for (int j = 0; j < numIntervals; j++) {
+            double[] series = dimensions[intervalDimensions.get(i)[j]];
+            double[] intervalArray = Arrays.copyOfRange(series, intervals.get(i)[j][0],
+                    intervals.get(i)[j][1] + 1);
+
+            for (int g = 0; g < numAttributes; g++) {
+                if (subsampleAtts.get(i)[g] < 22) {
+                    inst.setValue(j * numAttributes + g,
+                            c22.getSummaryStatByIndex(subsampleAtts.get(i)[g], j, intervalArray));
+                } else {
+                    inst.setValue(j * numAttributes + g,
+                            FeatureSet.calcFeatureByIndex(subsampleAtts.get(i)[g], intervals.get(i)[j][0],
+                                    intervals.get(i)[j][1], series));
+                }
+            }
+        }
+
+        return (int) trees.get(i).classifyInstance(inst);
+    }
+
+    /**
+     * Find class probabilities of a batch of instances. When multi threading each thread classifies the whole batch
+     * with a block of trees, rather than a task being submitted for each tree and instance.
+     *
+     * @param data TimeSeriesInstances object
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override //TSClassifier
+    public double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
+        double[][] d = new double[data.numInstances()][];
+        if (!multiThread || interpSavePath != null) {
+            for (int n = 0; n < d.length; n++)
+                d[n] = distributionForInstance(data.get(n));
+            return d;
+        }
+
+        double[][][] dimensions = new double[d.length][][];
+        for (int n = 0; n < d.length; n++)
+            dimensions[n] = data.get(n).toValueArray();
+
+        int blockSize = (trees.size() + numThreads - 1) / numThreads;
+        ArrayList<Future<double[][]>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < trees.size(); i += blockSize)
+            futures.add(ex.submit(new TreeBatchPredictionThread(i, Math.min(i + blockSize, trees.size()),
+                    dimensions)));
+
+        for (int n = 0; n < d.length; n++)
+            d[n] = new double[numClasses];
+        for (Future<double[][]> f : futures) {
+            double[][] votes = f.get();
+            for (int n = 0; n < d.length; n++)
+                for (int j = 0; j < numClasses; j++)
+                    d[n][j] += votes[n][j];
+        }
+
+        for (double[] dist : d) {
+            double sum = 0;
+            for (double x : dist)
+                sum += x;
+            for (int j = 0; j < dist.length; j++)
+                dist[j] = dist[j] / sum;
+        }
+        return d;
+    }
+
+    /**
+     * Find class probabilities of a batch of instances, see distributionForInstances(TimeSeriesInstances).
+     *
+     * @param insts weka Instances object
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override //BatchPredictor
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        return distributionForInstances(Converter.fromArff(insts));
+    }
+
     /**
      * Classify an instance using the trained model.
      *
@@ -1581,7 +1682,9 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             int instIdx = 0;
             int lastIdx = -1;
 
-            //2. Generate and store attributes
+            //2. Generate and store attributes in a column-major feature matrix
+            double[][] features = new double[numIntervals * numAttributes][numInstances];
+            int[] labels = classVals.clone();
             for (int k = 0; k < numInstances; k++) {
                 //For each instance
 
@@ -1595,7 +1698,9 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
                             instInclusions[instIdx]--;
 
                             if (instIdx == lastIdx) {
-                                result.set(k, new DenseInstance(result.instance(k - 1)));
+                                for (double[] f : features)
+                                    f[k] = f[k - 1];
+                                labels[k] = labels[k - 1];
                                 sameInst = true;
                             } else {
                                 lastIdx = instIdx;
@@ -1607,7 +1712,7 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
 
                     if (sameInst) continue;
 
-                    result.instance(k).setValue(result.classIndex(), classVals[instIdx]);
+                    labels[k] = classVals[instIdx];
                 } else {
                     instIdx = k;
                 }
@@ -1620,12 +1725,12 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
                     for (int g = 0; g < numAttributes; g++) {
                         //process features
                         if (subsampleAtts[g] < 22) {
-                            result.instance(k).setValue(j * numAttributes + g,
-                                    c22.getSummaryStatByIndex(subsampleAtts[g], j, intervalArray));
+                            features[j * numAttributes + g][k] =
+                                    c22.getSummaryStatByIndex(subsampleAtts[g], j, intervalArray);
                         } else {
-                            result.instance(k).setValue(j * numAttributes + g,
+                            features[j * numAttributes + g][k] =
                                     FeatureSet.calcFeatureByIndex(subsampleAtts[g], interval[j][0],
-                                            interval[j][1], series));
+                                            interval[j][1], series);
                         }
                     }
                 }
@@ -1636,7 +1741,12 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
             if (seedClassifier && tree instanceof Randomizable)
                 ((Randomizable) tree).setSeed(seed * (i + 1));
 
-            tree.buildClassifier(result);
+            if (tree instanceof ContinuousIntervalTree)
+                ((ContinuousIntervalTree) tree).buildClassifier(features, labels, numClasses);
+            else {
+                toInstances(features, labels, result);
+                tree.buildClassifier(result);
+            }
 
             if (bagging && getEstimateOwnPerformance()) {
                 long t1 = System.nanoTime();
@@ -1736,31 +1846,52 @@ public class CIF extends EnhancedAbstractClassifier implements TechnicalInformat
                             intervals.get(i), subsampleAtts.get(i), intervalDimensions.get(i));
                 }
             } else {
-                //Build transformed instance
-                Catch22 c22 = new Catch22();
-                c22.setOutlierNormalise(outlierNorm);
+                h.c = classifyTransformed(i, dimensions, testHolder.instance(0));
+            }
 
-                for (int j = 0; j < numIntervals; j++) {
-                    double[] series = dimensions[intervalDimensions.get(i)[j]];
-                    double[] intervalArray = Arrays.copyOfRange(series, intervals.get(i)[j][0],
-                            intervals.get(i)[j][1] + 1);
+            return h;
+        }
+    }
 
-                    for (int g = 0; g < numAttributes; g++) {
-                        if (subsampleAtts.get(i)[g] < 22) {
-                            testHolder.instance(0).setValue(j * numAttributes + g,
-                                    c22.getSummaryStatByIndex(subsampleAtts.get(i)[g], j, intervalArray));
-                        } else {
-                            testHolder.instance(0).setValue(j * numAttributes + g,
-                                    FeatureSet.calcFeatureByIndex(subsampleAtts.get(i)[g], intervals.get(i)[j][0],
-                                            intervals.get(i)[j][1], series));
-                        }
-                    }
-                }
+    /**
+     * Class to make class predictions for a batch of instances using a block of CIF trees when multi threading.
+     */
+    private class TreeBatchPredictionThread implements Callable<double[][]> {
+        int start;
+        int end;
+        double[][][] dimensions;
+
+        public TreeBatchPredictionThread(int start, int end, double[][][] dimensions) {
+            this.start = start;
+            this.end = end;
+            this.dimensions = dimensions;
+        }
 
-                h.c = (int) tree.classifyInstance(testHolder.instance(0));
+        @Override
+        public double[][] call() throws Exception {
+            double[][] votes = new double[dimensions.length][numClasses];
+
+            Instance inst = null;
+            if (!(base instanceof ContinuousIntervalTree)) {
+                Instances testCopy = new Instances(testHolder, 1);
+                DenseInstance in = new DenseInstance(testHolder.numAttributes());
+                in.setValue(testHolder.numAttributes() - 1, -1);
+                testCopy.add(in);
+                inst = testCopy.instance(0);
             }
 
-            return h;
+            //each tree classifies the whole batch in turn, so its nodes stay in cache
+            for (int i = start; i < end; i++) {
+                for (int n = 0; n < dimensions.length; n++) {
+                    int c = base instanceof ContinuousIntervalTree
+                            ? (int) ((ContinuousIntervalTree) trees.get(i)).classifyInstance(dimensions[n], functions,
+                            intervals.get(i), subsampleAtts.get(i), intervalDimensions.get(i))
+                            : classifyTransformed(i, dimensions[n], inst);
+                    votes[n][c]++;
+                }
+            }
+
+            return votes;
         }
     }
 
@@ -14,6 +14,8 @@
  */
 package tsml.classifiers.interval_based;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
 import evaluation.evaluators.CrossValidationEvaluator;
 import evaluation.storage.ClassifierResults;
 import evaluation.tuning.ParameterSpace;
@@ -21,6 +23,8 @@ import experiments.data.DatasetLoading;
 import machine_learning.classifiers.ContinuousIntervalTree;
 import machine_learning.classifiers.ContinuousIntervalTree.Interval;
 import tsml.classifiers.*;
+import tsml.classifiers.distance_based.utils.classifiers.checkpointing.CheckpointLog;
+import tsml.classifiers.distance_based.utils.system.memory.MemoryBudget;
 import tsml.data_containers.TSCapabilities;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
@@ -37,6 +41,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.*;
 import java.util.function.Function;
@@ -51,7 +56,7 @@ import static utilities.StatisticalUtilities.median;
  * @author Matthew Middlehurst
  **/
 public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInformationHandler, TrainTimeContractable,
-        Checkpointable, Tuneable, MultiThreadable {
+        Checkpointable, Tuneable, MultiThreadable, MemoryContractable {
 
     /**
      * Paper defining DrCIF.
@@ -144,6 +149,8 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
     private long lastCheckpointTime = 0;
     private long checkpointTimeDiff = 0;
     private boolean internalContractCheckpointHandling = false;
+    private int numCheckpointedTrees = 0;
+    private transient CheckpointLog checkpointLog;
 
     /**
      * Flags and data required if Contracting
@@ -153,6 +160,12 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
     private boolean underContractTime = true;
     private int maxClassifiers = 500;
 
+    /**
+     * Memory contract, trees are added while the estimated model size is within the limit
+     */
+    private long memoryLimit = 0;
+    private transient MemoryBudget memoryBudget;
+
     /**
      * Multithreading
      */
@@ -287,7 +300,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                 Arrays.toString(minIntervalLength).replace(',', ';') + ",maxIntervalLength," +
                 Arrays.toString(maxIntervalLength).replace(',', ';') + ",baseClassifier," +
                 base.getClass().getSimpleName() + ",bagging," + bagging + ",estimator," + trainEstimateMethod.name() +
-                ",contractTime," + contractTime;
+                ",contractTime," + contractTime + ",memoryLimit," + memoryLimit;
     }
 
     /**
@@ -359,13 +372,13 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         di.setSubtractFormerValue(true);
         representations[2] = di.transform(representations[0]);
 
-        File file = new File(checkpointPath + "DrCIF" + seed + ".ser");
-        //if checkpointing and serialised files exist load said files
+        File file = new File(checkpointPath + "DrCIF" + seed + ".log");
+        //if checkpointing and a checkpoint log exists load it
         if (checkpoint && file.exists()) {
             //path checkpoint files will be saved to
             if (debug)
                 System.out.println("Loading from checkpoint file");
-            loadFromFile(checkpointPath + "DrCIF" + seed + ".ser");
+            loadFromFile(file.getPath());
         }
         //initialise variables
         else {
@@ -437,6 +450,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             }
 
             intervalDimensions = new ArrayList<>();
+            numCheckpointedTrees = 0;
         }
 
         if (multiThread) {
@@ -470,6 +484,12 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         in.setValue(testHolder.numAttributes() - 1, -1);
         testHolder.add(in);
 
+        memoryBudget = new MemoryBudget(memoryLimit);
+        memoryBudget.addShared(representations, result, trainDistributions, oobCounts);
+        for (int i = 0; i < trees.size(); i++) {
+            memoryBudget.addMember(trees.get(i), intervals.get(i), subsampleAtts.get(i), intervalDimensions.get(i));
+        }
+
         if (multiThread) {
             multiThreadBuildDrCIF(representations, result);
         } else {
@@ -481,8 +501,18 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                     + contractTime));
         }
 
+        if (memoryBudget.isLimited()) {
+            trainResults.setMemory(memoryBudget.getUsed());
+            trainResults.setMemoryLimit(memoryLimit);
+            printLineDebug("DrCIF estimated model size " + memoryBudget.getUsed() + " bytes of a " + memoryLimit
+                    + " byte limit");
+        }
+        memoryBudget = null;
+
         if (checkpoint) {
             saveToFile(checkpointPath);
+            checkpointLog.close();
+            checkpointLog = null;
         }
 
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
@@ -530,7 +560,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             }
         }
 
-        while (underContractTime && trees.size() < numClassifiers) {
+        while (underContractTime && trees.size() < numClassifiers && memoryBudget.canAddMember()) {
             int i = trees.size();
 
             //1. Select random intervals for tree i
@@ -607,7 +637,9 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             int instIdx = 0;
             int lastIdx = -1;
 
-            //2. Generate and store attributes
+            //2. Generate and store attributes in a column-major feature matrix
+            double[][] features = new double[sum(numIntervals) * numAttributes][numInstances];
+            int[] labels = representations[0].getClassIndexes();
             for (int k = 0; k < numInstances; k++) {
                 //For each instance
                 if (bagging) {
@@ -620,7 +652,9 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                             instInclusions[instIdx]--;
 
                             if (instIdx == lastIdx) {
-                                result.set(k, new DenseInstance(result.instance(k - 1)));
+                                for (double[] f : features)
+                                    f[k] = f[k - 1];
+                                labels[k] = labels[k - 1];
                                 sameInst = true;
                             } else {
                                 lastIdx = instIdx;
@@ -632,7 +666,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
 
                     if (sameInst) continue;
 
-                    result.instance(k).setValue(result.classIndex(), representations[0].get(instIdx).getLabelIndex());
+                    labels[k] = representations[0].get(instIdx).getLabelIndex();
                 } else {
                     instIdx = k;
                 }
@@ -647,12 +681,10 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                         //process features
                         for (int a = 0; a < numAttributes; a++) {
                             if (subsampleAtt[a] < 22) {
-                                result.instance(k).setValue(p,
-                                        c22.getSummaryStatByIndex(subsampleAtt[a], j, intervalArray));
+                                features[p][k] = c22.getSummaryStatByIndex(subsampleAtt[a], j, intervalArray);
                             } else {
-                                result.instance(k).setValue(p,
-                                        FeatureSet.calcFeatureByIndex(subsampleAtt[a], interval[r][j][0],
-                                                interval[r][j][1], series));
+                                features[p][k] = FeatureSet.calcFeatureByIndex(subsampleAtt[a], interval[r][j][0],
+                                        interval[r][j][1], series);
                             }
 
                             p++;
@@ -666,7 +698,12 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             if (seedClassifier && tree instanceof Randomizable)
                 ((Randomizable) tree).setSeed(seed * (i + 1));
 
-            tree.buildClassifier(result);
+            if (needsTransformedInstances())
+                toInstances(features, labels, result);
+            if (tree instanceof ContinuousIntervalTree)
+                ((ContinuousIntervalTree) tree).buildClassifier(features, labels, numClasses);
+            else
+                tree.buildClassifier(result);
 
             if (getEstimateOwnPerformance() && bagging) {
                 long t1 = System.nanoTime();
@@ -754,6 +791,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             intervals.add(interval);
             subsampleAtts.add(subsampleAtt);
             intervalDimensions.add(intervalDimension);
+            memoryBudget.addMember(tree, interval, subsampleAtt, intervalDimension);
 
             //Timed checkpointing if enabled, else checkpoint every 100 trees
             if (checkpoint && ((checkpointTime > 0 && System.nanoTime() - lastCheckpointTime > checkpointTime)
@@ -765,6 +803,33 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         }
     }
 
+    /**
+     * The default tree is built straight from a primitive feature matrix. The transformed data is only needed as
+     * Instances for other base classifiers, and for the TRAIN and CV estimates when not bagging.
+     *
+     * @return whether each tree's transformed data must also be written to Instances
+     */
+    private boolean needsTransformedInstances() {
+        return !(base instanceof ContinuousIntervalTree) || (getEstimateOwnPerformance() && !bagging
+                && (trainEstimateMethod == TrainEstimateMethod.TRAIN || trainEstimateMethod == TrainEstimateMethod.CV));
+    }
+
+    /**
+     * Write a column-major feature matrix and class labels into the rows of result.
+     *
+     * @param features column-major feature matrix, features[attribute][instance]
+     * @param labels   class value of each instance
+     * @param result   Instances formatted for transformed data, with a row for each instance
+     */
+    private static void toInstances(double[][] features, int[] labels, Instances result) {
+        for (int k = 0; k < labels.length; k++) {
+            Instance inst = result.instance(k);
+            for (int a = 0; a < features.length; a++)
+                inst.setValue(a, features[a][k]);
+            inst.setValue(result.classIndex(), labels[k]);
+        }
+    }
+
     /**
      * Build the DrCIF classifier using multiple threads.
      * Unable to checkpoint until after the build process while using multiple threads.
@@ -787,18 +852,22 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         }
 
         int[] classVals = representations[0].getClassIndexes();
-        int buildStep = trainTimeContract ? numThreads : numClassifiers;
+        int buildStep = trainTimeContract || memoryBudget.isLimited() ? numThreads : numClassifiers;
 
-        while (withinTrainContract(trainResults.getBuildTime()) && trees.size() < numClassifiers) {
+        while (withinTrainContract(trainResults.getBuildTime()) && trees.size() < numClassifiers
+                && memoryBudget.canAddMembers(buildStep)) {
             ArrayList<Future<MultiThreadBuildHolder>> futures = new ArrayList<>(buildStep);
 
-            int end = trees.size() + buildStep;
+            int end = Math.min(trees.size() + buildStep, numClassifiers);
             for (int i = trees.size(); i < end; ++i) {
-                Instances resultCopy = new Instances(result, numInstances);
-                for (int n = 0; n < numInstances; n++) {
-                    DenseInstance in = new DenseInstance(result.numAttributes());
-                    in.setValue(result.numAttributes() - 1, result.instance(n).classValue());
-                    resultCopy.add(in);
+                Instances resultCopy = null;
+                if (needsTransformedInstances()) {
+                    resultCopy = new Instances(result, numInstances);
+                    for (int n = 0; n < numInstances; n++) {
+                        DenseInstance in = new DenseInstance(result.numAttributes());
+                        in.setValue(result.numAttributes() - 1, result.instance(n).classValue());
+                        resultCopy.add(in);
+                    }
                 }
 
                 futures.add(ex.submit(new TreeBuildThread(i, dimensions, classVals, resultCopy)));
@@ -810,6 +879,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                 intervals.add(h.interval);
                 subsampleAtts.add(h.subsampleAtts);
                 intervalDimensions.add(h.intervalDimensions);
+                memoryBudget.addMember(h.tree, h.interval, h.subsampleAtts, h.intervalDimensions);
 
                 if (getEstimateOwnPerformance() && (bagging || trainEstimateMethod != TrainEstimateMethod.OOB)) {
                     trainResults.setErrorEstimateTime(trainResults.getErrorEstimateTime() + h.errorTime);
@@ -935,6 +1005,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         this.bagging = other.bagging;
         this.trainTimeContract = other.trainTimeContract;
         this.contractTime = other.contractTime;
+        this.memoryLimit = other.memoryLimit;
     }
 
     /**
@@ -977,34 +1048,8 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                 d[c]++;
             }
         } else {
-            //Build transformed instance
             for (int i = 0; i < trees.size(); i++) {
-                Catch22 c22 = new Catch22();
-                c22.setOutlierNormalise(outlierNorm);
-
-                int p = 0;
-                for (int r = 0; r < dimensions.length; r++) {
-                    for (int j = 0; j < intervals.get(i)[r].length; j++) {
-                        double[] series = dimensions[r][intervalDimensions.get(i)[r][j]];
-                        double[] intervalArray = Arrays.copyOfRange(series, intervals.get(i)[r][j][0],
-                                intervals.get(i)[r][j][1] + 1);
-
-                        for (int a = 0; a < numAttributes; a++) {
-                            if (subsampleAtts.get(i)[a] < 22) {
-                                testHolder.instance(0).setValue(p,
-                                        c22.getSummaryStatByIndex(subsampleAtts.get(i)[a], j, intervalArray));
-                            } else {
-                                testHolder.instance(0).setValue(p,
-                                        FeatureSet.calcFeatureByIndex(subsampleAtts.get(i)[a],
-                                                intervals.get(i)[r][j][0], intervals.get(i)[r][j][1], series));
-                            }
-
-                            p++;
-                        }
-                    }
-                }
-
-                int c = (int) trees.get(i).classifyInstance(testHolder.instance(0));
+                int c = classifyTransformed(i, dimensions, testHolder.instance(0));
                 d[c]++;
             }
         }
@@ -1030,6 +1075,106 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         return distributionForInstance(Converter.fromArff(ins));
     }
 
+    /**
+     * Classify an instance with tree i when the base classifier is not a ContinuousIntervalTree, writing the interval
+     * features of the tree into inst.
+     *
+     * @param i          index of the tree
+     * @param dimensions series of each representation of the instance
+     * @param inst       instance to hold the transformed features
+     * @return predicted class value
+     * @throws Exception failure to classify
+     */
+    private int classifyTransformed(int i, double[][][] dimensions, Instance inst) throws Exception {
+        Catch22 c22 = new Catch22();
+        c22.setOutlierNormalise(outlierNorm);
+
+        int p = 0;
+        for (int r = 0; r < dimensions.length; r++) {
+            for (int j = 0; j < intervals.get(i)[r].length; j++) {
+                double[] series = dimensions[r][intervalDimensions.get(i)[r][j]];
+                double[] intervalArray = Arrays.copyOfRange(series, intervals.get(i)[r][j][0],
+                        intervals.get(i)[r][j][1] + 1);
+
+                for (int a = 0; a < numAttributes; a++) {
+                    if (subsampleAtts.get(i)[a] < 22) {
+                        inst.setValue(p, c22.getSummaryStatByIndex(subsampleAtts.get(i)[a], j, intervalArray));
+                    } else {
+                        inst.setValue(p, FeatureSet.calcFeatureByIndex(subsampleAtts.get(i)[a],
+                                intervals.get(i)[r][j][0], intervals.get(i)[r][j][1], series));
+                    }
+
+                    p++;
+                }
+            }
+        }
+
+        return (int) trees.get(i).classifyInstance(inst);
+    }
+
+    /**
+     * Find class probabilities of a batch of instances. When multi threading each thread classifies the whole batch
+     * with a block of trees, rather than a task being submitted for each tree and instance.
+     *
+     * @param data TimeSeriesInstances object
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override //TSClassifier
+    public double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
+        double[][] d = new double[data.numInstances()][];
+        if (!multiThread) {
+            for (int n = 0; n < d.length; n++)
+                d[n] = distributionForInstance(data.get(n));
+            return d;
+        }
+
+        TimeSeriesInstances fftData = fft.transform(data);
+        TimeSeriesInstances diData = di.transform(data);
+        double[][][][] dimensions = new double[d.length][3][][];
+        for (int n = 0; n < d.length; n++) {
+            dimensions[n][0] = data.get(n).toValueArray();
+            dimensions[n][1] = fftData.get(n).toValueArray();
+            dimensions[n][2] = diData.get(n).toValueArray();
+        }
+
+        int blockSize = (trees.size() + numThreads - 1) / numThreads;
+        ArrayList<Future<double[][]>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < trees.size(); i += blockSize)
+            futures.add(ex.submit(new TreeBatchPredictionThread(i, Math.min(i + blockSize, trees.size()),
+                    dimensions)));
+
+        for (int n = 0; n < d.length; n++)
+            d[n] = new double[numClasses];
+        for (Future<double[][]> f : futures) {
+            double[][] votes = f.get();
+            for (int n = 0; n < d.length; n++)
+                for (int j = 0; j < numClasses; j++)
+                    d[n][j] += votes[n][j];
+        }
+
+        for (double[] dist : d) {
+            double sum = 0;
+            for (double x : dist)
+                sum += x;
+            for (int j = 0; j < dist.length; j++)
+                dist[j] = dist[j] / sum;
+        }
+        return d;
+    }
+
+    /**
+     * Find class probabilities of a batch of instances, see distributionForInstances(TimeSeriesInstances).
+     *
+     * @param insts weka Instances object
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override //BatchPredictor
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        return distributionForInstances(Converter.fromArff(insts));
+    }
+
     /**
      * Classify an instance using the trained model.
      *
@@ -1066,6 +1211,22 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         trainTimeContract = true;
     }
 
+    /**
+     * Set the memory limit for the model, no more trees are built once the largest tree so far would not fit.
+     *
+     * @param unit   unit of the amount
+     * @param amount memory limit
+     */
+    @Override //MemoryContractable
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryLimit = MemoryContractable.toBytes(unit, amount);
+    }
+
+    @Override //MemoryContractable
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
     /**
      * Check if a contracted classifier is within its train time limit.
      *
@@ -1108,7 +1269,8 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
     }
 
     /**
-     * Serialises this DrCIF object to the specified path.
+     * Checkpoints this DrCIF object to a log in the specified path. Trees built since the last checkpoint are appended
+     * to the log, followed by the rest of the classifier state. Writing to disk happens in the background.
      *
      * @param path save path for object
      * @throws Exception object fails to save
@@ -1116,14 +1278,75 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
     @Override //Checkpointable
     public void saveToFile(String path) throws Exception {
         lastCheckpointTime = System.nanoTime();
-        Checkpointable.super.saveToFile(path + "DrCIF" + seed + "temp.ser");
-        File file = new File(path + "DrCIF" + seed + "temp.ser");
-        File file2 = new File(path + "DrCIF" + seed + ".ser");
-        file2.delete();
-        file.renameTo(file2);
+        if (checkpointLog == null) {
+            checkpointLog = new CheckpointLog(new File(path + "DrCIF" + seed + ".log"), checkpointKryo());
+        }
+        for (int i = numCheckpointedTrees; i < trees.size(); i++) {
+            checkpointLog.append(new Object[]{trees.get(i), intervals.get(i), subsampleAtts.get(i),
+                    intervalDimensions.get(i)});
+        }
+        numCheckpointedTrees = trees.size();
+        checkpointLog.append(this);
         if (internalContractCheckpointHandling) checkpointTimeDiff += System.nanoTime() - lastCheckpointTime;
     }
 
+    /**
+     * Loads the latest state and its trees from a checkpoint log. The log is then compacted to just these records and
+     * kept open for further checkpoints.
+     *
+     * @param filename checkpoint log to load
+     * @throws Exception unable to load the log
+     */
+    @Override //Checkpointable
+    public void loadFromFile(String filename) throws Exception {
+        Kryo kryo = checkpointKryo();
+        List<Object> records = CheckpointLog.read(new File(filename), kryo);
+        DrCIF saved = null;
+        ArrayList<Object[]> savedTrees = new ArrayList<>();
+        for (Object record : records) {
+            if (record instanceof DrCIF) saved = (DrCIF) record;
+            else savedTrees.add((Object[]) record);
+        }
+        if (saved == null)
+            throw new Exception("No DrCIF state found in checkpoint log " + filename);
+
+        saved.trees = new ArrayList<>();
+        saved.intervals = new ArrayList<>();
+        saved.subsampleAtts = new ArrayList<>();
+        saved.intervalDimensions = new ArrayList<>();
+        //trees appended after the latest state were not part of the checkpoint
+        List<Object> compacted = new ArrayList<>();
+        for (int i = 0; i < saved.numCheckpointedTrees; i++) {
+            Object[] tree = savedTrees.get(i);
+            saved.trees.add((Classifier) tree[0]);
+            saved.intervals.add((int[][][]) tree[1]);
+            saved.subsampleAtts.add((int[]) tree[2]);
+            saved.intervalDimensions.add((int[][]) tree[3]);
+            compacted.add(tree);
+        }
+        compacted.add(saved);
+        copyFromSerObject(saved);
+        numCheckpointedTrees = saved.numCheckpointedTrees;
+        checkpointLog = new CheckpointLog(new File(filename), kryo, compacted);
+    }
+
+    /**
+     * Kryo for the checkpoint log. Trees are appended as separate records, the executor and attribute functions are
+     * recreated rather than saved.
+     *
+     * @return Kryo instance
+     */
+    private static Kryo checkpointKryo() {
+        Kryo kryo = CheckpointLog.newKryo();
+        FieldSerializer<DrCIF> serializer = new FieldSerializer<>(kryo, DrCIF.class);
+        for (String field : new String[]{"trees", "intervals", "subsampleAtts", "intervalDimensions", "ex",
+                "functions"}) {
+            serializer.removeField(field);
+        }
+        kryo.register(DrCIF.class, serializer);
+        return kryo;
+    }
+
     /**
      * Copies values from a loaded DrCIF object into this object.
      *
@@ -1135,7 +1358,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
         if (!(obj instanceof DrCIF))
             throw new Exception("The SER file is not an instance of TSF");
         DrCIF saved = ((DrCIF) obj);
-        System.out.println("Loading DrCIF" + seed + ".ser");
+        System.out.println("Loading DrCIF" + seed + ".log");
 
         try {
             numClassifiers = saved.numClassifiers;
@@ -1494,7 +1717,9 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             int instIdx = 0;
             int lastIdx = -1;
 
-            //2. Generate and store attributes
+            //2. Generate and store attributes in a column-major feature matrix
+            double[][] features = new double[sum(numIntervals) * numAttributes][numInstances];
+            int[] labels = classVals.clone();
             for (int k = 0; k < numInstances; k++) {
                 //For each instance
                 if (bagging) {
@@ -1507,7 +1732,9 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                             instInclusions[instIdx]--;
 
                             if (instIdx == lastIdx) {
-                                result.set(k, new DenseInstance(result.instance(k - 1)));
+                                for (double[] f : features)
+                                    f[k] = f[k - 1];
+                                labels[k] = labels[k - 1];
                                 sameInst = true;
                             } else {
                                 lastIdx = instIdx;
@@ -1519,7 +1746,7 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
 
                     if (sameInst) continue;
 
-                    result.instance(k).setValue(result.classIndex(), classVals[instIdx]);
+                    labels[k] = classVals[instIdx];
                 } else {
                     instIdx = k;
                 }
@@ -1534,12 +1761,10 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                         //process features
                         for (int a = 0; a < numAttributes; a++) {
                             if (subsampleAtts[a] < 22) {
-                                result.instance(k).setValue(p,
-                                        c22.getSummaryStatByIndex(subsampleAtts[a], j, intervalArray));
+                                features[p][k] = c22.getSummaryStatByIndex(subsampleAtts[a], j, intervalArray);
                             } else {
-                                result.instance(k).setValue(p,
-                                        FeatureSet.calcFeatureByIndex(subsampleAtts[a], interval[r][j][0],
-                                                interval[r][j][1], series));
+                                features[p][k] = FeatureSet.calcFeatureByIndex(subsampleAtts[a], interval[r][j][0],
+                                        interval[r][j][1], series);
                             }
 
                             p++;
@@ -1553,7 +1778,12 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
             if (seedClassifier && tree instanceof Randomizable)
                 ((Randomizable) tree).setSeed(seed * (i + 1));
 
-            tree.buildClassifier(result);
+            if (needsTransformedInstances())
+                toInstances(features, labels, result);
+            if (tree instanceof ContinuousIntervalTree)
+                ((ContinuousIntervalTree) tree).buildClassifier(features, labels, numClasses);
+            else
+                tree.buildClassifier(result);
 
             if (getEstimateOwnPerformance() && bagging) {
                 long t1 = System.nanoTime();
@@ -1685,35 +1915,52 @@ public class DrCIF extends EnhancedAbstractClassifier implements TechnicalInform
                 h.c = (int) ((ContinuousIntervalTree) trees.get(i)).classifyInstance(dimensions, functions,
                         intervals.get(i), subsampleAtts.get(i), intervalDimensions.get(i));
             } else {
-                Catch22 c22 = new Catch22();
-                c22.setOutlierNormalise(outlierNorm);
+                h.c = classifyTransformed(i, dimensions, testHolder.instance(0));
+            }
 
-                int p = 0;
-                for (int r = 0; r < dimensions.length; r++) {
-                    for (int j = 0; j < intervals.get(i)[r].length; j++) {
-                        double[] series = dimensions[r][intervalDimensions.get(i)[r][j]];
-                        double[] intervalArray = Arrays.copyOfRange(series, intervals.get(i)[r][j][0],
-                                intervals.get(i)[r][j][1] + 1);
+            return h;
+        }
+    }
 
-                        for (int a = 0; a < numAttributes; a++) {
-                            if (subsampleAtts.get(i)[a] < 22) {
-                                testHolder.instance(0).setValue(p,
-                                        c22.getSummaryStatByIndex(subsampleAtts.get(i)[a], j, intervalArray));
-                            } else {
-                                testHolder.instance(0).setValue(p,
-                                        FeatureSet.calcFeatureByIndex(subsampleAtts.get(i)[a],
-                                                intervals.get(i)[r][j][0], intervals.get(i)[r][j][1], series));
-                            }
+    /**
+     * Class to make class predictions for a batch of instances using a block of DrCIF trees when multi threading.
+     */
+    private class TreeBatchPredictionThread implements Callable<double[][]> {
+        int start;
+        int end;
+        double[][][][] dimensions;
 
-                            p++;
-                        }
-                    }
-                }
+        public TreeBatchPredictionThread(int start, int end, double[][][][] dimensions) {
+            this.start = start;
+            this.end = end;
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        public double[][] call() throws Exception {
+            double[][] votes = new double[dimensions.length][numClasses];
 
-                h.c = (int) tree.classifyInstance(testHolder.instance(0));
+            Instance inst = null;
+            if (!(base instanceof ContinuousIntervalTree)) {
+                Instances testCopy = new Instances(testHolder, 1);
+                DenseInstance in = new DenseInstance(testHolder.numAttributes());
+                in.setValue(testHolder.numAttributes() - 1, -1);
+                testCopy.add(in);
+                inst = testCopy.instance(0);
             }
 
-            return h;
+            //each tree classifies the whole batch in turn, so its nodes stay in cache
+            for (int i = start; i < end; i++) {
+                for (int n = 0; n < dimensions.length; n++) {
+                    int c = base instanceof ContinuousIntervalTree
+                            ? (int) ((ContinuousIntervalTree) trees.get(i)).classifyInstance(dimensions[n], functions,
+                            intervals.get(i), subsampleAtts.get(i), intervalDimensions.get(i))
+                            : classifyTransformed(i, dimensions[n], inst);
+                    votes[n][c]++;
+                }
+            }
+
+            return votes;
         }
     }
 
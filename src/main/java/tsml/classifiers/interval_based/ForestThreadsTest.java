@@ -0,0 +1,111 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.interval_based;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MultiThreadable;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
+import weka.core.Instances;
+
+import java.util.function.Supplier;
+
+/**
+ * Checks the interval forests give the same forest for a seed whether they are built with one thread or several.
+ */
+public class ForestThreadsTest {
+
+    private static Instances train;
+    private static Instances test;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        train = data[0];
+        test = data[1];
+    }
+
+    private static <A extends EnhancedAbstractClassifier & MultiThreadable> void assertSameForest(Supplier<A> supplier,
+            boolean timeSeriesInstances) throws Exception {
+        final A serial = supplier.get();
+        final A threaded = supplier.get();
+        threaded.enableMultiThreading(3);
+        if (timeSeriesInstances) {
+            final TimeSeriesInstances data = Converter.fromArff(train);
+            serial.buildClassifier(data);
+            threaded.buildClassifier(data);
+        } else {
+            serial.buildClassifier(train);
+            threaded.buildClassifier(train);
+        }
+        for (int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals(serial.distributionForInstance(test.get(i)),
+                    threaded.distributionForInstance(test.get(i)), 0);
+        }
+        if (serial.getEstimateOwnPerformance()) {
+            for (int i = 0; i < train.numInstances(); i++) {
+                Assert.assertArrayEquals(serial.getTrainResults().getProbabilityDistribution(i),
+                        threaded.getTrainResults().getProbabilityDistribution(i), 0);
+            }
+        }
+    }
+
+    private static TSF tsf(boolean bagging) {
+        final TSF tsf = new TSF();
+        tsf.setSeed(1);
+        tsf.setNumTrees(20);
+        if (bagging) {
+            tsf.setBagging(true);
+            tsf.setEstimateOwnPerformance(true);
+        }
+        return tsf;
+    }
+
+    @Test
+    public void tsfIsTheSameWithAnyNumberOfThreads() throws Exception {
+        assertSameForest(() -> tsf(false), false);
+        assertSameForest(() -> tsf(false), true);
+        assertSameForest(() -> tsf(true), false);
+        assertSameForest(() -> tsf(true), true);
+    }
+
+    @Test
+    public void stsfIsTheSameWithAnyNumberOfThreads() throws Exception {
+        final Supplier<STSF> stsf = () -> {
+            final STSF classifier = new STSF();
+            classifier.setSeed(1);
+            classifier.setNumTrees(20);
+            return classifier;
+        };
+        assertSameForest(stsf, false);
+        assertSameForest(stsf, true);
+    }
+
+    @Test
+    public void riseIsTheSameWithAnyNumberOfThreads() throws Exception {
+        assertSameForest(() -> {
+            final RISE rise = new RISE();
+            rise.setSeed(1);
+            rise.setNumClassifiers(20);
+            return rise;
+        }, false);
+    }
+}
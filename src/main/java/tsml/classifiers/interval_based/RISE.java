@@ -25,9 +25,12 @@ import experiments.ClassifierLists;
 import experiments.data.DatasetLists;
 import fileIO.FullAccessOutFile;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MultiThreadable;
 import tsml.classifiers.Tuneable;
 import tsml.transformers.*;
 import tsml.transformers.FFT;
+import utilities.numericalmethods.AutoCorrelationEngine;
+import utilities.numericalmethods.SpectralEngine;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.classifiers.trees.RandomTree;
@@ -35,8 +38,13 @@ import weka.core.*;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import tsml.classifiers.Checkpointable;
 import tsml.classifiers.TrainTimeContractable;
@@ -81,9 +89,11 @@ import static experiments.data.DatasetLoading.loadDataNullable;
  * @date 19/02/19
  * updated 4/3/20 to conform to tsml standards
  * updated 10/3/20 to allow for internal CV estimate of train acc, same structure as TSF
+ * updated to be MultiThreadable: intervals are still drawn in order on the main thread, only the transforms and tree
+ * builds run concurrently, so the forest for a given seed is the same for any number of threads.
  **/
 
-public class RISE extends EnhancedAbstractClassifier implements TrainTimeContractable, TechnicalInformationHandler, Checkpointable, Tuneable {
+public class RISE extends EnhancedAbstractClassifier implements TrainTimeContractable, TechnicalInformationHandler, Checkpointable, Tuneable, MultiThreadable {
 
     boolean tune = false;
     TransformType[] transforms = {TransformType.ACF_FFT};
@@ -131,6 +141,11 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
     private long checkpointTime = 0;    //Time between checkpoints in nanosecs
     private long lastCheckpointTime = 0;    //Time since last checkpoint in nanos.
 
+    /**** Multithreading variables *****/
+    private int numThreads = 1;
+    private boolean multiThread = false;
+    private transient ExecutorService ex;
+
     //Updated work
     public boolean printStartEndPoints = false;
     private ArrayList<int[]> startEndPoints = null;
@@ -672,6 +687,10 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
                 this.setTrainTimeLimit(TimeUnit.NANOSECONDS, (long) ((timer.forestTimeLimit * (1.0 / perForBag))));
         }
 
+        if (multiThread) {
+            multiThreadBuildRISE(trainingData);
+        }
+
         for (; classifiersBuilt < numClassifiers && ((classifiersBuilt==0)||(System.nanoTime() - timer.forestStartTime) < (timer.forestTimeLimit - getTime())); classifiersBuilt++) {
             if(debug && classifiersBuilt%100==0)
                 printLineDebug("Building RISE tree "+classifiersBuilt+" time taken = "+(System.nanoTime()-startTime)+" contract ="+trainContractTimeNanos+" nanos");
@@ -686,15 +705,8 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
                 maxIntervalLength = (int) timer.getFeatureSpace((timer.forestTimeLimit) - (System.nanoTime() - (timer.forestStartTime - getTime())));
             }
 
-            //Produce intervalInstances from trainingData using interval attributes.
-            Instances intervalInstances;
-            //intervalInstances = produceIntervalInstances(maxIntervalLength, trainingData);
-            intervalInstances = produceIntervalInstances(maxIntervalLength, trainingData);
-
-            //Transform instances.
-            if (transformType != null) {
-                intervalInstances = transformInstances(intervalInstances, transformType);
-            }
+            //Produce transformed intervalInstances from trainingData using interval attributes.
+            Instances intervalInstances = transformNewInterval(trainingData);
 
             //Add independent variable to model (length of interval).
             timer.makePrediciton(intervalInstances.numAttributes() - 1);
@@ -755,6 +767,52 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
         }*/
     }
 
+    /**
+     * Build the RISE trees using multiple threads. Intervals for a batch of trees are selected in order on the main
+     * thread, then the interval transforms and tree builds run concurrently. When contracted the timing model is
+     * updated and the contract checked between batches, which are the size of the thread pool.
+     * @param trainingData whole training set.
+     * @throws Exception unable to build a tree
+     */
+    private void multiThreadBuildRISE(Instances trainingData) throws Exception {
+        if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+        int buildStep = trainTimeContract || checkpoint ? numThreads : numClassifiers;
+
+        while (classifiersBuilt < numClassifiers && ((classifiersBuilt==0)||(System.nanoTime() - timer.forestStartTime) < (timer.forestTimeLimit - getTime()))) {
+            if (trainTimeContract) {
+                timer.buildModel();
+                maxIntervalLength = (int) timer.getFeatureSpace((timer.forestTimeLimit) - (System.nanoTime() - (timer.forestStartTime - getTime())));
+            }
+
+            int end = Math.min(classifiersBuilt + buildStep, numClassifiers);
+            ArrayList<Future<MultiThreadBuildHolder>> futures = new ArrayList<>(end - classifiersBuilt);
+            for (int i = classifiersBuilt; i < end; i++) {
+                startEndPoints = selectStartEndPoints(startEndPoints, intervalMethod);
+                futures.add(ex.submit(new TreeBuildThread(startEndPoints.get(startEndPoints.size() - 1), trainingData)));
+            }
+
+            for (Future<MultiThreadBuildHolder> f : futures) {
+                MultiThreadBuildHolder h = f.get();
+                timer.makePrediciton(h.numAttributes);
+                timer.independentVariables.add(h.numAttributes);
+                baseClassifiers.add(h.tree);
+                timer.dependentVariables.add(h.buildTime);
+                classifiersBuilt++;
+            }
+
+            if (checkpoint){
+                if(checkpointTime>0) {
+                    if(System.nanoTime()-lastCheckpointTime>checkpointTime){
+                        saveToFile(checkpointPath);
+                        lastCheckpointTime=System.nanoTime();
+                    }
+                }
+                else if (classifiersBuilt % 100 < buildStep)
+                    saveToFile(checkpointPath);
+            }
+        }
+    }
+
     private void estimateOwnPerformance(Instances data) throws Exception{
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
         trainResults.setClassifierName(getClassifierName());
@@ -777,6 +835,34 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
             }
             bags = generateBags(numTrees, bagProp, data);
 
+            if (multiThread) {
+                if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+                for (; treeCount < numTrees && (System.nanoTime() - timer.forestStartTime) < (timer.forestTimeLimit - getTime()); ) {
+                    timer.buildModel();
+                    maxIntervalLength = (int) timer.getFeatureSpace((timer.forestTimeLimit) - (System.nanoTime() - (timer.forestStartTime - getTime())));
+
+                    int end = Math.min(treeCount + numThreads, numTrees);
+                    ArrayList<Future<MultiThreadBuildHolder>> futures = new ArrayList<>(end - treeCount);
+                    for (int i = treeCount; i < end; i++) {
+                        startEndPoints = selectStartEndPoints(startEndPoints, intervalMethod);
+                        futures.add(ex.submit(new OOBTreeThread(startEndPoints.get(startEndPoints.size() - 1), data,
+                                bags[i], distributions[i])));
+                    }
+
+                    for (Future<MultiThreadBuildHolder> f : futures) {
+                        MultiThreadBuildHolder h = f.get();
+                        timer.makePrediciton(h.numAttributes);
+                        timer.independentVariables.add(h.numAttributes);
+                        for (int j = 0; j < bags[treeCount].length; j++) {
+                            if (bags[treeCount][j] == 0)
+                                timesInTest[j]++;
+                        }
+                        bagAccuracies[treeCount] = h.bagAccuracy;
+                        timer.dependentVariables.add(h.buildTime);
+                        treeCount++;
+                    }
+                }
+            }
 
             for (; treeCount < numTrees && (System.nanoTime() - timer.forestStartTime) < (timer.forestTimeLimit - getTime()); treeCount++) {
 
@@ -787,9 +873,7 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
                 timer.buildModel();
                 maxIntervalLength = (int) timer.getFeatureSpace((timer.forestTimeLimit) - (System.nanoTime() - (timer.forestStartTime - getTime())));
 
-                Instances intervalInstances = produceIntervalInstances(maxIntervalLength, data);
-
-                intervalInstances = transformInstances(intervalInstances, transformType);
+                Instances intervalInstances = transformNewInterval(data);
 
                 //Add independent variable to model (length of interval).
                 timer.makePrediciton(intervalInstances.numAttributes() - 1);
@@ -870,6 +954,9 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
             RISE rise = new RISE();
 //NEED TO SET PARAMETERS
 //            rise.copyParameters(this);
+            rise.numThreads = numThreads;
+            rise.multiThread = multiThread;
+            rise.ex = ex;
             if (seedClassifier)
                 rise.setSeed(seed * 100);
             if (trainTimeContract) {//Set the contract for each fold
@@ -896,17 +983,64 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
         return bags;
     }
 
-    private Instances produceIntervalInstances(int maxIntervalLength, Instances trainingData) {
+    /**
+     * Selects the interval for a new tree and transforms it.
+     * @param trainingData whole training set.
+     * @return transformed interval of each case.
+     */
+    private Instances transformNewInterval(Instances trainingData) {
+        startEndPoints = selectStartEndPoints(startEndPoints, intervalMethod);
+        return transformIntervals(startEndPoints.get(startEndPoints.size() - 1), trainingData);
+    }
+
+    /**
+     * Transforms an interval of every case. ACF, FFT and ACF_FFT are computed straight into the feature rows by
+     * IntervalTransform, other transforms go through transformInstances.
+     * @param startEndPoint interval start and end.
+     * @param data cases to transform.
+     * @return transformed interval of each case.
+     */
+    private Instances transformIntervals(int[] startEndPoint, Instances data) {
+        if (transformType == null)
+            return produceIntervalInstances(startEndPoint, data);
+        if (!IntervalTransform.supports(transformType))
+            return transformInstances(produceIntervalInstances(startEndPoint, data), transformType);
+
+        IntervalTransform transform = new IntervalTransform(startEndPoint[1] - startEndPoint[0], transformType);
+        Instances intervalInstances = transform.header(data);
+        for (Instance inst : data) {
+            intervalInstances.add(new DenseInstance(1, transform.transform(inst, startEndPoint[0])));
+        }
+        return intervalInstances;
+    }
+
+    /**
+     * Transforms the interval of a base classifier for one test case.
+     * @param testInstance case to transform.
+     * @param classifierNum index of the base classifier.
+     * @return transformed interval.
+     */
+    private Instance transformInterval(Instance testInstance, int classifierNum) {
+        int[] startEndPoint = startEndPoints.get(classifierNum);
+        if (transformType == null)
+            return produceIntervalInstance(testInstance, classifierNum).firstInstance();
+        if (!IntervalTransform.supports(transformType))
+            return transformInstances(produceIntervalInstance(testInstance, classifierNum), transformType).firstInstance();
+
+        IntervalTransform transform = new IntervalTransform(startEndPoint[1] - startEndPoint[0], transformType);
+        Instance intervalInstance = new DenseInstance(1, transform.transform(testInstance, startEndPoint[0]));
+        intervalInstance.setDataset(transform.header(testInstance.dataset()));
+        return intervalInstance;
+    }
+
+    private Instances produceIntervalInstances(int[] startEndPoint, Instances trainingData) {
         Instances intervalInstances;
         ArrayList<Attribute>attributes = new ArrayList<>();
-        ArrayList<Integer> intervalAttIndexes = new ArrayList<>();
-
-        startEndPoints = selectStartEndPoints(startEndPoints, intervalMethod);
 
-        int nearestPowerOfTwo = startEndPoints.get(startEndPoints.size() - 1)[1] - startEndPoints.get(startEndPoints.size() - 1)[0];
+        int nearestPowerOfTwo = startEndPoint[1] - startEndPoint[0];
 
         for (int i = 0; i < nearestPowerOfTwo; i ++) {
-            Attribute att = i + startEndPoints.get(startEndPoints.size() - 1)[0] < trainingData.numAttributes() - 1 ? trainingData.attribute(i + startEndPoints.get(startEndPoints.size() - 1)[0]) : new Attribute("att" + (i + 1 + startEndPoints.get(startEndPoints.size() - 1)[0]));
+            Attribute att = i + startEndPoint[0] < trainingData.numAttributes() - 1 ? trainingData.attribute(i + startEndPoint[0]) : new Attribute("att" + (i + 1 + startEndPoint[0]));
             attributes.add(att);
         }
 
@@ -916,7 +1050,7 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
 
         for (int i = 0; i < trainingData.size(); i++) {
             for (int j = 0; j < nearestPowerOfTwo; j++) {
-                double value = j + startEndPoints.get(startEndPoints.size() - 1)[0] < trainingData.numAttributes() - 1 ? trainingData.get(i).value(j + startEndPoints.get(startEndPoints.size() - 1)[0]) : 0.0;
+                double value = j + startEndPoint[0] < trainingData.numAttributes() - 1 ? trainingData.get(i).value(j + startEndPoint[0]) : 0.0;
                 intervalInstanceValues[j] = value;
             }
 
@@ -1101,20 +1235,17 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
      */
     @Override
     public double[] distributionForInstance(Instance testInstance) throws Exception {
+        if (multiThread) {
+            return multiThreadDistribution(testInstance);
+        }
+
         double[]distribution = new double[testInstance.numClasses()];
 
         //For every base classifier.
         for (int i = 0; i < baseClassifiers.size(); i++) {
 
-            Instance intervalInstance = null;
             //Transform interval instance into PS, ACF, ACF_PS or ACF_PS_AR
-            if (transformType != null) {
-                try{
-                    intervalInstance = transformInstances(produceIntervalInstance(testInstance, i), transformType).firstInstance();
-                }catch(Exception e){
-                    intervalInstance = transformInstances(produceIntervalInstance(testInstance, i), transformType).firstInstance();
-                }
-            }
+            Instance intervalInstance = transformInterval(testInstance, i);
             distribution[(int)baseClassifiers.get(i).classifyInstance((intervalInstance))]++;
         }
         if(baseClassifiers.size()>0) {
@@ -1125,6 +1256,36 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
         return distribution;
     }
 
+    /**
+     * Distribution over classes for one test instance, with blocks of base classifiers evaluated concurrently.
+     * @param testInstance
+     * @return double array of size numClasses containing probabilities of test instance belonging to each class.
+     * @throws Exception
+     */
+    private double[] multiThreadDistribution(Instance testInstance) throws Exception {
+        if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+
+        int blockSize = (baseClassifiers.size() + numThreads - 1) / numThreads;
+        ArrayList<Future<double[]>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < baseClassifiers.size(); i += blockSize) {
+            futures.add(ex.submit(new TreePredictionThread(i, Math.min(i + blockSize, baseClassifiers.size()), testInstance)));
+        }
+
+        double[] distribution = new double[testInstance.numClasses()];
+        for (Future<double[]> f : futures) {
+            double[] votes = f.get();
+            for (int j = 0; j < distribution.length; j++) {
+                distribution[j] += votes[j];
+            }
+        }
+        if(baseClassifiers.size()>0) {
+            for (int j = 0; j < testInstance.numClasses(); j++) {
+                distribution[j] /= baseClassifiers.size();
+            }
+        }
+        return distribution;
+    }
+
     /**
      * Method returning all classifier parameters as a string.
      * for EnhancedAbstractClassifier. General format:
@@ -1164,6 +1325,21 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
         return result;
     }
 
+    /**
+     * for interface MultiThreadable
+     * @param numThreads number of threads available for multi threading
+     */
+    @Override
+    public void enableMultiThreading(int numThreads) {
+        if (numThreads > 1) {
+            this.numThreads = numThreads;
+            multiThread = true;
+        } else {
+            this.numThreads = 1;
+            multiThread = false;
+        }
+    }
+
     /**
      * for interface TrainTimeEstimate
      * @param amount: time in nanoseconds
@@ -1292,6 +1468,214 @@ public class RISE extends EnhancedAbstractClassifier implements TrainTimeContrac
     }
 
 
+    /**
+     * Computes the ACF, FFT or ACF_FFT features of intervals of one length straight into primitive rows, without the
+     * intermediate and merged Instances of transformInstances. Features and attribute order are the same as the ACF
+     * and Fast_FFT transforms there. Buffers are reused between cases, use one per thread.
+     */
+    private static class IntervalTransform {
+        private final int length;
+        private final boolean fft;
+        private final boolean acf;
+        private final int nfft;
+        private final int maxLag;
+        private final double[] interval;
+        private final double[] spectrum;
+        private final AutoCorrelationEngine acfEngine = new AutoCorrelationEngine();
+
+        IntervalTransform(int length, TransformType transformType) {
+            this.length = length;
+            fft = transformType == TransformType.FFT || transformType == TransformType.ACF_FFT;
+            acf = transformType == TransformType.ACF || transformType == TransformType.ACF_FFT;
+            nfft = fft ? (int) FFT.MathsPower2.roundPow2(length) * 2 : 0;
+            //As ACF.determineOutputFormat, ignoring the last 4 lags.
+            int lag = Math.min(ACF.DEFAULT_MAXLAG, length - 4);
+            maxLag = acf ? (lag < 0 ? length : lag) : 0;
+            interval = new double[length];
+            spectrum = new double[nfft];
+            acfEngine.setConstantCorrelation(1);
+        }
+
+        static boolean supports(TransformType transformType) {
+            return transformType == TransformType.ACF || transformType == TransformType.FFT
+                    || transformType == TransformType.ACF_FFT;
+        }
+
+        int numFeatures() {
+            return nfft / 2 + maxLag;
+        }
+
+        Instances header(Instances data) {
+            ArrayList<Attribute> attributes = new ArrayList<>(numFeatures() + 1);
+            for (int i = 0; i < nfft / 2; i++) {
+                attributes.add(new Attribute("FFT_att" + (i + 1)));
+            }
+            for (int i = 1; i <= maxLag; i++) {
+                attributes.add(new Attribute("ACF_" + i));
+            }
+            Attribute target = data.classAttribute();
+            ArrayList<String> classValues = new ArrayList<>(target.numValues());
+            for (int i = 0; i < target.numValues(); i++) {
+                classValues.add(target.value(i));
+            }
+            attributes.add(new Attribute(target.name(), classValues));
+
+            Instances header = new Instances(data.relationName(), attributes, data.numInstances());
+            header.setClassIndex(header.numAttributes() - 1);
+            return header;
+        }
+
+        /**
+         * @param inst case, class value last
+         * @param start interval start, values past the end of the series are 0
+         * @return FFT magnitudes then autocorrelations, then the class value
+         */
+        double[] transform(Instance inst, int start) {
+            int seriesLength = inst.numAttributes() - 1;
+            double mean = 0;
+            for (int j = 0; j < length; j++) {
+                interval[j] = j + start < seriesLength ? inst.value(j + start) : 0.0;
+                mean += interval[j];
+            }
+            mean /= length;
+
+            double[] row = new double[numFeatures() + 1];
+            if (fft) {
+                //Padded with the mean, as Fast_FFT.
+                System.arraycopy(interval, 0, spectrum, 0, length);
+                Arrays.fill(spectrum, length, nfft, mean);
+                SpectralEngine.realForward(spectrum);
+                for (int i = 0; i < nfft / 2; i++) {
+                    row[i] = SpectralEngine.magnitude(spectrum, i);
+                }
+            }
+            if (acf) {
+                acfEngine.fitAutoCorrelations(interval, 0, length, maxLag, row, nfft / 2);
+            }
+            row[row.length - 1] = inst.classValue();
+            return row;
+        }
+    }
+
+    /**
+     * Class to hold data about a RISE tree when multi threading.
+     */
+    private static class MultiThreadBuildHolder {
+        Classifier tree;
+        int numAttributes;
+        long buildTime;
+        double bagAccuracy;
+    }
+
+    /**
+     * Class to transform an interval and build a RISE tree when multi threading.
+     */
+    private class TreeBuildThread implements Callable<MultiThreadBuildHolder> {
+        int[] startEndPoint;
+        Instances trainingData;
+
+        public TreeBuildThread(int[] startEndPoint, Instances trainingData) {
+            this.startEndPoint = startEndPoint;
+            this.trainingData = trainingData;
+        }
+
+        @Override
+        public MultiThreadBuildHolder call() throws Exception {
+            MultiThreadBuildHolder h = new MultiThreadBuildHolder();
+            long treeStartTime = System.nanoTime();
+
+            Instances intervalInstances = transformIntervals(startEndPoint, trainingData);
+
+            Classifier tree = AbstractClassifier.makeCopy(classifier);
+            if(tree instanceof RandomTree){
+                ((RandomTree)tree).setKValue(intervalInstances.numAttributes() - 1);
+            }
+            tree.buildClassifier(intervalInstances);
+
+            h.tree = tree;
+            h.numAttributes = intervalInstances.numAttributes() - 1;
+            h.buildTime = System.nanoTime() - treeStartTime;
+            return h;
+        }
+    }
+
+    /**
+     * Class to build a RISE tree on a bag and predict its out of bag cases when multi threading.
+     */
+    private class OOBTreeThread implements Callable<MultiThreadBuildHolder> {
+        int[] startEndPoint;
+        Instances data;
+        int[] bag;
+        double[][] distributions;
+
+        public OOBTreeThread(int[] startEndPoint, Instances data, int[] bag, double[][] distributions) {
+            this.startEndPoint = startEndPoint;
+            this.data = data;
+            this.bag = bag;
+            this.distributions = distributions;
+        }
+
+        @Override
+        public MultiThreadBuildHolder call() throws Exception {
+            MultiThreadBuildHolder h = new MultiThreadBuildHolder();
+            long treeStartTime = System.nanoTime();
+
+            Instances intervalInstances = transformIntervals(startEndPoint, data);
+            h.numAttributes = intervalInstances.numAttributes() - 1;
+
+            Instances trainHeader = new Instances(intervalInstances, 0);
+            Instances testHeader = new Instances(intervalInstances, 0);
+            ArrayList<Integer> indexs = new ArrayList<>();
+            for (int j = 0; j < bag.length; j++) {
+                if (bag[j] == 0) {
+                    testHeader.add(intervalInstances.get(j));
+                    indexs.add(j);
+                }
+                for (int k = 0; k < bag[j]; k++) {
+                    trainHeader.add(intervalInstances.get(j));
+                }
+            }
+
+            RandomTree tree = new RandomTree();
+            tree.setKValue(trainHeader.numAttributes() - 1);
+            tree.buildClassifier(trainHeader);
+            for (int j = 0; j < testHeader.size(); j++) {
+                distributions[indexs.get(j)] = tree.distributionForInstance(testHeader.get(j));
+                if (tree.classifyInstance(testHeader.get(j)) == testHeader.get(j).classValue()) {
+                    h.bagAccuracy++;
+                }
+            }
+            h.bagAccuracy /= testHeader.size();
+            h.buildTime = System.nanoTime() - treeStartTime;
+            return h;
+        }
+    }
+
+    /**
+     * Class to make class predictions using a block of RISE trees when multi threading.
+     */
+    private class TreePredictionThread implements Callable<double[]> {
+        int start;
+        int end;
+        Instance testInstance;
+
+        public TreePredictionThread(int start, int end, Instance testInstance) {
+            this.start = start;
+            this.end = end;
+            this.testInstance = testInstance;
+        }
+
+        @Override
+        public double[] call() throws Exception {
+            double[] distribution = new double[testInstance.numClasses()];
+            for (int i = start; i < end; i++) {
+                Instance intervalInstance = transformInterval(testInstance, i);
+                distribution[(int)baseClassifiers.get(i).classifyInstance(intervalInstance)]++;
+            }
+            return distribution;
+        }
+    }
+
     /**
      * Private inner class containing all logic pertaining to timing.
      * CRISE is contracted via updating a linear regression model (y = a * x^2 + b * x + c) in which the dependent
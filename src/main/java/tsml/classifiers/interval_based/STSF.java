@@ -36,6 +36,11 @@ import weka.core.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static utilities.ArrayUtilities.sum;
@@ -45,11 +50,13 @@ import static utilities.Utilities.extractTimeSeries;
 /**
  * Implementation of the Supervised Time Series Forest
  * This classifier is Contractable, Checkpointable and can estimate performance from the train data internally.
+ * Each tree draws its bag and split points from its own Random seeded by the classifier seed and the tree index, so
+ * a given seed gives the same forest regardless of the number of threads.
  *
  * @author Matthew Middlehurst
  */
 public class STSF extends EnhancedAbstractClassifier implements TechnicalInformationHandler, TrainTimeContractable,
-        TSCapabilitiesHandler {
+        TSCapabilitiesHandler, MultiThreadable {
     //Static defaults
     private final static int DEFAULT_NUM_CLASSIFIERS=500;
 
@@ -91,6 +98,11 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
     private PowerSpectrum ps = new PowerSpectrum();
     private Differences di = new Differences();
 
+    /** Multithreading */
+    private int numThreads = 1;
+    private boolean multiThread = false;
+    private transient ExecutorService ex;
+
     protected static final long serialVersionUID = 32554L;
 
     public STSF(){
@@ -285,123 +297,16 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         di.setSubtractFormerValue(true);
         representations[2] = di.transform(representations[0]);
 
-        int classifiersBuilt = trees.size();
-
-        /** MAIN BUILD LOOP
-         *  For each base classifier
-         *      generate random intervals
-         *      do the transforms
-         *      build the classifier
-         * */
-        while(withinTrainContract(startTime) && (classifiersBuilt < numClassifiers)) {
-            if (classifiersBuilt % 100 == 0)
-                printLineDebug("\t\t\t\t\tBuilding STSF tree " + classifiersBuilt + " time taken = " +
-                        (System.nanoTime() - startTime) + " contract =" + finalBuildtrainContractTimeNanos + " nanos");
-
-            //If bagging find instances with replacement
-            int[] instInclusions = new int[numInstances];
-            int[] baggingClassCounts = new int[representations[0].numClasses()];
-
-            for (int n = 0; n < numInstances; n++) {
-                instInclusions[rand.nextInt(numInstances)]++;
-                instInclusions[n] += instToAdd[n];
-            }
-
-            for (int n = 0; n < numInstances; n++) {
-                if (instInclusions[n] > 0) {
-                    baggingClassCounts[(int)representations[0].get(n).getTargetValue()] += instInclusions[n];
-                }
-            }
-
-            //1. Select intervals for tree i
-            intervals.add(new ArrayList[3][]);
-            int totalAtts = 0;
-            for (int r = 0; r < representations.length; r++) {
-                intervals.get(classifiersBuilt)[r] = findCandidateDiscriminatoryIntervals(representations[r],
-                        instInclusions, baggingClassCounts);
-
-                for (int a = 0; a < intervals.get(classifiersBuilt)[r].length; a++) {
-                    totalAtts += intervals.get(classifiersBuilt)[r][a].size();
-                }
-            }
-
-            // Convert representations and data to weka instances.
-            Instances[] newRepresentations = new Instances[3];
-            newRepresentations[0] = Converter.toArff(representations[0]);
-            newRepresentations[1] = Converter.toArff(representations[1]);
-            newRepresentations[2] = Converter.toArff(representations[2]);
-            Instances newData = new Instances(Converter.toArff(data));
-
-            //2. Generate and store attributes
-            ArrayList<Attribute> atts = new ArrayList<>();
-            for (int j = 0; j < totalAtts; j++) {
-                atts.add(new Attribute("att" + j));
-            }
-            atts.add(newData.classAttribute());
-            //create blank instances with the correct class value
-            Instances result = new Instances("Tree", atts, newNumInstances);
-            result.setClassIndex(result.numAttributes() - 1);
-
-            Instances testHolder = new Instances(result, 0);
-            testHolder.add(new DenseInstance(result.numAttributes()));
-            testHolders.add(testHolder);
-
-            //For bagging
-            int instIdx = 0;
-            int lastIdx = -1;
-
-            for (int n = 0; n < newNumInstances; n++) {
-                boolean sameInst = false;
-
-                while (true) {
-                    if (instInclusions[instIdx] == 0) {
-                        instIdx++;
-                    } else {
-                        instInclusions[instIdx]--;
-
-                        if (instIdx == lastIdx) {
-                            result.add(n, new DenseInstance(result.instance(n - 1)));
-                            sameInst = true;
-                        } else {
-                            lastIdx = instIdx;
-                        }
-
-                        break;
-                    }
-                }
-
-                if (sameInst) continue;
-
-                DenseInstance in = new DenseInstance(result.numAttributes());
-                in.setValue(result.numAttributes() - 1, newRepresentations[0].instance(instIdx).classValue());
-
-                int p = 0;
-                for (int r = 0; r < representations.length; r++) {
-                    double[] series = extractTimeSeries(newRepresentations[r].get(instIdx));
-
-                    for (int a = 0; a < FeatureSet.numFeatures; a++) {
-                        for (int j = 0; j < intervals.get(classifiersBuilt)[r][a].size(); j++) {
-                            int[] interval = intervals.get(classifiersBuilt)[r][a].get(j);
-                            double val = FeatureSet.calcFeatureByIndex(a, interval[0], interval[1], series);
-                            in.setValue(p, val);
-                            p++;
-                        }
-                    }
-                }
-
-                result.add(in);
-            }
-
-            //3. Create and build tree using all the features.
-            Classifier tree = AbstractClassifier.makeCopy(classifier);
-            if (seedClassifier && tree instanceof Randomizable)
-                ((Randomizable) tree).setSeed(seed * (classifiersBuilt + 1));
-
-            tree.buildClassifier(result);
-            trees.add(tree);
-            classifiersBuilt++;
+        Instances[] arffRepresentations = new Instances[representations.length];
+        Instances[] normalised = new Instances[representations.length];
+        for (int r = 0; r < representations.length; r++) {
+            arffRepresentations[r] = Converter.toArff(representations[r]);
+            normalised[r] = normalise(arffRepresentations[r]);
         }
 
+        buildTrees(arffRepresentations, normalised, instToAdd, startTime);
+        int classifiersBuilt = trees.size();
+
         if(classifiersBuilt==0){//Not enough time to build a single classifier
             throw new Exception((" ERROR in STSF, no trees built, contract time probably too low. Contract time ="+trainContractTimeNanos));
         }
@@ -480,113 +385,13 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         di.setSubtractFormerValue(true);
         representations[2] = di.transform(representations[0]);
 
-        int classifiersBuilt = trees.size();
-
-        /** MAIN BUILD LOOP
-         *  For each base classifier
-         *      generate random intervals
-         *      do the transforms
-         *      build the classifier
-         * */
-        while(withinTrainContract(startTime) && (classifiersBuilt < numClassifiers)) {
-            if (classifiersBuilt % 100 == 0)
-                printLineDebug("\t\t\t\t\tBuilding STSF tree " + classifiersBuilt + " time taken = " + (System.nanoTime() - startTime) + " contract =" + finalBuildtrainContractTimeNanos + " nanos");
-
-            //If bagging find instances with replacement
-            int[] instInclusions = new int[numInstances];
-            int[] baggingClassCounts = new int[numClasses];;
-            for (int n = 0; n < numInstances; n++) {
-                instInclusions[rand.nextInt(numInstances)]++;
-                instInclusions[n] += instToAdd[n];
-            }
-
-            for (int n = 0; n < numInstances; n++) {
-                if (instInclusions[n] > 0) {
-                    baggingClassCounts[(int)representations[0].get(n).classValue()] += instInclusions[n];
-                }
-            }
-
-            //1. Select intervals for tree i
-            intervals.add(new ArrayList[3][]);
-            int totalAtts = 0;
-            for (int r = 0; r < representations.length; r++) {
-                intervals.get(classifiersBuilt)[r] = findCandidateDiscriminatoryIntervals(representations[r],
-                        instInclusions, baggingClassCounts);
-
-                for (int a = 0; a < intervals.get(classifiersBuilt)[r].length; a++) {
-                    totalAtts += intervals.get(classifiersBuilt)[r][a].size();
-                }
-            }
-
-            //2. Generate and store attributes
-            ArrayList<Attribute> atts = new ArrayList<>();
-            for (int j = 0; j < totalAtts; j++) {
-                atts.add(new Attribute("att" + j));
-            }
-            atts.add(data.classAttribute());
-            //create blank instances with the correct class value
-            Instances result = new Instances("Tree", atts, newNumInstances);
-            result.setClassIndex(result.numAttributes() - 1);
-
-            Instances testHolder = new Instances(result, 0);
-            testHolder.add(new DenseInstance(result.numAttributes()));
-            testHolders.add(testHolder);
-
-            //For bagging
-            int instIdx = 0;
-            int lastIdx = -1;
-
-            for (int n = 0; n < newNumInstances; n++) {
-                boolean sameInst = false;
-
-                while (true) {
-                    if (instInclusions[instIdx] == 0) {
-                        instIdx++;
-                    } else {
-                        instInclusions[instIdx]--;
-
-                        if (instIdx == lastIdx) {
-                            result.add(n, new DenseInstance(result.instance(n - 1)));
-                            sameInst = true;
-                        } else {
-                            lastIdx = instIdx;
-                        }
+        //normalisation does not depend on the bag, so is done once rather than for every tree
+        Instances[] normalised = new Instances[representations.length];
+        for (int r = 0; r < representations.length; r++)
+            normalised[r] = normalise(representations[r]);
 
-                        break;
-                    }
-                }
-
-                if (sameInst) continue;
-
-                DenseInstance in = new DenseInstance(result.numAttributes());
-                in.setValue(result.numAttributes() - 1, representations[0].instance(instIdx).classValue());
-
-                int p = 0;
-                for (int r = 0; r < representations.length; r++) {
-                    double[] series = extractTimeSeries(representations[r].get(instIdx));
-
-                    for (int a = 0; a < FeatureSet.numFeatures; a++) {
-                        for (int j = 0; j < intervals.get(classifiersBuilt)[r][a].size(); j++) {
-                            int[] interval = intervals.get(classifiersBuilt)[r][a].get(j);
-                            double val = FeatureSet.calcFeatureByIndex(a, interval[0], interval[1], series);
-                            in.setValue(p, val);
-                            p++;
-                        }
-                    }
-                }
-
-                result.add(in);
-            }
-
-            //3. Create and build tree using all the features.
-            Classifier tree = AbstractClassifier.makeCopy(classifier);
-            if (seedClassifier && tree instanceof Randomizable)
-                ((Randomizable) tree).setSeed(seed * (classifiersBuilt + 1));
-
-            tree.buildClassifier(result);
-            trees.add(tree);
-            classifiersBuilt++;
-        }
+        buildTrees(representations, normalised, instToAdd, startTime);
+        int classifiersBuilt = trees.size();
 
         if(classifiersBuilt==0){//Not enough time to build a single classifier
             throw new Exception((" ERROR in STSF, no trees built, contract time probably too low. Contract time ="+trainContractTimeNanos));
@@ -609,56 +414,96 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         printLineDebug("*************** Finished STSF Build with "+classifiersBuilt+" Trees built in "+(System.nanoTime()-startTime)/1000000000+" Seconds  ***************");
     }
 
-    private ArrayList<int[]>[] findCandidateDiscriminatoryIntervals(Instances rep, int[] instInclusions,
-                                                                    int[] classCounts){
-        int seriesLength = rep.numAttributes()-1;
-        int splitPoint;
-        if (seriesLength <= 8) splitPoint = seriesLength/2;
-        else splitPoint = rand.nextInt(seriesLength-8)+4; //min 4, max serieslength-4
+    /**
+     * MAIN BUILD LOOP
+     * For each base classifier
+     *     find supervised intervals
+     *     do the transforms
+     *     build the classifier
+     * Each tree selects its bag and split points with its own Random seeded by the classifier seed and the tree index,
+     * so a given seed gives the same forest regardless of the number of threads.
+     *
+     * @param representations raw, power spectrum and differences representations of the train data
+     * @param normalised      the representations normalised with normalise(Instances)
+     * @param instToAdd       number of extra copies of each case added to balance the classes
+     * @param startTime       build start time in nanoseconds
+     * @throws Exception unable to build a tree
+     */
+    private void buildTrees(Instances[] representations, Instances[] normalised, int[] instToAdd,
+                            long startTime) throws Exception {
+        if (multiThread) {
+            multiThreadBuildSTSF(representations, normalised, instToAdd, startTime);
+            return;
+        }
 
-        ColumnNormalizer rn = new ColumnNormalizer();
-        rn.fit(rep);
-        rn.setNormMethod(ColumnNormalizer.NormType.STD_NORMAL);
-        Instances data = rn.transform(rep);
+        while (withinTrainContract(startTime) && trees.size() < numClassifiers) {
+            if (trees.size() % 100 == 0)
+                printLineDebug("\t\t\t\t\tBuilding STSF tree " + trees.size() + " time taken = " +
+                        (System.nanoTime() - startTime) + " contract =" + finalBuildtrainContractTimeNanos + " nanos");
 
-        ArrayList<int[]>[] newIntervals = new ArrayList[FeatureSet.numFeatures];
-        for (int i = 0; i < FeatureSet.numFeatures; i++){
-            newIntervals[i] = new ArrayList<>();
-            supervisedIntervalSearch(data, instInclusions, i, newIntervals[i], classCounts, 0, splitPoint);
-            supervisedIntervalSearch(data, instInclusions, i, newIntervals[i], classCounts, splitPoint+1,
-                    rep.numAttributes()-2);
+            MultiThreadBuildHolder h = new TreeBuildThread(trees.size(), representations, normalised, instToAdd).call();
+            trees.add(h.tree);
+            intervals.add(h.intervals);
+            testHolders.add(h.testHolder);
         }
+    }
 
-        return newIntervals;
+    /**
+     * Build the STSF trees using multiple threads. Trees are built in batches. When contracted, batches
+     * are the size of the thread pool so the contract is checked between batches.
+     *
+     * @param representations raw, power spectrum and differences representations of the train data
+     * @param normalised      the representations normalised with normalise(Instances)
+     * @param instToAdd       number of extra copies of each case added to balance the classes
+     * @param startTime       build start time in nanoseconds
+     * @throws Exception unable to build a tree
+     */
+    private void multiThreadBuildSTSF(Instances[] representations, Instances[] normalised, int[] instToAdd,
+                                      long startTime) throws Exception {
+        if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+        int buildStep = trainTimeContract ? numThreads : numClassifiers;
+
+        while (withinTrainContract(startTime) && trees.size() < numClassifiers) {
+            int end = Math.min(trees.size() + buildStep, numClassifiers);
+            ArrayList<Future<MultiThreadBuildHolder>> futures = new ArrayList<>(end - trees.size());
+            for (int i = trees.size(); i < end; i++)
+                futures.add(ex.submit(new TreeBuildThread(i, representations, normalised, instToAdd)));
+
+            for (Future<MultiThreadBuildHolder> f : futures) {
+                MultiThreadBuildHolder h = f.get();
+                trees.add(h.tree);
+                intervals.add(h.intervals);
+                testHolders.add(h.testHolder);
+            }
+        }
     }
 
     /**
-     * Method to carry out supervised learning with TimeSeriesInstances
-     * @param rep TimeSeriesInstances
-     * @param instInclusions TimeSeriesInstances to include
-     * @param classCounts Bagging Class counts
-     * @return newIntervals ArrayList<int[]>[]
+     * Standard normalise each attribute of a representation, as used by the supervised interval search.
+     *
+     * @param rep representation to normalise
+     * @return normalised copy of rep
      */
-    private ArrayList<int[]>[] findCandidateDiscriminatoryIntervals(TimeSeriesInstances rep, int[] instInclusions,
-                                                                    int[] classCounts){
-        int seriesLength = rep.getMaxLength();
+    private Instances normalise(Instances rep){
+        ColumnNormalizer rn = new ColumnNormalizer();
+        rn.fit(rep);
+        rn.setNormMethod(ColumnNormalizer.NormType.STD_NORMAL);
+        return rn.transform(rep);
+    }
+
+    private ArrayList<int[]>[] findCandidateDiscriminatoryIntervals(Instances data, int[] instInclusions,
+                                                                    int[] classCounts, Random rand){
+        int seriesLength = data.numAttributes()-1;
         int splitPoint;
         if (seriesLength <= 8) splitPoint = seriesLength/2;
         else splitPoint = rand.nextInt(seriesLength-8)+4; //min 4, max serieslength-4
 
-        Instances data = Converter.toArff(rep);
-
-        ColumnNormalizer rn = new ColumnNormalizer();
-        rn.fit(data);
-        rn.setNormMethod(ColumnNormalizer.NormType.STD_NORMAL);
-        data = rn.transform(data);
-
         ArrayList<int[]>[] newIntervals = new ArrayList[FeatureSet.numFeatures];
         for (int i = 0; i < FeatureSet.numFeatures; i++){
             newIntervals[i] = new ArrayList<>();
             supervisedIntervalSearch(data, instInclusions, i, newIntervals[i], classCounts, 0, splitPoint);
             supervisedIntervalSearch(data, instInclusions, i, newIntervals[i], classCounts, splitPoint+1,
-                    rep.getMaxLength()-1);
+                    data.numAttributes()-2);
         }
 
         return newIntervals;
@@ -723,68 +568,6 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         }
     }
 
-    /**
-     * Method to search for the intervals.
-     */
-    private void supervisedIntervalSearch(TimeSeriesInstances data, int[] instInclusions, int featureIdx,
-                                          ArrayList<int[]> intervals, int[] classCount, int start, int end){
-        int seriesLength = end-start;
-        if (seriesLength < 4) return;
-        int halfSeriesLength = seriesLength/2;
-
-        double[] x1 = new double[newNumInstances];
-        double[] x2 = new double[newNumInstances];
-        double[] y = new double[newNumInstances];
-
-        int e1 = start + halfSeriesLength;
-        int e2 = start + halfSeriesLength + 1;
-        int instIdx = 0;
-        int lastIdx = -1;
-        int[] instInclusionsCopy = Arrays.copyOf(instInclusions, instInclusions.length);
-
-        for (int i = 0; i < newNumInstances; i++){
-            boolean sameInst = false;
-
-            while (true) {
-                if (instInclusionsCopy[instIdx] == 0) {
-                    instIdx++;
-                } else {
-                    instInclusionsCopy[instIdx]--;
-
-                    if (instIdx == lastIdx) {
-                        x1[i] = x1[i-1];
-                        x1[i] = x1[i-1];
-                        y[i] = y[i-1];
-                        sameInst = true;
-                    } else {
-                        lastIdx = instIdx;
-                    }
-
-                    break;
-                }
-            }
-
-            if (sameInst) continue;
-
-            double[] series = data.get(instIdx).toValueArray()[0];
-            x1[i] = FeatureSet.calcFeatureByIndex(featureIdx, start, e1, series);
-            x2[i] = FeatureSet.calcFeatureByIndex(featureIdx, e2, end, series);
-            y[i] = series[series.length-1];
-        }
-
-        double s1 = fisherScore(x1, y, classCount);
-        double s2 = fisherScore(x2, y, classCount);
-
-        if (s2 < s1){
-            intervals.add(new int[]{start, e1});
-            supervisedIntervalSearch(data, instInclusions, featureIdx, intervals, classCount, start, e1);
-        }
-        else{
-            intervals.add(new int[]{e2, end});
-            supervisedIntervalSearch(data, instInclusions, featureIdx, intervals, classCount, e2, end);
-        }
-    }
-
     private double fisherScore(double[] x, double[] y, int[] classCounts){
         double a = 0, b = 0;
 
@@ -856,6 +639,9 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
 
     private void copyParameters(STSF other){
         this.numClassifiers=other.numClassifiers;
+        this.numThreads=other.numThreads;
+        this.multiThread=other.multiThread;
+        this.ex=other.ex;
     }
 
     @Override
@@ -878,6 +664,9 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         representations[1] = ps.transform(ins).toDoubleArray();
         representations[2] = di.transform(ins).toDoubleArray();
 
+        if (multiThread)
+            return multiThreadDistribution(representations, d.length);
+
         for(int i=0;i<trees.size();i++){
             Instances testHolder = testHolders.get(i);
 
@@ -931,6 +720,9 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         representations[1] = ps.transform(ins).toValueArray()[0];
         representations[2] = di.transform(ins).toValueArray()[0];
 
+        if (multiThread)
+            return multiThreadDistribution(representations, d.length);
+
         for(int i=0;i<trees.size();i++){
             Instances testHolder = testHolders.get(i);
 
@@ -964,6 +756,39 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         return d;
     }
 
+    /**
+     * Find class probabilities using multiple threads, each thread classifying the case with a block of trees.
+     *
+     * @param representations raw, power spectrum and differences representations of the case
+     * @param numClasses      number of class values
+     * @return array of doubles: probability of each class
+     * @throws Exception failure to classify
+     */
+    private double[] multiThreadDistribution(double[][] representations, int numClasses) throws Exception {
+        if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+
+        int blockSize = (trees.size() + numThreads - 1) / numThreads;
+        ArrayList<Future<double[]>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < trees.size(); i += blockSize)
+            futures.add(ex.submit(new TreePredictionThread(i, Math.min(i + blockSize, trees.size()),
+                    representations, numClasses)));
+
+        double[] d = new double[numClasses];
+        for (Future<double[]> f : futures) {
+            double[] votes = f.get();
+            for (int j = 0; j < d.length; j++)
+                d[j] += votes[j];
+        }
+
+        double sum=0;
+        for(double x:d)
+            sum+=x;
+        if(sum>0)
+            for(int i=0;i<d.length;i++)
+                d[i]=d[i]/sum;
+        return d;
+    }
+
     /**
      * @param ins Weka Instance
      * @return double
@@ -986,6 +811,22 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         return findIndexOfMax(d, rand);
     }
 
+    /**
+     * Enables multi threading with a set number of threads to use.
+     *
+     * @param numThreads number of threads available for multi threading
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads) {
+        if (numThreads > 1) {
+            this.numThreads = numThreads;
+            multiThread = true;
+        } else {
+            this.numThreads = 1;
+            multiThread = false;
+        }
+    }
+
     @Override//TrainTimeContractable
     public void setTrainTimeLimit(long amount) {
         printLineDebug("STSF setting contract to "+amount);
@@ -1125,6 +966,198 @@ public class STSF extends EnhancedAbstractClassifier implements TechnicalInforma
         }
     }
 
+    /**
+     * Class to hold data about a STSF tree when multi threading.
+     */
+    private static class MultiThreadBuildHolder {
+        Classifier tree;
+        ArrayList<int[]>[][] intervals;
+        Instances testHolder;
+    }
+
+    /**
+     * Class to build a STSF tree when multi threading.
+     */
+    private class TreeBuildThread implements Callable<MultiThreadBuildHolder> {
+        int i;
+        Instances[] representations;
+        Instances[] normalised;
+        int[] instToAdd;
+
+        public TreeBuildThread(int i, Instances[] representations, Instances[] normalised, int[] instToAdd) {
+            this.i = i;
+            this.representations = representations;
+            this.normalised = normalised;
+            this.instToAdd = instToAdd;
+        }
+
+        /**
+         * find supervised intervals
+         * do the transforms
+         * build the classifier
+         **/
+        @Override
+        public MultiThreadBuildHolder call() throws Exception {
+            MultiThreadBuildHolder h = new MultiThreadBuildHolder();
+            Random rand = new Random(seed + (long) i * numClassifiers);
+
+            //Find instances with replacement, topping up the minority classes
+            int[] instInclusions = new int[numInstances];
+            int[] baggingClassCounts = new int[representations[0].numClasses()];
+            for (int n = 0; n < numInstances; n++) {
+                instInclusions[rand.nextInt(numInstances)]++;
+                instInclusions[n] += instToAdd[n];
+            }
+
+            for (int n = 0; n < numInstances; n++) {
+                if (instInclusions[n] > 0) {
+                    baggingClassCounts[(int)representations[0].get(n).classValue()] += instInclusions[n];
+                }
+            }
+
+            //1. Select intervals for tree i
+            @SuppressWarnings("unchecked")
+            ArrayList<int[]>[][] treeIntervals = (ArrayList<int[]>[][]) new ArrayList<?>[representations.length][];
+            int totalAtts = 0;
+            for (int r = 0; r < representations.length; r++) {
+                treeIntervals[r] = findCandidateDiscriminatoryIntervals(normalised[r], instInclusions,
+                        baggingClassCounts, rand);
+
+                for (int a = 0; a < treeIntervals[r].length; a++) {
+                    totalAtts += treeIntervals[r][a].size();
+                }
+            }
+
+            //2. Generate and store attributes in a column-major feature matrix, each case repeated by its inclusions
+            double[][] features = new double[totalAtts][newNumInstances];
+            int[] labels = new int[newNumInstances];
+            double[][] series = new double[representations.length][];
+            int k = 0;
+            for (int n = 0; n < numInstances; n++) {
+                if (instInclusions[n] == 0)
+                    continue;
+
+                for (int r = 0; r < representations.length; r++)
+                    series[r] = extractTimeSeries(representations[r].get(n));
+
+                int p = 0;
+                for (int r = 0; r < representations.length; r++) {
+                    for (int a = 0; a < FeatureSet.numFeatures; a++) {
+                        for (int j = 0; j < treeIntervals[r][a].size(); j++) {
+                            int[] interval = treeIntervals[r][a].get(j);
+                            features[p++][k] = FeatureSet.calcFeatureByIndex(a, interval[0], interval[1], series[r]);
+                        }
+                    }
+                }
+                labels[k] = (int) representations[0].instance(n).classValue();
+
+                for (int c = 1; c < instInclusions[n]; c++) {
+                    for (double[] f : features)
+                        f[k + c] = f[k];
+                    labels[k + c] = labels[k];
+                }
+                k += instInclusions[n];
+            }
+
+            ArrayList<Attribute> atts = new ArrayList<>();
+            for (int j = 0; j < totalAtts; j++) {
+                atts.add(new Attribute("att" + j));
+            }
+            atts.add(representations[0].classAttribute());
+            Instances result = new Instances("Tree", atts, 0);
+            result.setClassIndex(result.numAttributes() - 1);
+
+            Instances testHolder = new Instances(result, 0);
+            testHolder.add(new DenseInstance(result.numAttributes()));
+
+            //3. Create and build tree using all the features. The default tree is built straight from the matrix
+            Classifier tree = AbstractClassifier.makeCopy(classifier);
+            if (seedClassifier && tree instanceof Randomizable)
+                ((Randomizable) tree).setSeed(seed * (i + 1));
+
+            if (tree instanceof ContinuousIntervalTree) {
+                ((ContinuousIntervalTree) tree).buildClassifier(features, labels, result.numClasses());
+            } else {
+                for (int n = 0; n < newNumInstances; n++) {
+                    double[] values = new double[result.numAttributes()];
+                    for (int a = 0; a < totalAtts; a++)
+                        values[a] = features[a][n];
+                    values[totalAtts] = labels[n];
+                    result.add(new DenseInstance(1, values));
+                }
+                tree.buildClassifier(result);
+            }
+
+            h.tree = tree;
+            h.intervals = treeIntervals;
+            h.testHolder = testHolder;
+            return h;
+        }
+    }
+
+    /**
+     * Class to make class predictions using a block of STSF trees when multi threading.
+     */
+    private class TreePredictionThread implements Callable<double[]> {
+        int start;
+        int end;
+        double[][] representations;
+        int numClasses;
+
+        public TreePredictionThread(int start, int end, double[][] representations, int numClasses) {
+            this.start = start;
+            this.end = end;
+            this.representations = representations;
+            this.numClasses = numClasses;
+        }
+
+        @Override
+        public double[] call() throws Exception {
+            double[] d = new double[numClasses];
+
+            for (int i = start; i < end; i++) {
+                Instances testHolder = testHolders.get(i);
+                double[] values = new double[testHolder.numAttributes()];
+                int p = 0;
+                for (int r = 0; r < representations.length; r++) {
+                    for (int a = 0; a < FeatureSet.numFeatures; a++) {
+                        for (int j = 0; j < intervals.get(i)[r][a].size(); j++) {
+                            int[] interval = intervals.get(i)[r][a].get(j);
+                            values[p++] = FeatureSet.calcFeatureByIndex(a, interval[0], interval[1],
+                                    representations[r]);
+                        }
+                    }
+                }
+
+                Classifier tree = trees.get(i);
+                if (tree instanceof ContinuousIntervalTree) {
+                    ContinuousIntervalTree cit = (ContinuousIntervalTree) tree;
+                    if (voteEnsemble) {
+                        d[(int) cit.classifyInstance(values)]++;
+                    } else {
+                        double[] temp = cit.distributionForInstance(values);
+                        for (int j = 0; j < temp.length; j++)
+                            d[j] += temp[j];
+                    }
+                    continue;
+                }
+
+                DenseInstance inst = new DenseInstance(1, values);
+                inst.setDataset(testHolder);
+
+                if (voteEnsemble) {
+                    int c = (int) tree.classifyInstance(inst);
+                    d[c]++;
+                } else {
+                    double[] temp = tree.distributionForInstance(inst);
+                    for (int j = 0; j < temp.length; j++)
+                        d[j] += temp[j];
+                }
+            }
+            return d;
+        }
+    }
+
     public static void main(String[] arg) throws Exception{
         // Basic correctness tests, including setting paras through
         String dataLocation="Z:\\ArchiveData\\Univariate_arff\\";
@@ -38,6 +38,11 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -108,10 +113,12 @@ import java.util.function.Function;
  * timeseriesclassification.com/results/ResultsByClassifier/TSF/Predictions
  * update 1/7/2020: Tony Bagnall. Sort out correct recording of timing, and tidy up comments. The storage option for
  * either CV or OOB
+ * update: MultiThreadable. Each tree draws its intervals and bag from its own Random seeded by the classifier seed and
+ * the tree index, so a given seed gives the same forest regardless of the number of threads.
  */
 
 public class TSF extends EnhancedAbstractClassifier implements TechnicalInformationHandler,
-        TrainTimeContractable, Checkpointable, Tuneable, Visualisable, TSCapabilitiesHandler {
+        TrainTimeContractable, Checkpointable, Tuneable, Visualisable, TSCapabilitiesHandler, MultiThreadable {
     protected static final long serialVersionUID = 32554L;
     //Static defaults
     private final static int DEFAULT_NUM_CLASSIFIERS = 500;
@@ -277,6 +284,13 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
     private int seriesLength;
     private String visSavePath;
 
+    /**
+     * Multithreading
+     */
+    private int numThreads = 1;
+    private boolean multiThread = false;
+    private transient ExecutorService ex;
+
     public TSF() {
         //TSF Has the capability to form train estimates
         super(CAN_ESTIMATE_OWN_PERFORMANCE);
@@ -431,130 +445,15 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
                     finalBuildtrainContractTimeNanos));
         }
 
-        // create 2d double array to store mean, standard deviation and slope of each interval
-        double[][] transformedData = new double[data.numInstances()][numIntervals * 3];
-
-        int classifiersBuilt = trees.size();
-
-        /** MAIN BUILD LOOP
-         *  For each base classifier
-         *      generate random intervals
-         *      do the transforms
-         *      build the classifier
-         * */
-        while (withinTrainContract(startTime) && (classifiersBuilt < numClassifiers)) {
-            if (classifiersBuilt % 100 == 0)
-                printLineDebug("\t\t\t\t\tBuilding TSF tree " + classifiersBuilt + " time taken = " + (System.nanoTime() - startTime) + " contract =" + finalBuildtrainContractTimeNanos + " nanos");
-
-            /*
-             * 1. Select random intervals for current tree
-             */
-            int[][] interval = new int[numIntervals][2]; // Start and end
-
-            if (data.numInstances() < minIntervalLength)
-                minIntervalLength = data.numInstances();
-
-            for (int i = 0; i < numIntervals; i++) {
-                if (data.getMaxLength() - minIntervalLength > 0)
-                    interval[i][0] = rand.nextInt(data.getMaxLength() - minIntervalLength); // Start point
-                int length = rand.nextInt(data.getMaxLength() - interval[i][0]); // Min length 3
-
-                if (length < minIntervalLength)
-                    length = minIntervalLength;
-
-                interval[i][1] = interval[i][0] + length;
-            }
-
-            /*
-             * 2. Generate and store attributes
-             */
-            for (int i = 0; i < numIntervals; i++) {
-                // create slice of all series from intervals
-                double[][][] slice = data.getVSliceArray(interval[i][0], interval[i][1]);
-
-                for (int j = 0; j < data.numInstances(); j++) {
-                    // get sliced series
-                    double[] slicedSeries = slice[j][0];
-
-                    // get stats about data
-                    double mean = TimeSeriesSummaryStatistics.mean(slicedSeries);
-                    double variance = TimeSeriesSummaryStatistics.variance(slicedSeries, mean);
-                    double std = Math.sqrt(variance);
-                    double sum = TimeSeriesSummaryStatistics.sum(slicedSeries);
-                    double sumSq = TimeSeriesSummaryStatistics.sumSq(slicedSeries);
-                    double slope = TimeSeriesSummaryStatistics.slope(slicedSeries, sum, sumSq, std);
-
-                    // set mean, standard deviation and slope
-                    transformedData[j][i * 3] = mean;
-                    transformedData[j][i * 3 + 1] = std;
-                    transformedData[j][i * 3 + 2] = slope;
-                }
-            }
-
-            /*
-             * 3. Create and build tree using all the features
-             */
-            Classifier tree = AbstractClassifier.makeCopy(classifier);
-
-            if (seedClassifier && tree instanceof Randomizable)
-                ((Randomizable) tree).setSeed(seed * (classifiersBuilt + 1));
-
-            if (bagging) {
-                // convert data to Instances
-                double[][][] tempSeries = new double[data.numInstances()][1][numIntervals * 3];
-                int i = 0;
-                for (double[] t : transformedData) {
-                    tempSeries[i++][0] = t;
-                }
-                TimeSeriesInstances temp = new TimeSeriesInstances(tempSeries, data.getClassIndexes(), data.getClassLabels());
-                Instances converted = Converter.toArff(temp);
-
-                long t1 = System.nanoTime();
-                boolean[] bag = new boolean[converted.numInstances()];
-                Instances bagData = converted.resampleWithWeights(rand, bag);
-                tree.buildClassifier(bagData);
-                inBag.add(bag);
-                if (getEstimateOwnPerformance()) {
-                    for (int j = 0; j < converted.numInstances(); j++) {
-                        if (bag[j])
-                            continue;
-                        double[] newProbs = tree.distributionForInstance(converted.instance(j));
-                        oobCounts[j]++;
-                        for (int k = 0; k < newProbs.length; k++)
-                            trainDistributions[j][k] += newProbs[k];
-                    }
-                }
-                long t2 = System.nanoTime();
-                if (getEstimateOwnPerformance())
-                    trainResults.setErrorEstimateTime(t2 - t1 + trainResults.getErrorEstimateTime());
-            }
-            else {
-                double[][][] tempSeries = new double[data.numInstances()][1][numIntervals * 3];
-                int i = 0;
-                for (double[] t : transformedData) {
-                    tempSeries[i++][0] = t;
-                }
-                TimeSeriesInstances temp = new TimeSeriesInstances(tempSeries, data.getClassIndexes(), data.getClassLabels());
-                tree.buildClassifier(Converter.toArff(temp));
-            }
-
-            intervals.add(interval);
-            trees.add(tree);
-            classifiersBuilt++;
-
-            if (checkpoint) {
-                // Timed checkpointing
-                if (checkpointTime > 0) {
-                    if (System.nanoTime() - lastCheckpointTime > checkpointTime) {
-                        saveToFile(checkpointPath);
-                        lastCheckpointTime = System.nanoTime();
-                    }
-                }
-                // Default checkpoint every 100 trees
-                else if (classifiersBuilt % 100 == 0 && classifiersBuilt > 0)
-                    saveToFile(checkpointPath);
-            }
+        testHolder = createTransformHeader(new ArrayList<>(Arrays.asList(data.getClassLabels())), "class");
+        double[][] series = new double[data.numInstances()][];
+        double[] classVals = new double[data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            series[i] = data.get(i).toValueArray()[0];
+            classVals[i] = data.get(i).getLabelIndex();
         }
+        buildTrees(series, classVals, startTime, true);
+        int classifiersBuilt = trees.size();
 
         // Not enough time to build a single classifier
         if (classifiersBuilt == 0)
@@ -637,115 +536,22 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
             printLineDebug(" Setting final contract time to " + finalBuildtrainContractTimeNanos + " nanos");
         }
 
-        ArrayList<Attribute> atts = new ArrayList<>();
-        String name;
-        for (int j = 0; j < numIntervals * 3; j++) {
-            name = "F" + j;
-            atts.add(new Attribute(name));
-        }
         //Get the class values as an array list
         Attribute target = data.attribute(data.classIndex());
         ArrayList<String> vals = new ArrayList<>(target.numValues());
         for (int j = 0; j < target.numValues(); j++)
             vals.add(target.value(j));
-        atts.add(new Attribute(data.attribute(data.classIndex()).name(), vals));
-        //create blank instances with the correct class value
-        Instances transformedData = new Instances("Tree", atts, data.numInstances());
-        transformedData.setClassIndex(transformedData.numAttributes() - 1);
+        testHolder = createTransformHeader(vals, target.name());
+
+        double[][] series = new double[data.numInstances()][];
+        double[] classVals = new double[data.numInstances()];
         for (int i = 0; i < data.numInstances(); i++) {
-            DenseInstance in = new DenseInstance(transformedData.numAttributes());
-            in.setValue(transformedData.numAttributes() - 1, data.instance(i).classValue());
-            transformedData.add(in);
+            series[i] = data.instance(i).toDoubleArray();
+            classVals[i] = data.instance(i).classValue();
         }
-
-        testHolder = new Instances(transformedData, 0);
-        DenseInstance in = new DenseInstance(transformedData.numAttributes());
-        testHolder.add(in);
+        buildTrees(series, classVals, startTime, false);
         int classifiersBuilt = trees.size();
 
-
-        /** MAIN BUILD LOOP
-         *  For each base classifier
-         *      generate random intervals
-         *      do the transforms
-         *      build the classifier
-         * */
-        while (withinTrainContract(startTime) && (classifiersBuilt < numClassifiers)) {
-            if (classifiersBuilt % 100 == 0)
-                printLineDebug("\t\t\t\t\tBuilding TSF tree " + classifiersBuilt + " time taken = " + (System.nanoTime() - startTime) + " contract =" + finalBuildtrainContractTimeNanos + " nanos");
-
-            //1. Select random intervals for tree i
-            int[][] interval = new int[numIntervals][2];  //Start and end
-
-            if (data.numAttributes() - 1 < minIntervalLength)
-                minIntervalLength = data.numAttributes() - 1;
-            for (int j = 0; j < numIntervals; j++) {
-                if (data.numAttributes() - 1 - minIntervalLength > 0)
-                    interval[j][0] = rand.nextInt(data.numAttributes() - 1 - minIntervalLength);   //Start point
-                int length = rand.nextInt(data.numAttributes() - 1 - interval[j][0]);//Min length 3
-                if (length < minIntervalLength)
-                    length = minIntervalLength;
-                interval[j][1] = interval[j][0] + length;
-            }
-
-            //2. Generate and store attributes
-            for (int j = 0; j < numIntervals; j++) {
-                for (int k = 0; k < data.numInstances(); k++) {
-                    //extract the interval, work out the features
-                    double[] series = data.instance(k).toDoubleArray();
-                    FeatureSet f = new FeatureSet();
-                    f.setFeatures(series, interval[j][0], interval[j][1]);
-                    transformedData.instance(k).setValue(j * 3, f.mean);
-                    transformedData.instance(k).setValue(j * 3 + 1, f.stDev);
-                    transformedData.instance(k).setValue(j * 3 + 2, f.slope);
-                }
-            }
-            //3. Create and build tree using all the features.
-            Classifier tree = AbstractClassifier.makeCopy(classifier);
-            if (seedClassifier && tree instanceof Randomizable)
-                ((Randomizable) tree).setSeed(seed * (classifiersBuilt + 1));
-
-            if (bagging) {
-                long t1 = System.nanoTime();
-                boolean[] bag = new boolean[transformedData.numInstances()];
-                Instances bagData = transformedData.resampleWithWeights(rand, bag);
-                tree.buildClassifier(bagData);
-                inBag.add(bag);
-                if (getEstimateOwnPerformance()) {
-                    for (int j = 0; j < transformedData.numInstances(); j++) {
-                        if (bag[j])
-                            continue;
-                        double[] newProbs = tree.distributionForInstance(transformedData.instance(j));
-                        oobCounts[j]++;
-                        for (int k = 0; k < newProbs.length; k++)
-                            trainDistributions[j][k] += newProbs[k];
-                    }
-                }
-                long t2 = System.nanoTime();
-                if (getEstimateOwnPerformance())
-                    trainResults.setErrorEstimateTime(t2 - t1 + trainResults.getErrorEstimateTime());
-            }
-            else
-                tree.buildClassifier(transformedData);
-
-            intervals.add(interval);
-            trees.add(tree);
-            classifiersBuilt++;
-
-            if (checkpoint) {
-                if (checkpointTime > 0)    //Timed checkpointing
-                {
-                    if (System.nanoTime() - lastCheckpointTime > checkpointTime) {
-                        saveToFile(checkpointPath);
-                        lastCheckpointTime = System.nanoTime();
-                    }
-                }
-                else {    //Default checkpoint every 100 trees
-                    if (classifiersBuilt % 100 == 0 && classifiersBuilt > 0)
-                        saveToFile(checkpointPath);
-                }
-            }
-        }
         if (classifiersBuilt == 0) {//Not enough time to build a single classifier
             throw new Exception((" ERROR in TSF, no trees built, contract time probably too low. Contract time =" + trainContractTimeNanos));
         }
@@ -773,6 +579,175 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
         printLineDebug("*************** Finished TSF Build with " + classifiersBuilt + " Trees built in " + (System.nanoTime() - startTime) / 1000000000 + " Seconds  ***************");
     }
 
+    /**
+     * Build the TSF trees one at a time, or with multiple threads if enabled. Each tree selects its intervals and bag
+     * with its own Random, so the result does not depend on the number of threads.
+     *
+     * @param series     raw series values, one array per case
+     * @param classVals  class value of each case
+     * @param startTime  build start time in nanoseconds
+     * @param tsFeatures true to use the TimeSeriesInstances interval features, false for the weka Instances features
+     * @throws Exception unable to build a tree
+     */
+    private void buildTrees(double[][] series, double[] classVals, long startTime, boolean tsFeatures)
+            throws Exception {
+        if (multiThread) {
+            multiThreadBuildTSF(series, classVals, startTime, tsFeatures);
+            return;
+        }
+        if (seriesLength < minIntervalLength)
+            minIntervalLength = seriesLength;
+
+        while (withinTrainContract(startTime) && trees.size() < numClassifiers) {
+            if (trees.size() % 100 == 0)
+                printLineDebug("\t\t\t\t\tBuilding TSF tree " + trees.size() + " time taken = " + (System.nanoTime() - startTime) + " contract =" + finalBuildtrainContractTimeNanos + " nanos");
+
+            addTree(new TreeBuildThread(trees.size(), series, classVals, tsFeatures).call(), series.length);
+
+            if (checkpoint) {
+                // Timed checkpointing
+                if (checkpointTime > 0) {
+                    if (System.nanoTime() - lastCheckpointTime > checkpointTime) {
+                        saveToFile(checkpointPath);
+                        lastCheckpointTime = System.nanoTime();
+                    }
+                }
+                // Default checkpoint every 100 trees
+                else if (trees.size() % 100 == 0)
+                    saveToFile(checkpointPath);
+            }
+        }
+    }
+
+    /**
+     * Build the TSF trees using multiple threads. Trees are built in batches. When contracted or checkpointing,
+     * batches are the size of the thread pool so the contract is checked and checkpoints are saved between batches.
+     *
+     * @param series     raw series values, one array per case
+     * @param classVals  class value of each case
+     * @param startTime  build start time in nanoseconds
+     * @param tsFeatures true to use the TimeSeriesInstances interval features, false for the weka Instances features
+     * @throws Exception unable to build a tree
+     */
+    private void multiThreadBuildTSF(double[][] series, double[] classVals, long startTime, boolean tsFeatures)
+            throws Exception {
+        if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+        if (seriesLength < minIntervalLength)
+            minIntervalLength = seriesLength;
+        int buildStep = trainTimeContract || checkpoint ? numThreads : numClassifiers;
+
+        while (withinTrainContract(startTime) && trees.size() < numClassifiers) {
+            int end = Math.min(trees.size() + buildStep, numClassifiers);
+            ArrayList<Future<MultiThreadBuildHolder>> futures = new ArrayList<>(end - trees.size());
+            for (int i = trees.size(); i < end; i++)
+                futures.add(ex.submit(new TreeBuildThread(i, series, classVals, tsFeatures)));
+
+            for (Future<MultiThreadBuildHolder> f : futures)
+                addTree(f.get(), series.length);
+
+            if (checkpoint) {
+                if (checkpointTime > 0) {
+                    if (System.nanoTime() - lastCheckpointTime > checkpointTime) {
+                        saveToFile(checkpointPath);
+                        lastCheckpointTime = System.nanoTime();
+                    }
+                }
+                else if (trees.size() % 100 < buildStep)
+                    saveToFile(checkpointPath);
+            }
+        }
+    }
+
+    /**
+     * Add a built tree to the forest, along with its bag and out of bag predictions if bagging.
+     *
+     * @param h            the tree and its intervals
+     * @param numInstances number of train cases
+     */
+    private void addTree(MultiThreadBuildHolder h, int numInstances) {
+        trees.add(h.tree);
+        intervals.add(h.interval);
+
+        if (bagging) {
+            inBag.add(h.inBag);
+            if (getEstimateOwnPerformance()) {
+                trainResults.setErrorEstimateTime(trainResults.getErrorEstimateTime() + h.errorTime);
+                for (int n = 0; n < numInstances; n++) {
+                    oobCounts[n] += h.oobCounts[n];
+                    for (int k = 0; k < numClasses; k++)
+                        trainDistributions[n][k] += h.trainDistribution[n][k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Blank Instances with one attribute per interval feature plus the class, used as the header for tree data.
+     *
+     * @param classVals class value names
+     * @param className name of the class attribute
+     * @return Instances header containing a single blank instance
+     */
+    private Instances createTransformHeader(ArrayList<String> classVals, String className) {
+        ArrayList<Attribute> atts = new ArrayList<>();
+        for (int j = 0; j < numIntervals * 3; j++)
+            atts.add(new Attribute("F" + j));
+        atts.add(new Attribute(className, classVals));
+        Instances header = new Instances("Tree", atts, 1);
+        header.setClassIndex(header.numAttributes() - 1);
+        header.add(new DenseInstance(header.numAttributes()));
+        return header;
+    }
+
+    /**
+     * Select numIntervals random intervals of at least minIntervalLength.
+     *
+     * @param r Random to draw intervals with
+     * @return interval start and end points
+     */
+    private int[][] selectIntervals(Random r) {
+        int[][] interval = new int[numIntervals][2];
+        for (int j = 0; j < numIntervals; j++) {
+            if (seriesLength - minIntervalLength > 0)
+                interval[j][0] = r.nextInt(seriesLength - minIntervalLength);
+            int length = r.nextInt(seriesLength - interval[j][0]);
+            if (length < minIntervalLength)
+                length = minIntervalLength;
+            interval[j][1] = interval[j][0] + length;
+        }
+        return interval;
+    }
+
+    /**
+     * Write the mean, standard deviation and slope of each interval of a series into values.
+     *
+     * @param series     series to extract features from
+     * @param interval   intervals of a tree
+     * @param tsFeatures true to use the TimeSeriesInstances interval features, false for the weka Instances features
+     * @param values     array to write features to, of length at least numIntervals * 3
+     */
+    private void intervalFeatures(double[] series, int[][] interval, boolean tsFeatures, double[] values) {
+        for (int j = 0; j < numIntervals; j++) {
+            if (tsFeatures) {
+                double[] slicedSeries = Arrays.copyOfRange(series, interval[j][0], interval[j][1]);
+                double mean = TimeSeriesSummaryStatistics.mean(slicedSeries);
+                double std = Math.sqrt(TimeSeriesSummaryStatistics.variance(slicedSeries, mean));
+                double sum = TimeSeriesSummaryStatistics.sum(slicedSeries);
+                double sumSq = TimeSeriesSummaryStatistics.sumSq(slicedSeries);
+                values[j * 3] = mean;
+                values[j * 3 + 1] = std;
+                values[j * 3 + 2] = TimeSeriesSummaryStatistics.slope(slicedSeries, sum, sumSq, std);
+            }
+            else {
+                FeatureSet f = new FeatureSet();
+                f.setFeatures(series, interval[j][0], interval[j][1]);
+                values[j * 3] = f.mean;
+                values[j * 3 + 1] = f.stDev;
+                values[j * 3 + 2] = f.slope;
+            }
+        }
+    }
+
     /**
      * estimating own performance
      *  Three scenarios
@@ -856,6 +831,9 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
     private void copyParameters(TSF other) {
         this.numClassifiers = other.numClassifiers;
         this.numIntervalsFinder = other.numIntervalsFinder;
+        this.numThreads = other.numThreads;
+        this.multiThread = other.multiThread;
+        this.ex = other.ex;
     }
 
     @Override
@@ -877,6 +855,9 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
             ins = padded;
         }
 
+        if (multiThread)
+            return multiThreadDistribution(ins.toValueArray()[0], true);
+
         double[] classProbability = new double[getTSTrainData().getClassLabels().length]; // length of class variables
         double[] statsData = new double[numIntervals * 3];
 
@@ -930,6 +911,9 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
      */
     @Override
     public double[] distributionForInstance(Instance ins) throws Exception {
+        if (multiThread)
+            return multiThreadDistribution(ins.toDoubleArray(), false);
+
         double[] d = new double[numClasses];
         //Build transformed instance
         double[] series = ins.toDoubleArray();
@@ -961,6 +945,100 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
         return d;
     }
 
+    /**
+     * Find class probabilities using multiple threads, each thread classifying the series with a block of trees.
+     *
+     * @param series     series to classify
+     * @param tsFeatures true to use the TimeSeriesInstances interval features, false for the weka Instances features
+     * @return array of doubles: probability of each class
+     * @throws Exception failure to classify
+     */
+    private double[] multiThreadDistribution(double[] series, boolean tsFeatures) throws Exception {
+        return multiThreadDistributions(new double[][]{series}, tsFeatures)[0];
+    }
+
+    /**
+     * Find class probabilities of a batch of series using multiple threads, each thread classifying every series
+     * with a block of trees.
+     *
+     * @param series     series to classify
+     * @param tsFeatures true to use the TimeSeriesInstances interval features, false for the weka Instances features
+     * @return probability of each class for each series
+     * @throws Exception failure to classify
+     */
+    private double[][] multiThreadDistributions(double[][] series, boolean tsFeatures) throws Exception {
+        if (ex == null) ex = Executors.newFixedThreadPool(numThreads);
+
+        int blockSize = (trees.size() + numThreads - 1) / numThreads;
+        ArrayList<Future<double[][]>> futures = new ArrayList<>(numThreads);
+        for (int i = 0; i < trees.size(); i += blockSize)
+            futures.add(ex.submit(new TreePredictionThread(i, Math.min(i + blockSize, trees.size()), series,
+                    tsFeatures)));
+
+        double[][] d = new double[series.length][numClasses];
+        for (Future<double[][]> f : futures) {
+            double[][] votes = f.get();
+            for (int n = 0; n < d.length; n++)
+                for (int j = 0; j < numClasses; j++)
+                    d[n][j] += votes[n][j];
+        }
+
+        for (double[] dist : d) {
+            double sum = 0;
+            for (double x : dist)
+                sum += x;
+            if (sum > 0)
+                for (int i = 0; i < dist.length; i++)
+                    dist[i] = dist[i] / sum;
+        }
+        return d;
+    }
+
+    /**
+     * Find class probabilities of a batch of instances. When multi threading each thread classifies the whole batch
+     * with a block of trees, rather than a task being submitted for each instance.
+     *
+     * @param insts instances to classify
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        if (!multiThread)
+            return super.distributionsForInstances(insts);
+
+        double[][] series = new double[insts.numInstances()][];
+        for (int i = 0; i < series.length; i++)
+            series[i] = insts.instance(i).toDoubleArray();
+        return multiThreadDistributions(series, false);
+    }
+
+    /**
+     * Find class probabilities of a batch of TimeSeriesInstances, see distributionsForInstances.
+     *
+     * @param data instances to classify
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override
+    public double[][] distributionForInstances(TimeSeriesInstances data) throws Exception {
+        if (!multiThread) {
+            double[][] d = new double[data.numInstances()][];
+            for (int i = 0; i < d.length; i++)
+                d[i] = distributionForInstance(data.get(i));
+            return d;
+        }
+
+        double[][] series = new double[data.numInstances()][];
+        for (int i = 0; i < series.length; i++) {
+            TimeSeriesInstance ins = data.get(i);
+            if (seriesLength > ins.getMaxLength())
+                ins = resizer.transform(ins);
+            series[i] = ins.toValueArray()[0];
+        }
+        return multiThreadDistributions(series, true);
+    }
+
     /**
      * @param ins TimeSeriesInstance
      * @return double
@@ -1043,6 +1121,23 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
             numIntervalsFinder = (numAtts) -> (int) (Math.sqrt(numAtts));
     }
 
+    /**
+     * Enables multi threading with a set number of threads to use.
+     *
+     * @param numThreads number of threads available for multi threading
+     */
+    @Override //MultiThreadable
+    public void enableMultiThreading(int numThreads) {
+        if (numThreads > 1) {
+            this.numThreads = numThreads;
+            multiThread = true;
+        }
+        else {
+            this.numThreads = 1;
+            multiThread = false;
+        }
+    }
+
     @Override //Checkpointable
     public boolean setCheckpointPath(String path) {
         boolean validPath = Checkpointable.super.createDirectories(path);
@@ -1301,6 +1396,161 @@ public class TSF extends EnhancedAbstractClassifier implements TechnicalInformat
         }
     }
 
+    /**
+     * Class to hold data about a TSF tree when multi threading.
+     */
+    private static class MultiThreadBuildHolder {
+        Classifier tree;
+        int[][] interval;
+        boolean[] inBag;
+
+        double[][] trainDistribution;
+        int[] oobCounts;
+        long errorTime;
+    }
+
+    /**
+     * Class to build a TSF tree when multi threading.
+     */
+    private class TreeBuildThread implements Callable<MultiThreadBuildHolder> {
+        int i;
+        double[][] series;
+        double[] classVals;
+        boolean tsFeatures;
+
+        public TreeBuildThread(int i, double[][] series, double[] classVals, boolean tsFeatures) {
+            this.i = i;
+            this.series = series;
+            this.classVals = classVals;
+            this.tsFeatures = tsFeatures;
+        }
+
+        /**
+         * generate random intervals
+         * do the transforms
+         * build the classifier
+         **/
+        @Override
+        public MultiThreadBuildHolder call() throws Exception {
+            MultiThreadBuildHolder h = new MultiThreadBuildHolder();
+            Random rand = new Random(seed + (long) i * numClassifiers);
+
+            //1. Select random intervals for tree i
+            int[][] interval = selectIntervals(rand);
+
+            Classifier tree = AbstractClassifier.makeCopy(classifier);
+            if (seedClassifier && tree instanceof Randomizable)
+                ((Randomizable) tree).setSeed(seed * (i + 1));
+
+            //Without bagging the default tree is built straight from a primitive feature matrix
+            if (!bagging && tree instanceof ContinuousIntervalTree) {
+                double[][] features = new double[numIntervals * 3][series.length];
+                int[] labels = new int[series.length];
+                double[] values = new double[numIntervals * 3];
+                for (int k = 0; k < series.length; k++) {
+                    intervalFeatures(series[k], interval, tsFeatures, values);
+                    for (int j = 0; j < values.length; j++)
+                        features[j][k] = values[j];
+                    labels[k] = (int) classVals[k];
+                }
+                ((ContinuousIntervalTree) tree).buildClassifier(features, labels, numClasses);
+
+                h.tree = tree;
+                h.interval = interval;
+                return h;
+            }
+
+            //2. Generate and store attributes
+            Instances transformedData = new Instances(testHolder, series.length);
+            for (int k = 0; k < series.length; k++) {
+                double[] values = new double[numIntervals * 3 + 1];
+                intervalFeatures(series[k], interval, tsFeatures, values);
+                values[values.length - 1] = classVals[k];
+                transformedData.add(new DenseInstance(1, values));
+            }
+
+            //3. Build tree using all the features.
+            if (bagging) {
+                long t1 = System.nanoTime();
+                boolean[] bag = new boolean[transformedData.numInstances()];
+                Instances bagData = transformedData.resampleWithWeights(rand, bag);
+                tree.buildClassifier(bagData);
+                h.inBag = bag;
+
+                if (getEstimateOwnPerformance()) {
+                    h.oobCounts = new int[series.length];
+                    h.trainDistribution = new double[series.length][numClasses];
+                    for (int j = 0; j < transformedData.numInstances(); j++) {
+                        if (bag[j])
+                            continue;
+                        double[] newProbs = tree.distributionForInstance(transformedData.instance(j));
+                        h.oobCounts[j]++;
+                        for (int k = 0; k < newProbs.length; k++)
+                            h.trainDistribution[j][k] += newProbs[k];
+                    }
+                    h.errorTime = System.nanoTime() - t1;
+                }
+            }
+            else
+                tree.buildClassifier(transformedData);
+
+            h.tree = tree;
+            h.interval = interval;
+            return h;
+        }
+    }
+
+    /**
+     * Class to make class predictions using a block of TSF trees when multi threading.
+     */
+    private class TreePredictionThread implements Callable<double[][]> {
+        int start;
+        int end;
+        double[][] series;
+        boolean tsFeatures;
+
+        public TreePredictionThread(int start, int end, double[][] series, boolean tsFeatures) {
+            this.start = start;
+            this.end = end;
+            this.series = series;
+            this.tsFeatures = tsFeatures;
+        }
+
+        @Override
+        public double[][] call() throws Exception {
+            double[][] d = new double[series.length][numClasses];
+            //the instance wraps values directly, so features are written in place rather than through setValue
+            //which copies the whole attribute vector on every call
+            double[] values = new double[numIntervals * 3 + 1];
+            DenseInstance inst = new DenseInstance(1, values);
+            inst.setDataset(testHolder);
+
+            //each tree classifies the whole batch in turn, so its nodes stay in cache
+            for (int i = start; i < end; i++) {
+                Classifier tree = trees.get(i);
+
+                for (int n = 0; n < series.length; n++) {
+                    intervalFeatures(series[n], intervals.get(i), tsFeatures, values);
+
+                    if (voteEnsemble) {
+                        int c = tree instanceof ContinuousIntervalTree
+                                ? (int) ((ContinuousIntervalTree) tree).classifyInstance(values)
+                                : (int) tree.classifyInstance(inst);
+                        d[n][c]++;
+                    }
+                    else {
+                        double[] temp = tree instanceof ContinuousIntervalTree
+                                ? ((ContinuousIntervalTree) tree).distributionForInstance(values)
+                                : tree.distributionForInstance(inst);
+                        for (int j = 0; j < temp.length; j++)
+                            d[n][j] += temp[j];
+                    }
+                }
+            }
+            return d;
+        }
+    }
+
     public static void main(String[] arg) throws Exception {
 
 //        System.out.println(ClassifierTools.testUtils_getIPDAcc(new TSF(0)));
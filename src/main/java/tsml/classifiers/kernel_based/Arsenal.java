@@ -29,6 +29,7 @@ import utilities.ClassifierTools;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.Capabilities;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Randomizable;
@@ -344,6 +345,45 @@ public class Arsenal extends EnhancedAbstractClassifier implements TrainTimeCont
         return probs;
     }
 
+    /**
+     * Find class probabilities of a batch of instances. The series are extracted once, and each member of the
+     * ensemble transforms the whole batch and with the default ridge classifier predicts it with a single matrix
+     * multiplication.
+     *
+     * @param insts instances to classify
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        double[][][] series = ROCKET.seriesArrays(insts);
+        double[][] probs = new double[series.length][header.numClasses()];
+
+        for (int i = 0; i < classifiers.length; i++) {
+            double[][] features = rockets[i].transformBatch(series);
+            double w = cls instanceof RidgeClassifierCV ?
+                    Math.pow(((RidgeClassifierCV) classifiers[i]).getBestScore(), 4) : 1;
+
+            if (classifiers[i] instanceof RidgeClassifierCV) {
+                double[] preds = ((RidgeClassifierCV) classifiers[i]).classifyInstances(features);
+                for (int n = 0; n < preds.length; n++)
+                    probs[n][(int) preds[n]] += w;
+            } else {
+                for (int n = 0; n < features.length; n++) {
+                    double[] arr = Arrays.copyOf(features[n], features[n].length + 1);
+                    arr[arr.length - 1] = insts.get(n).classValue();
+                    Instance transformedInst = new DenseInstance(1, arr);
+                    transformedInst.setDataset(header);
+                    probs[n][(int) classifiers[i].classifyInstance(transformedInst)] += w;
+                }
+            }
+        }
+
+        for (double[] p : probs)
+            for (int j = 0; j < p.length; j++) p[j] /= weightSum;
+        return probs;
+    }
+
     private void copyParameters(Arsenal other) {
         this.numKernels = other.numKernels;
         this.ensembleSize = other.ensembleSize;
@@ -30,6 +30,7 @@ import weka.classifiers.Classifier;
 import weka.core.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -244,6 +245,37 @@ public class ROCKETClassifier extends EnhancedAbstractClassifier implements Trai
         return cls.distributionForInstance(transformedInst);
     }
 
+    /**
+     * Find class probabilities of a batch of instances. The batch is transformed at once, and with the default ridge
+     * classifier predicted with a single matrix multiplication.
+     *
+     * @param insts instances to classify
+     * @return probability of each class for each instance
+     * @throws Exception failure to classify
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances insts) throws Exception {
+        double[][] features = rocket.transformBatch(ROCKET.seriesArrays(insts));
+        double[][] dists = new double[features.length][];
+
+        if (cls instanceof RidgeClassifierCV) {
+            double[] preds = ((RidgeClassifierCV) cls).classifyInstances(features);
+            for (int i = 0; i < dists.length; i++) {
+                dists[i] = new double[header.numClasses()];
+                dists[i][(int) preds[i]] = 1;
+            }
+        } else {
+            for (int i = 0; i < dists.length; i++) {
+                double[] arr = Arrays.copyOf(features[i], features[i].length + 1);
+                arr[arr.length - 1] = insts.get(i).classValue();
+                Instance transformedInst = new DenseInstance(1, arr);
+                transformedInst.setDataset(header);
+                dists[i] = cls.distributionForInstance(transformedInst);
+            }
+        }
+        return dists;
+    }
+
     public static void main(String[] args) throws Exception {
         int fold = 0;
 
@@ -299,6 +299,16 @@ public class DTW1NN extends Efficient1NN {
         return this.r + "";
     }
 
+    @Override
+    protected int[][] getMonotoneParamIdSequences() {
+        // the window grows with the param id, and a wider window never gives a larger distance
+        int[] paramIds = new int[100];
+        for (int i = 0; i < paramIds.length; i++) {
+            paramIds[i] = paramIds.length - 1 - i;
+        }
+        return new int[][]{paramIds};
+    }
+
 
     /************************************************************************************************
      Support for FastEE
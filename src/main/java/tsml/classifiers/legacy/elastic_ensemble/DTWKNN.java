@@ -72,6 +72,12 @@ public class DTWKNN extends DTW1NN {
         return indexOfMax(distributionForInstance(instance));
     }
 
+    @Override
+    protected int[][] getMonotoneParamIdSequences() {
+        // the sequence search only tracks the nearest neighbours
+        return null;
+    }
+
     @Override
     public double[] distributionForInstance(Instance testInst) throws Exception {
         //the pair is <distance, classvalue> 
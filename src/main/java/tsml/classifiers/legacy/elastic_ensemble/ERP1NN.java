@@ -256,6 +256,18 @@ public class ERP1NN extends Efficient1NN {
         return this.g + "," + this.bandSize;
     }
 
+    @Override
+    protected int[][] getMonotoneParamIdSequences() {
+        // for each g, the band grows with the param id, and a wider band never gives a larger distance
+        int[][] sequences = new int[10][10];
+        for (int g = 0; g < 10; g++) {
+            for (int w = 0; w < 10; w++) {
+                sequences[g][w] = g * 10 + 9 - w;
+            }
+        }
+        return sequences;
+    }
+
 
     /************************************************************************************************
      Support for FastEE
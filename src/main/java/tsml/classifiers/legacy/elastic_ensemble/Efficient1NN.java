@@ -20,13 +20,18 @@ package tsml.classifiers.legacy.elastic_ensemble;
 import java.io.File;
 import java.io.FileWriter;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import experiments.data.DatasetLoading;
 import tsml.classifiers.EnhancedAbstractClassifier;
 import tsml.classifiers.legacy.elastic_ensemble.fast_elastic_ensemble.CandidateNN;
 import tsml.classifiers.legacy.elastic_ensemble.fast_elastic_ensemble.utils.SequenceStatsCache;
 import utilities.InstanceTools;
+import weka.classifiers.AbstractClassifier;
 import tsml.classifiers.SaveParameterInfo;
 import weka.core.DenseInstance;
 import weka.core.Instance;
@@ -298,6 +303,21 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
 
 
     public double[] loocv(Instances train) throws Exception {
+        return loocv(train, null);
+    }
+
+    /**
+     * Leave one out cross validation over the parameter options, as in loocv(Instances). Param ids in the same
+     * sequence from getMonotoneParamIdSequences() are evaluated together so the distances from one can prune the
+     * next. If an executor is given the sequences, or param ids for measures without them, are evaluated concurrently,
+     * each on a copy of this classifier. The selected parameters and predictions are the same as the sequential search.
+     *
+     * @param train training data
+     * @param executor executor to evaluate parameter ids with, or null to evaluate them in this thread
+     * @return the cv accuracy of the best parameter id followed by its cv predictions
+     * @throws Exception
+     */
+    public double[] loocv(Instances train, ExecutorService executor) throws Exception {
         double[] accAndPreds = null;
         String parsedFileName = this.outputDir + this.classifierIdentifier + "/Predictions/" + datasetName + "/trainFold" + resampleId + ".csv";
 
@@ -346,9 +366,41 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
         int bsfParamId = -1;
         double[] bsfaccAndPreds = null;
 
-        for (int paramId = 0; paramId < 100; paramId++) {
+        int numParamIds = this.allowLoocv ? 100 : 1;
+        int[][] sequences = this.allowLoocv && !this.individualCvParamFileWriting ? getMonotoneParamIdSequences() : null;
+        if (sequences == null) {
+            sequences = new int[numParamIds][];
+            for (int paramId = 0; paramId < numParamIds; paramId++) {
+                sequences[paramId] = new int[]{paramId};
+            }
+        }
+
+        double[][] paramAccAndPreds = new double[numParamIds][];
+        if (executor != null && sequences.length > 1) {
+            // setting the params changes the classifier, so each sequence gets its own copy
+            List<Future<double[][]>> futures = new ArrayList<>(sequences.length);
+            for (int[] sequence : sequences) {
+                final Efficient1NN copy = copyConfiguration();
+                futures.add(executor.submit(() -> copy.loocvAccAndPreds(train, sequence)));
+            }
+            for (int s = 0; s < sequences.length; s++) {
+                double[][] results = futures.get(s).get();
+                for (int p = 0; p < sequences[s].length; p++) {
+                    paramAccAndPreds[sequences[s][p]] = results[p];
+                }
+            }
+        } else {
+            for (int[] sequence : sequences) {
+                double[][] results = loocvAccAndPreds(train, sequence);
+                for (int p = 0; p < sequence.length; p++) {
+                    paramAccAndPreds[sequence[p]] = results[p];
+                }
+            }
+        }
+
+        for (int paramId = 0; paramId < numParamIds; paramId++) {
 //            System.out.print(paramId+" ");
-            accAndPreds = loocvAccAndPreds(train, paramId);
+            accAndPreds = paramAccAndPreds[paramId];
 //            System.out.println(this.allowLoocv);
 //            System.out.println(accAndPreds[0]);
             if (accAndPreds[0] > bsfAcc) {
@@ -356,9 +408,6 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
                 bsfParamId = paramId;
                 bsfaccAndPreds = accAndPreds;
             }
-            if (!this.allowLoocv) {
-                paramId = 100;
-            }
         }
 //        System.out.println(this.classifierIdentifier+", bsfParamId "+bsfParamId);
         this.buildClassifier(train);
@@ -379,6 +428,110 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
         return bsfaccAndPreds;
     }
 
+    /**
+     * Copy of this classifier's configuration, without the training data or fast search tables.
+     */
+    private Efficient1NN copyConfiguration() throws Exception {
+        Instances train = this.train;
+        Instances[] trainGroup = this.trainGroup;
+        CandidateNN[][] candidateNNS = this.candidateNNS;
+        int[][][] classCounts = this.classCounts;
+        SequenceStatsCache trainCache = this.trainCache;
+        this.train = null;
+        this.trainGroup = null;
+        this.candidateNNS = null;
+        this.classCounts = null;
+        this.trainCache = null;
+        try {
+            return (Efficient1NN) AbstractClassifier.makeCopy(this);
+        } finally {
+            this.train = train;
+            this.trainGroup = trainGroup;
+            this.candidateNNS = candidateNNS;
+            this.classCounts = classCounts;
+            this.trainCache = trainCache;
+        }
+    }
+
+    /**
+     * Sequences of param ids along which the distance between any two series never decreases, e.g. a shrinking warping
+     * window with all other params fixed. Every param id must appear in exactly one sequence.
+     *
+     * @return the sequences, or null if the measure has none and each param id is evaluated on its own
+     */
+    protected int[][] getMonotoneParamIdSequences() {
+        return null;
+    }
+
+    /**
+     * LOOCV for each param id in a sequence from getMonotoneParamIdSequences(), giving the same results as calling
+     * loocvAccAndPreds(Instances, int) for each. The distance between each pair of series for one param id is a lower
+     * bound for the param ids after it, so later pairs that cannot reach the best so far are skipped. Uses a train
+     * size squared table of bounds. Sequences of length one are passed to loocvAccAndPreds(Instances, int).
+     *
+     * @param train training data
+     * @param paramIds sequence of param ids
+     * @return the cv accuracy followed by the cv predictions for each param id in the sequence
+     * @throws Exception
+     */
+    public double[][] loocvAccAndPreds(Instances train, int[] paramIds) throws Exception {
+        double[][] results = new double[paramIds.length][];
+        if (paramIds.length == 1) {
+            results[0] = loocvAccAndPreds(train, paramIds[0]);
+            return results;
+        }
+
+        int numInstances = train.numInstances();
+        double[][] lowerBounds = new double[numInstances][numInstances];
+        this.buildClassifier(train);
+        for (int p = 0; p < paramIds.length; p++) {
+            this.setParamsFromParamId(train, paramIds[p]);
+            int correct = 0;
+            double[] accAndPreds = new double[numInstances + 1];
+            for (int i = 0; i < numInstances; i++) {
+                Instance query = train.instance(i);
+                double[] bounds = lowerBounds[i];
+
+                // as classifyInstance, with query left out of the training data
+                double bsfDistance = Double.MAX_VALUE;
+                int[] classCounts = new int[train.numClasses()];
+                for (int j = 0; j < numInstances; j++) {
+                    if (j == i || bounds[j] > bsfDistance) {
+                        continue;
+                    }
+                    Instance candidate = train.instance(j);
+                    double thisDist = distance(query, candidate, bsfDistance);
+                    // an abandoned distance is at least the cut off it was abandoned at
+                    bounds[j] = thisDist == Double.MAX_VALUE ? bsfDistance : thisDist;
+                    if (thisDist < bsfDistance) {
+                        bsfDistance = thisDist;
+                        classCounts = new int[train.numClasses()];
+                        classCounts[(int) candidate.classValue()]++;
+                    } else if (thisDist == bsfDistance) {
+                        classCounts[(int) candidate.classValue()]++;
+                    }
+                }
+
+                double pred = -1;
+                double bsfCount = -1;
+                for (int c = 0; c < classCounts.length; c++) {
+                    if (classCounts[c] > bsfCount) {
+                        bsfCount = classCounts[c];
+                        pred = c;
+                    }
+                }
+
+                if (pred == query.classValue()) {
+                    correct++;
+                }
+                accAndPreds[i + 1] = pred;
+            }
+            accAndPreds[0] = (double) correct / numInstances;
+            results[p] = accAndPreds;
+        }
+        return results;
+    }
+
     DecimalFormat df = new DecimalFormat("##.###");
 
     public double[] loocv(Instances[] trainGroup) throws Exception {
@@ -724,9 +877,22 @@ public abstract class Efficient1NN extends EnhancedAbstractClassifier implements
     public abstract void initApproxNNSTable(final Instances trainData, final SequenceStatsCache cache, final int nSamples);
 
     public double[] fastParameterSearch(final Instances train) throws Exception {
+        return fastParameterSearch(train, new SequenceStatsCache(train, train.numAttributes() - 1));
+    }
+
+    /**
+     * Fast parameter search using an existing cache for the training data, so the per series statistics can be shared
+     * with searches for other measures.
+     *
+     * @param train training data
+     * @param cache cache built on train, not used concurrently by another search for the same measure
+     * @return the cv accuracy of the best parameter id followed by its cv predictions
+     * @throws Exception
+     */
+    public double[] fastParameterSearch(final Instances train, final SequenceStatsCache cache) throws Exception {
         double[] accAndPreds;
         this.maxWindow = train.numAttributes() - 1;
-        this.trainCache = new SequenceStatsCache(train, train.numAttributes() - 1);
+        this.trainCache = cache;
 
         initNNSTable(train, trainCache);
 
@@ -0,0 +1,96 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.legacy.elastic_ensemble;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.transformers.Derivative;
+import weka.core.Instances;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class Efficient1NNTest {
+
+    /**
+     * Checks the bounded LOOCV over each monotone sequence of param ids gives the same accuracy and predictions as
+     * exhaustively building and classifying with each left out instance for every param id.
+     */
+    private static void assertBoundedLoocvMatchesExhaustive(Efficient1NN bounded, Efficient1NN exhaustive,
+                                                            Instances train) throws Exception {
+        final int[][] sequences = bounded.getMonotoneParamIdSequences();
+        Assert.assertNotNull(sequences);
+
+        final Set<Integer> seen = new HashSet<>();
+        for(int[] sequence : sequences) {
+            final double[][] results = bounded.loocvAccAndPreds(train, sequence);
+            Assert.assertEquals(sequence.length, results.length);
+            for(int p = 0; p < sequence.length; p++) {
+                Assert.assertTrue(seen.add(sequence[p]));
+                final double[] expected = exhaustive.loocvAccAndPreds(train, sequence[p]);
+                Assert.assertArrayEquals("param id " + sequence[p], expected, results[p], 0);
+            }
+        }
+        Assert.assertEquals(100, seen.size());
+    }
+
+    private static Instances train(int seed) throws Exception {
+        return DatasetLoading.sampleItalyPowerDemand(seed)[0];
+    }
+
+    @Test
+    public void dtwBoundedLoocvMatchesExhaustive() throws Exception {
+        assertBoundedLoocvMatchesExhaustive(new DTW1NN(), new DTW1NN(), train(0));
+    }
+
+    @Test
+    public void ddtwBoundedLoocvMatchesExhaustive() throws Exception {
+        final Instances train = new Derivative().transform(train(1));
+        assertBoundedLoocvMatchesExhaustive(new DTW1NN(), new DTW1NN(), train);
+    }
+
+    @Test
+    public void erpBoundedLoocvMatchesExhaustive() throws Exception {
+        assertBoundedLoocvMatchesExhaustive(new ERP1NN(), new ERP1NN(), train(0));
+    }
+
+    @Test
+    public void lcssBoundedLoocvMatchesExhaustive() throws Exception {
+        assertBoundedLoocvMatchesExhaustive(new LCSS1NN(), new LCSS1NN(), train(0));
+    }
+
+    @Test
+    public void parallelLoocvMatchesSequential() throws Exception {
+        final Instances train = train(0);
+        final Efficient1NN[] sequential = {new DTW1NN(), new ERP1NN(), new LCSS1NN(), new WDTW1NN()};
+        final Efficient1NN[] parallel = {new DTW1NN(), new ERP1NN(), new LCSS1NN(), new WDTW1NN()};
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for(int i = 0; i < sequential.length; i++) {
+                final double[] expected = sequential[i].loocv(train);
+                Assert.assertArrayEquals(expected, parallel[i].loocv(train, executor), 0);
+                Assert.assertEquals(sequential[i].getParamInformationString(),
+                        parallel[i].getParamInformationString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -226,6 +226,18 @@ public class LCSS1NN extends Efficient1NN {
         return this.delta + "," + this.epsilon;
     }
 
+    @Override
+    protected int[][] getMonotoneParamIdSequences() {
+        // for each epsilon, delta grows with the param id, and a larger delta never gives a shorter subsequence
+        int[][] sequences = new int[10][10];
+        for (int e = 0; e < 10; e++) {
+            for (int d = 0; d < 10; d++) {
+                sequences[e][d] = (9 - d) * 10 + e;
+            }
+        }
+        return sequences;
+    }
+
     /************************************************************************************************
      Support for FastEE
      @author Chang Wei Tan, Monash University (chang.tan@monash.edu)
@@ -29,17 +29,27 @@ import java.util.Arrays;
  * Code for the paper "Efficient search of the best warping window for Dynamic Time Warping" published in SDM18
  * <p>
  * Cache for storing the information on the time series dataset
+ * <p>
+ * The per series statistics are computed on construction and only read afterwards, so a cache can be shared by
+ * searches running in different threads. DTW, ERP and LCSS envelopes are held separately so searches for different
+ * measures can share a cache, but the envelopes are recomputed in place, so two searches for the same measure should
+ * not use the same cache concurrently.
  *
  * @author Chang Wei Tan, Francois Petitjean, Matthieu Herrmann, Germain Forestier, Geoff Webb
  */
 public class SequenceStatsCache {
     protected ArrayList<double[]> LEs, UEs;
+    protected ArrayList<double[]> erpLEs, erpUEs;
+    protected ArrayList<double[]> lcssLEs, lcssUEs;
     protected double[] mins, maxs;
     protected int[] indexMaxs, indexMins;
     protected boolean[] isMinFirst, isMinLast, isMaxFirst, isMaxLast;
     protected double[] lastWindowComputed;
     protected double[] lastERPWindowComputed;
     protected double[] lastLCSSWindowComputed;
+    // the envelopes also depend on g and epsilon, which change between parameter ids with the same window
+    protected double[] lastERPGComputed;
+    protected double[] lastLCSSEpsilonComputed;
     protected int currentWindow;
     protected Instances train;
     protected IndexedDouble[][] indicesSortedByAbsoluteValue;
@@ -51,12 +61,18 @@ public class SequenceStatsCache {
         int length = train.numAttributes() - 1;
         this.LEs = new ArrayList<>(nSequences);
         this.UEs = new ArrayList<>(nSequences);
+        this.erpLEs = new ArrayList<>(nSequences);
+        this.erpUEs = new ArrayList<>(nSequences);
+        this.lcssLEs = new ArrayList<>(nSequences);
+        this.lcssUEs = new ArrayList<>(nSequences);
         this.lastWindowComputed = new double[nSequences];
         this.lastERPWindowComputed = new double[nSequences];
         this.lastLCSSWindowComputed = new double[nSequences];
         Arrays.fill(this.lastWindowComputed, -1);
         Arrays.fill(this.lastERPWindowComputed, -1);
         Arrays.fill(this.lastLCSSWindowComputed, -1);
+        this.lastERPGComputed = new double[nSequences];
+        this.lastLCSSEpsilonComputed = new double[nSequences];
         this.currentWindow = startingWindow;
         this.mins = new double[nSequences];
         this.maxs = new double[nSequences];
@@ -94,13 +110,15 @@ public class SequenceStatsCache {
             Arrays.sort(indicesSortedByAbsoluteValue[i], (v1, v2) -> -Double.compare(v1.value, v2.value));
             this.LEs.add(new double[length]);
             this.UEs.add(new double[length]);
+            this.erpLEs.add(new double[length]);
+            this.erpUEs.add(new double[length]);
+            this.lcssLEs.add(new double[length]);
+            this.lcssUEs.add(new double[length]);
         }
     }
 
     public double[] getLE(final int i, final int w) {
         if (lastWindowComputed[i] != w) {
-            LEs.add(new double[train.get(i).numAttributes() - 1]);
-            UEs.add(new double[train.get(i).numAttributes() - 1]);
             computeLEandUE(i, w);
         }
         return LEs.get(i);
@@ -108,8 +126,6 @@ public class SequenceStatsCache {
 
     public double[] getUE(final int i, final int w) {
         if (lastWindowComputed[i] != w) {
-            LEs.add(new double[train.get(i).numAttributes() - 1]);
-            UEs.add(new double[train.get(i).numAttributes() - 1]);
             computeLEandUE(i, w);
         }
         return UEs.get(i);
@@ -121,49 +137,43 @@ public class SequenceStatsCache {
     }
 
     public double[] getLE(final int i, final double g, final double bandSize) {
-        if (lastERPWindowComputed[i] != bandSize) {
-            LEs.add(new double[train.get(i).numAttributes()-1]);
-            UEs.add(new double[train.get(i).numAttributes()-1]);
+        if (lastERPWindowComputed[i] != bandSize || lastERPGComputed[i] != g) {
             computeLEandUE(i, g, bandSize);
         }
-        return LEs.get(i);
+        return erpLEs.get(i);
     }
 
     public double[] getUE(final int i, final double g, final double bandSize) {
-        if (lastERPWindowComputed[i] != bandSize) {
-            LEs.add(new double[train.get(i).numAttributes()-1]);
-            UEs.add(new double[train.get(i).numAttributes()-1]);
+        if (lastERPWindowComputed[i] != bandSize || lastERPGComputed[i] != g) {
             computeLEandUE(i, g, bandSize);
         }
-        return UEs.get(i);
+        return erpUEs.get(i);
     }
 
     public void computeLEandUE(final int i, final double g, final double bandSize) {
-        LbErp.fillUL(train.get(i), g, bandSize, UEs.get(i), LEs.get(i));
+        LbErp.fillUL(train.get(i), g, bandSize, erpUEs.get(i), erpLEs.get(i));
         this.lastERPWindowComputed[i] = bandSize;
+        this.lastERPGComputed[i] = g;
     }
 
     public double[] getLE(final int i, final int delta, final double epsilon) {
-        if (lastLCSSWindowComputed[i] != delta) {
-            LEs.add(new double[train.get(i).numAttributes()-1]);
-            UEs.add(new double[train.get(i).numAttributes()-1]);
+        if (lastLCSSWindowComputed[i] != delta || lastLCSSEpsilonComputed[i] != epsilon) {
             computeLEandUE(i, delta, epsilon);
         }
-        return LEs.get(i);
+        return lcssLEs.get(i);
     }
 
     public double[] getUE(final int i, final int delta, final double epsilon) {
-        if (lastLCSSWindowComputed[i] != delta) {
-            LEs.add(new double[train.get(i).numAttributes()-1]);
-            UEs.add(new double[train.get(i).numAttributes()-1]);
+        if (lastLCSSWindowComputed[i] != delta || lastLCSSEpsilonComputed[i] != epsilon) {
             computeLEandUE(i, delta, epsilon);
         }
-        return UEs.get(i);
+        return lcssUEs.get(i);
     }
 
     public void computeLEandUE(final int i, final int delta, final double epsilon) {
-        LbLcss.fillUL(train.get(i), epsilon, delta, UEs.get(i), LEs.get(i));
+        LbLcss.fillUL(train.get(i), epsilon, delta, lcssUEs.get(i), lcssLEs.get(i));
         this.lastLCSSWindowComputed[i] = delta;
+        this.lastLCSSEpsilonComputed[i] = epsilon;
     }
 
     public boolean isMinFirst(int i) {
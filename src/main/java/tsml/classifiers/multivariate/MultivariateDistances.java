@@ -0,0 +1,310 @@
+/* 
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as published 
+ * by the Free Software Foundation, either version 3 of the License, or 
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.multivariate;
+
+import tsml.classifiers.legacy.elastic_ensemble.fast_elastic_ensemble.lowerBounds.LbKeogh;
+import weka.core.Instance;
+
+import java.util.Arrays;
+
+import static utilities.multivariate_tools.MultivariateInstanceTools.convertMultiInstanceToArrays;
+import static utilities.multivariate_tools.MultivariateInstanceTools.splitMultivariateInstance;
+
+/**
+ * Multivariate Euclidean and DTW distances on primitive arrays for the multivariate 1NN classifiers, giving the same
+ * values as EuclideanDistance_D, EuclideanDistance_I, DTW_D and DTW_I from the legacy distance functions without
+ * splitting the relational attribute on every call.
+ * <p>
+ * Series are held as [dim][time] arrays. The dependent distances take the interleaved [time][dim] layout, so the
+ * squared distance between two time points is summed over a contiguous run of the array. All series are assumed to
+ * be the same length. Each distance takes a limit and returns positive infinity once the distance is known to be
+ * above it, so a nearest neighbour search can pass its best so far and keep ties.
+ */
+public class MultivariateDistances {
+
+    private MultivariateDistances() {}
+
+    /**
+     * Distance from a query to a training case, abandoned with positive infinity once beyond the limit.
+     */
+    public interface CandidateDistance {
+        double distance(int index, double limit);
+    }
+
+    /**
+     * Finds the nearest neighbour of a query, taking the first in training order when there are ties.
+     * <p>
+     * The candidate with the smallest lower bound is evaluated first so a close neighbour is found early, then the
+     * rest are visited in training order, skipping any whose lower bound is beyond the best distance so far.
+     *
+     * @param numCandidates number of training cases
+     * @param lowerBounds lower bound of the distance to each candidate, or null to visit in training order
+     * @param distance distance to a candidate
+     * @return index of the nearest neighbour
+     */
+    public static int nearestNeighbour(int numCandidates, double[] lowerBounds, CandidateDistance distance) {
+        int first = 0;
+        if (lowerBounds != null) {
+            for (int i = 1; i < numCandidates; i++) {
+                if (lowerBounds[i] < lowerBounds[first]) {
+                    first = i;
+                }
+            }
+        }
+
+        int nearest = first;
+        double bsf = distance.distance(first, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < numCandidates; i++) {
+            if (i == first || (lowerBounds != null && lowerBounds[i] > bsf)) {
+                continue;
+            }
+            double dist = distance.distance(i, bsf);
+            if (dist < bsf || (dist == bsf && i < nearest)) {
+                bsf = dist;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @param multiInstance instance with a relational attribute holding one series per dimension
+     * @return the series as [dim][time]
+     */
+    public static double[][] toArrays(Instance multiInstance) {
+        return convertMultiInstanceToArrays(splitMultivariateInstance(multiInstance));
+    }
+
+    /**
+     * @param series [dim][time]
+     * @return the series interleaved as [time][dim] in a single array
+     */
+    public static double[] interleave(double[][] series) {
+        int numDims = series.length;
+        int length = series[0].length;
+        double[] interleaved = new double[length * numDims];
+        for (int d = 0; d < numDims; d++) {
+            for (int t = 0; t < length; t++) {
+                interleaved[t * numDims + d] = series[d][t];
+            }
+        }
+        return interleaved;
+    }
+
+    /**
+     * Envelope of each dimension of a series for LB_Keogh, interleaved as the series is.
+     *
+     * @param series [dim][time]
+     * @param window DTW window size, as DTW_DistanceBasic.getWindowSize
+     * @return the upper and lower envelopes as [dim][time]
+     */
+    public static double[][][] envelopes(double[][] series, int window) {
+        int numDims = series.length;
+        int length = series[0].length;
+        double[][] upper = new double[numDims][length];
+        double[][] lower = new double[numDims][length];
+        for (int d = 0; d < numDims; d++) {
+            //points are warped at most window - 1 steps
+            LbKeogh.fillULStreaming(series[d], window - 1, upper[d], lower[d]);
+        }
+        return new double[][][]{upper, lower};
+    }
+
+    /**
+     * Euclidean distance over all dimensions, as EuclideanDistance_D.
+     *
+     * @param a interleaved series
+     * @param b interleaved series
+     */
+    public static double dependentEuclidean(double[] a, double[] b, int numDims, double limit) {
+        double sum = 0;
+        for (int t = 0; t < a.length; t += numDims) {
+            double pointSum = 0;
+            for (int d = 0; d < numDims; d++) {
+                double diff = a[t + d] - b[t + d];
+                pointSum += diff * diff;
+            }
+            sum += pointSum;
+            if (Math.sqrt(sum) > limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Sum of the Euclidean distances between the points at each time step, as EuclideanDistance_I.
+     *
+     * @param a interleaved series
+     * @param b interleaved series
+     */
+    public static double independentEuclidean(double[] a, double[] b, int numDims, double limit) {
+        double sum = 0;
+        for (int t = 0; t < a.length; t += numDims) {
+            double pointSum = 0;
+            for (int d = 0; d < numDims; d++) {
+                double diff = a[t + d] - b[t + d];
+                pointSum += diff * diff;
+            }
+            sum += Math.sqrt(pointSum);
+            if (sum > limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * DTW where the cost of matching two time points is the squared Euclidean distance over all dimensions, as DTW_D.
+     *
+     * @param a interleaved series
+     * @param b interleaved series
+     * @param window DTW window size, as DTW_DistanceBasic.getWindowSize
+     */
+    public static double dependentDTW(double[] a, double[] b, int numDims, int window, double limit) {
+        return dtw(a, b, numDims, window, 0, limit);
+    }
+
+    /**
+     * Sum of the DTW distances of each dimension, as DTW_I. Abandons part way through a dimension once the distance
+     * so far is beyond the limit.
+     *
+     * @param a series as [dim][time]
+     * @param b series as [dim][time]
+     * @param window DTW window size, as DTW_DistanceBasic.getWindowSize
+     */
+    public static double independentDTW(double[][] a, double[][] b, int window, double limit) {
+        double sum = 0;
+        for (int d = 0; d < a.length; d++) {
+            double dist = dtw(a[d], b[d], 1, window, sum, limit);
+            if (dist == Double.POSITIVE_INFINITY) {
+                return Double.POSITIVE_INFINITY;
+            }
+            sum += dist;
+        }
+        return sum;
+    }
+
+    /**
+     * LB_Keogh for the dependent DTW distance.
+     *
+     * @param a interleaved series
+     * @param envelopes envelopes of the other series, from envelopes
+     */
+    public static double dependentLowerBound(double[] a, double[][][] envelopes) {
+        double[][] upper = envelopes[0];
+        double[][] lower = envelopes[1];
+        int numDims = upper.length;
+        double sum = 0;
+        for (int t = 0, i = 0; i < a.length; t++) {
+            double pointSum = 0;
+            for (int d = 0; d < numDims; d++, i++) {
+                pointSum += sqExcess(a[i], upper[d][t], lower[d][t]);
+            }
+            sum += pointSum;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * LB_Keogh for the independent DTW distance, the sum of the bounds of each dimension.
+     *
+     * @param a series as [dim][time]
+     * @param envelopes envelopes of the other series, from envelopes
+     */
+    public static double independentLowerBound(double[][] a, double[][][] envelopes) {
+        double[][] upper = envelopes[0];
+        double[][] lower = envelopes[1];
+        double sum = 0;
+        for (int d = 0; d < a.length; d++) {
+            double dimSum = 0;
+            for (int t = 0; t < a[d].length; t++) {
+                dimSum += sqExcess(a[d][t], upper[d][t], lower[d][t]);
+            }
+            sum += Math.sqrt(dimSum);
+        }
+        return sum;
+    }
+
+    private static double sqExcess(double value, double upper, double lower) {
+        if (value > upper) {
+            return (value - upper) * (value - upper);
+        } else if (value < lower) {
+            return (lower - value) * (lower - value);
+        }
+        return 0;
+    }
+
+    /**
+     * Windowed DTW on interleaved series using two rows of the cost matrix, returning the square root of the cost.
+     * Abandons once offset plus the root of the smallest cost in a row is beyond the limit.
+     */
+    private static double dtw(double[] a, double[] b, int numDims, int window, double offset, double limit) {
+        int n = a.length / numDims;
+        double[] prevRow = new double[n];
+        double[] row = new double[n];
+        Arrays.fill(prevRow, Double.POSITIVE_INFINITY);
+        Arrays.fill(row, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i < n; i++) {
+            int start = Math.max(0, i - window + 1);
+            int end = Math.min(n - 1, i + window - 1);
+            double min = Double.POSITIVE_INFINITY;
+            int j = start;
+            if (i == 0) {
+                row[0] = sqDist(a, 0, b, 0, numDims);
+                min = row[0];
+                for (j = 1; j <= end; j++) {
+                    row[j] = row[j - 1] + sqDist(a, 0, b, j * numDims, numDims);
+                    min = Math.min(min, row[j]);
+                }
+            } else {
+                double[] temp = prevRow;
+                prevRow = row;
+                row = temp;
+                //clear the cell left of the window, which may hold a value from two rows back
+                if (start > 0) {
+                    row[start - 1] = Double.POSITIVE_INFINITY;
+                }
+                int aIndex = i * numDims;
+                if (j == 0) {
+                    row[0] = prevRow[0] + sqDist(a, aIndex, b, 0, numDims);
+                    min = row[0];
+                    j++;
+                }
+                for (; j <= end; j++) {
+                    row[j] = Math.min(row[j - 1], Math.min(prevRow[j], prevRow[j - 1]))
+                            + sqDist(a, aIndex, b, j * numDims, numDims);
+                    min = Math.min(min, row[j]);
+                }
+            }
+            if (offset + Math.sqrt(min) > limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return Math.sqrt(row[n - 1]);
+    }
+
+    private static double sqDist(double[] a, int aIndex, double[] b, int bIndex, int numDims) {
+        double sum = 0;
+        for (int d = 0; d < numDims; d++) {
+            double diff = a[aIndex + d] - b[bIndex + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.classifiers.multivariate;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_D;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_DistanceBasic;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_I;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.EuclideanDistance_D;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.EuclideanDistance_I;
+import weka.classifiers.Classifier;
+import weka.core.DistanceFunction;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static tsml.classifiers.multivariate.MultivariateDistances.*;
+import static utilities.InstanceTools.findMinDistance;
+import static utilities.multivariate_tools.MultivariateInstanceTools.channelLength;
+import static utilities.multivariate_tools.MultivariateInstanceTools.numDimensions;
+
+/**
+ * Checks the kernels and 1NN classifiers against the legacy distance functions the NN_*_D/I classifiers used to call
+ * through InstanceTools.findMinDistance, on BasicMotions.
+ */
+public class MultivariateDistancesTest {
+
+    private static Instances train;
+    private static Instances test;
+    private static int numDims;
+    private static int length;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final Instances[] data = DatasetLoading.sampleBasicMotions(0);
+        train = data[0];
+        test = data[1];
+        numDims = numDimensions(train);
+        length = channelLength(train);
+    }
+
+    private static DTW_D dtwD(double r) {
+        final DTW_D dtw = new DTW_D();
+        dtw.setR(r);
+        return dtw;
+    }
+
+    private static DTW_I dtwI(double r) {
+        final DTW_I dtw = new DTW_I();
+        dtw.setR(r);
+        return dtw;
+    }
+
+    @Test
+    public void euclideanMatchesLegacy() {
+        final EuclideanDistance_D legacyD = new EuclideanDistance_D();
+        final EuclideanDistance_I legacyI = new EuclideanDistance_I();
+        for(int i = 0; i < test.numInstances(); i += 4) {
+            final double[] a = interleave(toArrays(test.get(i)));
+            for(int j = 0; j < train.numInstances(); j++) {
+                final double[] b = interleave(toArrays(train.get(j)));
+                Assert.assertEquals(legacyD.distance(test.get(i), train.get(j)),
+                        dependentEuclidean(a, b, numDims, Double.POSITIVE_INFINITY), 0);
+                Assert.assertEquals(legacyI.distance(test.get(i), train.get(j)),
+                        independentEuclidean(a, b, numDims, Double.POSITIVE_INFINITY), 0);
+            }
+        }
+    }
+
+    @Test
+    public void dtwMatchesLegacy() {
+        for(double r : new double[] {0, 0.1, 1}) {
+            final DTW_D legacyD = dtwD(r);
+            final DTW_I legacyI = dtwI(r);
+            final int window = DTW_DistanceBasic.findWindowSize(r, length);
+            for(int i = 0; i < test.numInstances(); i += 8) {
+                final double[][] a = toArrays(test.get(i));
+                for(int j = 0; j < train.numInstances(); j += 2) {
+                    final double[][] b = toArrays(train.get(j));
+                    Assert.assertEquals(legacyD.distance(test.get(i), train.get(j)),
+                            dependentDTW(interleave(a), interleave(b), numDims, window, Double.POSITIVE_INFINITY), 0);
+                    Assert.assertEquals(legacyI.distance(test.get(i), train.get(j)),
+                            independentDTW(a, b, window, Double.POSITIVE_INFINITY), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lowerBoundsAreBelowDtw() {
+        for(double r : new double[] {0.1, 1}) {
+            final int window = DTW_DistanceBasic.findWindowSize(r, length);
+            for(int i = 0; i < test.numInstances(); i += 4) {
+                final double[][] a = toArrays(test.get(i));
+                for(int j = 0; j < train.numInstances(); j++) {
+                    final double[][] b = toArrays(train.get(j));
+                    final double[][][] envelopes = envelopes(b, window);
+                    final double dependent = dependentDTW(interleave(a), interleave(b), numDims, window,
+                            Double.POSITIVE_INFINITY);
+                    final double independent = independentDTW(a, b, window, Double.POSITIVE_INFINITY);
+                    Assert.assertTrue(dependentLowerBound(interleave(a), envelopes) <= dependent);
+                    Assert.assertTrue(independentLowerBound(a, envelopes) <= independent);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void distancesAtTheLimitAreKept() {
+        final int window = DTW_DistanceBasic.findWindowSize(0.1, length);
+        final double[][] a = toArrays(test.get(0));
+        final double[][] b = toArrays(train.get(0));
+        final double dependent = dependentDTW(interleave(a), interleave(b), numDims, window,
+                Double.POSITIVE_INFINITY);
+        final double independent = independentDTW(a, b, window, Double.POSITIVE_INFINITY);
+        // a distance equal to the limit may be a tie for the nearest neighbour, so is returned
+        Assert.assertEquals(dependent, dependentDTW(interleave(a), interleave(b), numDims, window, dependent), 0);
+        Assert.assertEquals(independent, independentDTW(a, b, window, independent), 0);
+        // below the limit the distance is either abandoned or still beyond it
+        Assert.assertTrue(dependentDTW(interleave(a), interleave(b), numDims, window, Math.nextDown(dependent))
+                                  > Math.nextDown(dependent));
+        Assert.assertTrue(independentDTW(a, b, window, Math.nextDown(independent)) > Math.nextDown(independent));
+    }
+
+    @Test
+    public void nearestNeighbourTakesFirstOfTies() {
+        final double[] distances = {5, 3, 4, 3, 1, 1, 2};
+        // the smallest lower bound is on a later tie, so it is evaluated first
+        final double[] lowerBounds = {0, 0, 0, 0, 0.5, 0.1, 0};
+        Assert.assertEquals(4, nearestNeighbour(distances.length, lowerBounds,
+                (i, limit) -> distances[i] > limit ? Double.POSITIVE_INFINITY : distances[i]));
+        Assert.assertEquals(4, nearestNeighbour(distances.length, null,
+                (i, limit) -> distances[i] > limit ? Double.POSITIVE_INFINITY : distances[i]));
+    }
+
+    private static void assertMatchesLegacy(Classifier classifier, DistanceFunction legacy) throws Exception {
+        // a copy of the first train case with a different class ties with it, the legacy search kept the first
+        final Instances tiedTrain = new Instances(train);
+        final Instance copy = (Instance) train.get(0).copy();
+        copy.setDataset(tiedTrain);
+        copy.setClassValue((train.get(0).classValue() + 1) % train.numClasses());
+        tiedTrain.add(copy);
+        classifier.buildClassifier(tiedTrain);
+        for(Instance inst : test) {
+            Assert.assertEquals(findMinDistance(tiedTrain, inst, legacy).var1.classValue(),
+                    classifier.classifyInstance(inst), 0);
+        }
+        Assert.assertEquals(train.get(0).classValue(), classifier.classifyInstance(train.get(0)), 0);
+    }
+
+    @Test
+    public void euclideanClassifiersMatchLegacy() throws Exception {
+        assertMatchesLegacy(new NN_ED_D(), new EuclideanDistance_D());
+        assertMatchesLegacy(new NN_ED_I(), new EuclideanDistance_I());
+    }
+
+    @Test
+    public void dtwClassifiersMatchLegacy() throws Exception {
+        final NN_DTW_D dependent = new NN_DTW_D();
+        dependent.setR(0.1);
+        assertMatchesLegacy(dependent, dtwD(0.1));
+        final NN_DTW_I independent = new NN_DTW_I();
+        independent.setR(0.1);
+        assertMatchesLegacy(independent, dtwI(0.1));
+    }
+}
@@ -14,46 +14,59 @@
  * You should have received a copy of the GNU General Public License along
  * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
  */
- 
 package tsml.classifiers.multivariate;
 
-import tsml.classifiers.distance_based.NN_CID;
-import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_D;
-import static utilities.InstanceTools.findMinDistance;
-import utilities.generic_storage.Pair;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_DistanceBasic;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import static tsml.classifiers.multivariate.MultivariateDistances.*;
+import static utilities.multivariate_tools.MultivariateInstanceTools.channelLength;
+import static utilities.multivariate_tools.MultivariateInstanceTools.numDimensions;
+
 /**
  *
  * @author raj09hxu
  */
 public class NN_DTW_D extends MultivariateAbstractClassifier{
     
-    Instances train;
-    DTW_D D;
-    public NN_DTW_D(){
-        D = new DTW_D();
-    }
-    
+    double r = 1;
+    int window;
+    int numDims;
+    double[][] train;
+    double[][][][] envelopes;
+    double[] classValues;
+
     public void setR(double r){
-        D.setR(r);
+        this.r = r;
     }
 
-
-
     @Override
     public void buildClassifier(Instances data) throws Exception {
         testWithFailRelationalInstances(data);
-        train = data;
+        numDims = numDimensions(data);
+        window = DTW_DistanceBasic.findWindowSize(r, channelLength(data));
+        train = new double[data.numInstances()][];
+        envelopes = new double[data.numInstances()][][][];
+        classValues = new double[data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            double[][] series = toArrays(data.get(i));
+            train[i] = interleave(series);
+            envelopes[i] = envelopes(series, window);
+            classValues[i] = data.get(i).classValue();
+        }
     }
     
     @Override
     public double classifyInstance(Instance instance) throws Exception{
         testWithFailRelationalInstance(instance);
-        Pair<Instance, Double> minD = findMinDistance(train, instance, D);
-        return minD.var1.classValue();
+        double[] query = interleave(toArrays(instance));
+        double[] lowerBounds = new double[train.length];
+        for (int i = 0; i < train.length; i++) {
+            lowerBounds[i] = dependentLowerBound(query, envelopes[i]);
+        }
+        int nearest = nearestNeighbour(train.length, lowerBounds,
+                (i, limit) -> dependentDTW(query, train[i], numDims, window, limit));
+        return classValues[nearest];
     }
-    
-    
 }
@@ -14,43 +14,56 @@
  * You should have received a copy of the GNU General Public License along
  * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
  */
- 
 package tsml.classifiers.multivariate;
 
-import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_I;
-import static utilities.InstanceTools.findMinDistance;
-import utilities.generic_storage.Pair;
+import tsml.classifiers.legacy.elastic_ensemble.distance_functions.DTW_DistanceBasic;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import static tsml.classifiers.multivariate.MultivariateDistances.*;
+import static utilities.multivariate_tools.MultivariateInstanceTools.channelLength;
+
 /**
  *
  * @author raj09hxu
  */
 public class NN_DTW_I extends MultivariateAbstractClassifier{
     
-    Instances train;
-    DTW_I I;
-    public NN_DTW_I(){
-        I = new DTW_I();
-    }
-    
+    double r = 1;
+    int window;
+    double[][][] train;
+    double[][][][] envelopes;
+    double[] classValues;
+
     public void setR(double r){
-        I.setR(r);
+        this.r = r;
     }
 
-
-
     @Override
     public void buildClassifier(Instances data) throws Exception {
         testWithFailRelationalInstances(data);
-        train = data;
+        window = DTW_DistanceBasic.findWindowSize(r, channelLength(data));
+        train = new double[data.numInstances()][][];
+        envelopes = new double[data.numInstances()][][][];
+        classValues = new double[data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            double[][] series = toArrays(data.get(i));
+            train[i] = series;
+            envelopes[i] = envelopes(series, window);
+            classValues[i] = data.get(i).classValue();
+        }
     }
     
     @Override
     public double classifyInstance(Instance instance) throws Exception{
         testWithFailRelationalInstance(instance);
-        Pair<Instance, Double> minD = findMinDistance(train, instance, I);
-        return minD.var1.classValue();
+        double[][] query = toArrays(instance);
+        double[] lowerBounds = new double[train.length];
+        for (int i = 0; i < train.length; i++) {
+            lowerBounds[i] = independentLowerBound(query, envelopes[i]);
+        }
+        int nearest = nearestNeighbour(train.length, lowerBounds,
+                (i, limit) -> independentDTW(query, train[i], window, limit));
+        return classValues[nearest];
     }
 }
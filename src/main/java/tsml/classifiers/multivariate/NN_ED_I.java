@@ -14,39 +14,42 @@
  * You should have received a copy of the GNU General Public License along
  * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
  */
- 
 package tsml.classifiers.multivariate;
 
-import tsml.classifiers.legacy.elastic_ensemble.distance_functions.EuclideanDistance_I;
-import static utilities.InstanceTools.findMinDistance;
-import utilities.generic_storage.Pair;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import static tsml.classifiers.multivariate.MultivariateDistances.*;
+import static utilities.multivariate_tools.MultivariateInstanceTools.numDimensions;
+
 /**
  *
  * @author Aaron
  */
 public class NN_ED_I extends MultivariateAbstractClassifier{
     
-    Instances train;
-    EuclideanDistance_I I;
-    public NN_ED_I(){
-        I = new EuclideanDistance_I();
-    }
-
-
+    double[][] train;
+    int numDims;
+    double[] classValues;
 
     @Override
     public void buildClassifier(Instances data) throws Exception {
         testWithFailRelationalInstances(data);
-        train = data;
+        numDims = numDimensions(data);
+        train = new double[data.numInstances()][];
+        classValues = new double[data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            train[i] = interleave(toArrays(data.get(i)));
+            classValues[i] = data.get(i).classValue();
+        }
     }
     
     @Override
     public double classifyInstance(Instance instance) throws Exception{
         testWithFailRelationalInstance(instance);
-        Pair<Instance, Double> minD = findMinDistance(train, instance, I);
-        return minD.var1.classValue();
+        double[] query = interleave(toArrays(instance));
+        int nearest = nearestNeighbour(train.length, null,
+                (i, limit) -> independentEuclidean(query, train[i], numDims, limit));
+        return classValues[nearest];
     }
 }
@@ -20,10 +20,10 @@ package tsml.classifiers.multivariate;
 import com.carrotsearch.hppc.*;
 import com.carrotsearch.hppc.cursors.*;
 import de.bwaldvogel.liblinear.*;
-import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
 import experiments.data.DatasetLoading;
 import tsml.classifiers.EnhancedAbstractClassifier;
 import utilities.ClassifierTools;
+import utilities.numericalmethods.SpectralEngine;
 import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -1211,13 +1211,10 @@ public class WEASEL_MUSE extends EnhancedAbstractClassifier {
 
         private int windowSize = 0;
         private int startOffset = 0;
-        private transient DoubleFFT_1D fft = null;
 
         public MFT(int windowSize, boolean normMean) {
             this.windowSize = windowSize;
 
-            this.fft = new DoubleFFT_1D(this.windowSize);
-
             // ignore DC value?
             this.startOffset = normMean ? 2 : 0;
         }
@@ -1225,7 +1222,7 @@ public class WEASEL_MUSE extends EnhancedAbstractClassifier {
         public double[] transform(double[] series, int wordLength) {
             double[] data = new double[this.windowSize];
             System.arraycopy(series, 0, data, 0, Math.min(this.windowSize, series.length));
-            this.fft.realForward(data);
+            SpectralEngine.realForward(data);
             data[1] = 0; // DC-coefficient imaginary part
 
             // make it even length for uneven windowSize
@@ -1297,7 +1294,7 @@ public class WEASEL_MUSE extends EnhancedAbstractClassifier {
                     double[] dft = new double[this.windowSize];
                     System.arraycopy(toArrayNoClass(timeSeries), 0, dft, 0, Math.min(this.windowSize, data.length));
 
-                    this.fft.realForward(dft);
+                    SpectralEngine.realForward(dft);
                     dft[1] = 0; // DC-coefficient imag part
 
                     // if windowSize > mftData.queryLength, the remaining data should be 0 now.
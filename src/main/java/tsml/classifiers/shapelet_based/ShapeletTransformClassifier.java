@@ -48,7 +48,9 @@ import tsml.transformers.shapelet_tools.search_functions.ShapeletSearch;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearch.SearchType;
 import tsml.transformers.shapelet_tools.search_functions.ShapeletSearchOptions;
 import tsml.classifiers.EnhancedAbstractClassifier;
+import tsml.classifiers.MemoryContractable;
 import tsml.classifiers.TrainTimeContractable;
+import tsml.classifiers.distance_based.utils.system.memory.MemoryBudget;
 import fileIO.FullAccessOutFile;
 import fileIO.OutFile;
 
@@ -72,7 +74,7 @@ import fileIO.OutFile;
  *
  */
 public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
-        implements TrainTimeContractable, Tuneable {
+        implements TrainTimeContractable, Tuneable, MemoryContractable {
     private ShapeletTransform transform;    //Configurable ST
     private Instances shapeletData;         //Transformed shapelets header info stored here
     private Classifier classifier;          //Final classifier built on transformed shapelet data
@@ -107,6 +109,13 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
     private long transformContractTime = TimeUnit.NANOSECONDS.convert(transformContractHours, TimeUnit.HOURS);
     private long classifierContractTime = 0;//Time limit assigned to classifier, based on contractTime, but fixed in buildClassifier in an adhoc way
 
+    /* The memory contract caps the number of shapelets so the shapelets and transformed data fit in half of what the
+    train data leaves, the rest is passed on to the classifier if it is MemoryContractable. In bytes, if <=0, no contract
+     */
+    private long memoryLimit = 0;
+    //Cap on the shapelets kept by the current build from the memory contract, leaving numShapeletsInTransform as set
+    private int maxShapeletsInTransform = Integer.MAX_VALUE;
+
 /**** Shapelet Transform Information *************/
     private long numShapeletsInProblem = 0; //Number of shapelets in problem if we do a full enumeration
     private double singleShapeletTime=0;    //Estimate of the time to evaluate a single shapelet
@@ -209,6 +218,10 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
  //           printLineDebug(" Contract time limit = "+ transformContractTime);
             configureTrainTimeContract(data, transformContractTime);
         }
+        MemoryBudget memoryBudget = new MemoryBudget(memoryLimit);
+        maxShapeletsInTransform = Integer.MAX_VALUE;
+        if(memoryBudget.isLimited())
+            maxShapeletsInTransform = configureMemoryContract(data, memoryBudget);
         transform= constructShapeletTransform(data);
         transform.setSuppressOutput(true);
         if(transformContractTime >0) {
@@ -244,9 +257,23 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
             //HERE CHANGE TO ACTUAL TIME LEFT
             ((TrainTimeContractable) classifier).setTrainTimeLimit(classifierContractTime);
         }
+        if(memoryBudget.isLimited()){
+            memoryBudget.addShared(transform, shapeletData);
+            if(classifier instanceof MemoryContractable) {
+                //A limit of zero is no limit, so always leave the classifier at least a byte
+                long classifierMemoryLimit = Math.max(1, memoryLimit - memoryBudget.getUsed());
+                printLineDebug(" Classifier memory limit = "+classifierMemoryLimit);
+                ((MemoryContractable) classifier).setMemoryLimit(classifierMemoryLimit);
+            }
+        }
 
 
         classifier.buildClassifier(shapeletData);
+        if(memoryBudget.isLimited()){
+            memoryBudget.addMember(classifier);
+            trainResults.setMemory(memoryBudget.getUsed());
+            trainResults.setMemoryLimit(memoryLimit);
+        }
         trainResults.setTimeUnit(TimeUnit.NANOSECONDS);
         long endTime=System.nanoTime();
         if(getEstimateOwnPerformance()){
@@ -388,7 +415,8 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
         searchBuilder.setSearchType(searchType);
         if(numShapeletsInProblem==0)
             numShapeletsInProblem=ShapeletTransformTimingUtilities.calculateNumberOfShapelets(data.numInstances(), data.numAttributes()-1, transformOptions.getMinLength(), transformOptions.getMaxLength());
-        transformOptions.setKShapelets(numShapeletsInTransform);
+        //The memory cap only applies to this transform, so the configured number is restored once the options are built
+        transformOptions.setKShapelets(Math.min(numShapeletsInTransform, maxShapeletsInTransform));
         searchBuilder.setNumShapeletsToEvaluate(numShapeletsToEvaluate/data.numInstances());//This is ignored if full search is performed
         transformOptions.setSearchOptions(searchBuilder.build());
         //Finally, get the transform from a Factory with the options set by the builder
@@ -398,6 +426,7 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
         }
 
         ShapeletTransformFactoryOptions options=transformOptions.build();
+        transformOptions.setKShapelets(numShapeletsInTransform);
 
         ShapeletTransform st = new ShapeletTransformFactory(options).getTransform();
         if(saveShapelets && shapeletOutputPath != null)
@@ -535,6 +564,31 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
 
     }
 
+    /**
+     * Finds the most shapelets the transform can keep so the retained shapelets and the transformed data fit in half
+     * of the memory left after the train data. Each shapelet is estimated to cost a double per train case for its
+     * attribute in the transformed data and a double per series point for its content, plus object overhead.
+     *
+     * @param train train data
+     * @param memoryBudget budget to count the train data against
+     * @return the cap on the number of shapelets in the transform
+     */
+    public int configureMemoryContract(Instances train, MemoryBudget memoryBudget){
+        memoryBudget.addShared(train);
+        int n = train.numInstances();
+        int m;
+        if(multivariate)
+            m=train.instance(0).relationalValue(0).instance(0).numAttributes()*train.instance(0).relationalValue(0).numInstances();
+        else
+            m=train.numAttributes() - 1;
+        long bytesPerShapelet = 8L * (n + m) + 512;
+        long transformMemory = (memoryLimit - memoryBudget.getUsed()) / 2;
+        int maxShapelets = (int) Math.min(Integer.MAX_VALUE, Math.max(1, transformMemory / bytesPerShapelet));
+        if(numShapeletsInTransform > maxShapelets)
+            printLineDebug(" Memory limit of "+memoryLimit+" bytes caps shapelets in transform from "+numShapeletsInTransform+" to "+maxShapelets);
+        return maxShapelets;
+    }
+
     // Tony's way of doing it based on a timing model for predicting for a single shapelet
 //Point estimate to set prop, could use a hard coded
 //This is a bit unintuitive, should move full towards a time per shapelet model
@@ -595,6 +649,11 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
             result+= ",TimeContract(ns), " +trainContractTimeNanos;
         else
             result+=",NoContract";
+        if(memoryLimit>0) {
+            result += ",MemoryContract(bytes)," + memoryLimit;
+            if(maxShapeletsInTransform < numShapeletsInTransform)
+                result += ",MemoryCappedShapelets," + maxShapeletsInTransform;
+        }
         result+= ",TransformActualBuildTime,"+transformBuildTime+",trainContractTimeNanos,"+ trainContractTimeNanos +",transformContractTime,"+ transformContractTime;
 
 
@@ -632,6 +691,16 @@ public class ShapeletTransformClassifier  extends EnhancedAbstractClassifier
         trainContractTimeNanos = amount;
     }
 
+    @Override
+    public void setMemoryLimit(DataUnit unit, long amount) {
+        memoryLimit = MemoryContractable.toBytes(unit, amount);
+    }
+
+    @Override
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
     @Override
     public boolean withinTrainContract(long start) {
         return start<trainContractTimeNanos;
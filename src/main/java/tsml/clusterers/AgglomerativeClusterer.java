@@ -0,0 +1,274 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.clusterers;
+
+import tsml.classifiers.distance_based.distances.DistanceMatrix;
+import tsml.classifiers.distance_based.distances.DistanceMatrixEngine;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Agglomerative hierarchical clustering of time series under any DistanceMeasure, cut to k clusters.
+ * <p>
+ * The distance matrix is computed in parallel by a DistanceMatrixEngine, in a memory mapped file if one is set, and
+ * then merged in place with the nearest neighbour chain algorithm, which takes O(n^2) time for the single, complete
+ * and average linkages. An asymmetric distance measure is averaged over both directions. New series are assigned to
+ * the cluster of their nearest training series.
+ */
+public class AgglomerativeClusterer extends DistanceBasedClusterer {
+
+    private static final long serialVersionUID = 1L;
+
+    //Murtagh, Fionn, and Pedro Contreras.
+    //"Algorithms for hierarchical clustering: an overview."
+    //Wiley Interdisciplinary Reviews: Data Mining and Knowledge Discovery 2.1 (2012): 86-97.
+
+    public enum Linkage { SINGLE, COMPLETE, AVERAGE }
+
+    private Linkage linkage = Linkage.AVERAGE;
+    private File distanceMatrixFile;
+
+    private TimeSeriesInstances trainData;
+    private int[][] merges;
+    private double[] heights;
+
+    public AgglomerativeClusterer(){
+        this(new DTWDistance());
+    }
+
+    public AgglomerativeClusterer(DistanceMeasure distanceMeasure){
+        super(distanceMeasure);
+    }
+
+    public void setLinkage(Linkage linkage){
+        this.linkage = linkage;
+    }
+
+    public Linkage getLinkage(){
+        return linkage;
+    }
+
+    /**
+     * @param distanceMatrixFile file to memory map the distance matrix to, or null for the heap
+     */
+    public void setDistanceMatrixFile(File distanceMatrixFile){
+        this.distanceMatrixFile = distanceMatrixFile;
+    }
+
+    /**
+     * @return the pairs of series whose clusters were merged, in increasing order of height. Each series stands for
+     * the cluster it is in at the time of the merge.
+     */
+    public int[][] getMerges(){
+        return merges;
+    }
+
+    /**
+     * @return the linkage distance of each merge
+     */
+    public double[] getHeights(){
+        return heights;
+    }
+
+    @Override
+    protected void build(TimeSeriesInstances data) throws Exception {
+        trainData = data;
+        int numInstances = data.numInstances();
+        DistanceMatrix distances = distanceMatrix(data);
+
+        //nearest neighbour chain, merging reciprocal nearest neighbours
+        boolean[] active = new boolean[numInstances];
+        int[] size = new int[numInstances];
+        Arrays.fill(active, true);
+        Arrays.fill(size, 1);
+        int[] chain = new int[numInstances];
+        int chainLength = 0;
+        int firstActive = 0;
+        int numMerges = Math.max(0, numInstances - 1);
+        int[][] chainMerges = new int[numMerges][];
+        double[] chainHeights = new double[numMerges];
+
+        for (int m = 0; m < numMerges; ){
+            if (chainLength == 0){
+                while (!active[firstActive]) firstActive++;
+                chain[chainLength++] = firstActive;
+            }
+
+            int a = chain[chainLength - 1];
+            int previous = chainLength > 1 ? chain[chainLength - 2] : -1;
+
+            //the nearest cluster to a, the previous in the chain if tied so the chain terminates
+            int b = previous;
+            double minDist = previous >= 0 ? distances.get(a, previous) : Double.POSITIVE_INFINITY;
+
+            for (int x = 0; x < numInstances; x++){
+                if (x == a || !active[x]) continue;
+
+                double dist = distances.get(a, x);
+
+                if (dist < minDist || b < 0){
+                    minDist = dist;
+                    b = x;
+                }
+            }
+
+            if (b == previous){
+                chainLength -= 2;
+                merge(distances, active, size, a, b);
+                chainMerges[m] = new int[]{Math.min(a, b), Math.max(a, b)};
+                chainHeights[m] = minDist;
+                m++;
+            }
+            else{
+                chain[chainLength++] = b;
+            }
+        }
+
+        //the chain finds merges out of order, for these linkages the dendrogram is the same in order of height
+        Integer[] order = new Integer[numMerges];
+
+        for (int i = 0; i < numMerges; i++){
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (x, y) -> Double.compare(chainHeights[x], chainHeights[y]));
+        merges = new int[numMerges][];
+        heights = new double[numMerges];
+
+        for (int i = 0; i < numMerges; i++){
+            merges[i] = chainMerges[order[i]];
+            heights[i] = chainHeights[order[i]];
+        }
+
+        cut();
+    }
+
+    private DistanceMatrix distanceMatrix(TimeSeriesInstances data) throws Exception {
+        int numInstances = data.numInstances();
+        DistanceMatrixEngine engine = new DistanceMatrixEngine(distanceMeasure);
+        engine.setNumThreads(numThreads);
+        DistanceMatrix symmetric = new DistanceMatrix(numInstances, numInstances, true,
+                DistanceMatrix.DEFAULT_TILE_SIZE, distanceMatrixFile);
+
+        if (distanceMeasure.isSymmetric()){
+            engine.compute(symmetric, data, data);
+        }
+        else{
+            DistanceMatrix full = engine.compute(data);
+
+            for (int i = 0; i < numInstances; i++){
+                for (int j = 0; j < i; j++){
+                    symmetric.set(i, j, (full.get(i, j) + full.get(j, i)) / 2);
+                }
+            }
+        }
+
+        return symmetric;
+    }
+
+    //merges cluster b into a, updating the distances of a by the Lance-Williams formula of the linkage
+    private void merge(DistanceMatrix distances, boolean[] active, int[] size, int a, int b){
+        int keep = Math.min(a, b);
+        int drop = Math.max(a, b);
+
+        for (int x = 0; x < active.length; x++){
+            if (!active[x] || x == a || x == b) continue;
+
+            double keepDist = distances.get(keep, x);
+            double dropDist = distances.get(drop, x);
+            double dist;
+
+            switch (linkage){
+                case SINGLE:
+                    dist = Math.min(keepDist, dropDist);
+                    break;
+                case COMPLETE:
+                    dist = Math.max(keepDist, dropDist);
+                    break;
+                default:
+                    dist = (size[keep] * keepDist + size[drop] * dropDist) / (size[keep] + size[drop]);
+            }
+
+            distances.set(keep, x, dist);
+        }
+
+        active[drop] = false;
+        size[keep] += size[drop];
+    }
+
+    //assigns the series to k clusters by applying the lowest merges
+    private void cut(){
+        int numInstances = trainData.numInstances();
+        int[] parent = new int[numInstances];
+
+        for (int i = 0; i < numInstances; i++){
+            parent[i] = i;
+        }
+
+        for (int i = 0; i < merges.length && i < numInstances - k; i++){
+            parent[root(parent, merges[i][1])] = root(parent, merges[i][0]);
+        }
+
+        assignments = new int[numInstances];
+        int[] labels = new int[numInstances];
+        Arrays.fill(labels, -1);
+        int numClusters = 0;
+
+        for (int i = 0; i < numInstances; i++){
+            int root = root(parent, i);
+
+            if (labels[root] < 0){
+                labels[root] = numClusters++;
+            }
+
+            assignments[i] = labels[root];
+        }
+
+        setClusters(Math.max(k, numClusters));
+    }
+
+    private static int root(int[] parent, int i){
+        while (parent[i] != i){
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    @Override
+    public int clusterInstance(TimeSeriesInstance inst) throws Exception {
+        int nearest = 0;
+        double minDist = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < trainData.numInstances(); i++){
+            double dist = distanceMeasure.distance(inst, trainData.get(i), minDist);
+
+            if (dist < minDist){
+                minDist = dist;
+                nearest = i;
+            }
+        }
+
+        return assignments[nearest];
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.clusterers;
+
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * k-means clustering of time series under DTWDistance, with each centroid found by DTW Barycenter Averaging. The
+ * centroids start as series chosen by k-means++ seeding under DTW, then each iteration assigns the series to their
+ * nearest centroid in parallel, with early abandoned distances and LB_Keogh pruning, and refines each centroid by
+ * averaging the points of its cluster aligned to each of its points by DTW.
+ */
+public class DBAKMeans extends DistanceBasedClusterer {
+
+    private static final long serialVersionUID = 1L;
+
+    //Petitjean, Francois, Alain Ketterlin, and Pierre Gancarski.
+    //"A global averaging method for dynamic time warping, with applications to clustering."
+    //Pattern Recognition 44.3 (2011): 678-693.
+
+    private int maxIterations = 100;
+    private int numAveragingIterations = 1;
+
+    private double cost;
+
+    public DBAKMeans(){
+        this(new DTWDistance());
+    }
+
+    public DBAKMeans(DTWDistance distanceMeasure){
+        super(distanceMeasure);
+    }
+
+    @Override
+    public void setDistanceMeasure(DistanceMeasure distanceMeasure){
+        if (!(distanceMeasure instanceof DTWDistance)){
+            throw new IllegalArgumentException("DBA averages under DTWDistance only: " + distanceMeasure);
+        }
+
+        super.setDistanceMeasure(distanceMeasure);
+    }
+
+    /**
+     * @param maxIterations the most assignment steps
+     */
+    public void setMaxIterations(int maxIterations){
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @param numAveragingIterations number of DBA refinements of each centroid per assignment step
+     */
+    public void setNumAveragingIterations(int numAveragingIterations){
+        this.numAveragingIterations = numAveragingIterations;
+    }
+
+    /**
+     * @return sum of the distances of each series to its centroid
+     */
+    public double getCost(){
+        return cost;
+    }
+
+    @Override
+    protected void build(TimeSeriesInstances data) throws Exception {
+        int numInstances = data.numInstances();
+        setCentres(seedCentroids(data, newRandom()));
+        assignments = new int[numInstances];
+        Arrays.fill(assignments, -1);
+        double[] distances = new double[numInstances];
+        boolean changed = assignToCentres(data, assignments, distances);
+
+        for (int iteration = 0; changed && iteration < maxIterations; iteration++){
+            setCentres(average(data));
+            changed = assignToCentres(data, assignments, distances);
+        }
+
+        cost = 0;
+
+        for (double d : distances){
+            cost += d;
+        }
+
+        setClusters(k);
+    }
+
+    //k-means++ seeding: the first centroid is a random series, each next is drawn with probability proportional to the
+    //distance of a series to its nearest centroid so far. DTWDistance sums squared differences, so this is the squared
+    //distance k-means++ weights by
+    private TimeSeriesInstance[] seedCentroids(TimeSeriesInstances data, Random rand) throws Exception {
+        int numInstances = data.numInstances();
+        int numCentroids = Math.min(k, numInstances);
+        TimeSeriesInstance[] centroids = new TimeSeriesInstance[numCentroids];
+        double[] nearestDist = new double[numInstances];
+        Arrays.fill(nearestDist, Double.POSITIVE_INFINITY);
+        int next = rand.nextInt(numInstances);
+
+        for (int c = 0; c < numCentroids; c++){
+            TimeSeriesInstance centroid = data.get(next);
+            centroids[c] = centroid;
+
+            forEachBlock(numInstances, (start, end, dm) -> {
+                for (int i = start; i < end; i++){
+                    nearestDist[i] = Math.min(nearestDist[i], dm.distance(data.get(i), centroid, nearestDist[i]));
+                }
+            });
+
+            double total = 0;
+
+            for (double d : nearestDist){
+                total += d;
+            }
+
+            //a series at a centroid has no weight, so is never drawn again while any series is elsewhere
+            next = -1;
+            double r = rand.nextDouble() * total;
+
+            for (int i = 0; i < numInstances; i++){
+                if (nearestDist[i] > 0){
+                    next = i;
+                    r -= nearestDist[i];
+
+                    if (r < 0) break;
+                }
+            }
+
+            //every series is at a centroid, so the remaining centroids repeat the first
+            if (next < 0){
+                next = 0;
+            }
+        }
+
+        return centroids;
+    }
+
+    //refines the centroid of each cluster by DBA, in parallel over the series. A centroid of an empty cluster is kept
+    private TimeSeriesInstance[] average(TimeSeriesInstances data) throws Exception {
+        double window = ((DTWDistance) distanceMeasure).getWindow();
+        int numCentroids = centres.length;
+        double[][][] centroids = new double[numCentroids][][];
+
+        for (int c = 0; c < numCentroids; c++){
+            centroids[c] = centres[c].toValueArray();
+        }
+
+        double[][][] sums = new double[numCentroids][][];
+        int[][] counts = new int[numCentroids][];
+
+        for (int it = 0; it < numAveragingIterations; it++){
+            for (int c = 0; c < numCentroids; c++){
+                sums[c] = new double[centroids[c].length][centroids[c][0].length];
+                counts[c] = new int[centroids[c][0].length];
+            }
+
+            forEachBlock(data.numInstances(), (start, end, dm) -> {
+                double[][][] blockSums = new double[numCentroids][][];
+                int[][] blockCounts = new int[numCentroids][];
+
+                for (int c = 0; c < numCentroids; c++){
+                    blockSums[c] = new double[sums[c].length][sums[c][0].length];
+                    blockCounts[c] = new int[counts[c].length];
+                }
+
+                //add each point of a series to the centroid points it is aligned to
+                for (int o = start; o < end; o++){
+                    int c = assignments[o];
+                    double[][] series = data.get(o).toValueArray();
+
+                    for (int[] step : warpingPath(centroids[c], series, window)){
+                        for (int d = 0; d < series.length; d++){
+                            blockSums[c][d][step[0]] += series[d][step[1]];
+                        }
+
+                        blockCounts[c][step[0]]++;
+                    }
+                }
+
+                synchronized (sums){
+                    for (int c = 0; c < numCentroids; c++){
+                        for (int d = 0; d < sums[c].length; d++){
+                            for (int t = 0; t < sums[c][d].length; t++){
+                                sums[c][d][t] += blockSums[c][d][t];
+                            }
+                        }
+
+                        for (int t = 0; t < counts[c].length; t++){
+                            counts[c][t] += blockCounts[c][t];
+                        }
+                    }
+                }
+            });
+
+            for (int c = 0; c < numCentroids; c++){
+                for (int d = 0; d < centroids[c].length; d++){
+                    for (int t = 0; t < centroids[c][d].length; t++){
+                        if (counts[c][t] > 0){
+                            centroids[c][d][t] = sums[c][d][t] / counts[c][t];
+                        }
+                    }
+                }
+            }
+        }
+
+        TimeSeriesInstance[] updated = new TimeSeriesInstance[numCentroids];
+
+        for (int c = 0; c < numCentroids; c++){
+            updated[c] = new TimeSeriesInstance(centroids[c]);
+        }
+
+        return updated;
+    }
+
+    /**
+     * @return the DTW path between a and b as pairs of indices, within the window as DTWDistance constrains it
+     */
+    static int[][] warpingPath(double[][] a, double[][] b, double window){
+        int aLength = a[0].length;
+        int bLength = b[0].length;
+        double[][] cost = new double[aLength][bLength];
+
+        for (double[] row : cost){
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+
+        //the band of DTWDistance, centred on the diagonal with a width relative to the shorter series
+        double step = aLength > 1 ? (double) (bLength - 1) / (aLength - 1) : 0;
+        double windowSize = window * Math.min(aLength, bLength);
+
+        for (int i = 0; i < aLength; i++){
+            double mid = i * step;
+            int start = Math.max(0, (int) Math.ceil(mid - windowSize));
+            int end = Math.min(bLength - 1, (int) Math.floor(mid + windowSize));
+
+            for (int j = start; j <= end; j++){
+                double sqDiff = 0;
+
+                for (int d = 0; d < a.length; d++){
+                    double diff = a[d][i] - b[d][j];
+                    sqDiff += diff * diff;
+                }
+
+                double prev;
+
+                if (i == 0 && j == 0){
+                    prev = 0;
+                }
+                else if (i == 0){
+                    prev = cost[i][j - 1];
+                }
+                else if (j == 0){
+                    prev = cost[i - 1][j];
+                }
+                else{
+                    prev = Math.min(cost[i - 1][j - 1], Math.min(cost[i - 1][j], cost[i][j - 1]));
+                }
+
+                cost[i][j] = prev + sqDiff;
+            }
+        }
+
+        //trace back from the end
+        ArrayList<int[]> path = new ArrayList<>(aLength + bLength);
+        int i = aLength - 1;
+        int j = bLength - 1;
+        path.add(new int[]{i, j});
+
+        while (i > 0 || j > 0){
+            if (i == 0){
+                j--;
+            }
+            else if (j == 0){
+                i--;
+            }
+            else{
+                double diag = cost[i - 1][j - 1];
+                double up = cost[i - 1][j];
+                double left = cost[i][j - 1];
+
+                if (diag <= up && diag <= left){
+                    i--;
+                    j--;
+                }
+                else if (up <= left){
+                    i--;
+                }
+                else{
+                    j--;
+                }
+            }
+
+            path.add(new int[]{i, j});
+        }
+
+        return path.toArray(new int[0][]);
+    }
+}
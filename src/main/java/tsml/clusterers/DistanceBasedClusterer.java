@@ -0,0 +1,292 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.clusterers;
+
+import tsml.classifiers.MultiThreadable;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.dtw.DTWEnvelope;
+import tsml.classifiers.distance_based.utils.system.copy.CopierUtils;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Base class for clusterers of TimeSeriesInstances under any DistanceMeasure, which assign each series to the nearest
+ * of a set of centres.
+ * <p>
+ * Work over the series is split into blocks which run in parallel when multithreading is enabled, each thread with
+ * its own copy of the distance measure. The nearest centre is found with early abandoned distances, and for
+ * DTWDistance the LB_Keogh bound of each centre skips centres which cannot be nearer than the best so far.
+ * <p>
+ * Instances are converted with Converter.fromArff, which takes the last attribute as the class if none is set.
+ */
+public abstract class DistanceBasedClusterer extends AbstractTimeSeriesClusterer implements MultiThreadable {
+
+    private static final long serialVersionUID = 1L;
+
+    // fewest series in a block of parallel work
+    private static final int MIN_BLOCK_SIZE = 16;
+
+    protected DistanceMeasure distanceMeasure;
+    protected int k = 2;
+    protected int seed = Integer.MIN_VALUE;
+    protected int numThreads = 1;
+
+    protected TimeSeriesInstance[] centres;
+    private DTWEnvelope[] centreEnvelopes;
+
+    private transient ExecutorService executor;
+    private transient ThreadLocal<DistanceMeasure> distanceMeasures;
+
+    public DistanceBasedClusterer(DistanceMeasure distanceMeasure){
+        this.distanceMeasure = distanceMeasure;
+    }
+
+    @Override
+    public int numberOfClusters(){
+        return k;
+    }
+
+    public void setNumberOfClusters(int n){ k = n; }
+
+    public void setSeed(int seed){ this.seed = seed; }
+
+    public DistanceMeasure getDistanceMeasure(){
+        return distanceMeasure;
+    }
+
+    public void setDistanceMeasure(DistanceMeasure distanceMeasure){
+        this.distanceMeasure = distanceMeasure;
+    }
+
+    @Override
+    public void enableMultiThreading(int numThreads){
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return the series at the centre of each cluster
+     */
+    public TimeSeriesInstance[] getCentres(){
+        return centres;
+    }
+
+    @Override
+    public void buildClusterer(Instances data) throws Exception {
+        if (copyInstances){
+            data = new Instances(data);
+        }
+
+        buildClusterer(Converter.fromArff(data));
+    }
+
+    public void buildClusterer(TimeSeriesInstances data) throws Exception {
+        distanceMeasure.buildDistanceMeasure(data);
+
+        if (numThreads > 1){
+            executor = Executors.newFixedThreadPool(numThreads);
+            distanceMeasures = ThreadLocal.withInitial(() -> CopierUtils.deepCopy(distanceMeasure));
+        }
+
+        try{
+            build(data);
+        }
+        finally{
+            if (executor != null){
+                executor.shutdownNow();
+                executor = null;
+                distanceMeasures = null;
+            }
+        }
+    }
+
+    /**
+     * Finds the clusters of the data, setting the centres, assignments and clusters.
+     */
+    protected abstract void build(TimeSeriesInstances data) throws Exception;
+
+    @Override
+    public int clusterInstance(Instance inst) throws Exception {
+        return clusterInstance(Converter.fromArff(inst));
+    }
+
+    public int clusterInstance(TimeSeriesInstance inst) throws Exception {
+        return nearestCentre(inst, -1, distanceMeasure, new double[1]);
+    }
+
+    protected Random newRandom(){
+        if (seed == Integer.MIN_VALUE){
+            return new Random();
+        }
+        else{
+            return new Random(seed);
+        }
+    }
+
+    /**
+     * Sets the centres, finding their envelopes if the distance measure has a lower bound.
+     */
+    protected void setCentres(TimeSeriesInstance[] centres){
+        this.centres = centres;
+        centreEnvelopes = null;
+
+        if (distanceMeasure instanceof DTWDistance){
+            double window = ((DTWDistance) distanceMeasure).getWindow();
+            centreEnvelopes = new DTWEnvelope[centres.length];
+
+            for (int i = 0; i < centres.length; i++){
+                centreEnvelopes[i] = new DTWEnvelope(centres[i], window);
+            }
+        }
+    }
+
+    /**
+     * @param inst a series
+     * @param first index of the centre to compare first, e.g. the current cluster, or -1
+     * @param distanceMeasure the distance measure of the calling thread
+     * @param distance the distance to the nearest centre is written to distance[0]
+     * @return index of the nearest centre
+     */
+    protected int nearestCentre(TimeSeriesInstance inst, int first, DistanceMeasure distanceMeasure,
+                                double[] distance){
+        int nearest = first >= 0 ? first : 0;
+        double minDist = distanceMeasure.distance(inst, centres[nearest]);
+
+        for (int n = 0; n < centres.length; n++){
+            if (n == nearest) continue;
+
+            //skip the distance if the lower bound cannot beat the nearest so far
+            if (centreEnvelopes != null && centreEnvelopes[n].lowerBound(inst, minDist) >= minDist) continue;
+
+            double dist = distanceMeasure.distance(inst, centres[n], minDist);
+
+            if (dist < minDist){
+                minDist = dist;
+                nearest = n;
+            }
+        }
+
+        distance[0] = minDist;
+        return nearest;
+    }
+
+    /**
+     * Assigns each series to the nearest centre in parallel.
+     *
+     * @param data the series
+     * @param assignments the current cluster of each series, or -1, replaced by the nearest centre
+     * @param distances the distance of each series to its centre
+     * @return whether any assignment changed
+     */
+    protected boolean assignToCentres(TimeSeriesInstances data, int[] assignments, double[] distances)
+            throws Exception {
+        boolean[] changed = new boolean[1];
+
+        forEachBlock(data.numInstances(), (start, end, dm) -> {
+            double[] distance = new double[1];
+            boolean blockChanged = false;
+
+            for (int i = start; i < end; i++){
+                int nearest = nearestCentre(data.get(i), assignments[i], dm, distance);
+                blockChanged |= nearest != assignments[i];
+                assignments[i] = nearest;
+                distances[i] = distance[0];
+            }
+
+            if (blockChanged){
+                synchronized (changed){
+                    changed[0] = true;
+                }
+            }
+        });
+
+        return changed[0];
+    }
+
+    /**
+     * Sets the clusters from the assignments.
+     */
+    protected void setClusters(int numClusters){
+        @SuppressWarnings("unchecked")
+        ArrayList<Integer>[] lists = (ArrayList<Integer>[]) new ArrayList<?>[numClusters];
+        clusters = lists;
+
+        for (int i = 0; i < numClusters; i++){
+            clusters[i] = new ArrayList<>();
+        }
+
+        for (int i = 0; i < assignments.length; i++){
+            clusters[assignments[i]].add(i);
+        }
+    }
+
+    /** work over a block of series */
+    protected interface Block {
+        void apply(int start, int end, DistanceMeasure distanceMeasure) throws Exception;
+    }
+
+    /**
+     * Runs work over the series from 0 to n - 1 in blocks, in parallel if multithreading is enabled. Each block is
+     * given the distance measure of the thread running it.
+     */
+    protected void forEachBlock(int n, Block block) throws Exception {
+        if (executor == null || n < MIN_BLOCK_SIZE * 2){
+            block.apply(0, n, distanceMeasure);
+            return;
+        }
+
+        //several blocks per thread so threads finishing early can take more
+        int numBlocks = Math.min(numThreads * 4, n / MIN_BLOCK_SIZE);
+        ArrayList<Future<Void>> futures = new ArrayList<>(numBlocks);
+
+        for (int b = 0; b < numBlocks; b++){
+            int start = (int) ((long) n * b / numBlocks);
+            int end = (int) ((long) n * (b + 1) / numBlocks);
+            futures.add(executor.submit(() -> {
+                block.apply(start, end, distanceMeasures.get());
+                return null;
+            }));
+        }
+
+        try{
+            for (Future<Void> future : futures){
+                future.get();
+            }
+        }
+        catch (ExecutionException e){
+            for (Future<Void> future : futures){
+                future.cancel(true);
+            }
+
+            if (e.getCause() instanceof Exception){
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+}
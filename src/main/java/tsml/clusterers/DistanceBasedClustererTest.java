@@ -0,0 +1,123 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.clusterers;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.util.HashSet;
+import java.util.Random;
+
+public class DistanceBasedClustererTest {
+
+    private static final int NUM_GROUPS = 3;
+    private static final int GROUP_SIZE = 15;
+
+    private TimeSeriesInstances data;
+
+    @Before
+    public void before() {
+        final Random random = new Random(0);
+        final double[][][] values = new double[NUM_GROUPS * GROUP_SIZE][1][20];
+        final int[] labels = new int[values.length];
+        for(int i = 0; i < values.length; i++) {
+            final int group = i / GROUP_SIZE;
+            labels[i] = group;
+            for(int j = 0; j < values[i][0].length; j++) {
+                values[i][0][j] = group * 10 + Math.sin(j * 0.5 + group) + random.nextGaussian() * 0.1;
+            }
+        }
+        data = new TimeSeriesInstances(values, labels, new String[] {"a", "b", "c"});
+    }
+
+    // each group is one cluster
+    private static void assertGroupsFound(int[] assignments) {
+        final HashSet<Integer> clusters = new HashSet<>();
+        for(int group = 0; group < NUM_GROUPS; group++) {
+            final int cluster = assignments[group * GROUP_SIZE];
+            for(int i = 0; i < GROUP_SIZE; i++) {
+                Assert.assertEquals(cluster, assignments[group * GROUP_SIZE + i]);
+            }
+            clusters.add(cluster);
+        }
+        Assert.assertEquals(NUM_GROUPS, clusters.size());
+    }
+
+    private static DTWDistance dtw() {
+        final DTWDistance dtw = new DTWDistance();
+        dtw.setWindow(0.2);
+        return dtw;
+    }
+
+    @Test
+    public void testKMedoidsFindsGroups() throws Exception {
+        for(KMedoids.Algorithm algorithm : KMedoids.Algorithm.values()) {
+            final KMedoids kMedoids = new KMedoids(dtw());
+            kMedoids.setAlgorithm(algorithm);
+            kMedoids.setNumberOfClusters(NUM_GROUPS);
+            kMedoids.setSeed(0);
+            kMedoids.enableMultiThreading(3);
+            kMedoids.buildClusterer(data);
+            assertGroupsFound(kMedoids.getAssignments());
+            for(int i = 0; i < data.numInstances(); i++) {
+                Assert.assertEquals(kMedoids.getAssignments()[i], kMedoids.clusterInstance(data.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testFasterPAMMatchesPAMCost() throws Exception {
+        final KMedoids pam = new KMedoids(dtw());
+        pam.setAlgorithm(KMedoids.Algorithm.PAM);
+        pam.setNumberOfClusters(NUM_GROUPS);
+        pam.buildClusterer(data);
+        final KMedoids fasterPam = new KMedoids(dtw());
+        fasterPam.setNumberOfClusters(NUM_GROUPS);
+        fasterPam.setSeed(1);
+        fasterPam.buildClusterer(data);
+        Assert.assertEquals(pam.getCost(), fasterPam.getCost(), 1e-9);
+    }
+
+    @Test
+    public void testDBAKMeansFindsGroups() throws Exception {
+        final DBAKMeans kMeans = new DBAKMeans(dtw());
+        kMeans.setNumberOfClusters(NUM_GROUPS);
+        kMeans.setSeed(0);
+        kMeans.enableMultiThreading(2);
+        kMeans.buildClusterer(data);
+        assertGroupsFound(kMeans.getAssignments());
+    }
+
+    @Test
+    public void testAgglomerativeFindsGroups() throws Exception {
+        for(AgglomerativeClusterer.Linkage linkage : AgglomerativeClusterer.Linkage.values()) {
+            final AgglomerativeClusterer clusterer = new AgglomerativeClusterer(dtw());
+            clusterer.setLinkage(linkage);
+            clusterer.setNumberOfClusters(NUM_GROUPS);
+            clusterer.buildClusterer(data);
+            assertGroupsFound(clusterer.getAssignments());
+            final double[] heights = clusterer.getHeights();
+            Assert.assertEquals(data.numInstances() - 1, heights.length);
+            for(int i = 1; i < heights.length; i++) {
+                Assert.assertTrue(heights[i - 1] <= heights[i]);
+            }
+        }
+    }
+}
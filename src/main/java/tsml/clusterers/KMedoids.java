@@ -0,0 +1,588 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.clusterers;
+
+import tsml.classifiers.distance_based.distances.DistanceMatrix;
+import tsml.classifiers.distance_based.distances.DistanceMatrixEngine;
+import tsml.classifiers.distance_based.distances.DistanceMeasure;
+import tsml.classifiers.distance_based.distances.dtw.DTWDistance;
+import tsml.classifiers.distance_based.distances.dtw.DTWEnvelope;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * k-medoids clustering of time series under any DistanceMeasure.
+ * <p>
+ * PAM and FasterPAM compute the distance matrix with a DistanceMatrixEngine, in a memory mapped file if one is set.
+ * Swaps are evaluated with the removal loss of FastPAM1, so a candidate medoid is compared against all k medoids in
+ * one pass over the data. PAM starts from the BUILD medoids and makes the best swap of each iteration, FasterPAM
+ * starts from random medoids and makes each improving swap as soon as it is found.
+ * <p>
+ * CLARANS does not compute the matrix, so scales to data far too large for one. Each random swap tried is evaluated
+ * with the distances of the series to the candidate medoid, which are early abandoned, or skipped by the LB_Keogh
+ * bound for DTWDistance, once they cannot change the nearest or second nearest medoid.
+ */
+public class KMedoids extends DistanceBasedClusterer {
+
+    private static final long serialVersionUID = 1L;
+
+    //Kaufman, Leonard, and Peter J. Rousseeuw.
+    //"Finding groups in data: An introduction to cluster analysis."
+    //Wiley, New York (1990)
+
+    //Schubert, Erich, and Peter J. Rousseeuw.
+    //"Fast and eager k-medoids clustering: O(k) runtime improvement of the PAM, CLARA, and CLARANS algorithms."
+    //Information Systems 101 (2021): 101804.
+
+    //Ng, Raymond T., and Jiawei Han.
+    //"CLARANS: A method for clustering objects for spatial data mining."
+    //IEEE Transactions on Knowledge and Data Engineering 14.5 (2002): 1003-1016.
+
+    public enum Algorithm { PAM, FASTER_PAM, CLARANS }
+
+    private Algorithm algorithm = Algorithm.FASTER_PAM;
+    private int maxIterations = 100;
+    private int numLocal = 2;
+    private double maxNeighbourProportion = 0.0125;
+    private File distanceMatrixFile;
+
+    private int[] medoids;
+    private double cost;
+
+    //nearest and second nearest medoid of each series, as an index of medoids, and the distances to them
+    private int[] nearest;
+    private int[] second;
+    private double[] nearestDist;
+    private double[] secondDist;
+    private boolean[] isMedoid;
+
+    public KMedoids(){
+        this(new DTWDistance());
+    }
+
+    public KMedoids(DistanceMeasure distanceMeasure){
+        super(distanceMeasure);
+    }
+
+    public void setAlgorithm(Algorithm algorithm){
+        this.algorithm = algorithm;
+    }
+
+    public Algorithm getAlgorithm(){
+        return algorithm;
+    }
+
+    /**
+     * @param maxIterations the most swaps for PAM, or passes over the data for FasterPAM
+     */
+    public void setMaxIterations(int maxIterations){
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * @param numLocal number of CLARANS searches from random medoids
+     */
+    public void setNumLocal(int numLocal){
+        this.numLocal = numLocal;
+    }
+
+    /**
+     * @param maxNeighbourProportion CLARANS stops a search after this proportion of the k(n - k) possible swaps fail
+     *                               in a row, or 250 if more
+     */
+    public void setMaxNeighbourProportion(double maxNeighbourProportion){
+        this.maxNeighbourProportion = maxNeighbourProportion;
+    }
+
+    /**
+     * @param distanceMatrixFile file to memory map the distance matrix of PAM and FasterPAM to, or null for the heap
+     */
+    public void setDistanceMatrixFile(File distanceMatrixFile){
+        this.distanceMatrixFile = distanceMatrixFile;
+    }
+
+    /**
+     * @return index of the medoid of each cluster in the training data
+     */
+    public int[] getMedoids(){
+        return medoids;
+    }
+
+    /**
+     * @return sum of the distances of each series to its medoid
+     */
+    public double getCost(){
+        return cost;
+    }
+
+    @Override
+    protected void build(TimeSeriesInstances data) throws Exception {
+        int numInstances = data.numInstances();
+        assignments = new int[numInstances];
+
+        if (numInstances <= k){
+            medoids = new int[numInstances];
+
+            for (int i = 0; i < numInstances; i++){
+                assignments[i] = i;
+                medoids[i] = i;
+            }
+
+            cost = 0;
+        }
+        else{
+            Random rand = newRandom();
+            nearest = new int[numInstances];
+            second = new int[numInstances];
+            nearestDist = new double[numInstances];
+            secondDist = new double[numInstances];
+            isMedoid = new boolean[numInstances];
+
+            if (algorithm == Algorithm.CLARANS){
+                clarans(data, rand);
+            }
+            else{
+                swapOverMatrix(data, rand);
+            }
+
+            System.arraycopy(nearest, 0, assignments, 0, numInstances);
+            nearest = null;
+            second = null;
+            nearestDist = null;
+            secondDist = null;
+            isMedoid = null;
+        }
+
+        TimeSeriesInstance[] medoidSeries = new TimeSeriesInstance[medoids.length];
+
+        for (int i = 0; i < medoids.length; i++){
+            medoidSeries[i] = data.get(medoids[i]);
+        }
+
+        setCentres(medoidSeries);
+        setClusters(k);
+    }
+
+    private void setMedoids(int[] medoids){
+        this.medoids = medoids;
+        Arrays.fill(isMedoid, false);
+
+        for (int medoid : medoids){
+            isMedoid[medoid] = true;
+        }
+    }
+
+    private int[] randomMedoids(int numInstances, Random rand){
+        ArrayList<Integer> indexes = new ArrayList<>(numInstances);
+
+        for (int i = 0; i < numInstances; i++){
+            indexes.add(i);
+        }
+
+        Collections.shuffle(indexes, rand);
+        int[] medoids = new int[k];
+
+        for (int i = 0; i < k; i++){
+            medoids[i] = indexes.get(i);
+        }
+
+        return medoids;
+    }
+
+    // a swap only improves the cost if it is beyond rounding error
+    private double tolerance(){
+        return -1e-10 * (1 + Math.abs(cost));
+    }
+
+    //PAM and FasterPAM
+
+    private void swapOverMatrix(TimeSeriesInstances data, Random rand) throws Exception {
+        int numInstances = data.numInstances();
+        DistanceMatrix matrix = new DistanceMatrix(numInstances, numInstances, distanceMeasure.isSymmetric(),
+                DistanceMatrix.DEFAULT_TILE_SIZE, distanceMatrixFile);
+        DistanceMatrixEngine engine = new DistanceMatrixEngine(distanceMeasure);
+        engine.setNumThreads(numThreads);
+        engine.compute(matrix, data, data);
+
+        //the best single medoid is the first BUILD medoid
+        if (algorithm == Algorithm.PAM || k == 1){
+            setMedoids(buildMedoids(matrix));
+        }
+        else{
+            setMedoids(randomMedoids(numInstances, rand));
+        }
+
+        updateNearest(matrix);
+
+        if (k == 1){
+            return;
+        }
+
+        double[] loss = new double[k];
+
+        if (algorithm == Algorithm.PAM){
+            for (int i = 0; i < maxIterations; i++){
+                removalLoss(loss);
+                double[] best = bestSwap(matrix, loss);
+
+                if (best[0] >= tolerance()) break;
+
+                swap(matrix, (int) best[1], (int) best[2]);
+            }
+        }
+        else{
+            double[] delta = new double[k];
+            int[] slot = new int[1];
+            long maxCandidates = (long) maxIterations * numInstances;
+            int sinceSwap = 0;
+            int candidate = 0;
+            removalLoss(loss);
+
+            //try each series in turn, swapping as soon as the cost improves, until a pass makes no swaps
+            for (long i = 0; i < maxCandidates && sinceSwap < numInstances; i++){
+                if (!isMedoid[candidate] && swapDelta(matrix, candidate, loss, delta, slot) < tolerance()){
+                    swap(matrix, slot[0], candidate);
+                    removalLoss(loss);
+                    sinceSwap = 0;
+                }
+
+                sinceSwap++;
+                candidate = (candidate + 1) % numInstances;
+            }
+        }
+    }
+
+    // distance of series i to medoid m, the diagonal of the matrix is 0 but not stored
+    private static double distance(DistanceMatrix matrix, int i, int m){
+        return i == m ? 0 : matrix.get(i, m);
+    }
+
+    private int[] buildMedoids(DistanceMatrix matrix) throws Exception {
+        int numInstances = matrix.getNumRows();
+        int[] medoids = new int[k];
+        boolean[] chosen = new boolean[numInstances];
+        double[] dist = new double[numInstances];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+
+        for (int c = 0; c < k; c++){
+            //the series which most reduces the distance of each series to its nearest medoid so far
+            double[] best = {Double.POSITIVE_INFINITY, -1};
+            boolean first = c == 0;
+
+            forEachBlock(numInstances, (start, end, dm) -> {
+                double bestCost = Double.POSITIVE_INFINITY;
+                int bestIndex = -1;
+
+                for (int j = start; j < end; j++){
+                    if (chosen[j]) continue;
+
+                    double sum = 0;
+
+                    for (int o = 0; o < numInstances; o++){
+                        double d = distance(matrix, o, j);
+                        sum += first ? d : Math.min(d - dist[o], 0);
+                    }
+
+                    if (sum < bestCost){
+                        bestCost = sum;
+                        bestIndex = j;
+                    }
+                }
+
+                synchronized (best){
+                    if (bestCost < best[0] || (bestCost == best[0] && bestIndex < best[1])){
+                        best[0] = bestCost;
+                        best[1] = bestIndex;
+                    }
+                }
+            });
+
+            int medoid = (int) best[1];
+            medoids[c] = medoid;
+            chosen[medoid] = true;
+
+            for (int o = 0; o < numInstances; o++){
+                dist[o] = Math.min(dist[o], distance(matrix, o, medoid));
+            }
+        }
+
+        return medoids;
+    }
+
+    private void updateNearest(DistanceMatrix matrix) throws Exception {
+        forEachBlock(matrix.getNumRows(), (start, end, dm) -> {
+            for (int o = start; o < end; o++){
+                nearest[o] = second[o] = -1;
+                nearestDist[o] = secondDist[o] = Double.POSITIVE_INFINITY;
+
+                for (int s = 0; s < k; s++){
+                    insert(o, s, distance(matrix, o, medoids[s]));
+                }
+            }
+        });
+
+        sumCost();
+    }
+
+    // keeps medoid s as the nearest or second nearest of series o if it is
+    private void insert(int o, int s, double d){
+        if (d < nearestDist[o]){
+            second[o] = nearest[o];
+            secondDist[o] = nearestDist[o];
+            nearest[o] = s;
+            nearestDist[o] = d;
+        }
+        else if (d < secondDist[o]){
+            second[o] = s;
+            secondDist[o] = d;
+        }
+    }
+
+    private void sumCost(){
+        cost = 0;
+
+        for (double d : nearestDist){
+            cost += d;
+        }
+    }
+
+    //increase in cost from removing each medoid, with each of its series moving to their second nearest medoid
+    private void removalLoss(double[] loss){
+        Arrays.fill(loss, 0);
+
+        for (int o = 0; o < nearest.length; o++){
+            loss[nearest[o]] += secondDist[o] - nearestDist[o];
+        }
+    }
+
+    //FastPAM1: the change in cost of swapping the candidate with each medoid, found in one pass over the series
+    private double swapDelta(DistanceMatrix matrix, int candidate, double[] loss, double[] delta, int[] slot){
+        System.arraycopy(loss, 0, delta, 0, k);
+        double added = 0;
+
+        for (int o = 0; o < nearest.length; o++){
+            double d = distance(matrix, o, candidate);
+
+            if (d < nearestDist[o]){
+                //o moves to the candidate whichever medoid is removed
+                added += d - nearestDist[o];
+                delta[nearest[o]] += nearestDist[o] - secondDist[o];
+            }
+            else if (d < secondDist[o]){
+                //o moves to the candidate if its nearest medoid is removed
+                delta[nearest[o]] += d - secondDist[o];
+            }
+        }
+
+        int best = 0;
+
+        for (int s = 1; s < k; s++){
+            if (delta[s] < delta[best]){
+                best = s;
+            }
+        }
+
+        slot[0] = best;
+        return delta[best] + added;
+    }
+
+    //the best swap of any candidate with any medoid, as the change in cost, medoid index and candidate
+    private double[] bestSwap(DistanceMatrix matrix, double[] loss) throws Exception {
+        double[] best = {Double.POSITIVE_INFINITY, -1, -1};
+
+        forEachBlock(nearest.length, (start, end, dm) -> {
+            double[] delta = new double[k];
+            int[] slot = new int[1];
+            double[] blockBest = {Double.POSITIVE_INFINITY, -1, -1};
+
+            for (int candidate = start; candidate < end; candidate++){
+                if (isMedoid[candidate]) continue;
+
+                double change = swapDelta(matrix, candidate, loss, delta, slot);
+
+                if (change < blockBest[0]){
+                    blockBest[0] = change;
+                    blockBest[1] = slot[0];
+                    blockBest[2] = candidate;
+                }
+            }
+
+            synchronized (best){
+                if (blockBest[0] < best[0] || (blockBest[0] == best[0] && blockBest[2] < best[2])){
+                    System.arraycopy(blockBest, 0, best, 0, 3);
+                }
+            }
+        });
+
+        return best;
+    }
+
+    private void swap(DistanceMatrix matrix, int slot, int candidate) throws Exception {
+        isMedoid[medoids[slot]] = false;
+        isMedoid[candidate] = true;
+        medoids[slot] = candidate;
+        updateNearest(matrix);
+    }
+
+    //CLARANS
+
+    private void clarans(TimeSeriesInstances data, Random rand) throws Exception {
+        int numInstances = data.numInstances();
+        long maxNeighbour = Math.max(250, Math.round(maxNeighbourProportion * k * (numInstances - k)));
+        double[] candidateDist = new double[numInstances];
+
+        double bestCost = Double.POSITIVE_INFINITY;
+        int[] bestMedoids = null;
+        int[] bestNearest = null;
+
+        for (int l = 0; l < numLocal; l++){
+            setMedoids(randomMedoids(numInstances, rand));
+            findNearest(data);
+
+            //swap a random medoid for a random series until maxNeighbour swaps in a row fail to improve
+            for (long j = 0; j < maxNeighbour; j++){
+                int slot = rand.nextInt(k);
+                int candidate;
+
+                do {
+                    candidate = rand.nextInt(numInstances);
+                } while (isMedoid[candidate]);
+
+                if (claransDelta(data, slot, candidate, candidateDist) < tolerance()){
+                    isMedoid[medoids[slot]] = false;
+                    isMedoid[candidate] = true;
+                    medoids[slot] = candidate;
+                    updateNearest(data, slot, candidateDist);
+                    j = -1;
+                }
+            }
+
+            if (cost < bestCost){
+                bestCost = cost;
+                bestMedoids = medoids.clone();
+                bestNearest = nearest.clone();
+            }
+        }
+
+        medoids = bestMedoids;
+        nearest = bestNearest;
+        cost = bestCost;
+    }
+
+    //finds the nearest and second nearest medoids of every series
+    private void findNearest(TimeSeriesInstances data) throws Exception {
+        forEachBlock(data.numInstances(), (start, end, dm) -> {
+            for (int o = start; o < end; o++){
+                findNearest(data, o, -1, null, dm);
+            }
+        });
+
+        sumCost();
+    }
+
+    //finds the nearest and second nearest medoids of series o, reusing the known distances to medoid slot
+    private void findNearest(TimeSeriesInstances data, int o, int slot, double[] slotDist, DistanceMeasure dm){
+        nearest[o] = second[o] = -1;
+        nearestDist[o] = secondDist[o] = Double.POSITIVE_INFINITY;
+        TimeSeriesInstance series = data.get(o);
+
+        for (int s = 0; s < k; s++){
+            double d;
+
+            if (o == medoids[s]){
+                d = 0;
+            }
+            else if (s == slot && slotDist[o] < Double.POSITIVE_INFINITY){
+                d = slotDist[o];
+            }
+            else{
+                //only the two nearest are needed
+                d = dm.distance(series, data.get(medoids[s]), secondDist[o]);
+            }
+
+            insert(o, s, d);
+        }
+    }
+
+    //the change in cost of swapping medoid slot for the candidate, distances to the candidate are abandoned beyond the
+    //second nearest medoid as they cannot change the nearest two
+    private double claransDelta(TimeSeriesInstances data, int slot, int candidate, double[] candidateDist)
+            throws Exception {
+        TimeSeriesInstance candidateSeries = data.get(candidate);
+        DTWEnvelope envelope = distanceMeasure instanceof DTWDistance
+                ? new DTWEnvelope(candidateSeries, ((DTWDistance) distanceMeasure).getWindow()) : null;
+        double[] total = new double[1];
+
+        forEachBlock(data.numInstances(), (start, end, dm) -> {
+            double sum = 0;
+
+            for (int o = start; o < end; o++){
+                double limit = secondDist[o];
+                double d;
+
+                if (o == candidate){
+                    d = 0;
+                }
+                else if (envelope != null && envelope.lowerBound(data.get(o), limit) >= limit){
+                    d = Double.POSITIVE_INFINITY;
+                }
+                else{
+                    d = dm.distance(data.get(o), candidateSeries, limit);
+                }
+
+                candidateDist[o] = d;
+
+                if (nearest[o] == slot){
+                    sum += Math.min(d, secondDist[o]) - nearestDist[o];
+                }
+                else{
+                    sum += Math.min(d - nearestDist[o], 0);
+                }
+            }
+
+            synchronized (total){
+                total[0] += sum;
+            }
+        });
+
+        return total[0];
+    }
+
+    //updates the nearest medoids after medoid slot is swapped for a series with the given distances
+    private void updateNearest(TimeSeriesInstances data, int slot, double[] candidateDist) throws Exception {
+        forEachBlock(data.numInstances(), (start, end, dm) -> {
+            for (int o = start; o < end; o++){
+                if (nearest[o] == slot || second[o] == slot){
+                    //the removed medoid was one of the nearest two, so the next nearest is unknown
+                    findNearest(data, o, slot, candidateDist, dm);
+                }
+                else{
+                    //distances at least the second nearest were abandoned and do not change the nearest two
+                    insert(o, slot, candidateDist[o]);
+                }
+            }
+        });
+
+        sumCost();
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.data_containers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A matrix of pairwise values, e.g. kernel evaluations or distances between the training instances, or between test
+ * and training instances.
+ * <p>
+ * A symmetric n by n matrix only stores the lower triangle including the diagonal, packed row by row into n(n+1)/2
+ * doubles, otherwise every row is stored. This is held on the heap, or for large matrices in a memory mapped file so
+ * the operating system pages it in and out as needed. A mapped matrix serialises the path of its file rather than its
+ * values, so the file must be left in place to read it back.
+ */
+public class PairwiseMatrix implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** entries in each mapped segment, 2^27 doubles is 1GB */
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /** a function of a pair of rows */
+    public interface Entry {
+        double value(int i, int j) throws Exception;
+    }
+
+    private final int numRows;
+    private final int numCols;
+    private final boolean symmetric;
+    private final File file;
+
+    private final double[] values;
+    private transient MappedByteBuffer[] buffers;
+    private transient DoubleBuffer[] segments;
+
+    /**
+     * Creates a symmetric matrix held on the heap.
+     *
+     * @param size number of rows
+     * @throws IllegalArgumentException if the matrix is too large for one array, use a file instead
+     */
+    public PairwiseMatrix(int size) {
+        this(size, size, true);
+    }
+
+    /**
+     * Creates a matrix with every entry stored held on the heap.
+     *
+     * @param numRows number of rows
+     * @param numCols number of columns
+     * @throws IllegalArgumentException if the matrix is too large for one array, use a file instead
+     */
+    public PairwiseMatrix(int numRows, int numCols) {
+        this(numRows, numCols, false);
+    }
+
+    private PairwiseMatrix(int numRows, int numCols, boolean symmetric) {
+        long numEntries = numEntries(numRows, numCols, symmetric);
+        if (numEntries > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("matrix of " + numEntries + " entries is too large for the heap, "
+                + "use a memory mapped file");
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.symmetric = symmetric;
+        file = null;
+        values = new double[(int) numEntries];
+    }
+
+    /**
+     * Creates a symmetric matrix held in a memory mapped file. The file is created or overwritten, and left in place
+     * afterwards.
+     *
+     * @param size number of rows
+     * @param file file to map
+     * @throws IOException if the file cannot be mapped
+     */
+    public PairwiseMatrix(int size, File file) throws IOException {
+        this(size, size, true, file);
+    }
+
+    /**
+     * Creates a matrix with every entry stored held in a memory mapped file. The file is created or overwritten, and
+     * left in place afterwards.
+     *
+     * @param numRows number of rows
+     * @param numCols number of columns
+     * @param file file to map
+     * @throws IOException if the file cannot be mapped
+     */
+    public PairwiseMatrix(int numRows, int numCols, File file) throws IOException {
+        this(numRows, numCols, false, file);
+    }
+
+    private PairwiseMatrix(int numRows, int numCols, boolean symmetric, File file) throws IOException {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.symmetric = symmetric;
+        this.file = file;
+        values = null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(numEntries() * Double.BYTES);
+        }
+        map();
+    }
+
+    private void map() throws IOException {
+        long numEntries = numEntries();
+        int numSegments = (int) ((numEntries + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        buffers = new MappedByteBuffer[numSegments];
+        segments = new DoubleBuffer[numSegments];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            if (raf.length() != numEntries * Double.BYTES)
+                throw new IOException("expected " + numEntries * Double.BYTES + " bytes in " + file + ", found "
+                    + raf.length());
+            for (int s = 0; s < numSegments; s++) {
+                long start = (long) s << SEGMENT_SHIFT;
+                long length = Math.min(numEntries - start, 1L << SEGMENT_SHIFT);
+                buffers[s] = channel.map(FileChannel.MapMode.READ_WRITE, start * Double.BYTES, length * Double.BYTES);
+                segments[s] = buffers[s].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            }
+        }
+    }
+
+    /**
+     * @return number of stored entries of a symmetric matrix with the given number of rows
+     */
+    public static long numEntries(int size) {
+        return numEntries(size, size, true);
+    }
+
+    private static long numEntries(int numRows, int numCols, boolean symmetric) {
+        return symmetric ? (long) numRows * (numRows + 1) / 2 : (long) numRows * numCols;
+    }
+
+    /**
+     * @return number of stored entries
+     */
+    public long numEntries() {
+        return numEntries(numRows, numCols, symmetric);
+    }
+
+    private long index(int i, int j) {
+        if (!symmetric)
+            return (long) i * numCols + j;
+        return i >= j ? (long) i * (i + 1) / 2 + j : (long) j * (j + 1) / 2 + i;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return numRows;
+    }
+
+    public int numRows() {
+        return numRows;
+    }
+
+    public int numCols() {
+        return numCols;
+    }
+
+    /**
+     * @return whether row i column j is the same entry as row j column i
+     */
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * @return the mapped file, or null if held on the heap
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the entry in row i column j, equal to row j column i if symmetric
+     */
+    public double get(int i, int j) {
+        long index = index(i, j);
+        if (values != null)
+            return values[(int) index];
+        return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+    }
+
+    /**
+     * Sets the entry in row i column j, and row j column i if symmetric.
+     */
+    public void set(int i, int j, double value) {
+        long index = index(i, j);
+        if (values != null)
+            values[(int) index] = value;
+        else
+            segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Writes any changes to a mapped matrix out to its file.
+     */
+    public void force() {
+        if (buffers != null) {
+            for (MappedByteBuffer buffer : buffers)
+                buffer.force();
+        }
+    }
+
+    /**
+     * Sets every stored entry, each row by a single thread. Rows are handed out last first, which for a symmetric
+     * matrix is longest first, so the threads finish together.
+     *
+     * @param entries supplies the function used by each thread, so functions with state are not shared
+     * @param numThreads number of threads, 1 or less to fill on the calling thread
+     * @throws Exception if any entry cannot be computed
+     */
+    public void fill(Supplier<? extends Entry> entries, int numThreads) throws Exception {
+        if (numThreads <= 1 || numRows < 2) {
+            fillRows(entries.get(), new AtomicInteger(numRows));
+            return;
+        }
+
+        AtomicInteger nextRow = new AtomicInteger(numRows);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            ArrayList<Future<Void>> futures = new ArrayList<>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                futures.add(executor.submit(() -> {
+                    fillRows(entries.get(), nextRow);
+                    return null;
+                }));
+            }
+            for (Future<Void> f : futures)
+                f.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void fillRows(Entry entry, AtomicInteger nextRow) throws Exception {
+        int i;
+        while ((i = nextRow.decrementAndGet()) >= 0) {
+            int rowLength = symmetric ? i + 1 : numCols;
+            for (int j = 0; j < rowLength; j++)
+                set(i, j, entry.value(i, j));
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        force();
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (file != null)
+            map();
+    }
+}
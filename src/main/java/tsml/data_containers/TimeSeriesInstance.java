@@ -840,6 +840,39 @@ public class TimeSeriesInstance implements Iterable<TimeSeries>, Serializable {
         return Objects.hash(seriesDimensions, labelIndex);
     }
 
+    // content hash is computed on first use, instances are not modified after creation
+    private transient long contentHash;
+    private transient boolean hasContentHash;
+
+    /**
+     * Returns a 64 bit hash of the values and the label index, or target value for regression. Unlike hashCode this is only computed once
+     * per instance and is stable between runs, so it can be used to key persistent caches.
+     *
+     * @return content hash
+     */
+    public long getContentHash() {
+        if (!hasContentHash) {
+            long hash = mixHash(0x9E3779B97F4A7C15L + seriesDimensions.size());
+            for (TimeSeries ts : seriesDimensions) {
+                hash = mixHash(hash + ts.getSeriesLength());
+                for (int i = 0; i < ts.getSeriesLength(); i++) {
+                    hash = mixHash(hash + Double.doubleToLongBits(ts.getValue(i)));
+                }
+            }
+            // target value is only meaningful for regression, some constructors leave it unset for classification
+            contentHash = mixHash(hash + (labelIndex >= 0 ? labelIndex : Double.doubleToLongBits(targetValue)));
+            hasContentHash = true;
+        }
+        return contentHash;
+    }
+
+    // splitmix64 finaliser
+    private static long mixHash(long x) {
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
     /**
      * Returns whether data has label index.
      *
@@ -24,6 +24,7 @@ import tsml.data_containers.TSCapabilities;
 import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 import utilities.InstanceTools;
+import utilities.numericalmethods.AutoCorrelationEngine;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -76,6 +77,8 @@ public class ACF implements Transformer {
     private int maxLag = DEFAULT_MAXLAG;
     /** Currently assumed constant for all series. Have to, using instances* */
     private int seriesLength;
+    /** Buffers reused between series */
+    private transient AutoCorrelationEngine engine;
 
     public void setMaxLag(int n) {
         maxLag = n;
@@ -200,48 +203,19 @@ public class ACF implements Transformer {
     }
 
     /**
-     * Note it is possible to do this with FFT in O(nlogn) BUT requires 2^n
-     * attributes
+     * Autocorrelations at lags 1 to maxLag, all lags found together with an FFT
+     * in O(n log n), see AutoCorrelationEngine
      * 
      * @param data
      * @return
      */
     public double[] fitAutoCorrelations(double[] data) {
-        double[] a = new double[maxLag];
-        if (!normalized) {
-            for (int i = 1; i <= maxLag; i++) {
-                double s1, s2, ss1, ss2, v1, v2;
-                a[i - 1] = 0;
-                s1 = s2 = ss1 = ss2 = 0;
-                for (int j = 0; j < data.length - i; j++) {
-                    s1 += data[j];
-                    ss1 += data[j] * data[j];
-                    s2 += data[j + i];
-                    ss2 += data[j + i] * data[j + i];
-                }
-                s1 /= data.length - i;
-                s2 /= data.length - i;
-                for (int j = 0; j < data.length - i; j++)
-                    a[i - 1] += (data[j] - s1) * (data[j + i] - s2);
-                a[i - 1] /= (data.length - i);
-                v1 = ss1 / (data.length - i) - s1 * s1;
-                v2 = ss2 / (data.length - i) - s2 * s2;
-                if (v1 == 0 && v2 == 0)// Both zero variance, both must be 100% corr
-                    a[i - 1] = 1;
-                else if (v1 == 0 || (v2 == 0))// One zero variance the other not
-                    a[i - 1] = 0;
-                else
-                    a[i - 1] /= Math.sqrt(v1) * Math.sqrt(v2);
-            }
-        } else {
-            for (int i = 1; i <= maxLag; i++) {
-                a[i - 1] = 0;
-                for (int j = 0; j < data.length - i; j++)
-                    a[i - 1] += data[j] * data[j + i];
-                a[i - 1] /= data.length;
-            }
+        if (engine == null) {
+            engine = new AutoCorrelationEngine();
+            engine.setConstantCorrelation(1);
         }
-        return a;
+        engine.setNormalised(normalized);
+        return engine.fitAutoCorrelations(data, maxLag);
     }
 
     /**
@@ -256,39 +230,9 @@ public class ACF implements Transformer {
     }
 
     public static double[] fitAutoCorrelations(double[] data, int mLag, boolean normalised) {
-        double[] a = new double[mLag];
-
-        if (!normalised) {
-            double s1, s2, ss1, ss2, v1, v2;
-            for (int i = 1; i <= mLag; i++) {
-                a[i - 1] = 0;
-                s1 = s2 = ss1 = ss2 = 0;
-                for (int j = 0; j < data.length - i; j++) {
-                    s1 += data[j];
-                    ss1 += data[j] * data[j];
-                    s2 += data[j + i];
-                    ss2 += data[j + i] * data[j + i];
-                }
-                s1 /= data.length - i;
-                s2 /= data.length - i;
-                for (int j = 0; j < data.length - i; j++)
-                    a[i - 1] += (data[j] - s1) * (data[j + i] - s2);
-                a[i - 1] /= (data.length - i);
-                v1 = ss1 / (data.length - i) - s1 * s1;
-                v2 = ss2 / (data.length - i) - s2 * s2;
-                if (v1 != 0 && v2 != 0)
-                    a[i - 1] /= Math.sqrt(v1) * Math.sqrt(v2);
-            }
-        } else {
-            for (int i = 1; i <= mLag; i++) {
-                a[i - 1] = 0;
-                for (int j = 0; j < data.length - i; j++)
-                    a[i - 1] += data[j] * data[j + i];
-                a[i - 1] /= data.length;
-            }
-        }
-
-        return a;
+        AutoCorrelationEngine engine = new AutoCorrelationEngine();
+        engine.setNormalised(normalised);
+        return engine.fitAutoCorrelations(data, mLag);
     }
 
     public String getRevision() {
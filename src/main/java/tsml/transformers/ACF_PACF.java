@@ -20,6 +20,7 @@ package tsml.transformers;
 import java.util.ArrayList;
 
 import utilities.InstanceTools;
+import utilities.numericalmethods.AutoCorrelationEngine;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
@@ -88,17 +89,18 @@ public class ACF_PACF extends PACF {
     @Override
     public Instance transform(Instance inst) {
         double[] d = InstanceTools.ConvertInstanceToArrayRemovingClassValue(inst);
+        if (engine == null)
+            engine = new AutoCorrelationEngine();
         // 2. Fit Autocorrelations, if not already set externally
-        autos = ACF.fitAutoCorrelations(d, maxLag);
-        // 3. Form Partials
-        partials = formPartials(autos);
-        // 5. Find parameters
+        autos = engine.fitAutoCorrelations(d, maxLag);
+        // 3. Form Partials, only the diagonal is needed
+        partials = null;
         double[] pi = new double[maxLag];
+        engine.fitPartialAutoCorrelations(autos, 0, maxLag, pi, 0);
+        // 5. Find parameters
         for (int k = 0; k < maxLag; k++) { // Set NANs to zero
-            if (Double.isNaN(partials[k][k]) || Double.isInfinite(partials[k][k])) {
+            if (Double.isNaN(pi[k]) || Double.isInfinite(pi[k]))
                 pi[k] = 0;
-            } else
-                pi[k] = partials[k][k];
         }
 
         int length = autos.length + (pi.length + inst.classIndex() >= 0 ? 1 : 0); // ACF atts + PACF atts + optional
@@ -149,6 +151,8 @@ public class ACF_PACF extends PACF {
     }
 
     public double[][] getPartials() {
+        if (partials == null && autos != null)
+            partials = formPartials(autos);
         return partials;
     }
 
@@ -35,6 +35,11 @@ public abstract class BaseTrainableTransformer implements TrainableTransformer {
     public void reset() {
         fitted = false;
     }
+
+    // for incremental fits which do not go through fit(TimeSeriesInstances)
+    protected void markFit() {
+        fitted = true;
+    }
     
     protected String[] getLabels() {
         return labels;
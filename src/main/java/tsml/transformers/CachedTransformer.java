@@ -17,10 +17,20 @@
  
 package tsml.transformers;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import experiments.data.DatasetLoading;
@@ -38,6 +48,15 @@ import weka.core.Instances;
  * be hashed first to use the cache reliably otherwise issues occur with
  * instance copying changing the hashcode due to memory locations.
  * <p>
+ * TimeSeriesInstances are keyed by their content hash, which is computed once per instance rather than hashing every
+ * value on every lookup. Each entry keeps the instance it was transformed from, which must equal the instance being
+ * looked up, so a hash collision is a cache miss rather than the wrong output. The in memory caches can be bounded,
+ * evicting the least recently used transforms first. If a cache directory is set transforms are also written to
+ * disk, keyed by the content hash and a SHA-256 digest of the transformer's class, ParamSet and serialised state, so
+ * they can be reused by later builds and other processes. Each file also holds the transformer's class name, ParamSet
+ * and state digest, and is only read back by a transformer with the same ones. Failing to write to the cache
+ * directory is logged and the transform is still returned.
+ * <p>
  * Contributors: goastler, abostrom
  */
 public class CachedTransformer extends BaseTrainableTransformer {
@@ -47,10 +66,18 @@ public class CachedTransformer extends BaseTrainableTransformer {
     // whether to only cache instances from the fit() call OR all instances handed
     // to the transform method
     private boolean cacheFittedDataOnly;
+    // the maximum number of transformed instances to hold in memory in each cache, -1 for no limit
+    private int maxCacheSize = -1;
+    // the directory to persist transformed instances to, null to only cache in memory
+    private File cacheDirectory;
 
-    // the cache to store instances against their corresponding transform output
-    private Map<TimeSeriesInstance, TimeSeriesInstance> tsCache; // use object as key so we can accept either inst or tsinst
+    // the cache to store instance content hashes against their corresponding transform output
+    private Map<Long, Entry> tsCache;
+    private Set<Long> fittedKeys;
     private Map<Instance, Instance> arffCache;
+    private Set<Instance> fittedInstances;
+    // identifies the transformer's output in the cache directory, found on first use
+    private transient Signature signature;
 
     public CachedTransformer(final Transformer transformer) {
         setTransformer(transformer);
@@ -66,10 +93,52 @@ public class CachedTransformer extends BaseTrainableTransformer {
         this.cacheFittedDataOnly = cacheFittedDataOnly;
     }
 
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize the maximum number of transformed instances held in memory, -1 for no limit. Applies to
+     *                     the TimeSeriesInstance and Instance caches separately
+     */
+    public synchronized void setMaxCacheSize(final int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        final Map<Long, Entry> previous = tsCache;
+        tsCache = new LruCache<>(maxCacheSize);
+        if(previous != null) {
+            tsCache.putAll(previous);
+        }
+        final Map<Instance, Instance> previousArff = arffCache;
+        arffCache = new LruCache<>(maxCacheSize);
+        if(previousArff != null) {
+            arffCache.putAll(previousArff);
+        }
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @param cacheDirectory directory to persist transformed instances to, shared between runs and processes. null
+     *                       to only cache in memory
+     */
+    public void setCacheDirectory(final File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        signature = null;
+    }
+
+    public void setCacheDirectory(final String cacheDirectory) {
+        setCacheDirectory(cacheDirectory == null ? null : new File(cacheDirectory));
+    }
+
     public void reset() {
         super.reset();
-        tsCache = new HashMap<>();
-        arffCache = new HashMap<>();
+        tsCache = new LruCache<>(maxCacheSize);
+        fittedKeys = new HashSet<>();
+        arffCache = new LruCache<>(maxCacheSize);
+        fittedInstances = new HashSet<>();
+        signature = null;
     }
 
     @Override
@@ -78,8 +147,8 @@ public class CachedTransformer extends BaseTrainableTransformer {
         if(transformer instanceof TrainableTransformer) {
             ((TrainableTransformer) transformer).fit(data);
         }
-        for (final Instance instance : data) {
-            arffCache.put(instance, null);
+        synchronized(this) {
+            fittedInstances.addAll(data);
         }
     }
 
@@ -88,9 +157,13 @@ public class CachedTransformer extends BaseTrainableTransformer {
         super.fit(data);
         if(transformer instanceof TrainableTransformer) {
             ((TrainableTransformer) transformer).fit(data);
+            // fitting may change the transform output, so the persistent key must be recomputed
+            signature = null;
         }
-        for (final TimeSeriesInstance instance : data) {
-            tsCache.put(instance, null);
+        synchronized(this) {
+            for (final TimeSeriesInstance instance : data) {
+                fittedKeys.add(instance.getContentHash());
+            }
         }
     }
 
@@ -102,6 +175,7 @@ public class CachedTransformer extends BaseTrainableTransformer {
     public void setTransformer(final Transformer transformer) {
         Assert.assertNotNull(transformer);
         this.transformer = transformer;
+        signature = null;
     }
 
     @Override
@@ -109,30 +183,144 @@ public class CachedTransformer extends BaseTrainableTransformer {
         if(!isFit()) {
             throw new IllegalStateException("must be fitted first");
         }
-        TimeSeriesInstance transformed = tsCache.get(inst);
-        if(transformed == null) {
-            transformed = transformer.transform(inst);
-            if(!cacheFittedDataOnly || tsCache.containsKey(inst)) {
-                tsCache.put(inst, transformed);
+        final long key = inst.getContentHash();
+        final boolean cache;
+        Entry entry;
+        synchronized(this) {
+            cache = !cacheFittedDataOnly || fittedKeys.contains(key);
+            entry = tsCache.get(key);
+        }
+        if(entry != null && !entry.isFor(inst)) {
+            // hash collision, the entry is for a different instance
+            entry = null;
+        }
+        if(entry == null && cache) {
+            entry = read(key, inst);
+            if(entry != null) {
+                synchronized(this) {
+                    tsCache.put(key, entry);
+                }
             }
         }
-        return transformed;
+        if(entry == null) {
+            entry = new Entry(inst, transformer.transform(inst));
+            if(cache) {
+                synchronized(this) {
+                    tsCache.put(key, entry);
+                }
+                write(key, entry);
+            }
+        }
+        return entry.transformed;
     }
 
     @Override public Instance transform(final Instance inst) {
         if(!isFit()) {
             throw new IllegalStateException("must be fitted first");
         }
-        Instance transformed = arffCache.get(inst);
+        Instance transformed;
+        synchronized(this) {
+            transformed = arffCache.get(inst);
+        }
         if(transformed == null) {
             transformed = transformer.transform(inst);
-            if(!cacheFittedDataOnly || arffCache.containsKey(inst)) {
-                arffCache.put(inst, transformed);
+            synchronized(this) {
+                if(!cacheFittedDataOnly || fittedInstances.contains(inst)) {
+                    arffCache.put(inst, transformed);
+                }
             }
         }
         return transformed;
     }
 
+    /**
+     * The signature of this transformer, whose directory is named by the transformer class and a digest of its
+     * ParamSet and serialised state, so differently configured or fitted transformers never share cached output.
+     */
+    private synchronized Signature getSignature() {
+        if(cacheDirectory == null) {
+            return null;
+        }
+        if(signature == null) {
+            try(ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(transformer);
+                out.flush();
+                signature = new Signature(cacheDirectory, transformer, sha256(bytes.toByteArray()));
+            } catch(IOException e) {
+                throw new IllegalStateException("transformer must be serializable to use a cache directory", e);
+            }
+        }
+        return signature;
+    }
+
+    private static String sha256(final byte[] bytes) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch(NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder hex = new StringBuilder(digest.length * 2);
+        for(byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private Entry read(final long key, final TimeSeriesInstance inst) {
+        final Signature signature = getSignature();
+        if(signature == null) {
+            return null;
+        }
+        final File file = new File(signature.directory, Long.toHexString(key) + ".ser");
+        if(!file.exists()) {
+            return null;
+        }
+        try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // the file may be from a different transformer whose directory has the same name
+            if(!signature.className.equals(in.readObject()) || !signature.params.equals(in.readObject())
+                       || !signature.state.equals(in.readObject())) {
+                return null;
+            }
+            final Object entry = in.readObject();
+            // the file may hold the transform of a different instance with the same hash
+            if(entry instanceof Entry && ((Entry) entry).isFor(inst)) {
+                return (Entry) entry;
+            }
+            return null;
+        } catch(IOException | ClassNotFoundException e) {
+            // unreadable (e.g. partially written by a killed process), the transform is redone and the file replaced
+            return null;
+        }
+    }
+
+    private void write(final long key, final Entry entry) {
+        final Signature signature = getSignature();
+        if(signature == null) {
+            return;
+        }
+        final File directory = signature.directory;
+        try {
+            Files.createDirectories(directory.toPath());
+            // write to a temporary file then move, so other processes never read a partial file
+            final File temp = File.createTempFile(Long.toHexString(key), ".tmp", directory);
+            try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeObject(signature.className);
+                out.writeObject(signature.params);
+                out.writeObject(signature.state);
+                out.writeObject(entry);
+            }
+            Files.move(temp.toPath(), new File(directory, Long.toHexString(key) + ".ser").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            // the cache is only an optimisation, so carry on with the transform held in memory
+            Logger.getLogger(CachedTransformer.class.getName()).log(Level.WARNING,
+                    "failed to write to cache directory " + directory, e);
+        }
+    }
+
     @Override
     public Instances determineOutputFormat(final Instances data) throws IllegalArgumentException {
         return transformer.determineOutputFormat(data);
@@ -155,6 +343,54 @@ public class CachedTransformer extends BaseTrainableTransformer {
 
     public static final String TRANSFORMER_FLAG = "f";
 
+    // a transformed instance and the instance it was transformed from
+    private static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final TimeSeriesInstance source;
+        private final TimeSeriesInstance transformed;
+
+        Entry(final TimeSeriesInstance source, final TimeSeriesInstance transformed) {
+            this.source = source;
+            this.transformed = transformed;
+        }
+
+        boolean isFor(final TimeSeriesInstance inst) {
+            return source == inst || source.equals(inst);
+        }
+    }
+
+    // the transformer's class name, ParamSet and digest of its serialised state, and the directory named by them
+    private static class Signature {
+        private final String className;
+        private final String params;
+        private final String state;
+        private final File directory;
+
+        Signature(final File cacheDirectory, final Transformer transformer, final String state) {
+            className = transformer.getClass().getName();
+            params = transformer.getParams().toString();
+            this.state = state;
+            final String key = sha256((className + "\n" + params + "\n" + state).getBytes(StandardCharsets.UTF_8));
+            directory = new File(cacheDirectory, transformer.getClass().getSimpleName() + "_" + key.substring(0, 16));
+        }
+    }
+
+    // access ordered map which evicts the least recently used entry once full
+    private static class LruCache<A, B> extends LinkedHashMap<A, B> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        LruCache(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<A, B> eldest) {
+            return maxSize >= 0 && size() > maxSize;
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         final CachedTransformer ct = new CachedTransformer(new Derivative());
         final List<TimeSeriesInstances> data =
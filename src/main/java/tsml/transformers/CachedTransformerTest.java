@@ -0,0 +1,215 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+public class CachedTransformerTest {
+
+    // counts the series it transforms. The count is transient so it is not part of the serialised state
+    private static class CountingPAA extends PAA {
+        private static final long serialVersionUID = 1L;
+        private transient int count;
+
+        CountingPAA(int numIntervals) {
+            setNumIntervals(numIntervals);
+        }
+
+        @Override
+        public TimeSeriesInstance transform(TimeSeriesInstance inst) {
+            count++;
+            return super.transform(inst);
+        }
+
+        @Override
+        public Instance transform(Instance inst) {
+            count++;
+            return super.transform(inst);
+        }
+    }
+
+    private TimeSeriesInstances data;
+    private File cacheDirectory;
+
+    @Before
+    public void before() throws IOException {
+        final Random random = new Random(0);
+        final double[][][] values = new double[10][1][24];
+        final int[] labels = new int[values.length];
+        for(int i = 0; i < values.length; i++) {
+            for(int j = 0; j < values[i][0].length; j++) {
+                values[i][0][j] = random.nextGaussian();
+            }
+            labels[i] = i % 2;
+        }
+        data = new TimeSeriesInstances(values, labels, new String[] {"a", "b"});
+        cacheDirectory = Files.createTempDirectory("cachedTransformer").toFile();
+    }
+
+    @After
+    public void after() {
+        delete(cacheDirectory);
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private CachedTransformer diskCached(CountingPAA paa) {
+        final CachedTransformer cached = new CachedTransformer(paa);
+        cached.setCacheDirectory(cacheDirectory);
+        cached.fit(data);
+        return cached;
+    }
+
+    // transforms every series, checking the output against the transform without a cache
+    private void assertTransformsAll(CachedTransformer cached, int numIntervals) {
+        final PAA paa = new PAA();
+        paa.setNumIntervals(numIntervals);
+        for(TimeSeriesInstance inst : data) {
+            Assert.assertArrayEquals(paa.transform(inst).toValueArray()[0], cached.transform(inst).toValueArray()[0],
+                    0);
+        }
+    }
+
+    private File[] transformerDirectories() {
+        final File[] directories = cacheDirectory.listFiles(File::isDirectory);
+        Assert.assertNotNull(directories);
+        return directories;
+    }
+
+    @Test
+    public void memoryCachesEvictLeastRecentlyUsed() {
+        final CountingPAA paa = new CountingPAA(4);
+        final CachedTransformer cached = new CachedTransformer(paa);
+        cached.setMaxCacheSize(2);
+        cached.fit(data);
+        final TimeSeriesInstance a = data.get(0);
+        final TimeSeriesInstance b = data.get(1);
+        final TimeSeriesInstance c = data.get(2);
+        cached.transform(a);
+        cached.transform(b);
+        cached.transform(c);
+        Assert.assertEquals(3, paa.count);
+        // a was evicted by c, b and c are held
+        cached.transform(c);
+        cached.transform(b);
+        Assert.assertEquals(3, paa.count);
+        // c is now the least recently used, so is evicted by a
+        cached.transform(a);
+        Assert.assertEquals(4, paa.count);
+        cached.transform(b);
+        Assert.assertEquals(4, paa.count);
+        cached.transform(c);
+        Assert.assertEquals(5, paa.count);
+
+        final Instances arff = Converter.toArff(data);
+        final CountingPAA arffPaa = new CountingPAA(4);
+        final CachedTransformer arffCached = new CachedTransformer(arffPaa);
+        arffCached.setMaxCacheSize(2);
+        arffCached.fit(arff);
+        for(int i = 0; i < 3; i++) {
+            arffCached.transform(arff.get(i));
+        }
+        arffCached.transform(arff.get(2));
+        arffCached.transform(arff.get(1));
+        Assert.assertEquals(3, arffPaa.count);
+        arffCached.transform(arff.get(0));
+        Assert.assertEquals(4, arffPaa.count);
+    }
+
+    @Test
+    public void diskCacheIsReusedByTheSameConfiguration() {
+        final CountingPAA first = new CountingPAA(4);
+        assertTransformsAll(diskCached(first), 4);
+        Assert.assertEquals(data.numInstances(), first.count);
+
+        // a new transformer with an empty memory cache reads every transform from disk
+        final CountingPAA second = new CountingPAA(4);
+        assertTransformsAll(diskCached(second), 4);
+        Assert.assertEquals(0, second.count);
+        Assert.assertEquals(1, transformerDirectories().length);
+    }
+
+    @Test
+    public void diskCacheIsNotSharedBetweenConfigurations() {
+        final CountingPAA four = new CountingPAA(4);
+        assertTransformsAll(diskCached(four), 4);
+        final CountingPAA six = new CountingPAA(6);
+        assertTransformsAll(diskCached(six), 6);
+        Assert.assertEquals(data.numInstances(), six.count);
+        Assert.assertEquals(2, transformerDirectories().length);
+    }
+
+    @Test
+    public void fileOfAnotherTransformerIsIgnored() throws IOException {
+        assertTransformsAll(diskCached(new CountingPAA(4)), 4);
+        final File fourDirectory = transformerDirectories()[0];
+        assertTransformsAll(diskCached(new CountingPAA(6)), 6);
+        File sixDirectory = transformerDirectories()[0];
+        if(sixDirectory.equals(fourDirectory)) {
+            sixDirectory = transformerDirectories()[1];
+        }
+        // as if the two directory names collided, the files hold the transforms of the other configuration
+        final File[] files = fourDirectory.listFiles();
+        Assert.assertNotNull(files);
+        for(File file : files) {
+            Files.copy(file.toPath(), new File(sixDirectory, file.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        final CountingPAA six = new CountingPAA(6);
+        assertTransformsAll(diskCached(six), 6);
+        Assert.assertEquals(data.numInstances(), six.count);
+    }
+
+    @Test
+    public void truncatedFileIsRecomputed() throws IOException {
+        assertTransformsAll(diskCached(new CountingPAA(4)), 4);
+        final File[] files = transformerDirectories()[0].listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(data.numInstances(), files.length);
+        try(RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+
+        final CountingPAA paa = new CountingPAA(4);
+        assertTransformsAll(diskCached(paa), 4);
+        Assert.assertEquals(1, paa.count);
+    }
+}
@@ -17,11 +17,8 @@
 
 package tsml.transformers;
 
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import utilities.GenericTools;
+import utilities.numericalmethods.SpectralEngine;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
 import weka.core.Instance;
@@ -65,7 +62,7 @@ public class Catch22 implements Transformer {
     private double idxMin;
     private double idxMax;
     private double idxMean;
-    private Complex[] idxFFT;
+    private double[] idxPS;
     private double[] idxAC;
     private int idxACFZ;
     private double[] idxOutlierSeries;
@@ -155,19 +152,9 @@ public class Catch22 implements Transformer {
         }
         mean /= arr.length;
 
-        int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(series.length) / Math.log(2)));
-        Complex[] fft = new Complex[nfft];
-        for (int j = 0; j < nfft; j++) {
-            if (j < series.length)
-                fft[j] = new Complex(series[j] - mean, 0);
-            else
-                fft[j] = new Complex(0, 0);
-        }
-
-        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-        fft = f.transform(fft, TransformType.FORWARD);
+        double[] ps = powerSpectrum(series, mean);
 
-        double[] ac = autoCorr(arr, fft);
+        double[] ac = autoCorr(arr, ps);
 
         int acfz = acFirstZero(ac);
 
@@ -178,8 +165,8 @@ public class Catch22 implements Transformer {
         featureSet[4] = outlierIncludeN001mdrmdDN(outlierArr);
         featureSet[5] = f1ecacCO(ac);
         featureSet[6] = firstMinacCO(ac);
-        featureSet[7] = summariesWelchRectArea51SP(arr, fft);
-        featureSet[8] = summariesWelchRectCentroidSP(arr, fft);
+        featureSet[7] = summariesWelchRectArea51SP(arr, ps);
+        featureSet[8] = summariesWelchRectCentroidSP(arr, ps);
         featureSet[9] = localSimpleMean3StderrFC(arr);
         featureSet[10] = trev1NumCO(arr);
         featureSet[11] = histogramAMIeven25CO(arr, min, max);
@@ -211,7 +198,7 @@ public class Catch22 implements Transformer {
             idxMin = Double.MAX_VALUE;
             idxMax = -99999999;
             idxMean = Double.MIN_VALUE;
-            idxFFT = null;
+            idxPS = null;
             idxAC = null;
             idxACFZ = -1;
             idxOutlierSeries = null;
@@ -259,47 +246,25 @@ public class Catch22 implements Transformer {
                 break;
             case 7:
             case 8:
-                if (idxFFT == null) {
+                if (idxPS == null) {
                     if (idxMean == Double.MIN_VALUE) {
                         idxMean = mean(idxSeries);
                     }
-
-                    int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(idxSeries.length) / Math.log(2)));
-                    idxFFT = new Complex[nfft];
-                    for (int j = 0; j < nfft; j++) {
-                        if (j < idxSeries.length)
-                            idxFFT[j] = new Complex(idxSeries[j] - idxMean, 0);
-                        else
-                            idxFFT[j] = new Complex(0, 0);
-                    }
-
-                    FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                    idxFFT = f.transform(idxFFT, TransformType.FORWARD);
+                    idxPS = powerSpectrum(idxSeries, idxMean);
                 }
                 break;
             case 5:
             case 6:
             case 12:
                 if (idxAC == null) {
-                    if (idxFFT == null) {
+                    if (idxPS == null) {
                         if (idxMean == Double.MIN_VALUE) {
                             idxMean = mean(idxSeries);
                         }
-
-                        int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(idxSeries.length) / Math.log(2)));
-                        idxFFT = new Complex[nfft];
-                        for (int j = 0; j < nfft; j++) {
-                            if (j < idxSeries.length)
-                                idxFFT[j] = new Complex(idxSeries[j] - idxMean, 0);
-                            else
-                                idxFFT[j] = new Complex(0, 0);
-                        }
-
-                        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                        idxFFT = f.transform(idxFFT, TransformType.FORWARD);
+                        idxPS = powerSpectrum(idxSeries, idxMean);
                     }
 
-                    idxAC = autoCorr(idxSeries, idxFFT);
+                    idxAC = autoCorr(idxSeries, idxPS);
                 }
                 break;
             case 16:
@@ -307,25 +272,14 @@ public class Catch22 implements Transformer {
             case 20:
                 if (idxACFZ == -1){
                     if (idxAC == null) {
-                        if (idxFFT == null) {
+                        if (idxPS == null) {
                             if (idxMean == Double.MIN_VALUE) {
                                 idxMean = mean(idxSeries);
                             }
-
-                            int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(idxSeries.length) / Math.log(2)));
-                            idxFFT = new Complex[nfft];
-                            for (int j = 0; j < nfft; j++) {
-                                if (j < idxSeries.length)
-                                    idxFFT[j] = new Complex(idxSeries[j] - idxMean, 0);
-                                else
-                                    idxFFT[j] = new Complex(0, 0);
-                            }
-
-                            FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                            idxFFT = f.transform(idxFFT, TransformType.FORWARD);
+                            idxPS = powerSpectrum(idxSeries, idxMean);
                         }
 
-                        idxAC = autoCorr(idxSeries, idxFFT);
+                        idxAC = autoCorr(idxSeries, idxPS);
                     }
                     idxACFZ = acFirstZero(idxAC);
                 }
@@ -356,10 +310,10 @@ public class Catch22 implements Transformer {
                 feature = firstMinacCO(idxAC);
                 break;
             case 7:
-                feature = summariesWelchRectArea51SP(idxSeries, idxFFT);
+                feature = summariesWelchRectArea51SP(idxSeries, idxPS);
                 break;
             case 8:
-                feature = summariesWelchRectCentroidSP(idxSeries, idxFFT);
+                feature = summariesWelchRectCentroidSP(idxSeries, idxPS);
                 break;
             case 9:
                 feature = localSimpleMean3StderrFC(idxSeries);
@@ -415,7 +369,7 @@ public class Catch22 implements Transformer {
         double min = Double.MAX_VALUE;
         double max = -99999999;
         double mean = Double.MIN_VALUE;
-        Complex[] fft = null;
+        double[] ps = null;
         double[] ac = null;
         int acfz = -1;
         double[] newSeries = series;
@@ -452,56 +406,23 @@ public class Catch22 implements Transformer {
             case 7:
             case 8:
                 mean = mean(newSeries);
-
-                int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(newSeries.length) / Math.log(2)));
-                fft = new Complex[nfft];
-                for (int j = 0; j < nfft; j++) {
-                    if (j < newSeries.length)
-                        fft[j] = new Complex(newSeries[j] - mean, 0);
-                    else
-                        fft[j] = new Complex(0, 0);
-                }
-
-                FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-                fft = f.transform(fft, TransformType.FORWARD);
+                ps = powerSpectrum(newSeries, mean);
                 break;
             case 5:
             case 6:
             case 12:
                 mean = mean(newSeries);
+                ps = powerSpectrum(newSeries, mean);
 
-                int nfft2 = (int) Math.pow(2.0, (int) Math.ceil(Math.log(newSeries.length) / Math.log(2)));
-                fft = new Complex[nfft2];
-                for (int j = 0; j < nfft2; j++) {
-                    if (j < newSeries.length)
-                        fft[j] = new Complex(newSeries[j] - mean, 0);
-                    else
-                        fft[j] = new Complex(0, 0);
-                }
-
-                FastFourierTransformer f2 = new FastFourierTransformer(DftNormalization.STANDARD);
-                fft = f2.transform(fft, TransformType.FORWARD);
-
-                ac = autoCorr(newSeries, fft);
+                ac = autoCorr(newSeries, ps);
                 break;
             case 16:
             case 17:
             case 20:
                 mean = mean(newSeries);
+                ps = powerSpectrum(newSeries, mean);
 
-                int nfft3 = (int) Math.pow(2.0, (int) Math.ceil(Math.log(newSeries.length) / Math.log(2)));
-                fft = new Complex[nfft3];
-                for (int j = 0; j < nfft3; j++) {
-                    if (j < newSeries.length)
-                        fft[j] = new Complex(newSeries[j] - mean, 0);
-                    else
-                        fft[j] = new Complex(0, 0);
-                }
-
-                FastFourierTransformer f3 = new FastFourierTransformer(DftNormalization.STANDARD);
-                fft = f3.transform(fft, TransformType.FORWARD);
-
-                ac = autoCorr(newSeries, fft);
+                ac = autoCorr(newSeries, ps);
 
                 acfz = acFirstZero(ac);
                 break;
@@ -532,10 +453,10 @@ public class Catch22 implements Transformer {
                 feature = firstMinacCO(ac);
                 break;
             case 7:
-                feature = summariesWelchRectArea51SP(newSeries, fft);
+                feature = summariesWelchRectArea51SP(newSeries, ps);
                 break;
             case 8:
-                feature = summariesWelchRectCentroidSP(newSeries, fft);
+                feature = summariesWelchRectCentroidSP(newSeries, ps);
                 break;
             case 9:
                 feature = localSimpleMean3StderrFC(newSeries);
@@ -677,13 +598,13 @@ public class Catch22 implements Transformer {
     }
 
     // Total power in lowest fifth of frequencies in the Fourier power spectrum
-    private static double summariesWelchRectArea51SP(double[] arr, Complex[] fft) {
-        return summariesWelchRect(arr, false, fft);
+    private static double summariesWelchRectArea51SP(double[] arr, double[] ps) {
+        return summariesWelchRect(arr, false, ps);
     }
 
     // Centroid of the Fourier power spectrum
-    private static double summariesWelchRectCentroidSP(double[] arr, Complex[] fft) {
-        return summariesWelchRect(arr, true, fft);
+    private static double summariesWelchRectCentroidSP(double[] arr, double[] ps) {
+        return summariesWelchRect(arr, true, ps);
     }
 
     // Mean error from a rolling 3-sample mean forecasting
@@ -844,19 +765,9 @@ public class Catch22 implements Transformer {
         double[] res = localSimpleMean(arr, 1);
         double mean = mean(res);
 
-        int nfft = (int) Math.pow(2.0, (int) Math.ceil(Math.log(res.length) / Math.log(2)));
-        Complex[] fft = new Complex[nfft];
-        for (int j = 0; j < nfft; j++) {
-            if (j < res.length)
-                fft[j] = new Complex(res[j] - mean, 0);
-            else
-                fft[j] = new Complex(0, 0);
-        }
-
-        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-        fft = f.transform(fft, TransformType.FORWARD);
+        double[] ps = powerSpectrum(res, mean);
 
-        double[] resAc = autoCorr(res, fft);
+        double[] resAc = autoCorr(res, ps);
 
         return (double) acFirstZero(resAc) / acfz;
     }
@@ -1164,38 +1075,31 @@ public class Catch22 implements Transformer {
         return median(Arrays.copyOf(medians, trimLimit + 1), false);
     }
 
-    private static double[] autoCorr(double[] arr, Complex[] fft) {
-        Complex[] c = new Complex[fft.length];
-        for (int i = 0; i < fft.length; i++) {
-            c[i] = fft[i].multiply(new Complex(fft[i].getReal(), -fft[i].getImaginary()));
-        }
-
-        FastFourierTransformer f = new FastFourierTransformer(DftNormalization.STANDARD);
-        c = f.transform(c, TransformType.INVERSE);
-
-        double[] acf = new double[arr.length];
-        double d = c[0].getReal();
-        if (d != 0) {
-            for (int i = 0; i < arr.length; i++) {
-                acf[i] = c[i].getReal() / d;
-            }
+    // squared magnitudes of the fft of the series minus its mean, zero padded to a power of 2
+    private static double[] powerSpectrum(double[] arr, double mean) {
+        double[] centred = new double[arr.length];
+        for (int i = 0; i < arr.length; i++) {
+            centred[i] = arr[i] - mean;
         }
+        return SpectralEngine.powerSpectrum(centred, SpectralEngine.nextPowerOf2(arr.length), 0);
+    }
 
-        return acf;
+    private static double[] autoCorr(double[] arr, double[] ps) {
+        return SpectralEngine.circularAutocorrelation(ps, SpectralEngine.nextPowerOf2(arr.length), arr.length);
     }
 
-    private static double summariesWelchRect(double[] arr, boolean centroid, Complex[] fft) {
-        int newLength = fft.length / 2 + 1;
+    private static double summariesWelchRect(double[] arr, boolean centroid, double[] ps) {
+        int newLength = ps.length;
         double[] p = new double[newLength];
         double pi2 = 2 * Math.PI;
-        p[0] = (Math.pow(complexMagnitude(fft[0]), 2) / arr.length) / pi2;
+        p[0] = (ps[0] / arr.length) / pi2;
         for (int i = 1; i < newLength - 1; i++) {
-            p[i] = ((Math.pow(complexMagnitude(fft[i]), 2) / arr.length) * 2) / pi2;
+            p[i] = ((ps[i] / arr.length) * 2) / pi2;
         }
-        p[newLength - 1] = (Math.pow(complexMagnitude(fft[newLength - 1]), 2) / arr.length) / pi2;
+        p[newLength - 1] = (ps[newLength - 1] / arr.length) / pi2;
 
         double[] w = new double[newLength];
-        double a = 1.0 / fft.length;
+        double a = 1.0 / SpectralEngine.nextPowerOf2(arr.length);
         for (int i = 0; i < newLength; i++) {
             w[i] = i * a * Math.PI * 2;
         }
@@ -1225,10 +1129,6 @@ public class Catch22 implements Transformer {
         }
     }
 
-    private static double complexMagnitude(Complex c){
-        return Math.sqrt(c.getReal() * c.getReal() + c.getImaginary() * c.getImaginary());
-    }
-
     private static double[] localSimpleMean(double[] arr, int trainLength) {
         double[] res = new double[arr.length - trainLength];
         for (int i = 0; i < res.length; i++) {
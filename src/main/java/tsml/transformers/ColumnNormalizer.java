@@ -53,6 +53,7 @@ package tsml.transformers;
 
 import org.apache.commons.lang3.NotImplementedException;
 
+import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.TimeSeriesSummaryStatistics;
@@ -60,6 +61,8 @@ import utilities.ArrayUtilities;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import java.util.Arrays;
+
 public class ColumnNormalizer implements TrainableTransformer {
 	public enum NormType {
 		INTERVAL, STD_NORMAL
@@ -73,6 +76,11 @@ public class ColumnNormalizer implements TrainableTransformer {
 	NormType norm = NormType.INTERVAL;
 	boolean isFit;
 
+	// running statistics for partialFit, pooled over every dimension at each time point
+	private long[] count;
+	private double[] runningMean;
+	private double[] runningM2;
+
 	public ColumnNormalizer() {
 	}
 
@@ -119,19 +127,65 @@ public class ColumnNormalizer implements TrainableTransformer {
 	}
 
 	protected void findStats(TimeSeriesInstances r) {
-		max = new double[r.getMaxLength()];
-		min = new double[r.getMaxLength()];
-		mean = new double[r.getMaxLength()];
-		stdev = new double[r.getMaxLength()];
+		// one pass over the data rather than a pass for each time point
+		count = null;
+		for (TimeSeriesInstance inst : r) {
+			updateStats(inst);
+		}
+		finishStats();
+	}
 
-		for (int j = 0; j < r.getMaxLength(); j++) {
-			double[] slice = r.getVSliceArray(j);
+	// Welford's online algorithm for the mean and variance, which is stable in a single pass
+	private void updateStats(TimeSeriesInstance inst) {
+		int length = inst.getMaxLength();
+		if (count == null) {
+			count = new long[length];
+			runningMean = new double[length];
+			runningM2 = new double[length];
+			min = new double[length];
+			max = new double[length];
+			Arrays.fill(min, Double.MAX_VALUE);
+			Arrays.fill(max, -Double.MAX_VALUE);
+		} else if (length > count.length) {
+			int oldLength = count.length;
+			count = Arrays.copyOf(count, length);
+			runningMean = Arrays.copyOf(runningMean, length);
+			runningM2 = Arrays.copyOf(runningM2, length);
+			min = Arrays.copyOf(min, length);
+			max = Arrays.copyOf(max, length);
+			Arrays.fill(min, oldLength, length, Double.MAX_VALUE);
+			Arrays.fill(max, oldLength, length, -Double.MAX_VALUE);
+		}
+
+		for (TimeSeries ts : inst) {
+			for (int j = 0; j < ts.getSeriesLength(); j++) {
+				if (!ts.hasValidValueAt(j))
+					continue;
+
+				double x = ts.getValue(j);
+				if (x > max[j])
+					max[j] = x;
+				if (x < min[j])
+					min[j] = x;
+
+				count[j]++;
+				double delta = x - runningMean[j];
+				runningMean[j] += delta / count[j];
+				runningM2[j] += delta * (x - runningMean[j]);
+			}
+		}
+	}
 
-			max[j] = TimeSeriesSummaryStatistics.max(slice);
-			min[j] = TimeSeriesSummaryStatistics.min(slice);
-			mean[j] = TimeSeriesSummaryStatistics.mean(slice);
-			stdev[j] = Math.sqrt(TimeSeriesSummaryStatistics.variance(slice, mean[j]));
+	private void finishStats() {
+		mean = runningMean;
+		stdev = new double[mean.length];
+		for (int j = 0; j < stdev.length; j++) {
+			stdev[j] = Math.sqrt(runningM2[j] / count[j]);
 		}
+
+		count = null;
+		runningMean = null;
+		runningM2 = null;
 	}
 
 	public double[] getRanges() {
@@ -148,7 +202,21 @@ public class ColumnNormalizer implements TrainableTransformer {
 
 	@Override
 	public TimeSeriesInstance transform(TimeSeriesInstance inst) {
-		throw new NotImplementedException("Column wise normalisation doesn't make sense for single instances");
+		if (!isFit)
+			throw new NotImplementedException("Column wise normalisation doesn't make sense for single instances " +
+					"until the column statistics have been fit");
+
+		double[][] out = null;
+		switch (norm) {
+			case INTERVAL:
+				out = intervalNorm(inst);
+				break;
+			case STD_NORMAL:
+				out = standardNorm(inst);
+				break;
+		}
+
+		return new TimeSeriesInstance(ArrayUtilities.transposeMatrix(out), inst.getLabelIndex());
 	}
 
 	// This should probably be connected to trainData?
@@ -205,15 +273,19 @@ public class ColumnNormalizer implements TrainableTransformer {
 
 	public double[][][] standardNorm(TimeSeriesInstances r) {
 		double[][][] out = new double[r.numInstances()][][];
+		int i = 0;
+		for (TimeSeriesInstance inst : r) {
+			out[i++] = ArrayUtilities.transposeMatrix(standardNorm(inst));
+		}
+		return out;
+	}
 
-		int index=0;
-		for(int i=0; i<r.numInstances(); i++){
-			out[index] =  new double[r.getMaxLength()][];
-			for (int j = 0; j < r.getMaxLength(); j++) {
-				out[index][j] = TimeSeriesSummaryStatistics.standardNorm(r.get(i).getVSliceArray(j), mean[j], stdev[j]);
-			}
-			out[index++] = ArrayUtilities.transposeMatrix(out[index]);
+	public double[][] standardNorm(TimeSeriesInstance r) {
+		double[][] out = new double[r.getMaxLength()][];
+		for (int j = 0; j < r.getMaxLength(); j++) {
+			out[j] = TimeSeriesSummaryStatistics.standardNorm(r.getVSliceArray(j), mean[j], stdev[j]);
 		}
+
 		return out;
 	}
 
@@ -276,5 +348,20 @@ public class ColumnNormalizer implements TrainableTransformer {
 		isFit = true;
 	}
 
+	@Override
+	public void partialFit(TimeSeriesInstance inst) {
+		isFit = false;
+		updateStats(inst);
+	}
+
+	@Override
+	public void finishFit() {
+		if (count == null)
+			throw new IllegalStateException("finishFit called before partialFit");
+
+		finishStats();
+		isFit = true;
+	}
+
 
 }
@@ -53,7 +53,7 @@ public class Derivative implements Transformer, Serializable {
     }
 
     @Override public boolean equals(final Object o) {
-        return super.equals(o) && o instanceof Derivative; // no internal state, so always equal
+        return o instanceof Derivative; // no internal state, so always equal
     }
 
     @Override public int hashCode() {
@@ -94,7 +94,8 @@ public class Derivative implements Transformer, Serializable {
 
     @Override
     public Instance transform(Instance inst) {
-        final double[] derivative = getDerivative(inst.toDoubleArray(), true);
+        final double[] derivative = getDerivative(inst.toDoubleArray(),
+                inst.dataset() != null && inst.classIndex() >= 0);
         final Instance copy = new DenseInstance(inst.weight(), derivative);
         copy.setDataset(inst.dataset());
         return copy;                                                                      // careful!
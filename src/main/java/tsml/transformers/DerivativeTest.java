@@ -0,0 +1,81 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.data_containers.TimeSeriesInstance;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class DerivativeTest {
+
+    private static final double[] SERIES = {1, 3, 2, 6, 4, 4, 9};
+
+    private static Instances header(int numAttributes, boolean withClass) {
+        final ArrayList<Attribute> attributes = new ArrayList<>();
+        for(int i = 0; i < numAttributes - 1; i++) {
+            attributes.add(new Attribute("att" + i));
+        }
+        if(withClass) {
+            attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+        } else {
+            attributes.add(new Attribute("att" + (numAttributes - 1)));
+        }
+        final Instances header = new Instances("series", attributes, 1);
+        if(withClass) {
+            header.setClassIndex(numAttributes - 1);
+        }
+        return header;
+    }
+
+    // the derivative of the whole series, as found for a TimeSeriesInstance
+    private static double[] derivative(double[] series) {
+        return new Derivative().transform(new TimeSeriesInstance(new double[][] {series})).toValueArray()[0];
+    }
+
+    @Test
+    public void instanceWithoutDatasetTransformsEveryValue() {
+        final Instance inst = new DenseInstance(1, SERIES.clone());
+        Assert.assertArrayEquals(derivative(SERIES), new Derivative().transform(inst).toDoubleArray(), 0);
+    }
+
+    @Test
+    public void instanceWithoutClassTransformsEveryValue() {
+        final Instances data = header(SERIES.length, false);
+        final Instance inst = new DenseInstance(1, SERIES.clone());
+        inst.setDataset(data);
+        Assert.assertArrayEquals(derivative(SERIES), new Derivative().transform(inst).toDoubleArray(), 0);
+    }
+
+    @Test
+    public void instanceWithClassKeepsClassValue() {
+        final Instances data = header(SERIES.length + 1, true);
+        final double[] values = Arrays.copyOf(SERIES, SERIES.length + 1);
+        values[SERIES.length] = 1;
+        final Instance inst = new DenseInstance(1, values);
+        inst.setDataset(data);
+        final double[] expected = Arrays.copyOf(derivative(SERIES), SERIES.length + 1);
+        expected[SERIES.length] = 1;
+        Assert.assertArrayEquals(expected, new Derivative().transform(inst).toDoubleArray(), 0);
+    }
+}
@@ -21,11 +21,7 @@ import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.utilities.TimeSeriesSummaryStatistics;
 import utilities.InstanceTools;
-
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
+import utilities.numericalmethods.SpectralEngine;
 import weka.core.*;
 
 import static experiments.data.DatasetLoading.loadDataNullable;
@@ -99,11 +95,7 @@ public class Fast_FFT implements Transformer {
 
     @Override
     public Instance transform(Instance inst) {
-        Complex[] complexData = new Complex[nfft];
         double[] data = InstanceTools.ConvertInstanceToArrayRemovingClassValue(inst);
-        for (int j = 0; j < complexData.length; j++) {
-            complexData[j] = new Complex(0.0, 0.0);
-        }
 
         double mean = 0;
         if (data.length < nfft) {
@@ -113,21 +105,9 @@ public class Fast_FFT implements Transformer {
             mean /= data.length;
         }
 
-        // int limit = nfft < data[i].length ? nfft : data[i].length;
-        for (int j = 0; j < nfft; j++) {
-            if (j < data.length)
-                complexData[j] = new Complex(data[j], 0);
-            else
-                complexData[j] = new Complex(mean, 0);
-        }
-
-        FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-        complexData = fft.transform(complexData, TransformType.FORWARD);
-
+        double[] fft = calculate_FFT(data, mean);
         double[] FFTData = new double[(nfft / 2) + (inst.classIndex() >= 0 ? 1 : 0)];
-        for (int j = 0; j < (nfft / 2); j++) {
-            FFTData[j] = complexData[j].abs();
-        }
+        System.arraycopy(fft, 0, FFTData, 0, fft.length);
 
         if (inst.classIndex() >= 0)
             FFTData[FFTData.length - 1] = inst.classValue();
@@ -147,27 +127,14 @@ public class Fast_FFT implements Transformer {
         return new TimeSeriesInstance(out, inst.getLabelIndex()); 
     }
 
+    // magnitudes of the first nfft/2 coefficients, series truncated or padded with the mean to length nfft
     private double[] calculate_FFT(double[] data, double mean) {
-        Complex[] complexData = new Complex[nfft];
-        for (int j = 0; j < complexData.length; j++) {
-            complexData[j] = new Complex(0.0, 0.0);
-        }
-
-        // int limit = nfft < data[i].length ? nfft : data[i].length;
-        for (int j = 0; j < nfft; j++) {
-            if (j < data.length)
-                complexData[j] = new Complex(data[j], 0);
-            else
-                complexData[j] = new Complex(mean, 0);
-        }
-
-        
-        FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
-        complexData = fft.transform(complexData, TransformType.FORWARD);
+        double[] packed = SpectralEngine.pad(data, nfft, mean);
+        SpectralEngine.realForward(packed);
 
         double[] FFTData = new double[(nfft / 2)];
         for (int j = 0; j < (nfft / 2); j++) {
-            FFTData[j] = complexData[j].abs();
+            FFTData[j] = SpectralEngine.magnitude(packed, j);
         }
 
         return FFTData;
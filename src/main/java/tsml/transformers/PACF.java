@@ -23,6 +23,7 @@ import tsml.data_containers.TSCapabilities;
 import tsml.data_containers.TimeSeries;
 import tsml.data_containers.TimeSeriesInstance;
 import utilities.InstanceTools;
+import utilities.numericalmethods.AutoCorrelationEngine;
 
 import weka.core.Attribute;
 import weka.core.DenseInstance;
@@ -76,6 +77,8 @@ public class PACF implements Transformer {
      * correlations since they are based on too little data and hence unreliable
      */
     protected int endTerms = 4;
+    /** Buffers reused between series */
+    protected transient AutoCorrelationEngine engine;
 
     public void setMaxLag(int a) {
         maxLag = a;
@@ -174,18 +177,19 @@ public class PACF implements Transformer {
     }
 
     private double[] convertInstance(double[] d) {
+        if (engine == null)
+            engine = new AutoCorrelationEngine();
         // 2. Fit Autocorrelations, if not already set externally
-        autos = ACF.fitAutoCorrelations(d, maxLag);
-        // 3. Form Partials
-        partials = formPartials(autos);
+        autos = engine.fitAutoCorrelations(d, maxLag);
+        // 3. Form Partials, only the diagonal is needed. The full table is formed on request by getPartials
+        partials = null;
+        double[] pi = new double[maxLag];
+        engine.fitPartialAutoCorrelations(autos, 0, maxLag, pi, 0);
 
         // 5. Find parameters
-        double[] pi = new double[maxLag];
         for (int k = 0; k < maxLag; k++) { // Set NANs to zero
-            if (Double.isNaN(partials[k][k]) || Double.isInfinite(partials[k][k])) {
+            if (Double.isNaN(pi[k]) || Double.isInfinite(pi[k]))
                 pi[k] = 0;
-            } else
-                pi[k] = partials[k][k];
         }
         return pi;
     }
@@ -222,6 +226,8 @@ public class PACF implements Transformer {
     }
 
     public double[][] getPartials() {
+        if (partials == null && autos != null)
+            partials = formPartials(autos);
         return partials;
     }
 
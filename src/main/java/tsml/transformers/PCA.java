@@ -18,15 +18,12 @@
 package tsml.transformers;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 
 import experiments.data.DatasetLoading;
 import tsml.classifiers.shapelet_based.ShapeletTransformClassifier;
 import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
-import tsml.data_containers.utilities.Converter;
-import tsml.data_containers.utilities.Splitter;
+import utilities.numericalmethods.SymmetricEigenDecomposition;
 import weka.attributeSelection.PrincipalComponents;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -44,6 +41,11 @@ import weka.core.Instances;
  * This assumes that the PrincipalComponents sorts the eignevectors so the first
  * has most variance. I'm 99.9% sure it does
  *
+ * TimeSeriesInstances are fit in a single pass with partialFit, accumulating the
+ * covariance of each dimension so the train data does not have to be held in
+ * memory. The components are found from the correlation matrix, as in
+ * PrincipalComponents, and each dimension is projected separately.
+ *
  * @author Tony Bagnall (ajb)
  */
 public class PCA implements TrainableTransformer {
@@ -174,41 +176,145 @@ public class PCA implements TrainableTransformer {
     }
 
 
-    private PrincipalComponents[] pca_transforms;
-    private int[] attributesToKeep_dims;
-    private String[] trainLabels;
+    // one pass sums for each dimension, relative to the first instance to limit cancellation
+    private long streamCount;
+    private double[][] streamShift;
+    private double[][] streamSum;
+    private double[][][] streamCross;
+
+    // fit model for each dimension, components ordered by decreasing variance
+    private double[][] means;
+    private double[][] stdevs;
+    private double[][][] components;
 
     @Override
     public TimeSeriesInstance transform(TimeSeriesInstance inst) {
-        
-        List<TimeSeriesInstance> split_inst = Splitter.splitTimeSeriesInstance(inst);
-        List<TimeSeriesInstance> out = new ArrayList<>(split_inst.size());
-        for(int i=0; i<pca_transforms.length; i++){
-            pca = pca_transforms[i];
-            numAttributesToKeep = attributesToKeep_dims[i];
-            out.add(Converter.fromArff(transform(Converter.toArff(split_inst.get(i), trainLabels))));
+        if (!isFit || components == null)
+            throw new RuntimeException("Fit PCA before transforming");
+
+        double[][] out = new double[components.length][];
+        for (int d = 0; d < components.length; d++) {
+            double[] series = inst.get(d).toValueArray();
+            double[] standardised = new double[series.length];
+            for (int j = 0; j < series.length; j++) {
+                standardised[j] = (series[j] - means[d][j]) / stdevs[d][j];
+            }
+
+            out[d] = new double[components[d].length];
+            for (int c = 0; c < out[d].length; c++) {
+                double[] component = components[d][c];
+                double sum = 0;
+                for (int j = 0; j < standardised.length; j++) {
+                    sum += standardised[j] * component[j];
+                }
+                out[d][c] = sum;
+            }
         }
 
-        return Splitter.mergeTimeSeriesInstance(out);
+        return new TimeSeriesInstance(out, inst.getLabelIndex());
     }
 
     @Override
     public void fit(TimeSeriesInstances data) {
-        List<TimeSeriesInstances> split = Splitter.splitTimeSeriesInstances(data);
-        
-        pca_transforms = new PrincipalComponents[split.size()];
-        attributesToKeep_dims = new int[split.size()];
-        trainLabels = data.getClassLabels();
+        streamCross = null;
+        for (TimeSeriesInstance inst : data) {
+            partialFit(inst);
+        }
+        finishFit();
+    }
+
+    @Override
+    public void partialFit(TimeSeriesInstance inst) {
+        isFit = false;
+
+        if (streamCross == null) {
+            int numDimensions = inst.getNumDimensions();
+            streamCount = 0;
+            streamShift = new double[numDimensions][];
+            streamSum = new double[numDimensions][];
+            streamCross = new double[numDimensions][][];
+            for (int d = 0; d < numDimensions; d++) {
+                streamShift[d] = inst.get(d).toValueArray();
+                streamSum[d] = new double[streamShift[d].length];
+                streamCross[d] = new double[streamShift[d].length][streamShift[d].length];
+            }
+        }
 
-        for(int i=0; i<data.getMaxNumDimensions(); i++){
-            pca_transforms[i] = new PrincipalComponents();
-            pca = pca_transforms[i]; //set the ref.
+        for (int d = 0; d < streamCross.length; d++) {
+            double[] series = inst.get(d).toValueArray();
+            double[] shifted = new double[streamShift[d].length];
+            for (int j = 0; j < shifted.length; j++) {
+                shifted[j] = series[j] - streamShift[d][j];
+                streamSum[d][j] += shifted[j];
+            }
 
-            fit(Converter.toArff(split.get(i)));
+            // upper triangle only
+            for (int j = 0; j < shifted.length; j++) {
+                double v = shifted[j];
+                if (v == 0)
+                    continue;
+                double[] cross = streamCross[d][j];
+                for (int k = j; k < shifted.length; k++) {
+                    cross[k] += v * shifted[k];
+                }
+            }
+        }
+        streamCount++;
+    }
+
+    @Override
+    public void finishFit() {
+        if (streamCross == null)
+            throw new IllegalStateException("finishFit called before partialFit");
+
+        int numDimensions = streamCross.length;
+        double n = streamCount;
+        means = new double[numDimensions][];
+        stdevs = new double[numDimensions][];
+        components = new double[numDimensions][][];
+
+        for (int d = 0; d < numDimensions; d++) {
+            int length = streamShift[d].length;
+            double[] shiftedMean = new double[length];
+            means[d] = new double[length];
+            stdevs[d] = new double[length];
+            for (int j = 0; j < length; j++) {
+                shiftedMean[j] = streamSum[d][j] / n;
+                means[d][j] = streamShift[d][j] + shiftedMean[j];
+            }
 
-            attributesToKeep_dims[i] = numAttributesToKeep;
+            double[][] cov = new double[length][length];
+            for (int j = 0; j < length; j++) {
+                for (int k = j; k < length; k++) {
+                    cov[j][k] = (streamCross[d][j][k] - n * shiftedMean[j] * shiftedMean[k]) / Math.max(n - 1, 1);
+                    cov[k][j] = cov[j][k];
+                }
+            }
+
+            // constant attributes are left unscaled, they project to 0
+            for (int j = 0; j < length; j++) {
+                stdevs[d][j] = Math.sqrt(Math.max(cov[j][j], 0));
+                if (stdevs[d][j] == 0)
+                    stdevs[d][j] = 1;
+            }
+            for (int j = 0; j < length; j++) {
+                for (int k = 0; k < length; k++) {
+                    cov[j][k] /= stdevs[d][j] * stdevs[d][k];
+                }
+            }
+
+            // eigenvalues are ascending, keep the largest
+            double[][] eigenvectors = new SymmetricEigenDecomposition(cov).getEigenvectors();
+            int keep = Math.min(numAttributesToKeep, length);
+            components[d] = new double[keep][];
+            for (int c = 0; c < keep; c++) {
+                components[d][c] = eigenvectors[length - 1 - c];
+            }
         }
 
-        isFit=true;
+        streamShift = null;
+        streamSum = null;
+        streamCross = null;
+        isFit = true;
     }
 }
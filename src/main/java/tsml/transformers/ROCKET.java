@@ -64,6 +64,7 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
     private int seed;
 
     private boolean multithreading = false;
+    private int numThreads = 1;
     private ExecutorService ex;
 
     private boolean fit = false;
@@ -72,6 +73,9 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
     private int[] lengths, dilations, paddings;
     private double[] weights, biases;
 
+    //shape of the data seen by partialFit, kernels only depend on the length and number of dimensions
+    private int partialFitLength = -1, partialFitDimensions = -1;
+
     public ROCKET(){ }
 
     public ROCKET(int numKernels){
@@ -104,6 +108,7 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
     @Override
     public void enableMultiThreading(int numThreads){
         multithreading = true;
+        this.numThreads = numThreads;
         ex = Executors.newFixedThreadPool(numThreads);
     }
 
@@ -163,6 +168,66 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         return new DenseInstance(1, output);
     }
 
+    /**
+     * Extracts the series of each instance in the form used by transformBatch.
+     *
+     * @param data instances to extract, univariate or relational multivariate
+     * @return series of each instance, [instance][dimension][time]
+     */
+    public static double[][][] seriesArrays(Instances data) {
+        boolean multivariate = data.checkForAttributeType(Attribute.RELATIONAL);
+        double[][][] series = new double[data.numInstances()][][];
+        for (int i = 0; i < series.length; i++) {
+            Instance inst = data.get(i);
+            series[i] = multivariate ? convertMultiInstanceToArrays(splitMultivariateInstance(inst))
+                    : new double[][]{ extractTimeSeries(inst) };
+        }
+        return series;
+    }
+
+    /**
+     * Transforms a batch of series. When multi threading the series rather than the kernels are split between the
+     * threads, so a batch is one task per thread rather than one task per kernel for each series.
+     *
+     * @param data series to transform, [instance][dimension][time], not modified
+     * @return the two features of each kernel for each series
+     * @throws Exception failure in a transform thread
+     */
+    public double[][] transformBatch(double[][][] data) throws Exception {
+        if (!fit)
+            throw new IllegalStateException("Must fit ROCKET prior to tranformation.");
+
+        double[][] output = new double[data.length][];
+        if (!multithreading || data.length < 2) {
+            for (int i = 0; i < data.length; i++)
+                output[i] = transformRocket(copySeries(data[i]));
+            return output;
+        }
+
+        ArrayList<Future<Void>> futures = new ArrayList<>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            final int start = t;
+            futures.add(ex.submit(() -> {
+                for (int i = start; i < data.length; i += numThreads)
+                    output[i] = transformRocket(copySeries(data[i]));
+                return null;
+            }));
+        }
+        for (Future<Void> f : futures)
+            f.get();
+        return output;
+    }
+
+    //transformRocket normalises in place, so the series of a batch are copied to be reused between transforms
+    private double[][] copySeries(double[][] inst) {
+        if (!normalise)
+            return inst;
+        double[][] copy = new double[inst.length][];
+        for (int i = 0; i < inst.length; i++)
+            copy[i] = inst[i].clone();
+        return copy;
+    }
+
     private double[] transformRocket(double[][] inst) {
         if (normalise){
             for (double[] dim : inst) {
@@ -242,6 +307,32 @@ public class ROCKET implements TrainableTransformer, Randomizable, MultiThreadab
         else {
             fitRocket(data.getMaxLength(), data.getMaxNumDimensions());
         }
+
+        fit = true;
+    }
+
+    @Override
+    public void partialFit(TimeSeriesInstance inst) {
+        fit = false;
+        partialFitLength = Math.max(partialFitLength, inst.getMaxLength());
+        partialFitDimensions = Math.max(partialFitDimensions, inst.getNumDimensions());
+    }
+
+    @Override
+    public void finishFit() {
+        if (partialFitLength < 0)
+            throw new IllegalStateException("finishFit called before partialFit");
+
+        if (multithreading){
+            fitRocketMultithread(partialFitLength, partialFitDimensions);
+        }
+        else {
+            fitRocket(partialFitLength, partialFitDimensions);
+        }
+
+        partialFitLength = -1;
+        partialFitDimensions = -1;
+        fit = true;
     }
 
     @Override
@@ -71,7 +71,7 @@ public class Subsequences implements Transformer {
         double[] temp2;
         if (normalise) {
             temp2 = new double[timeSeries.length];
-            System.arraycopy(timeSeries, 0, temp2, 0, timeSeries.length - 1);
+            System.arraycopy(timeSeries, 0, temp2, 0, timeSeries.length);
             double mean = calculateMean(temp2);
             double sd = calculateSD(temp2, mean);
             timeSeries = normaliseArray(temp2, mean, sd);
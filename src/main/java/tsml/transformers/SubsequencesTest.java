@@ -0,0 +1,90 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers;
+
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class SubsequencesTest {
+
+    private static Instances data(double[] series, double classValue) {
+        final ArrayList<Attribute> attributes = new ArrayList<>();
+        for(int i = 0; i < series.length; i++) {
+            attributes.add(new Attribute("att" + i));
+        }
+        attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+        final Instances data = new Instances("series", attributes, 1);
+        data.setClassIndex(series.length);
+        final double[] values = Arrays.copyOf(series, series.length + 1);
+        values[series.length] = classValue;
+        data.add(new DenseInstance(1, values));
+        return data;
+    }
+
+    private static double[][] subsequences(Instance inst) {
+        final Instances relation = inst.relationalValue(0);
+        final double[][] subsequences = new double[relation.numInstances()][];
+        for(int i = 0; i < subsequences.length; i++) {
+            subsequences[i] = relation.get(i).toDoubleArray();
+        }
+        return subsequences;
+    }
+
+    @Test
+    public void normalisesTheWholeSeries() {
+        final double[] series = {1, 2, 3, 4, 10};
+        final Instances data = data(series, 1);
+        final Subsequences transformer = new Subsequences(3);
+        transformer.determineOutputFormat(data);
+        final Instance transformed = transformer.transform(data.get(0));
+
+        // population z-normalisation including the last point
+        final double mean = 4;
+        final double sd = Math.sqrt((9 + 4 + 1 + 0 + 36) / 5d);
+        final double[] normalised = new double[series.length];
+        for(int i = 0; i < series.length; i++) {
+            normalised[i] = (series[i] - mean) / sd;
+        }
+        final double[][] subsequences = subsequences(transformed);
+        Assert.assertEquals(series.length, subsequences.length);
+        for(int i = 0; i < series.length; i++) {
+            // padded with the first and last values
+            final double[] expected = {normalised[Math.max(0, i - 1)], normalised[i],
+                    normalised[Math.min(series.length - 1, i + 1)]};
+            Assert.assertArrayEquals(expected, subsequences[i], 1e-12);
+        }
+        Assert.assertEquals(1, transformed.classValue(), 0);
+    }
+
+    @Test
+    public void keepsValuesWithoutNormalising() {
+        final double[] series = {1, 2, 3, 4, 10};
+        final Instances data = data(series, 0);
+        final Subsequences transformer = new Subsequences(3);
+        transformer.setNormalise(false);
+        transformer.determineOutputFormat(data);
+        final double[][] subsequences = subsequences(transformer.transform(data.get(0)));
+        Assert.assertArrayEquals(new double[] {4, 10, 10}, subsequences[series.length - 1], 0);
+    }
+}
@@ -17,9 +17,12 @@
  
 package tsml.transformers;
 
+import tsml.data_containers.TimeSeriesInstance;
 import tsml.data_containers.TimeSeriesInstances;
 import tsml.data_containers.utilities.Converter;
 import weka.core.Instances;
+
+import java.util.Iterator;
 /**
  * Interface for time series transformers that require training, extending Transformer interface,
  * which does not require a fit stage
@@ -112,4 +115,55 @@ public interface TrainableTransformer extends Transformer {
         return Transformer.super.transform(data);
     }
 
+
+
+    /********* Streaming ************/
+
+
+
+    /**
+     * Update the transform model with a single train instance, so the model can be fit without holding the whole
+     * train data in memory. finishFit must be called once every instance has been passed. Transformers which need
+     * all the data at once do not support this, and the default throws an exception.
+     * @param inst train instance
+     */
+    default void partialFit(TimeSeriesInstance inst){
+        throw new UnsupportedOperationException("calling default method of partialFit in TrainableTransformer " +
+                "interface, incremental fitting has not been implemented for class "+this.getClass().getSimpleName());
+    }
+
+    /**
+     * Complete a fit started with partialFit, after which isFit returns true.
+     */
+    default void finishFit(){
+        throw new UnsupportedOperationException("calling default method of finishFit in TrainableTransformer " +
+                "interface, incremental fitting has not been implemented for class "+this.getClass().getSimpleName());
+    }
+
+    /**
+     * Fit the transform by streaming over the train data with partialFit. The data is only iterated, so it can be
+     * backed by something larger than the heap, i.e. read batch by batch from disk.
+     * @param data train data, which may be iterated more than once
+     */
+    default void fitStream(Iterable<TimeSeriesInstance> data){
+        for(TimeSeriesInstance inst : data){
+            partialFit(inst);
+        }
+        finishFit();
+    }
+
+    /**
+     * Lazily transform a stream of instances. Unlike transform(TimeSeriesInstances) this cannot fit the model from
+     * the data being transformed, so the transformer must already be fit.
+     * @param data iterator over the instances to transform
+     * @return iterator over the transformed instances
+     */
+    @Override
+    default Iterator<TimeSeriesInstance> transform(Iterator<TimeSeriesInstance> data){
+        if(!isFit())
+            throw new IllegalStateException("fit "+this.getClass().getSimpleName()+" before transforming a stream");
+
+        return Transformer.super.transform(data);
+    }
+
 }
\ No newline at end of file
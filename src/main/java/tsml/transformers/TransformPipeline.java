@@ -55,23 +55,70 @@ public class TransformPipeline extends BaseTrainableTransformer {
     
     public void fit(TimeSeriesInstances data) {
         super.fit(data);
-        
-        int lastFitIndex = 0; // the index of the transformer last fitted
+
+        // the data only needs transforming up to the last trainable transformer
+        int lastTrainableIndex = -1;
         for(int i = 0; i < transformers.size(); i++) {
+            if(transformers.get(i) instanceof TrainableTransformer) {
+                lastTrainableIndex = i;
+            }
+        }
+
+        for(int i = 0; i <= lastTrainableIndex; i++) {
             final Transformer transformer = transformers.get(i);
             if(transformer instanceof TrainableTransformer) {
-                // in order to fit the transformer, we need to transform the data up to the point of the fittable
-                // transformer
-                // so transform the data from the previous transform up to this transformer
-                for(int j = lastFitIndex; j < i; j++) {
-                    final Transformer previous = transformers.get(j);
-                    // replace the data with the data from applying a previous transform
-                    data = previous.transform(data);
-                }
-                // this is now the most recently fit transformer in the pipeline
-                lastFitIndex = i;
+                ((TrainableTransformer) transformer).fit(data);
+            }
+            if(i < lastTrainableIndex) {
+                // replace the data with the data from applying this transform, ready for the next fittable transformer
+                data = transformer.transform(data);
+            }
+        }
+    }
+
+    // index of the first trainable transformer which has not been fit, -1 if none
+    private int nextUnfitIndex() {
+        for(int i = 0; i < transformers.size(); i++) {
+            final Transformer transformer = transformers.get(i);
+            if(transformer instanceof TrainableTransformer && !((TrainableTransformer) transformer).isFit()) {
+                return i;
             }
         }
+        return -1;
+    }
+
+    /**
+     * Passes the instance through the fitted transformers up to the first unfit trainable transformer, and updates
+     * that transformer with it. Later trainable transformers need data transformed by this one, so each trainable
+     * transformer takes a separate pass of partialFit calls followed by finishFit, until the pipeline is fit.
+     * fitStream does the passes. Trainable transformers which are already fit are used as they are.
+     */
+    @Override public void partialFit(TimeSeriesInstance inst) {
+        final int index = nextUnfitIndex();
+        if(index < 0) {
+            throw new IllegalStateException("all trainable transformers in the pipeline are already fit");
+        }
+        for(int i = 0; i < index; i++) {
+            inst = transformers.get(i).transform(inst);
+        }
+        ((TrainableTransformer) transformers.get(index)).partialFit(inst);
+    }
+
+    @Override public void finishFit() {
+        final int index = nextUnfitIndex();
+        if(index >= 0) {
+            ((TrainableTransformer) transformers.get(index)).finishFit();
+        }
+        if(nextUnfitIndex() < 0) {
+            markFit();
+        }
+    }
+
+    @Override public void fitStream(Iterable<TimeSeriesInstance> data) {
+        while(nextUnfitIndex() >= 0) {
+            super.fitStream(data);
+        }
+        markFit();
     }
 
     @Override public TimeSeriesInstance transform(TimeSeriesInstance inst) {
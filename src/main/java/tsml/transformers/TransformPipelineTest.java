@@ -0,0 +1,116 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package tsml.transformers;
+
+import experiments.data.DatasetLoading;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import tsml.data_containers.TimeSeriesInstance;
+import tsml.data_containers.TimeSeriesInstances;
+import tsml.data_containers.utilities.Converter;
+import weka.core.Instances;
+
+import java.util.Iterator;
+
+public class TransformPipelineTest {
+
+    private TimeSeriesInstances train;
+    private TimeSeriesInstances test;
+
+    @Before
+    public void before() throws Exception {
+        final Instances[] data = DatasetLoading.sampleItalyPowerDemand(0);
+        train = Converter.fromArff(data[0]);
+        test = Converter.fromArff(data[1]);
+    }
+
+    // normalise each time point, take the derivative and keep the top principal components
+    private static TransformPipeline buildPipeline() {
+        final ColumnNormalizer normaliser = new ColumnNormalizer();
+        normaliser.setNormMethod(ColumnNormalizer.NormType.STD_NORMAL);
+        return new TransformPipeline(normaliser, new Derivative(), new PCA(5));
+    }
+
+    private static void assertSameValues(TimeSeriesInstances expected, TimeSeriesInstances actual) {
+        Assert.assertEquals(expected.numInstances(), actual.numInstances());
+        for(int i = 0; i < expected.numInstances(); i++) {
+            assertSameValues(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static void assertSameValues(TimeSeriesInstance expected, TimeSeriesInstance actual) {
+        final double[][] expectedValues = expected.toValueArray();
+        final double[][] actualValues = actual.toValueArray();
+        Assert.assertEquals(expectedValues.length, actualValues.length);
+        for(int d = 0; d < expectedValues.length; d++) {
+            Assert.assertArrayEquals(expectedValues[d], actualValues[d], 0);
+        }
+        Assert.assertEquals(expected.getLabelIndex(), actual.getLabelIndex());
+    }
+
+    @Test
+    public void fitTransformMatchesStagedTransforms() {
+        final TransformPipeline pipeline = buildPipeline();
+        pipeline.fit(train);
+        Assert.assertTrue(pipeline.isFit());
+        final TimeSeriesInstances transformedTrain = pipeline.transform(train);
+        final TimeSeriesInstances transformedTest = pipeline.transform(test);
+
+        // each trainable stage fit by hand on the output of the stages before it
+        final ColumnNormalizer normaliser = new ColumnNormalizer();
+        normaliser.setNormMethod(ColumnNormalizer.NormType.STD_NORMAL);
+        normaliser.fit(train);
+        final Derivative derivative = new Derivative();
+        final PCA pca = new PCA(5);
+        pca.fit(derivative.transform(normaliser.transform(train)));
+
+        assertSameValues(pca.transform(derivative.transform(normaliser.transform(train))), transformedTrain);
+        assertSameValues(pca.transform(derivative.transform(normaliser.transform(test))), transformedTest);
+        Assert.assertEquals(5, transformedTest.get(0).getMaxLength());
+    }
+
+    @Test
+    public void fitStreamMatchesFit() {
+        final TransformPipeline fitted = buildPipeline();
+        fitted.fit(train);
+        final TransformPipeline streamed = buildPipeline();
+        streamed.fitStream(train);
+        Assert.assertTrue(streamed.isFit());
+
+        assertSameValues(fitted.transform(test), streamed.transform(test));
+    }
+
+    @Test
+    public void lazyTransformMatchesBatchTransform() {
+        final TransformPipeline pipeline = buildPipeline();
+        pipeline.fit(train);
+        final TimeSeriesInstances expected = pipeline.transform(test);
+
+        final Iterator<TimeSeriesInstance> lazy = pipeline.transform(test.iterator());
+        for(int i = 0; i < expected.numInstances(); i++) {
+            Assert.assertTrue(lazy.hasNext());
+            assertSameValues(expected.get(i), lazy.next());
+        }
+        Assert.assertFalse(lazy.hasNext());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lazyTransformRequiresFit() {
+        buildPipeline().transform(test.iterator());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package tsml.transformers;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import tsml.data_containers.TimeSeriesInstances;
+
+/**
+ * Purpose: a store of cached transforms shared by several users, e.g. all the trees of a forest, so each transform of
+ * an instance is computed once rather than once per user.
+ * <p>
+ * Transforms are keyed by the transformer, using its equals and hashCode so equally configured transformers share
+ * their output, and then by the content hash of the instance. When a transformer is first asked for it is fitted to
+ * the train data and the whole train data is transformed up front. Any other instances, e.g. test cases, are cached
+ * as they are transformed. The number of transformed instances held in memory per transformer can be bounded, evicting
+ * the least recently used first. Thread safe.
+ */
+public class TransformStore implements Serializable {
+
+    private static final long serialVersionUID = 1;
+    // the cached version of each transformer
+    private final Map<Transformer, CachedTransformer> cachedTransformers = new HashMap<>();
+    // the data to fit transformers to and precompute the transforms of
+    private TimeSeriesInstances trainData;
+    // the maximum number of transformed instances held in memory per transformer, -1 for no limit
+    private int maxCacheSize = -1;
+    // the directory to persist transformed instances to, null to only cache in memory
+    private File cacheDirectory;
+
+    /**
+     * Discard all transforms and fit any transformers subsequently asked for to the given data.
+     * @param trainData the train data
+     */
+    public synchronized void fit(final TimeSeriesInstances trainData) {
+        this.trainData = trainData;
+        cachedTransformers.clear();
+    }
+
+    public synchronized boolean isFit() {
+        return trainData != null;
+    }
+
+    /**
+     * Get the cached version of a transformer, fitting it and transforming the train data on first use.
+     * @param transformer the transformer
+     * @return the cached transformer, shared with all other users of this store
+     */
+    public synchronized CachedTransformer get(final Transformer transformer) {
+        if(trainData == null) {
+            throw new IllegalStateException("must be fitted first");
+        }
+        CachedTransformer cachedTransformer = cachedTransformers.get(transformer);
+        if(cachedTransformer == null) {
+            cachedTransformer = new CachedTransformer(transformer);
+            // cache test cases too so they're only transformed once by all users
+            cachedTransformer.setCacheFittedDataOnly(false);
+            cachedTransformer.setMaxCacheSize(maxCacheSize);
+            cachedTransformer.setCacheDirectory(cacheDirectory);
+            cachedTransformer.fit(trainData);
+            // precompute the train data, as much of it as fits in the cache
+            final int numPrecomputed = maxCacheSize < 0 ? trainData.numInstances() : Math.min(maxCacheSize, trainData.numInstances());
+            for(int i = 0; i < numPrecomputed; i++) {
+                cachedTransformer.transform(trainData.get(i));
+            }
+            cachedTransformers.put(transformer, cachedTransformer);
+        }
+        return cachedTransformer;
+    }
+
+    public synchronized int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize the maximum number of transformed instances held in memory per transformer, -1 for no limit
+     */
+    public synchronized void setMaxCacheSize(final int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        for(CachedTransformer cachedTransformer : cachedTransformers.values()) {
+            cachedTransformer.setMaxCacheSize(maxCacheSize);
+        }
+    }
+
+    public synchronized File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @param cacheDirectory directory to persist transformed instances to, shared between runs and processes. null
+     *                       to only cache in memory
+     */
+    public synchronized void setCacheDirectory(final File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        for(CachedTransformer cachedTransformer : cachedTransformers.values()) {
+            cachedTransformer.setCacheDirectory(cacheDirectory);
+        }
+    }
+}
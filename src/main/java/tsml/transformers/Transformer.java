@@ -18,6 +18,7 @@
 package tsml.transformers;
 
 import java.io.Serializable;
+import java.util.Iterator;
 
 import tsml.classifiers.distance_based.utils.collections.params.ParamHandler;
 import tsml.data_containers.TSCapabilities;
@@ -138,4 +139,24 @@ public interface Transformer extends TSCapabilitiesHandler, ParamHandler, Serial
      * @return transformed Instance
      */
     TimeSeriesInstance transform(TimeSeriesInstance inst);
+
+    /**
+     * Lazily transform a stream of instances. Each instance is only transformed when the returned iterator is
+     * advanced, so data larger than the heap can be transformed batch by batch without building an output collection.
+     * @param data iterator over the instances to transform
+     * @return iterator over the transformed instances
+     */
+    default Iterator<TimeSeriesInstance> transform(Iterator<TimeSeriesInstance> data){
+        return new Iterator<TimeSeriesInstance>() {
+            @Override
+            public boolean hasNext() {
+                return data.hasNext();
+            }
+
+            @Override
+            public TimeSeriesInstance next() {
+                return transform(data.next());
+            }
+        };
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities.numericalmethods;
+
+/**
+ * Autocorrelation and partial autocorrelation functions, as defined by tsml.transformers.ACF and PACF.
+ * <p>
+ * The lag products for all lags are found together with one real FFT and its inverse, O(n log n) rather than
+ * O(n * maxLag), and the segment means and variances for each lag from prefix sums. Prefix sums cancel badly when a
+ * segment is constant or nearly so, so lags where either variance is tiny next to that of the whole series are found
+ * directly with the per-lag loop ACF used before, giving the same values at constant segments. Partial autocorrelations are found
+ * from the autocorrelations with the Durbin-Levinson recursion keeping only the last row of coefficients.
+ * <p>
+ * Buffers are kept between calls and only grow, so transforming many series of similar length does not allocate.
+ * Not thread safe, use one instance per thread.
+ */
+public class AutoCorrelationEngine {
+
+    // below this many lags the products are summed directly, as the FFT costs more
+    private static final int DIRECT_MAX_LAG = 16;
+    // segment variances below this fraction of the mean square of the series are found directly rather than from
+    // prefix sums, which lose all precision as the variance nears zero
+    private static final double DIRECT_VARIANCE_RATIO = 1e-6;
+
+    private boolean normalised = false;
+    private double constantCorrelation = 0;
+
+    private double[] fft = new double[0];
+    private double[] products = new double[0];
+    private double[] sums = new double[0];
+    private double[] sumsSq = new double[0];
+    private double[] phi = new double[0];
+    private double[] prevPhi = new double[0];
+
+    /**
+     * @param normalised if true the series are assumed to have zero mean and unit variance, and the autocorrelation
+     *                   at lag i is the sum of the lag i products divided by the series length
+     */
+    public void setNormalised(boolean normalised) {
+        this.normalised = normalised;
+    }
+
+    /**
+     * @param constantCorrelation value at lags where both overlapping segments have zero variance. ACF uses 1,
+     *                            the static ACF.fitAutoCorrelations 0.
+     */
+    public void setConstantCorrelation(double constantCorrelation) {
+        this.constantCorrelation = constantCorrelation;
+    }
+
+    /**
+     * @param x series
+     * @param maxLag number of lags
+     * @return autocorrelations at lags 1 to maxLag
+     */
+    public double[] fitAutoCorrelations(double[] x, int maxLag) {
+        double[] acf = new double[maxLag];
+        fitAutoCorrelations(x, 0, x.length, maxLag, acf, 0);
+        return acf;
+    }
+
+    /**
+     * Autocorrelations at lags 1 to maxLag of x[offset] to x[offset + length - 1], written to out[outOffset] to
+     * out[outOffset + maxLag - 1]. Unless normalised, lag i is the correlation of the first and last length - i values,
+     * each about its own mean. Lags of length or more are NaN.
+     */
+    public void fitAutoCorrelations(double[] x, int offset, int length, int maxLag, double[] out, int outOffset) {
+        if (normalised) {
+            lagProducts(x, offset, length, maxLag, 0);
+            for (int i = 1; i <= maxLag; i++)
+                out[outOffset + i - 1] = products[i] / length;
+            return;
+        }
+
+        // correlation is unchanged by a shift, centring keeps the raw sums small
+        double mean = 0;
+        for (int j = 0; j < length; j++)
+            mean += x[offset + j];
+        mean /= length;
+        lagProducts(x, offset, length, maxLag, mean);
+
+        if (sums.length < length + 1) {
+            sums = new double[length + 1];
+            sumsSq = new double[length + 1];
+        }
+        for (int j = 0; j < length; j++) {
+            double y = x[offset + j] - mean;
+            sums[j + 1] = sums[j] + y;
+            sumsSq[j + 1] = sumsSq[j] + y * y;
+        }
+
+        double minVariance = DIRECT_VARIANCE_RATIO * sumsSq[length] / length;
+        for (int i = 1; i <= maxLag; i++) {
+            int m = length - i;
+            if (m <= 0) {
+                out[outOffset + i - 1] = Double.NaN;
+                continue;
+            }
+            double s1 = sums[m] / m;
+            double s2 = (sums[length] - sums[i]) / m;
+            double v1 = sumsSq[m] / m - s1 * s1;
+            double v2 = (sumsSq[length] - sumsSq[i]) / m - s2 * s2;
+            if (v1 <= minVariance || v2 <= minVariance)
+                out[outOffset + i - 1] = directAutoCorrelation(x, offset, length, i);
+            else
+                out[outOffset + i - 1] = (products[i] / m - s1 * s2) / (Math.sqrt(v1) * Math.sqrt(v2));
+        }
+    }
+
+    // autocorrelation at a single lag summed over the raw values, as ACF found every lag
+    private double directAutoCorrelation(double[] x, int offset, int length, int lag) {
+        int m = length - lag;
+        double s1 = 0, s2 = 0, ss1 = 0, ss2 = 0;
+        for (int j = 0; j < m; j++) {
+            s1 += x[offset + j];
+            ss1 += x[offset + j] * x[offset + j];
+            s2 += x[offset + j + lag];
+            ss2 += x[offset + j + lag] * x[offset + j + lag];
+        }
+        s1 /= m;
+        s2 /= m;
+        double a = 0;
+        for (int j = 0; j < m; j++)
+            a += (x[offset + j] - s1) * (x[offset + j + lag] - s2);
+        a /= m;
+        double v1 = ss1 / m - s1 * s1;
+        double v2 = ss2 / m - s2 * s2;
+        if (v1 == 0 && v2 == 0)
+            return constantCorrelation;
+        else if (v1 == 0 || v2 == 0)
+            return 0;
+        return a / (Math.sqrt(v1) * Math.sqrt(v2));
+    }
+
+    /**
+     * Partial autocorrelations by the Durbin-Levinson recursion, equal to the diagonal of PACF.formPartials.
+     *
+     * @param acf autocorrelations at lags 1 to p, from acf[acfOffset]
+     * @param p number of lags
+     * @param out partial autocorrelations at lags 1 to p, written from out[outOffset]
+     */
+    public void fitPartialAutoCorrelations(double[] acf, int acfOffset, int p, double[] out, int outOffset) {
+        if (p <= 0)
+            return;
+        if (phi.length < p) {
+            phi = new double[p];
+            prevPhi = new double[p];
+        }
+        prevPhi[0] = acf[acfOffset];
+        out[outOffset] = acf[acfOffset];
+        for (int k = 1; k < p; k++) {
+            double numerator = acf[acfOffset + k];
+            double denominator = 1;
+            for (int i = 0; i < k; i++) {
+                numerator -= prevPhi[i] * acf[acfOffset + k - 1 - i];
+                denominator -= prevPhi[k - 1 - i] * acf[acfOffset + k - 1 - i];
+            }
+            double phiKK = denominator != 0 ? numerator / denominator : 0;
+            for (int i = 0; i < k; i++)
+                phi[i] = prevPhi[i] - phiKK * prevPhi[k - 1 - i];
+            phi[k] = phiKK;
+            out[outOffset + k] = phiKK;
+
+            double[] temp = prevPhi;
+            prevPhi = phi;
+            phi = temp;
+        }
+    }
+
+    // products[i] = sum over j of (x[j] - shift) * (x[j + i] - shift), for lags 0 to maxLag
+    private void lagProducts(double[] x, int offset, int length, int maxLag, double shift) {
+        if (products.length < maxLag + 1)
+            products = new double[maxLag + 1];
+
+        if (maxLag <= DIRECT_MAX_LAG) {
+            for (int i = 0; i <= maxLag; i++) {
+                double sum = 0;
+                for (int j = 0; j < length - i; j++)
+                    sum += (x[offset + j] - shift) * (x[offset + j + i] - shift);
+                products[i] = sum;
+            }
+            return;
+        }
+
+        // padded so the circular products of the transform do not wrap for lags up to maxLag
+        int n = SpectralEngine.nextPowerOf2(length + maxLag);
+        if (fft.length != n)
+            fft = new double[n];
+        for (int j = 0; j < length; j++)
+            fft[j] = x[offset + j] - shift;
+        for (int j = length; j < n; j++)
+            fft[j] = 0;
+
+        SpectralEngine.realForward(fft);
+        for (int k = 0; k < n / 2; k++) {
+            fft[2 * k] = SpectralEngine.power(fft, k);
+            if (k > 0)
+                fft[2 * k + 1] = 0;
+        }
+        fft[1] *= fft[1];
+        SpectralEngine.realInverse(fft, true);
+
+        for (int i = 0; i <= maxLag; i++)
+            products[i] = i < length ? fft[i] : 0;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities.numericalmethods;
+
+import org.junit.Assert;
+import org.junit.Test;
+import tsml.transformers.PACF;
+
+import java.util.Random;
+
+public class AutoCorrelationEngineTest {
+
+    // correlation of the first and last n - lag values, as ACF computed them directly
+    private static double directCorrelation(double[] x, int lag) {
+        final int m = x.length - lag;
+        double s1 = 0, s2 = 0;
+        for(int j = 0; j < m; j++) {
+            s1 += x[j];
+            s2 += x[j + lag];
+        }
+        s1 /= m;
+        s2 /= m;
+        double cov = 0, v1 = 0, v2 = 0;
+        for(int j = 0; j < m; j++) {
+            cov += (x[j] - s1) * (x[j + lag] - s2);
+            v1 += (x[j] - s1) * (x[j] - s1);
+            v2 += (x[j + lag] - s2) * (x[j + lag] - s2);
+        }
+        return cov / Math.sqrt(v1 * v2);
+    }
+
+    // the per-lag loop ACF used before the engine, with 1 where both segments are constant
+    private static double[] perLagCorrelations(double[] data, int maxLag) {
+        final double[] a = new double[maxLag];
+        for(int i = 1; i <= maxLag; i++) {
+            double s1 = 0, s2 = 0, ss1 = 0, ss2 = 0;
+            for(int j = 0; j < data.length - i; j++) {
+                s1 += data[j];
+                ss1 += data[j] * data[j];
+                s2 += data[j + i];
+                ss2 += data[j + i] * data[j + i];
+            }
+            s1 /= data.length - i;
+            s2 /= data.length - i;
+            for(int j = 0; j < data.length - i; j++) {
+                a[i - 1] += (data[j] - s1) * (data[j + i] - s2);
+            }
+            a[i - 1] /= (data.length - i);
+            final double v1 = ss1 / (data.length - i) - s1 * s1;
+            final double v2 = ss2 / (data.length - i) - s2 * s2;
+            if(v1 == 0 && v2 == 0) {
+                a[i - 1] = 1;
+            } else if(v1 == 0 || v2 == 0) {
+                a[i - 1] = 0;
+            } else {
+                a[i - 1] /= Math.sqrt(v1) * Math.sqrt(v2);
+            }
+        }
+        return a;
+    }
+
+    private static double[] series(int length, Random random) {
+        final double[] x = new double[length];
+        for(int i = 0; i < length; i++) {
+            x[i] = 10 + Math.sin(i * 0.3) + random.nextGaussian();
+        }
+        return x;
+    }
+
+    @Test
+    public void autoCorrelationsMatchDirect() {
+        final Random random = new Random(0);
+        final AutoCorrelationEngine engine = new AutoCorrelationEngine();
+        for(int length : new int[] {20, 64, 150}) {
+            // both below and above the lag where the FFT is used
+            for(int maxLag : new int[] {5, 16, 40}) {
+                if(maxLag >= length - 4) {
+                    continue;
+                }
+                final double[] x = series(length, random);
+                final double[] acf = engine.fitAutoCorrelations(x, maxLag);
+                for(int lag = 1; lag <= maxLag; lag++) {
+                    Assert.assertEquals(directCorrelation(x, lag), acf[lag - 1], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void constantSegmentsMatchPerLagLoop() {
+        final Random random = new Random(3);
+        final AutoCorrelationEngine engine = new AutoCorrelationEngine();
+        engine.setConstantCorrelation(1);
+        for(int length : new int[] {3, 8, 24, 70}) {
+            for(int constantLength : new int[] {1, 2, length / 2, length - 2, length}) {
+                for(double constant : new double[] {0, 0.1, -1.7, 1e6 / 3}) {
+                    final double[] x = series(length, random);
+                    // constant tail, and the reverse with a constant head
+                    final double[] tail = x.clone();
+                    final double[] head = new double[length];
+                    for(int i = length - constantLength; i < length; i++) {
+                        tail[i] = constant;
+                    }
+                    for(int i = 0; i < length; i++) {
+                        head[i] = tail[length - 1 - i];
+                    }
+                    for(double[] series : new double[][] {tail, head}) {
+                        for(int maxLag : new int[] {Math.min(5, length - 1), length - 1}) {
+                            final double[] expected = perLagCorrelations(series, maxLag);
+                            final double[] acf = engine.fitAutoCorrelations(series, maxLag);
+                            for(int lag = 1; lag <= maxLag; lag++) {
+                                // the same values, including NaN where rounding makes a one pass variance negative
+                                Assert.assertEquals(expected[lag - 1], acf[lag - 1], 1e-9);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void normalisedMatchesDirect() {
+        final Random random = new Random(1);
+        final AutoCorrelationEngine engine = new AutoCorrelationEngine();
+        engine.setNormalised(true);
+        final double[] x = series(100, random);
+        final double[] acf = engine.fitAutoCorrelations(x, 30);
+        for(int lag = 1; lag <= 30; lag++) {
+            double sum = 0;
+            for(int j = 0; j < x.length - lag; j++) {
+                sum += x[j] * x[j + lag];
+            }
+            Assert.assertEquals(sum / x.length, acf[lag - 1], 1e-9);
+        }
+    }
+
+    @Test
+    public void partialAutoCorrelationsMatchFormPartials() {
+        final Random random = new Random(2);
+        final AutoCorrelationEngine engine = new AutoCorrelationEngine();
+        final double[] acf = engine.fitAutoCorrelations(series(120, random), 25);
+        final double[][] partials = PACF.formPartials(acf);
+        final double[] pacf = new double[acf.length];
+        engine.fitPartialAutoCorrelations(acf, 0, acf.length, pacf, 0);
+        for(int k = 0; k < acf.length; k++) {
+            Assert.assertEquals(partials[k][k], pacf[k], 1e-12);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities.numericalmethods;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fourier transforms on primitive arrays, shared by the spectral transformers and classifiers.
+ * <p>
+ * Transforms are computed by JTransforms. A plan holds the twiddle factors for one length and is built once per
+ * length, then reused by every caller. Plans are read only once built, so are safe to share between threads.
+ * <p>
+ * Real transforms use the JTransforms packed layout. For a series of length n, a[2k] and a[2k+1] hold the real and
+ * imaginary parts of coefficient k, except a[1], which holds the real part of coefficient n/2 when n is even and the
+ * imaginary part of coefficient (n-1)/2 when n is odd, in which case a[n-1] holds the real part of (n-1)/2.
+ */
+public final class SpectralEngine {
+
+    private static final ConcurrentHashMap<Integer, DoubleFFT_1D> PLANS = new ConcurrentHashMap<>();
+
+    private SpectralEngine() {}
+
+    /**
+     * @param n transform length
+     * @return the cached plan for transforms of length n
+     */
+    public static DoubleFFT_1D plan(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("transform length must be positive: " + n);
+        return PLANS.computeIfAbsent(n, DoubleFFT_1D::new);
+    }
+
+    /**
+     * In place forward real transform of a, result in the packed layout.
+     */
+    public static void realForward(double[] a) {
+        plan(a.length).realForward(a);
+    }
+
+    /**
+     * In place inverse of realForward.
+     *
+     * @param scale whether to divide by the length, as needed to recover the original series
+     */
+    public static void realInverse(double[] a, boolean scale) {
+        plan(a.length).realInverse(a, scale);
+    }
+
+    /**
+     * In place forward complex transform of a, interleaved real and imaginary parts, length 2n.
+     */
+    public static void complexForward(double[] a) {
+        plan(a.length / 2).complexForward(a);
+    }
+
+    /**
+     * In place inverse complex transform of a, interleaved real and imaginary parts, length 2n.
+     *
+     * @param scale whether to divide by n
+     */
+    public static void complexInverse(double[] a, boolean scale) {
+        plan(a.length / 2).complexInverse(a, scale);
+    }
+
+    /**
+     * @return x copied into an array of length n, truncated or with the remainder set to padValue
+     */
+    public static double[] pad(double[] x, int n, double padValue) {
+        double[] a = new double[n];
+        int len = Math.min(n, x.length);
+        System.arraycopy(x, 0, a, 0, len);
+        for (int i = len; i < n; i++)
+            a[i] = padValue;
+        return a;
+    }
+
+    /**
+     * @param packed output of realForward
+     * @param k coefficient, 0 to packed.length/2
+     * @return squared magnitude of coefficient k
+     */
+    public static double power(double[] packed, int k) {
+        int n = packed.length;
+        if (k == 0)
+            return packed[0] * packed[0];
+        if (n % 2 == 0) {
+            if (k == n / 2)
+                return packed[1] * packed[1];
+            return packed[2 * k] * packed[2 * k] + packed[2 * k + 1] * packed[2 * k + 1];
+        }
+        if (k == (n - 1) / 2)
+            return packed[n - 1] * packed[n - 1] + packed[1] * packed[1];
+        return packed[2 * k] * packed[2 * k] + packed[2 * k + 1] * packed[2 * k + 1];
+    }
+
+    /**
+     * @param packed output of realForward
+     * @param k coefficient, 0 to packed.length/2
+     * @return magnitude of coefficient k
+     */
+    public static double magnitude(double[] packed, int k) {
+        return Math.sqrt(power(packed, k));
+    }
+
+    /**
+     * @param x series, padded with padValue or truncated to length n before transforming
+     * @param n transform length
+     * @return squared magnitudes of coefficients 0 to n/2
+     */
+    public static double[] powerSpectrum(double[] x, int n, double padValue) {
+        double[] a = pad(x, n, padValue);
+        realForward(a);
+        double[] p = new double[n / 2 + 1];
+        for (int k = 0; k < p.length; k++)
+            p[k] = power(a, k);
+        return p;
+    }
+
+    /**
+     * Circular autocorrelation from a power spectrum by Wiener-Khinchin, the inverse transform of the power spectrum.
+     *
+     * @param power squared magnitudes of coefficients 0 to n/2, as returned by powerSpectrum
+     * @param n transform length the power spectrum was computed with
+     * @param numLags number of lags to return, at most n
+     * @return circular autocorrelation at lags 0 to numLags-1, each divided by lag 0. All 0 if lag 0 is 0.
+     */
+    public static double[] circularAutocorrelation(double[] power, int n, int numLags) {
+        // the power spectrum is real and symmetric, so its packed transform has no imaginary parts
+        double[] a = new double[n];
+        a[0] = power[0];
+        if (n % 2 == 0) {
+            if (n > 1)
+                a[1] = power[n / 2];
+            for (int k = 1; k < n / 2; k++)
+                a[2 * k] = power[k];
+        } else if (n > 1) {
+            for (int k = 1; k < (n - 1) / 2; k++)
+                a[2 * k] = power[k];
+            a[n - 1] = power[(n - 1) / 2];
+        }
+        realInverse(a, false);
+        double[] acf = new double[numLags];
+        if (a[0] == 0)
+            return acf;
+        for (int i = 0; i < numLags; i++)
+            acf[i] = a[i] / a[0];
+        return acf;
+    }
+
+    /**
+     * Linear autocorrelation of x about its mean, without the wrap around of the circular version, computed by
+     * zero padding to at least twice the series length.
+     *
+     * @param x series
+     * @param maxLag largest lag, less than x.length
+     * @return autocorrelation at lags 0 to maxLag, each lag sum divided by the lag 0 sum
+     */
+    public static double[] autocorrelation(double[] x, int maxLag) {
+        int len = x.length;
+        double mean = 0;
+        for (double v : x)
+            mean += v;
+        mean /= len;
+        int n = nextPowerOf2(2 * len);
+        double[] a = new double[n];
+        for (int i = 0; i < len; i++)
+            a[i] = x[i] - mean;
+        realForward(a);
+        for (int k = 0; k < n / 2; k++) {
+            double p = power(a, k);
+            a[2 * k] = p;
+            if (k > 0)
+                a[2 * k + 1] = 0;
+        }
+        a[1] *= a[1];
+        realInverse(a, false);
+        double[] acf = new double[maxLag + 1];
+        if (a[0] == 0)
+            return acf;
+        for (int i = 0; i <= maxLag; i++)
+            acf[i] = a[i] / a[0];
+        return acf;
+    }
+
+    /**
+     * @return smallest power of 2 greater than or equal to n
+     */
+    public static int nextPowerOf2(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+}
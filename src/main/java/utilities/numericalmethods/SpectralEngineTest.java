@@ -0,0 +1,99 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities.numericalmethods;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SpectralEngineTest {
+
+    private static final int[] LENGTHS = {1, 2, 3, 5, 8, 13, 16, 27};
+
+    private static double[] series(int length, Random random) {
+        final double[] x = new double[length];
+        for(int i = 0; i < length; i++) {
+            x[i] = random.nextGaussian();
+        }
+        return x;
+    }
+
+    @Test
+    public void powerSpectrumMatchesDft() {
+        final Random random = new Random(0);
+        for(int n : LENGTHS) {
+            final double[] x = series(n, random);
+            final double[] power = SpectralEngine.powerSpectrum(x, n, 0);
+            Assert.assertEquals(n / 2 + 1, power.length);
+            for(int k = 0; k < power.length; k++) {
+                double re = 0, im = 0;
+                for(int t = 0; t < n; t++) {
+                    re += x[t] * Math.cos(2 * Math.PI * t * k / n);
+                    im -= x[t] * Math.sin(2 * Math.PI * t * k / n);
+                }
+                Assert.assertEquals(re * re + im * im, power[k], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void circularAutocorrelationMatchesSum() {
+        final Random random = new Random(1);
+        for(int n : LENGTHS) {
+            final double[] x = series(n, random);
+            final double[] acf = SpectralEngine.circularAutocorrelation(SpectralEngine.powerSpectrum(x, n, 0), n, n);
+            final double[] sums = new double[n];
+            for(int lag = 0; lag < n; lag++) {
+                for(int t = 0; t < n; t++) {
+                    sums[lag] += x[t] * x[(t + lag) % n];
+                }
+            }
+            for(int lag = 0; lag < n; lag++) {
+                Assert.assertEquals(sums[lag] / sums[0], acf[lag], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void autocorrelationMatchesSum() {
+        final Random random = new Random(2);
+        for(int n : LENGTHS) {
+            final double[] x = series(n, random);
+            double mean = 0;
+            for(double v : x) {
+                mean += v;
+            }
+            mean /= n;
+            final double[] sums = new double[n];
+            for(int lag = 0; lag < n; lag++) {
+                for(int t = 0; t + lag < n; t++) {
+                    sums[lag] += (x[t] - mean) * (x[t + lag] - mean);
+                }
+            }
+            final double[] acf = SpectralEngine.autocorrelation(x, n - 1);
+            for(int lag = 0; lag < n; lag++) {
+                Assert.assertEquals(sums[0] == 0 ? 0 : sums[lag] / sums[0], acf[lag], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void plansAreShared() {
+        Assert.assertSame(SpectralEngine.plan(24), SpectralEngine.plan(24));
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package utilities.numericalmethods;
+
+/**
+ * Eigendecomposition of a real symmetric matrix on primitive arrays.
+ * <p>
+ * Householder tridiagonalisation followed by the implicit QL algorithm, derived from the tred2 and tql2 routines of
+ * EISPACK as in JAMA (weka.core.matrix.EigenvalueDecomposition). The working matrix is held transposed so the
+ * O(n^3) inner loops run along rows rather than down columns, and eigenvectors are returned as rows.
+ * <p>
+ * An instance can be reused to decompose many matrices, the working arrays are only reallocated when a larger matrix
+ * is given.
+ */
+public class SymmetricEigenDecomposition {
+
+    private int n;
+
+    //eigenvalues, ascending
+    private double[] d;
+    private double[] e;
+
+    //eigenvectors, one per row
+    private double[][] v;
+
+    /**
+     * @param a symmetric matrix, only the lower triangle is read and a is not modified
+     */
+    public SymmetricEigenDecomposition(double[][] a) {
+        this(a.length);
+        decompose(a, a.length);
+    }
+
+    /**
+     * Creates an empty decomposition to be filled by decompose.
+     *
+     * @param capacity size of the largest matrix expected, larger matrices can still be given
+     */
+    public SymmetricEigenDecomposition(int capacity) {
+        d = new double[capacity];
+        e = new double[capacity];
+        v = new double[capacity][capacity];
+    }
+
+    /**
+     * Decomposes the leading n by n block of a, replacing any previous decomposition.
+     *
+     * @param a symmetric matrix, only the lower triangle is read and a is not modified
+     * @param n size of the block to decompose
+     */
+    public void decompose(double[][] a, int n) {
+        if (n > d.length) {
+            d = new double[n];
+            e = new double[n];
+            v = new double[n][n];
+        }
+        this.n = n;
+
+        //the algorithms work on the lower triangle, held here as the upper triangle of the transpose
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                v[j][i] = a[i][j];
+                v[i][j] = a[i][j];
+            }
+        }
+
+        if (n > 0) {
+            tred2();
+            tql2();
+        }
+    }
+
+    /**
+     * @return size of the last matrix decomposed
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * @return eigenvalues in ascending order, the first size() values are set if the instance has been reused
+     */
+    public double[] getEigenvalues() {
+        return d;
+    }
+
+    /**
+     * @return eigenvectors[i] is the unit eigenvector for eigenvalue i, the first size() entries of the first size()
+     * rows are set if the instance has been reused
+     */
+    public double[][] getEigenvectors() {
+        return v;
+    }
+
+    //Symmetric Householder reduction to tridiagonal form
+    private void tred2() {
+        for (int j = 0; j < n; j++) {
+            d[j] = v[j][n - 1];
+        }
+
+        for (int i = n - 1; i > 0; i--) {
+            //Scale to avoid under/overflow
+            double scale = 0.0;
+            double h = 0.0;
+            for (int k = 0; k < i; k++) {
+                scale = scale + Math.abs(d[k]);
+            }
+
+            if (scale == 0.0) {
+                e[i] = d[i - 1];
+                for (int j = 0; j < i; j++) {
+                    d[j] = v[j][i - 1];
+                    v[j][i] = 0.0;
+                    v[i][j] = 0.0;
+                }
+            } else {
+                //Generate Householder vector
+                for (int k = 0; k < i; k++) {
+                    d[k] /= scale;
+                    h += d[k] * d[k];
+                }
+                double f = d[i - 1];
+                double g = Math.sqrt(h);
+                if (f > 0) {
+                    g = -g;
+                }
+                e[i] = scale * g;
+                h = h - f * g;
+                d[i - 1] = f - g;
+                for (int j = 0; j < i; j++) {
+                    e[j] = 0.0;
+                }
+
+                //Apply similarity transformation to remaining columns
+                for (int j = 0; j < i; j++) {
+                    f = d[j];
+                    v[i][j] = f;
+                    double[] vj = v[j];
+                    g = e[j] + vj[j] * f;
+                    for (int k = j + 1; k <= i - 1; k++) {
+                        g += vj[k] * d[k];
+                        e[k] += vj[k] * f;
+                    }
+                    e[j] = g;
+                }
+                f = 0.0;
+                for (int j = 0; j < i; j++) {
+                    e[j] /= h;
+                    f += e[j] * d[j];
+                }
+                double hh = f / (h + h);
+                for (int j = 0; j < i; j++) {
+                    e[j] -= hh * d[j];
+                }
+                for (int j = 0; j < i; j++) {
+                    f = d[j];
+                    g = e[j];
+                    double[] vj = v[j];
+                    for (int k = j; k <= i - 1; k++) {
+                        vj[k] -= (f * e[k] + g * d[k]);
+                    }
+                    d[j] = vj[i - 1];
+                    vj[i] = 0.0;
+                }
+            }
+            d[i] = h;
+        }
+
+        //Accumulate transformations
+        for (int i = 0; i < n - 1; i++) {
+            v[i][n - 1] = v[i][i];
+            v[i][i] = 1.0;
+            double h = d[i + 1];
+            double[] vi1 = v[i + 1];
+            if (h != 0.0) {
+                for (int k = 0; k <= i; k++) {
+                    d[k] = vi1[k] / h;
+                }
+                for (int j = 0; j <= i; j++) {
+                    double[] vj = v[j];
+                    double g = 0.0;
+                    for (int k = 0; k <= i; k++) {
+                        g += vi1[k] * vj[k];
+                    }
+                    for (int k = 0; k <= i; k++) {
+                        vj[k] -= g * d[k];
+                    }
+                }
+            }
+            for (int k = 0; k <= i; k++) {
+                vi1[k] = 0.0;
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            d[j] = v[j][n - 1];
+            v[j][n - 1] = 0.0;
+        }
+        v[n - 1][n - 1] = 1.0;
+        e[0] = 0.0;
+    }
+
+    //Symmetric tridiagonal QL algorithm
+    private void tql2() {
+        for (int i = 1; i < n; i++) {
+            e[i - 1] = e[i];
+        }
+        e[n - 1] = 0.0;
+
+        double f = 0.0;
+        double tst1 = 0.0;
+        double eps = Math.pow(2.0, -52.0);
+        for (int l = 0; l < n; l++) {
+            //Find small subdiagonal element
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n) {
+                if (Math.abs(e[m]) <= eps * tst1) {
+                    break;
+                }
+                m++;
+            }
+
+            //If m == l, d[l] is an eigenvalue, otherwise iterate
+            if (m > l) {
+                do {
+                    //Compute implicit shift
+                    double g = d[l];
+                    double p = (d[l + 1] - g) / (2.0 * e[l]);
+                    double r = hypot(p, 1.0);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l + 1] = e[l] * (p + r);
+                    double dl1 = d[l + 1];
+                    double h = g - d[l];
+                    for (int i = l + 2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f = f + h;
+
+                    //Implicit QL transformation
+                    p = d[m];
+                    double c = 1.0;
+                    double c2 = c;
+                    double c3 = c;
+                    double el1 = e[l + 1];
+                    double s = 0.0;
+                    double s2 = 0.0;
+                    for (int i = m - 1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = hypot(p, e[i]);
+                        e[i + 1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i + 1] = h + s * (c * g + s * d[i]);
+
+                        //Accumulate transformation
+                        double[] vi = v[i];
+                        double[] vi1 = v[i + 1];
+                        for (int k = 0; k < n; k++) {
+                            h = vi1[k];
+                            vi1[k] = s * vi[k] + c * h;
+                            vi[k] = c * vi[k] - s * h;
+                        }
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+
+                    //Check for convergence
+                } while (Math.abs(e[l]) > eps * tst1);
+            }
+            d[l] = d[l] + f;
+            e[l] = 0.0;
+        }
+
+        //Sort eigenvalues and corresponding vectors
+        for (int i = 0; i < n - 1; i++) {
+            int k = i;
+            double p = d[i];
+            for (int j = i + 1; j < n; j++) {
+                if (d[j] < p) {
+                    k = j;
+                    p = d[j];
+                }
+            }
+            if (k != i) {
+                d[k] = d[i];
+                d[i] = p;
+                double[] temp = v[i];
+                v[i] = v[k];
+                v[k] = temp;
+            }
+        }
+    }
+
+    //sqrt(a^2 + b^2) without under/overflow
+    private static double hypot(double a, double b) {
+        double r;
+        if (Math.abs(a) > Math.abs(b)) {
+            r = b / a;
+            r = Math.abs(a) * Math.sqrt(1 + r * r);
+        } else if (b != 0) {
+            r = a / b;
+            r = Math.abs(b) * Math.sqrt(1 + r * r);
+        } else {
+            r = 0.0;
+        }
+        return r;
+    }
+}
@@ -24,6 +24,8 @@
 package weka.classifiers.functions;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.Kernel;
+import weka.classifiers.functions.supportVector.PrecomputedKernel;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -234,6 +236,8 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
   public static final int KERNELTYPE_RBF = 2;
   /** kernel type sigmoid: tanh(gamma*u'*v + coef0) */
   public static final int KERNELTYPE_SIGMOID = 3;
+  /** kernel type precomputed: the kernel values are passed in place of the attributes, set by setPrecomputedKernel */
+  public static final int KERNELTYPE_PRECOMPUTED = 4;
   /** the different kernel types */
   public static final Tag[] TAGS_KERNELTYPE = {
     new Tag(KERNELTYPE_LINEAR, "linear: u'*v"),
@@ -244,6 +248,12 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
   
   /** the kernel type */
   protected int m_KernelType = KERNELTYPE_RBF;
+
+  /** weka kernel evaluated for libsvm, null to use m_KernelType */
+  protected Kernel m_PrecomputedKernel = null;
+
+  /** number of training instances the precomputed kernel is evaluated against */
+  protected int m_NumTrain = 0;
   
   /** for poly - in older versions of libsvm declared as a double.
    * At least since 2.82 it is an int. */
@@ -1012,6 +1022,25 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
   public boolean getNormalize() {
     return m_Normalize;
   }
+
+  /**
+   * Sets a weka kernel to use in place of the libsvm kernel types. Its values are computed here and passed to libsvm
+   * as a precomputed kernel. A PrecomputedKernel computes the values between training instances once, in parallel.
+   *
+   * @param value the kernel, or null to use the kernel type
+   */
+  public void setPrecomputedKernel(Kernel value) {
+    m_PrecomputedKernel = value;
+  }
+
+  /**
+   * Gets the weka kernel used in place of the libsvm kernel types
+   *
+   * @return the kernel, null if the kernel type is used
+   */
+  public Kernel getPrecomputedKernel() {
+    return m_PrecomputedKernel;
+  }
   
   /**
    * Returns the tip text for this property
@@ -1275,7 +1304,7 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
       result = Class.forName(CLASS_SVMPARAMETER).newInstance();
       
       setField(result, "svm_type", new Integer(m_SVMType));
-      setField(result, "kernel_type", new Integer(m_KernelType));
+      setField(result, "kernel_type", new Integer(m_PrecomputedKernel != null ? KERNELTYPE_PRECOMPUTED : m_KernelType));
       setField(result, "degree", new Integer(m_Degree));
       setField(result, "gamma", new Double(m_GammaActual));
       setField(result, "coef0", new Double(m_Coef0));
@@ -1395,6 +1424,32 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
     
     return result;
   }
+
+  /**
+   * returns the kernel values of an instance with each training instance as a libsvm array, in the libsvm
+   * precomputed kernel format: index 0 holds the 1-based number of the instance, index j its kernel value with
+   * training instance j
+   *
+   * @param id		index of the instance in the training data, -1 if not a training instance
+   * @param instance	the instance to work on
+   * @return		the libsvm array
+   * @throws Exception	if setup of array fails
+   */
+  protected Object kernelToArray(int id, Instance instance) throws Exception {
+    Class nodeClass = Class.forName(CLASS_SVMNODE);
+    Object result = Array.newInstance(nodeClass, m_NumTrain + 1);
+
+    Array.set(result, 0, nodeClass.newInstance());
+    setField(Array.get(result, 0), "index", new Integer(0));
+    setField(Array.get(result, 0), "value", new Double(id + 1));
+    for (int j = 0; j < m_NumTrain; j++) {
+      Array.set(result, j + 1, nodeClass.newInstance());
+      setField(Array.get(result, j + 1), "index", new Integer(j + 1));
+      setField(Array.get(result, j + 1), "value", new Double(m_PrecomputedKernel.eval(id, j, instance)));
+    }
+
+    return result;
+  }
   
   /**
    * Computes the distribution for a given instance. 
@@ -1435,7 +1490,7 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
       instance = m_Filter.output();
     }
 
-    Object x = instanceToArray(instance);
+    Object x = m_PrecomputedKernel != null ? kernelToArray(-1, instance) : instanceToArray(instance);
     double v;
     double[] result = new double[instance.numClasses()];
     if (    m_ProbabilityEstimates 
@@ -1566,13 +1621,20 @@ public class LibSVM  extends AbstractClassifier implements TechnicalInformationH
       insts = Filter.useFilter(insts, m_Filter);
     }
     
+    if (m_PrecomputedKernel != null) {
+      if (m_PrecomputedKernel instanceof PrecomputedKernel)
+        ((PrecomputedKernel) m_PrecomputedKernel).precompute(insts);
+      m_PrecomputedKernel.buildKernel(insts);
+      m_NumTrain = insts.numInstances();
+    }
+
     Vector vy = new Vector();
     Vector vx = new Vector();
     int max_index = 0;
     
     for (int d = 0; d < insts.numInstances(); d++) {
       Instance inst = insts.instance(d);
-      Object x = instanceToArray(inst);
+      Object x = m_PrecomputedKernel != null ? kernelToArray(d, inst) : instanceToArray(inst);
       int m = Array.getLength(x);
       
       if (m > 0)
@@ -29,6 +29,7 @@ import java.util.Vector;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.functions.supportVector.Kernel;
 import weka.classifiers.functions.supportVector.PolyKernel;
+import weka.classifiers.functions.supportVector.PrecomputedKernel;
 import weka.classifiers.functions.supportVector.SMOset;
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -1336,6 +1337,11 @@ public class SMO
       subsets[i].compactify();
     }
 
+    // Compute a precomputed kernel once on all the data, the copies for each binary classifier share it
+    if (m_kernel instanceof PrecomputedKernel) {
+      ((PrecomputedKernel) m_kernel).precompute(insts);
+    }
+
     // Build the binary classifiers
     Random rand = new Random(m_randomSeed);
     m_classifiers = new BinarySMO[insts.numClasses()][insts.numClasses()];
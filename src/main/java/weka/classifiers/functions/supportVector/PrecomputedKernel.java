@@ -0,0 +1,240 @@
+/*
+ * This file is part of the UEA Time Series Machine Learning (TSML) toolbox.
+ *
+ * The UEA TSML toolbox is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The UEA TSML toolbox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with the UEA TSML toolbox. If not, see <https://www.gnu.org/licenses/>.
+ */
+package weka.classifiers.functions.supportVector;
+
+import tsml.data_containers.PairwiseMatrix;
+import weka.core.Copyable;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A kernel whose values between training instances are computed once, in parallel, into a PairwiseMatrix, for kernels
+ * that are too expensive to evaluate repeatedly in the optimisation loop, such as those on elastic distances.
+ * <p>
+ * The matrix holds a pairwise value, e.g. a distance, that the kernel is a function of, so parameters of that function
+ * such as a bandwidth can be changed without recomputing it. Copies share the matrix, so the binary problems of SMO
+ * and folds of a cross validation over the same training data only compute it once. Instances are matched to rows of
+ * the matrix by their values, any instance not in the matrix is evaluated directly.
+ * <p>
+ * SMO and LibSVM call precompute on the full training data before training. The matrix is not serialised with a
+ * trained model, predictions are evaluated directly.
+ */
+public abstract class PrecomputedKernel extends Kernel implements Copyable, Cloneable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** a pairwise function of two instances */
+  public interface PairFunction {
+    double value(Instance a, Instance b) throws Exception;
+  }
+
+  private int numThreads = 1;
+  private File gramFile = null;
+
+  private transient PairwiseMatrix gram;
+  private transient HashMap<SeriesKey, Integer> gramRows;
+  private transient int[] dataRows;
+  private transient PairFunction function;
+
+  private int numEvals;
+  private int numCacheHits;
+
+  /**
+   * @return a new function for the pairwise value stored in the matrix. Called once per thread, so the function may
+   * keep state.
+   */
+  protected abstract PairFunction newPairFunction();
+
+  /**
+   * @param value pairwise value from the matrix or newPairFunction
+   * @return the kernel value
+   */
+  protected abstract double kernel(double value);
+
+  /**
+   * @param numThreads number of threads used to compute the matrix
+   */
+  public void setNumThreads(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  /**
+   * @param gramFile file to memory map the matrix to, or null to hold it on the heap. The file is removed on exit.
+   */
+  public void setGramFile(File gramFile) {
+    this.gramFile = gramFile;
+  }
+
+  public File getGramFile() {
+    return gramFile;
+  }
+
+  /**
+   * @return the matrix of pairwise values, null if not computed
+   */
+  public PairwiseMatrix getGramMatrix() {
+    return gram;
+  }
+
+  /**
+   * Discards the matrix, e.g. after changing a parameter of the pairwise function.
+   */
+  public void clearGramMatrix() {
+    gram = null;
+    gramRows = null;
+    dataRows = null;
+  }
+
+  /**
+   * Computes the matrix of pairwise values between the instances of data, unless they are all in the current matrix.
+   *
+   * @param data training data
+   * @throws Exception if the matrix cannot be computed
+   */
+  public void precompute(Instances data) throws Exception {
+    if (gramRows != null) {
+      boolean found = true;
+      for (int i = 0; i < data.numInstances() && found; i++)
+        found = gramRows.containsKey(new SeriesKey(data.instance(i)));
+      if (found)
+        return;
+    }
+
+    int n = data.numInstances();
+    PairwiseMatrix matrix;
+    if (gramFile == null) {
+      matrix = new PairwiseMatrix(n);
+    } else {
+      gramFile.deleteOnExit();
+      matrix = new PairwiseMatrix(n, gramFile);
+    }
+    matrix.fill(() -> {
+      PairFunction f = newPairFunction();
+      return (i, j) -> f.value(data.instance(i), data.instance(j));
+    }, numThreads);
+
+    HashMap<SeriesKey, Integer> rows = new HashMap<>(n * 2);
+    for (int i = 0; i < n; i++)
+      rows.putIfAbsent(new SeriesKey(data.instance(i)), i);
+    gram = matrix;
+    gramRows = rows;
+  }
+
+  /**
+   * Builds the kernel, computing the matrix if there is none and finding the row of each instance.
+   *
+   * @param data the data to base the kernel on
+   * @throws Exception if something goes wrong
+   */
+  @Override
+  public void buildKernel(Instances data) throws Exception {
+    super.buildKernel(data);
+    if (gram == null)
+      precompute(data);
+
+    numEvals = 0;
+    numCacheHits = 0;
+    dataRows = new int[data.numInstances()];
+    for (int i = 0; i < dataRows.length; i++) {
+      Integer row = gramRows.get(new SeriesKey(data.instance(i)));
+      dataRows[i] = row == null ? -1 : row;
+    }
+  }
+
+  /**
+   * @param id1 the index of the first instance in the dataset
+   * @param id2 the index of the second instance in the dataset
+   * @param inst1 the instance corresponding to id1 (used if id1 == -1)
+   * @return the result of the kernel function
+   * @throws Exception if something goes wrong
+   */
+  @Override
+  public double eval(int id1, int id2, Instance inst1) throws Exception {
+    if (id1 >= 0 && dataRows != null && dataRows[id1] >= 0 && dataRows[id2] >= 0) {
+      numCacheHits++;
+      return kernel(gram.get(dataRows[id1], dataRows[id2]));
+    }
+    numEvals++;
+    if (function == null)
+      function = newPairFunction();
+    return kernel(function.value(id1 >= 0 ? m_data.instance(id1) : inst1, m_data.instance(id2)));
+  }
+
+  /**
+   * Forgets the rows of the training instances, the shared matrix is kept.
+   */
+  @Override
+  public void clean() {
+    dataRows = null;
+  }
+
+  @Override
+  public int numEvals() {
+    return numEvals;
+  }
+
+  @Override
+  public int numCacheHits() {
+    return numCacheHits;
+  }
+
+  /**
+   * @return a shallow copy sharing the matrix
+   */
+  @Override
+  public Object copy() {
+    try {
+      PrecomputedKernel copy = (PrecomputedKernel) clone();
+      copy.dataRows = null;
+      copy.function = null;
+      copy.numEvals = 0;
+      copy.numCacheHits = 0;
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** the values of an instance, as a key for its row in the matrix */
+  private static final class SeriesKey {
+    private final double[] values;
+    private final int hash;
+
+    private SeriesKey(Instance instance) {
+      values = instance.toDoubleArray();
+      hash = Arrays.hashCode(values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof SeriesKey && Arrays.equals(values, ((SeriesKey) o).values);
+    }
+  }
+}